@@ -31,4 +31,13 @@ tasks.test {
         showCauses = true
         showStackTraces = true
     }
-}
\ No newline at end of file
+}
+
+// Измерения производительности из тестовых исходников: ./gradlew benchmark -Pbenchmark=ColumnBenchmark
+tasks.register<JavaExec>("benchmark") {
+    description = "Runs a benchmark main class from the test sources."
+    group = "verification"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("calculator." + (project.findProperty("benchmark") ?: "ColumnBenchmark"))
+    args((project.findProperty("args") as String?)?.split(" ").orEmpty())
+}
@@ -0,0 +1,338 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Накопитель агрегатов значений выражения: сумма, минимум и максимум с номерами строк,
+ * среднее, дисперсия и гистограмма.
+ *
+ * <p>Используется методами {@code reduce} класса {@link CompiledExpression}, которые вычисляют
+ * выражение по блокам строк и сразу передают результаты в накопитель, не сохраняя их в массив.
+ * При параллельном вычислении каждая задача заполняет собственный накопитель, созданный методом
+ * {@link #emptyCopy()}, а затем накопители объединяются методом {@link #merge(Aggregate)}.
+ *
+ * <p>Сумма накапливается с компенсацией ошибки округления (алгоритм Ноймайера), среднее и дисперсия -
+ * по алгоритму Уэлфорда, что устойчиво и для сотен миллионов слагаемых. Значения NaN делают
+ * сумму, среднее и дисперсию равными NaN, но не учитываются в минимуме, максимуме и гистограмме.
+ *
+ * <p>Объект изменяемый и не потокобезопасный.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * CompiledExpression expr = Calculator.compile("a * b");
+ * Aggregate aggregate = Aggregate.withHistogram(0, 100, 10);
+ * expr.reduce(Map.of("a", a, "b", b), a.length, aggregate);
+ * double total = aggregate.getSum();
+ * long rowOfMax = aggregate.getArgMax();
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class Aggregate
+{
+    /** Количество значений */
+    private long count;
+
+    /** Сумма значений и накопленная поправка округления */
+    private double sum, compensation;
+
+    /** Минимальное и максимальное значения */
+    private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+    /** Номера строк минимального и максимального значений */
+    private long argMin = -1, argMax = -1;
+
+    /** Среднее значение и сумма квадратов отклонений от среднего */
+    private double mean, squares;
+
+    /** Границы гистограммы */
+    private final double low, high;
+
+    /** Количество значений в корзинах гистограммы или null, если гистограмма не нужна */
+    private final long[] buckets;
+
+    /** Количество значений ниже и выше границ гистограммы */
+    private long underflow, overflow;
+
+    /**
+     * Создает пустой накопитель без гистограммы.
+     */
+    public Aggregate()
+    {
+        this(0, 0, null);
+    }
+
+    /**
+     * Создает пустой накопитель.
+     *
+     * @param low нижняя граница гистограммы
+     * @param high верхняя граница гистограммы
+     * @param buckets массив корзин или null
+     */
+    private Aggregate(double low, double high, long[] buckets)
+    {
+        this.low = low;
+        this.high = high;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Создает пустой накопитель с гистограммой из корзин одинаковой ширины на промежутке {@code [low, high)}.
+     *
+     * @param low нижняя граница гистограммы
+     * @param high верхняя граница гистограммы
+     * @param buckets количество корзин
+     * @return новый накопитель
+     * @throws IllegalArgumentException если границы некорректны или количество корзин не положительно
+     */
+    public static Aggregate withHistogram(double low, double high, int buckets)
+    {
+        if (!(low < high) || Double.isInfinite(low) || Double.isInfinite(high))
+            throw new IllegalArgumentException("Invalid histogram range: [" + low + ", " + high + ")");
+        if (buckets < 1)
+            throw new IllegalArgumentException("Histogram must have at least one bucket: " + buckets);
+        return new Aggregate(low, high, new long[buckets]);
+    }
+
+    /**
+     * Создает пустой накопитель с теми же параметрами гистограммы.
+     *
+     * @return новый накопитель
+     */
+    public Aggregate emptyCopy()
+    {
+        return new Aggregate(low, high, buckets == null ? null : new long[buckets.length]);
+    }
+
+    /**
+     * Учитывает одно значение.
+     *
+     * @param value значение
+     * @param row номер строки, в которой получено значение
+     */
+    public void accept(double value, long row)
+    {
+        ++count;
+
+        // Сумма Ноймайера
+        double t = sum + value;
+        if (Math.abs(sum) >= Math.abs(value))
+            compensation += (sum - t) + value;
+        else
+            compensation += (value - t) + sum;
+        sum = t;
+
+        // Среднее и дисперсия Уэлфорда
+        double delta = value - mean;
+        mean += delta / count;
+        squares += delta * (value - mean);
+
+        if (value < min)
+        {
+            min = value;
+            argMin = row;
+        }
+        if (value > max)
+        {
+            max = value;
+            argMax = row;
+        }
+
+        if (buckets != null)
+        {
+            if (value < low)
+                ++underflow;
+            else if (value >= high)
+                ++overflow;
+            else if (value == value)
+                ++buckets[Math.min((int) ((value - low) / (high - low) * buckets.length), buckets.length - 1)];
+        }
+    }
+
+    /**
+     * Учитывает блок значений из последовательных строк.
+     *
+     * @param values значения
+     * @param size количество значений
+     * @param firstRow номер строки первого значения
+     */
+    void acceptBlock(double[] values, int size, long firstRow)
+    {
+        for (int i = 0; i < size; i++)
+            accept(values[i], firstRow + i);
+    }
+
+    /**
+     * Добавляет к накопителю значения другого накопителя.
+     * При равных минимумах (максимумах) сохраняется меньший номер строки,
+     * поэтому результат не зависит от того, как строки были разделены между задачами.
+     *
+     * @param other накопитель с теми же параметрами гистограммы
+     * @throws IllegalArgumentException если параметры гистограмм различаются
+     */
+    public void merge(Aggregate other)
+    {
+        if ((buckets == null) != (other.buckets == null)
+                || (buckets != null && (low != other.low || high != other.high || buckets.length != other.buckets.length)))
+            throw new IllegalArgumentException("Cannot merge aggregates with different histograms");
+        if (other.count == 0)
+            return;
+
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        squares += other.squares + delta * delta * ((double) count * other.count / total);
+        count = total;
+
+        double t = sum + other.sum;
+        if (Math.abs(sum) >= Math.abs(other.sum))
+            compensation += (sum - t) + other.sum;
+        else
+            compensation += (other.sum - t) + sum;
+        sum = t;
+        compensation += other.compensation;
+
+        if (other.min < min || (other.min == min && other.argMin < argMin))
+        {
+            min = other.min;
+            argMin = other.argMin;
+        }
+        if (other.max > max || (other.max == max && other.argMax < argMax))
+        {
+            max = other.max;
+            argMax = other.argMax;
+        }
+
+        if (buckets != null)
+        {
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] += other.buckets[i];
+            underflow += other.underflow;
+            overflow += other.overflow;
+        }
+    }
+
+    /**
+     * Возвращает количество значений.
+     *
+     * @return количество значений
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Возвращает сумму значений с компенсацией ошибки округления.
+     *
+     * @return сумма значений
+     */
+    public double getSum()
+    {
+        // При переполнении поправка теряет смысл (inf - inf), сумма уже бесконечна
+        return Double.isInfinite(sum) ? sum : sum + compensation;
+    }
+
+    /**
+     * Возвращает минимальное значение.
+     *
+     * @return минимальное значение или {@code +Infinity}, если значений нет
+     */
+    public double getMin()
+    {
+        return min;
+    }
+
+    /**
+     * Возвращает номер строки с минимальным значением (первой из равных).
+     *
+     * @return номер строки или -1, если значений нет
+     */
+    public long getArgMin()
+    {
+        return argMin;
+    }
+
+    /**
+     * Возвращает максимальное значение.
+     *
+     * @return максимальное значение или {@code -Infinity}, если значений нет
+     */
+    public double getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Возвращает номер строки с максимальным значением (первой из равных).
+     *
+     * @return номер строки или -1, если значений нет
+     */
+    public long getArgMax()
+    {
+        return argMax;
+    }
+
+    /**
+     * Возвращает среднее значение.
+     *
+     * @return среднее значение или NaN, если значений нет
+     */
+    public double getMean()
+    {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Возвращает дисперсию значений (генеральную, с делителем {@code n}).
+     *
+     * @return дисперсия или NaN, если значений нет
+     */
+    public double getVariance()
+    {
+        return count == 0 ? Double.NaN : squares / count;
+    }
+
+    /**
+     * Возвращает выборочную дисперсию значений (с делителем {@code n - 1}).
+     *
+     * @return выборочная дисперсия или NaN, если значений меньше двух
+     */
+    public double getSampleVariance()
+    {
+        return count < 2 ? Double.NaN : squares / (count - 1);
+    }
+
+    /**
+     * Возвращает количество значений в корзинах гистограммы.
+     *
+     * @return копия массива корзин (пустой массив, если гистограмма не нужна)
+     */
+    public long[] getHistogram()
+    {
+        return buckets == null ? new long[0] : Arrays.copyOf(buckets, buckets.length);
+    }
+
+    /**
+     * Возвращает количество значений ниже нижней границы гистограммы.
+     *
+     * @return количество значений
+     */
+    public long getUnderflow()
+    {
+        return underflow;
+    }
+
+    /**
+     * Возвращает количество значений не ниже верхней границы гистограммы.
+     *
+     * @return количество значений
+     */
+    public long getOverflow()
+    {
+        return overflow;
+    }
+}
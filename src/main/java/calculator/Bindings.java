@@ -0,0 +1,175 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Набор значений переменных для одного скомпилированного выражения.
+ *
+ * <p>Значения хранятся в массиве {@code double} по номерам слотов, которые выражение назначает
+ * переменным при разборе. Номер слота достаточно получить один раз методом {@link #slotOf(String)},
+ * после чего запись значения и вычисление не требуют ни упаковки чисел, ни поиска по имени.
+ *
+ * <p>Объект изменяемый и не потокобезопасный: каждому потоку нужен собственный набор значений.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * CompiledExpression expr = Calculator.compile("x^2 + y");
+ * Bindings bindings = expr.newBindings();
+ * int x = bindings.slotOf("x"), y = bindings.slotOf("y");
+ * bindings.set(y, 1.0);
+ * for (int i = 0; i < 10; i++)
+ * {
+ *     bindings.set(x, i);
+ *     double res = expr.evaluate(bindings);
+ * }
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class Bindings
+{
+    /** Выражение, для которого создан набор */
+    private final CompiledExpression expression;
+
+    /** Значения переменных по номерам слотов */
+    private final double[] values;
+
+    /** Признаки того, что значение слота задано */
+    private final boolean[] assigned;
+
+    /** Количество заданных слотов */
+    private int assignedCount;
+
+    /**
+     * Создает пустой набор значений для выражения.
+     *
+     * @param expression выражение, для которого создается набор
+     */
+    Bindings(CompiledExpression expression)
+    {
+        this.expression = expression;
+        this.values = new double[expression.getVariableCount()];
+        this.assigned = new boolean[values.length];
+    }
+
+    /**
+     * Возвращает номер слота переменной.
+     *
+     * @param name имя переменной
+     * @return номер слота или -1, если такой переменной в выражении нет
+     */
+    public int slotOf(String name)
+    {
+        return expression.slotOf(name);
+    }
+
+    /**
+     * Устанавливает значение переменной по номеру слота.
+     *
+     * @param slot номер слота
+     * @param v значение переменной
+     * @throws IndexOutOfBoundsException если слота с таким номером нет
+     */
+    public void set(int slot, double v)
+    {
+        values[slot] = v;
+        if (!assigned[slot])
+        {
+            assigned[slot] = true;
+            ++assignedCount;
+        }
+    }
+
+    /**
+     * Устанавливает значение переменной по имени.
+     *
+     * @param name имя переменной
+     * @param v значение переменной
+     * @throws IllegalArgumentException если такой переменной в выражении нет
+     */
+    public void set(String name, double v)
+    {
+        int slot = slotOf(name);
+        if (slot < 0)
+            throw new IllegalArgumentException("Unknown variable: " + name);
+        set(slot, v);
+    }
+
+    /**
+     * Возвращает значение переменной по номеру слота.
+     *
+     * @param slot номер слота
+     * @return значение переменной (0.0, если значение не задано)
+     */
+    public double get(int slot)
+    {
+        return values[slot];
+    }
+
+    /**
+     * Проверяет, задано ли значение переменной.
+     *
+     * @param slot номер слота
+     * @return true если значение задано
+     */
+    public boolean isSet(int slot)
+    {
+        return assigned[slot];
+    }
+
+    /**
+     * Сбрасывает значения всех переменных.
+     */
+    public void clear()
+    {
+        Arrays.fill(values, 0);
+        Arrays.fill(assigned, false);
+        assignedCount = 0;
+    }
+
+    /**
+     * Проверяет, заданы ли значения всех переменных выражения.
+     *
+     * @return true если заданы все значения
+     */
+    boolean isComplete()
+    {
+        return assignedCount == values.length;
+    }
+
+    /**
+     * Возвращает номер первого слота без значения.
+     *
+     * @return номер слота или -1, если заданы все значения
+     */
+    int firstUnset()
+    {
+        for (int i = 0; i < assigned.length; i++)
+            if (!assigned[i])
+                return i;
+        return -1;
+    }
+
+    /**
+     * Возвращает выражение, для которого создан набор.
+     *
+     * @return выражение
+     */
+    CompiledExpression expression()
+    {
+        return expression;
+    }
+
+    /**
+     * Возвращает массив значений по номерам слотов (без копирования).
+     *
+     * @return массив значений
+     */
+    double[] values()
+    {
+        return values;
+    }
+}
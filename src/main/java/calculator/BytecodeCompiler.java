@@ -0,0 +1,690 @@
+package calculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Компилятор скомпилированных выражений в байт-код JVM.
+ *
+ * <p>Программа в обратной польской записи переводится в метод {@code applyAsDouble} сгенерированного
+ * класса, реализующего {@link ToDoubleFunction ToDoubleFunction&lt;double[]&gt;}. Стек значений программы
+ * становится стеком операндов JVM, поэтому JIT-компилятор может встроить арифметику
+ * и вызовы {@link Math#sin}, {@link Math#pow} и других функций прямо в вызывающий код.
+ *
+ * <p>Класс определяется как скрытый ({@link MethodHandles.Lookup#defineHiddenClass}) без опции
+ * {@code STRONG}, поэтому он выгружается сборщиком мусора вместе с последней ссылкой на функцию
+ * и долгоживущий сервис, компилирующий пользовательские формулы, не засоряет metaspace.
+ *
+ * <p>Класс генерируется один раз для структуры выражения ({@link ExpressionShape}): выражения,
+ * различающиеся только числовыми константами, используют один класс с разными массивами констант.
+ * Функции из набора функций ({@link FunctionRegistry}) вызываются через интерфейс реализации,
+ * ссылка на которую читается из поля сгенерированного класса.
+ *
+ * <p>Выражения, для которых метод получился бы длиннее ограничения JVM (64 КБ байт-кода),
+ * вычисляются интерпретатором {@link CompiledExpression#evaluate(double...)}.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * CompiledExpression expr = Calculator.compile("sin(x) * y^2");
+ * ToDoubleFunction<double[]> function = BytecodeCompiler.compile(expr);
+ * double res = function.applyAsDouble(new double[] {0.5, 3.0});
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class BytecodeCompiler
+{
+    /** Имя генерируемого класса (JVM добавляет к имени скрытого класса уникальный суффикс) */
+    private static final String CLASS_NAME = "calculator/GeneratedExpression";
+
+    /** Имя класса со вспомогательными функциями */
+    private static final String HELPERS = "calculator/CompiledExpression";
+
+    /** Имя класса быстрых приближенных функций */
+    private static final String FAST_MATH = "calculator/FastMath";
+
+    /** Имя класса функций из набора функций */
+    private static final String FUNCTION = "calculator/MathFunction";
+
+    /** Максимальная длина байт-кода метода */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /** Версия формата class-файла (Java 17) */
+    private static final int CLASS_VERSION = 61;
+
+    private BytecodeCompiler()
+    {
+    }
+
+    /**
+     * Компилирует выражение в функцию от массива значений переменных по номерам слотов.
+     * Выражение, не помещающееся в один метод, вычисляется интерпретатором.
+     *
+     * @param expression скомпилированное выражение
+     * @return функция, вычисляющая выражение
+     */
+    public static ToDoubleFunction<double[]> compile(CompiledExpression expression)
+    {
+        ToDoubleFunction<double[]> function = tryCompile(expression);
+        return function != null ? function : expression::evaluate;
+    }
+
+    /**
+     * Компилирует выражение в функцию от массива значений переменных по номерам слотов.
+     *
+     * @param expression скомпилированное выражение
+     * @return функция, вычисляющая выражение, или null, если выражение не помещается в один метод
+     */
+    @SuppressWarnings("unchecked")
+    static ToDoubleFunction<double[]> tryCompile(CompiledExpression expression)
+    {
+        ExpressionShape shape = expression.shape;
+        MethodHandle constructor = shape.generatedConstructor();
+        if (constructor == null)
+        {
+            if (shape.isNotCompilable())
+                return null;
+            byte[] bytes = generate(expression);
+            if (bytes == null)
+            {
+                shape.markNotCompilable();
+                return null;
+            }
+            constructor = shape.installGeneratedConstructor(define(bytes, expression));
+        }
+
+        try
+        {
+            return (ToDoubleFunction<double[]>) constructor.invoke(expression.getConstants(), expression.functions,
+                    expression.shape.variableNames);
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("Failed to instantiate generated class for: " + expression, e);
+        }
+    }
+
+    /**
+     * Определяет скрытый класс и возвращает его конструктор.
+     *
+     * @param bytes содержимое class-файла
+     * @param expression выражение (для сообщения об ошибке)
+     * @return конструктор, принимающий массив констант, массив функций и имена переменных
+     */
+    private static MethodHandle define(byte[] bytes, CompiledExpression expression)
+    {
+        try
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, double[].class, MathFunction[].class, String[].class));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Failed to define generated class for: " + expression, e);
+        }
+    }
+
+    /**
+     * Формирует class-файл для структуры выражения. Числовые константы не встраиваются в байт-код,
+     * а читаются из поля {@code constants}, заполняемого конструктором, поэтому один класс
+     * обслуживает все выражения с такой же структурой. Функции команд вызова читаются из поля {@code functions}.
+     *
+     * @param expression скомпилированное выражение
+     * @return содержимое class-файла или null, если выражение не помещается в один метод
+     */
+    static byte[] generate(CompiledExpression expression)
+    {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int functionInterface = pool.classRef("java/util/function/ToDoubleFunction");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int constants = pool.fieldRef(CLASS_NAME, "constants", "[D");
+        int functions = pool.fieldRef(CLASS_NAME, "functions", "[L" + FUNCTION + ";");
+        int names = pool.fieldRef(CLASS_NAME, "names", "[Ljava/lang/String;");
+        int codeName = pool.utf8("Code");
+        int fieldName = pool.utf8("constants"), fieldType = pool.utf8("[D");
+        int functionsName = pool.utf8("functions"), functionsType = pool.utf8("[L" + FUNCTION + ";");
+        int namesName = pool.utf8("names"), namesType = pool.utf8("[Ljava/lang/String;");
+        int initName = pool.utf8("<init>"), initType = pool.utf8("([D[L" + FUNCTION + ";[Ljava/lang/String;)V");
+        int applyName = pool.utf8("applyAsDouble"), applyType = pool.utf8("(Ljava/lang/Object;)D");
+
+        Code init = new Code();
+        init.op(0x2a, 1);                       // aload_0
+        init.op(0xb7, -1).u2(objectInit);       // invokespecial Object.<init>
+        init.op(0x2a, 1);                       // aload_0
+        init.op(0x2b, 1);                       // aload_1
+        init.op(0xb5, -2).u2(constants);        // putfield constants
+        init.op(0x2a, 1);                       // aload_0
+        init.op(0x2c, 1);                       // aload_2
+        init.op(0xb5, -2).u2(functions);        // putfield functions
+        init.op(0x2a, 1);                       // aload_0
+        init.op(0x2d, 1);                       // aload_3
+        init.op(0xb5, -2).u2(names);            // putfield names
+        init.op(0xb1, 0);                       // return
+
+        Code apply = applyCode(expression, pool, constants, functions, names);
+        int maxArity = maxArity(expression);
+        int applyLocals = argumentsLocal(expression, maxArity, maxArity + 1);
+        if (apply.size() > MAX_CODE_LENGTH || apply.maxStack > 0xFFFF || applyLocals > 0xFFFF || pool.size() > 0xFFFF)
+            return null;
+
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            pool.write(out);
+            out.writeShort(0x0031);             // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(functionInterface);
+            out.writeShort(3);                  // поля
+            out.writeShort(0x0012);             // private final
+            out.writeShort(fieldName);
+            out.writeShort(fieldType);
+            out.writeShort(0);
+            out.writeShort(0x0012);             // private final
+            out.writeShort(functionsName);
+            out.writeShort(functionsType);
+            out.writeShort(0);
+            out.writeShort(0x0012);             // private final
+            out.writeShort(namesName);
+            out.writeShort(namesType);
+            out.writeShort(0);
+            out.writeShort(2);                  // методы
+            writeMethod(out, initName, initType, codeName, init, 4);
+            writeMethod(out, applyName, applyType, codeName, apply, applyLocals);
+            out.writeShort(0);                  // атрибуты класса
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Переводит программу в обратной польской записи в тело метода {@code applyAsDouble}.
+     *
+     * @param expression скомпилированное выражение
+     * @param pool пул констант класса
+     * @param constants индекс ссылки на поле с константами
+     * @param functions индекс ссылки на поле с функциями
+     * @param names индекс ссылки на поле с именами переменных
+     * @return байт-код метода
+     */
+    private static Code applyCode(CompiledExpression expression, ConstantPool pool, int constants, int functions,
+                                  int names)
+    {
+        Code code = new Code();
+        code.op(0x2b, 1);                                           // aload_1
+        code.op(0xc0, 0).u2(pool.classRef("[D"));                   // checkcast double[]
+        code.op(0x4c, -1);                                          // astore_1
+        code.op(0x2b, 1);                                           // aload_1
+        code.op(0x2a, 1);                                           // aload_0
+        code.op(0xb4, 0).u2(names);                                 // getfield names
+        code.op(0xb8, -2).u2(pool.methodRef(HELPERS, "checkValues", "([D[Ljava/lang/String;)V"));
+        code.op(0x2a, 1);                                           // aload_0
+        code.op(0xb4, 0).u2(constants);                             // getfield constants
+        code.op(0x4d, -1);                                          // astore_2
+
+        // Один массив аргументов на вычисление для каждого количества аргументов функций, получающих массив
+        int maxArity = maxArity(expression);
+        boolean[] allocated = new boolean[maxArity + 1];
+        for (MathFunction function : expression.functions)
+        {
+            if (function != null && function.general != null && !allocated[function.arity])
+            {
+                allocated[function.arity] = true;
+                code.pushInt(function.arity, pool);
+                code.op(0xbc, 0).u1(7);                             // newarray double
+                code.local(0x3a, -1, argumentsLocal(expression, maxArity, function.arity));   // astore
+            }
+        }
+
+        int constant = 0;
+        for (int i = 0; i < expression.kinds.length; i++)
+        {
+            switch (expression.kinds[i])
+            {
+                case CompiledExpression.LITERAL ->
+                {
+                    code.op(0x2c, 1);                               // aload_2
+                    code.pushInt(constant++, pool);
+                    code.op(0x31, 0);                               // daload
+                }
+                case CompiledExpression.VARIABLE, CompiledExpression.NEGATED_VARIABLE ->
+                {
+                    code.op(0x2b, 1);                               // aload_1
+                    code.pushInt(expression.slots[i], pool);
+                    code.op(0x31, 0);                               // daload
+                    if (expression.kinds[i] == CompiledExpression.NEGATED_VARIABLE)
+                        code.op(0x77, 0);                           // dneg
+                }
+                case CompiledExpression.LOAD_TEMPORARY -> code.local(0x18, 2, temporaryLocal(expression.slots[i]));
+                case CompiledExpression.STORE_TEMPORARY ->
+                {
+                    code.op(0x5c, 2);                               // dup2
+                    code.local(0x39, -2, temporaryLocal(expression.slots[i]));
+                }
+                case CompiledExpression.CALL ->
+                        call(code, expression.functions[i], i, temporaryLocal(expression.shape.temporaryCount),
+                                argumentsLocal(expression, maxArity, expression.functions[i].arity), pool, functions);
+                default -> operator(code, expression.slots[i], pool);
+            }
+        }
+        code.op(0xaf, -2);                                          // dreturn
+        return code;
+    }
+
+    /**
+     * Возвращает номер локальной переменной метода {@code applyAsDouble}, в которой хранится общее подвыражение.
+     * Переменные 0-2 заняты ссылками на объект, массив значений и массив констант, каждое значение double занимает две.
+     *
+     * @param temporary номер общего подвыражения
+     * @return номер локальной переменной
+     */
+    private static int temporaryLocal(int temporary)
+    {
+        return 3 + 2 * temporary;
+    }
+
+    /**
+     * Возвращает номер локальной переменной метода {@code applyAsDouble}, в которой хранится массив аргументов
+     * функций с заданным количеством аргументов. Массивы расположены после общих подвыражений и значений
+     * аргументов вызова (по две переменные на аргумент).
+     *
+     * @param expression скомпилированное выражение
+     * @param maxArity наибольшее количество аргументов функций выражения
+     * @param arity количество аргументов
+     * @return номер локальной переменной
+     */
+    private static int argumentsLocal(CompiledExpression expression, int maxArity, int arity)
+    {
+        return temporaryLocal(expression.shape.temporaryCount) + 2 * maxArity + arity;
+    }
+
+    /**
+     * Возвращает наибольшее количество аргументов функций из набора функций, вызываемых выражением.
+     *
+     * @param expression скомпилированное выражение
+     * @return наибольшее количество аргументов или 0, если функции не вызываются
+     */
+    private static int maxArity(CompiledExpression expression)
+    {
+        int maxArity = 0;
+        for (MathFunction function : expression.functions)
+            if (function != null)
+                maxArity = Math.max(maxArity, function.arity);
+        return maxArity;
+    }
+
+    /**
+     * Добавляет в байт-код выполнение оператора или встроенной функции над значениями на вершине стека.
+     *
+     * @param code байт-код метода
+     * @param operator код операции
+     * @param pool пул констант класса
+     */
+    private static void operator(Code code, int operator, ConstantPool pool)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.ADD -> code.op(0x63, -2);                      // dadd
+            case CompiledExpression.SUBTRACT -> code.op(0x67, -2);                 // dsub
+            case CompiledExpression.MULTIPLY -> code.op(0x6b, -2);                 // dmul
+            case CompiledExpression.DIVIDE -> code.op(0xb8, -2).u2(pool.methodRef(HELPERS, "divide", "(DD)D"));
+            case CompiledExpression.POWER -> code.op(0xb8, -2).u2(pool.methodRef("java/lang/Math", "pow", "(DD)D"));
+            case CompiledExpression.MIN -> code.op(0xb8, -2).u2(pool.methodRef("java/lang/Math", "min", "(DD)D"));
+            case CompiledExpression.MAX -> code.op(0xb8, -2).u2(pool.methodRef("java/lang/Math", "max", "(DD)D"));
+            case CompiledExpression.HYPOT -> code.op(0xb8, -2).u2(pool.methodRef("java/lang/Math", "hypot", "(DD)D"));
+            case CompiledExpression.NEGATE -> code.op(0x77, 0);                    // dneg
+            case CompiledExpression.ABS -> code.op(0xb8, 0).u2(pool.methodRef("java/lang/Math", "abs", "(D)D"));
+            case CompiledExpression.FACTORIAL -> code.op(0xb8, 0).u2(pool.methodRef(HELPERS, "factorial", "(D)D"));
+            case CompiledExpression.SIN -> code.op(0xb8, 0).u2(pool.methodRef("java/lang/Math", "sin", "(D)D"));
+            case CompiledExpression.COS -> code.op(0xb8, 0).u2(pool.methodRef("java/lang/Math", "cos", "(D)D"));
+            case CompiledExpression.TAN -> code.op(0xb8, 0).u2(pool.methodRef("java/lang/Math", "tan", "(D)D"));
+            case CompiledExpression.COT -> code.op(0xb8, 0).u2(pool.methodRef(HELPERS, "ctg", "(D)D"));
+            case CompiledExpression.EXP -> code.op(0xb8, 0).u2(pool.methodRef("java/lang/Math", "exp", "(D)D"));
+            case CompiledExpression.LOG -> code.op(0xb8, 0).u2(pool.methodRef("java/lang/Math", "log", "(D)D"));
+            case CompiledExpression.POW_HALF -> code.op(0xb8, 0).u2(pool.methodRef(HELPERS, "powHalf", "(D)D"));
+            case CompiledExpression.GAMMA_FACTORIAL -> code.op(0xb8, 0).u2(pool.methodRef(HELPERS, "gammaFactorial", "(D)D"));
+            case CompiledExpression.FAST_COS -> code.op(0xb8, 0).u2(pool.methodRef(FAST_MATH, "cos", "(D)D"));
+            case CompiledExpression.FAST_TAN -> code.op(0xb8, 0).u2(pool.methodRef(FAST_MATH, "tan", "(D)D"));
+            case CompiledExpression.FAST_COT -> code.op(0xb8, 0).u2(pool.methodRef(FAST_MATH, "cot", "(D)D"));
+            case CompiledExpression.FAST_LOG -> code.op(0xb8, 0).u2(pool.methodRef(FAST_MATH, "log", "(D)D"));
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Добавляет в байт-код вызов функции из набора функций над аргументами на вершине стека.
+     * Аргументы сохраняются в локальные переменные, затем из поля {@code functions} читается функция
+     * и вызывается ее реализация через интерфейс ({@link java.util.function.DoubleUnaryOperator} и другие).
+     * Функция, получающая массив аргументов, получает массив, созданный один раз в начале вычисления.
+     *
+     * @param code байт-код метода
+     * @param function функция
+     * @param index индекс команды (и функции в массиве функций)
+     * @param scratch номер первой свободной локальной переменной
+     * @param arguments номер локальной переменной с массивом аргументов
+     * @param pool пул констант класса
+     * @param functions индекс ссылки на поле с функциями
+     */
+    private static void call(Code code, MathFunction function, int index, int scratch, int arguments, ConstantPool pool,
+                             int functions)
+    {
+        int arity = function.arity;
+        for (int k = arity - 1; k >= 0; k--)
+            code.local(0x39, -2, scratch + 2 * k);                  // dstore
+        code.op(0x2a, 1);                                           // aload_0
+        code.op(0xb4, 0).u2(functions);                             // getfield functions
+        code.pushInt(index, pool);
+        code.op(0x32, -1);                                          // aaload
+
+        switch (arity)
+        {
+            case 1 ->
+            {
+                String type = "java/util/function/DoubleUnaryOperator";
+                code.op(0xb4, 0).u2(pool.fieldRef(FUNCTION, "unary", "L" + type + ";"));
+                code.local(0x18, 2, scratch);                       // dload
+                code.op(0xb9, -1).u2(pool.interfaceMethodRef(type, "applyAsDouble", "(D)D")).u1(3).u1(0);
+            }
+            case 2 ->
+            {
+                String type = "java/util/function/DoubleBinaryOperator";
+                code.op(0xb4, 0).u2(pool.fieldRef(FUNCTION, "binary", "L" + type + ";"));
+                code.local(0x18, 2, scratch);                       // dload
+                code.local(0x18, 2, scratch + 2);                   // dload
+                code.op(0xb9, -3).u2(pool.interfaceMethodRef(type, "applyAsDouble", "(DD)D")).u1(5).u1(0);
+            }
+            default ->
+            {
+                if (function.ternary != null)
+                {
+                    String type = "calculator/DoubleTernaryOperator";
+                    code.op(0xb4, 0).u2(pool.fieldRef(FUNCTION, "ternary", "L" + type + ";"));
+                    for (int k = 0; k < 3; k++)
+                        code.local(0x18, 2, scratch + 2 * k);       // dload
+                    code.op(0xb9, -5).u2(pool.interfaceMethodRef(type, "applyAsDouble", "(DDD)D")).u1(7).u1(0);
+                }
+                else
+                {
+                    String type = "java/util/function/ToDoubleFunction";
+                    code.op(0xb4, 0).u2(pool.fieldRef(FUNCTION, "general", "L" + type + ";"));
+                    code.local(0x19, 1, arguments);                 // aload
+                    for (int k = 0; k < arity; k++)
+                    {
+                        code.op(0x59, 1);                           // dup
+                        code.pushInt(k, pool);
+                        code.local(0x18, 2, scratch + 2 * k);       // dload
+                        code.op(0x52, -4);                          // dastore
+                    }
+                    code.op(0xb9, 0).u2(pool.interfaceMethodRef(type, "applyAsDouble", "(Ljava/lang/Object;)D"))
+                            .u1(2).u1(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Записывает метод с атрибутом Code.
+     *
+     * @param out поток class-файла
+     * @param name индекс имени метода
+     * @param type индекс дескриптора метода
+     * @param codeName индекс строки "Code"
+     * @param code байт-код метода
+     * @param maxLocals количество локальных переменных
+     * @throws IOException при ошибке записи
+     */
+    private static void writeMethod(DataOutputStream out, int name, int type, int codeName, Code code, int maxLocals)
+            throws IOException
+    {
+        out.writeShort(0x0001);                 // public
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.size());
+        out.writeShort(code.maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        code.bytes.writeTo(out);
+        out.writeShort(0);                      // таблица исключений
+        out.writeShort(0);                      // атрибуты Code
+    }
+
+    /**
+     * Байт-код одного метода с подсчетом глубины стека операндов.
+     */
+    private static final class Code
+    {
+        /** Байты инструкций */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /** Текущая и максимальная глубина стека операндов в слотах */
+        private int stack, maxStack;
+
+        /**
+         * Добавляет код инструкции.
+         *
+         * @param opcode код инструкции
+         * @param stackChange изменение глубины стека операндов в слотах
+         * @return этот же объект
+         */
+        private Code op(int opcode, int stackChange)
+        {
+            bytes.write(opcode);
+            stack += stackChange;
+            maxStack = Math.max(maxStack, stack);
+            return this;
+        }
+
+        /**
+         * Добавляет двухбайтовый операнд инструкции.
+         *
+         * @param value значение операнда
+         * @return этот же объект
+         */
+        private Code u2(int value)
+        {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        /**
+         * Добавляет однобайтовый операнд инструкции.
+         *
+         * @param value значение операнда
+         * @return этот же объект
+         */
+        private Code u1(int value)
+        {
+            bytes.write(value);
+            return this;
+        }
+
+        /**
+         * Добавляет инструкцию работы с локальной переменной, при необходимости с префиксом {@code wide}.
+         *
+         * @param opcode код инструкции
+         * @param stackChange изменение глубины стека операндов в слотах
+         * @param index номер локальной переменной
+         */
+        private void local(int opcode, int stackChange, int index)
+        {
+            if (index <= 0xFF)
+            {
+                op(opcode, stackChange);
+                bytes.write(index);
+            }
+            else
+            {
+                bytes.write(0xc4);                                  // wide
+                op(opcode, stackChange).u2(index);
+            }
+        }
+
+        /**
+         * Добавляет загрузку целой константы.
+         *
+         * @param value значение константы
+         * @param pool пул констант класса
+         */
+        private void pushInt(int value, ConstantPool pool)
+        {
+            if (value <= 5)
+                op(0x03 + value, 1);                                // iconst_<n>
+            else if (value <= Byte.MAX_VALUE)
+            {
+                op(0x10, 1);                                        // bipush
+                bytes.write(value);
+            }
+            else if (value <= Short.MAX_VALUE)
+                op(0x11, 1).u2(value);                              // sipush
+            else
+                op(0x13, 1).u2(pool.intConstant(value));            // ldc_w
+        }
+
+        private int size()
+        {
+            return bytes.size();
+        }
+    }
+
+    /**
+     * Пул констант class-файла с исключением повторов.
+     */
+    private static final class ConstantPool
+    {
+        /** Записанные константы */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /** Индексы уже добавленных констант */
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        /** Индекс следующей константы */
+        private int next = 1;
+
+        private int utf8(String value)
+        {
+            Integer index = indexes.get("U" + value);
+            if (index != null)
+                return index;
+            bytes.write(1);
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            writeShort(data.length);
+            bytes.write(data, 0, data.length);
+            return register("U" + value, 1);
+        }
+
+        private int classRef(String name)
+        {
+            Integer index = indexes.get("C" + name);
+            if (index != null)
+                return index;
+            int nameIndex = utf8(name);
+            bytes.write(7);
+            writeShort(nameIndex);
+            return register("C" + name, 1);
+        }
+
+        private int methodRef(String owner, String name, String descriptor)
+        {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        private int fieldRef(String owner, String name, String descriptor)
+        {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        private int interfaceMethodRef(String owner, String name, String descriptor)
+        {
+            return memberRef(11, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor)
+        {
+            String key = "M" + tag + owner + "." + name + descriptor;
+            Integer index = indexes.get(key);
+            if (index != null)
+                return index;
+            int ownerIndex = classRef(owner), nameAndType = nameAndType(name, descriptor);
+            bytes.write(tag);
+            writeShort(ownerIndex);
+            writeShort(nameAndType);
+            return register(key, 1);
+        }
+
+        private int nameAndType(String name, String descriptor)
+        {
+            String key = "N" + name + ":" + descriptor;
+            Integer index = indexes.get(key);
+            if (index != null)
+                return index;
+            int nameIndex = utf8(name), typeIndex = utf8(descriptor);
+            bytes.write(12);
+            writeShort(nameIndex);
+            writeShort(typeIndex);
+            return register(key, 1);
+        }
+
+        private int intConstant(int value)
+        {
+            String key = "I" + value;
+            Integer index = indexes.get(key);
+            if (index != null)
+                return index;
+            bytes.write(3);
+            writeShort(value >>> 16);
+            writeShort(value);
+            return register(key, 1);
+        }
+
+        private int register(String key, int width)
+        {
+            int index = next;
+            indexes.put(key, index);
+            next += width;
+            return index;
+        }
+
+        private void writeShort(int value)
+        {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        private int size()
+        {
+            return next;
+        }
+
+        private void write(DataOutputStream out) throws IOException
+        {
+            out.writeShort(next);
+            bytes.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package calculator;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Потокобезопасный кэш значений переменных, полученных от другого источника ({@link VariableResolver}).
+ *
+ * <p>Значения, найденные в кэше, возвращаются без обращения к источнику; все остальные имена
+ * запрашиваются у него одним вызовом. Через заданное время жизни значение запрашивается заново,
+ * поэтому изменения во внешнем хранилище становятся видны не позднее чем через это время.
+ * Имена, которых источник не знает, не кэшируются.
+ *
+ * <p>Чтение из кэша не требует блокировок; асинхронный запрос ({@link #resolveAsync(Set)})
+ * не блокирует вызывающий поток и на время ожидания источника.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * CachingVariableResolver resolver = new CachingVariableResolver(remoteStore, 5, TimeUnit.SECONDS);
+ * Calculator calc = new Calculator("price * quantity", resolver);
+ * calc.getResAsync().thenAccept(System.out::println);
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class CachingVariableResolver implements VariableResolver
+{
+    /** Источник значений, отсутствующих в кэше */
+    private final VariableResolver delegate;
+
+    /** Время жизни значения в наносекундах (0 - без ограничения) */
+    private final long timeToLive;
+
+    /** Источник времени в наносекундах */
+    private final LongSupplier ticker;
+
+    /** Значения по именам */
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Счетчики найденных в кэше и запрошенных у источника значений */
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * Создает кэш без ограничения времени жизни значений.
+     *
+     * @param delegate источник значений
+     */
+    public CachingVariableResolver(VariableResolver delegate)
+    {
+        this(delegate, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Создает кэш с ограниченным временем жизни значений.
+     *
+     * @param delegate источник значений
+     * @param timeToLive время жизни значения (0 - без ограничения)
+     * @param unit единица измерения времени жизни
+     * @throws IllegalArgumentException если время жизни отрицательно
+     */
+    public CachingVariableResolver(VariableResolver delegate, long timeToLive, TimeUnit unit)
+    {
+        this(delegate, timeToLive, unit, System::nanoTime);
+    }
+
+    /**
+     * Создает кэш с заданным источником времени.
+     *
+     * @param delegate источник значений
+     * @param timeToLive время жизни значения (0 - без ограничения)
+     * @param unit единица измерения времени жизни
+     * @param ticker источник времени в наносекундах
+     * @throws IllegalArgumentException если время жизни отрицательно
+     */
+    CachingVariableResolver(VariableResolver delegate, long timeToLive, TimeUnit unit, LongSupplier ticker)
+    {
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("Time to live must not be negative: " + timeToLive);
+        this.delegate = delegate;
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.ticker = ticker;
+    }
+
+    @Override
+    public Map<String, Double> resolve(Set<String> names)
+    {
+        Map<String, Double> values = new LinkedHashMap<>();
+        Set<String> missing = lookup(names, values);
+        if (!missing.isEmpty())
+            store(missing, delegate.resolve(missing), values);
+        return values;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> resolveAsync(Set<String> names)
+    {
+        Map<String, Double> values = new LinkedHashMap<>();
+        Set<String> missing = lookup(names, values);
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(values);
+        return delegate.resolveAsync(missing).thenApply(resolved ->
+        {
+            store(missing, resolved, values);
+            return values;
+        });
+    }
+
+    /**
+     * Удаляет значение переменной, чтобы следующий запрос получил его от источника.
+     *
+     * @param name имя переменной
+     */
+    public void invalidate(String name)
+    {
+        entries.remove(name);
+    }
+
+    /**
+     * Удаляет все значения. Счетчики статистики сохраняются.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Возвращает количество значений в кэше (включая устаревшие, но еще не удаленные).
+     *
+     * @return количество значений
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Возвращает количество значений, найденных в кэше.
+     *
+     * @return количество попаданий
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Возвращает количество значений, запрошенных у источника.
+     *
+     * @return количество промахов
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Копирует актуальные значения из кэша и возвращает имена, которые нужно запросить у источника.
+     */
+    private Set<String> lookup(Set<String> names, Map<String, Double> values)
+    {
+        Set<String> missing = new LinkedHashSet<>();
+        long now = timeToLive == 0 ? 0 : ticker.getAsLong();
+        for (String name : names)
+        {
+            Entry entry = entries.get(name);
+            if (entry != null && (timeToLive == 0 || now - entry.created < timeToLive))
+            {
+                values.put(name, entry.value);
+                hits.increment();
+            }
+            else
+            {
+                missing.add(name);
+                misses.increment();
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Сохраняет полученные от источника значения запрошенных имен.
+     */
+    private void store(Set<String> missing, Map<String, Double> resolved, Map<String, Double> values)
+    {
+        long now = timeToLive == 0 ? 0 : ticker.getAsLong();
+        for (String name : missing)
+        {
+            Double value = resolved.get(name);
+            if (value == null)
+                continue;
+            entries.put(name, new Entry(value, now));
+            values.put(name, value);
+        }
+    }
+
+    /**
+     * Значение переменной и момент его получения.
+     */
+    private static final class Entry
+    {
+        /** Значение переменной */
+        final double value;
+
+        /** Момент получения значения в наносекундах */
+        final long created;
+
+        Entry(double value, long created)
+        {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
@@ -1,13 +1,9 @@
 package calculator;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Вычислитель математических выражений с поддержкой различных операций и функций.
@@ -18,6 +14,7 @@ import java.util.regex.Pattern;
  *   <li>Возведение в степень (^) и вычисление факториала (!)</li>
  *   <li>Тригонометрические функции: sin, cos, tg, ctg</li>
  *   <li>Экспоненциальные и логарифмические функции: exp, log</li>
+ *   <li>Функции нескольких аргументов: min, max, hypot, clamp и собственные функции ({@link FunctionRegistry})</li>
  *   <li>Выражения со скобками () и модулем ||</li>
  *   <li>Работу с переменными (буквенными обозначениями: a, b, x, y и др.)</li>
  * </ul>
@@ -38,6 +35,10 @@ import java.util.regex.Pattern;
  * calc3.setVariable("a", 5.0);
  * calc3.setVariable("b", 2.0);
  * double res3 = calc3.getRes(); // Результат: 9.0
+ *
+ * // Однократная компиляция и многократное вычисление
+ * CompiledExpression expr = Calculator.compile("a * 2 + b");
+ * double res4 = expr.evaluate(Map.of("a", 1.0, "b", 2.0)); // Результат: 4.0
  * }
  * </pre>
  *
@@ -46,548 +47,286 @@ import java.util.regex.Pattern;
  */
 public class Calculator
 {
-    /** Оригинальная строка выражения */
-    private String expressionString;
-
-    /** Список чисел в выражении */
-    private List<String> numbers;
-
-    /** Список операторов и функций в выражении */
-    private List<String> operators;
-
-    /** Карта значений переменных */
-    private Map<String, Double> variables;
+    /** Значения переменных по номерам слотов */
+    private final Bindings variables;
 
-    /** Приоритет операторов */
-    private static final Map<String, Integer> operatorsPrecedence = Map.of(
-            "!", 4,
-            "^", 3,
-            "*", 2,  "/", 2,
-            "+", 1, "-", 1
-    );
+    /** Общий кэш разобранных выражений */
+    private static final ExpressionCache CACHE = new ExpressionCache(4096, 32L << 20);
 
-    /** Поддерживаемые математические функции */
-    private static final Set<String> SUPPORTED_FUNCTIONS = Set.of(
-            "sin", "cos", "tg", "ctg", "exp", "log", "-sin", "-cos", "-tg", "-ctg", "-exp", "-log"
-    );
+    /** Скомпилированное выражение, используемое для вычислений */
+    private final CompiledExpression compiled;
 
-    /** Индекс конца обработанной строки */
-    private Integer endStringIndex;
+    /** Кэш результатов вычисления или null, если результаты не кэшируются */
+    private ResultCache resultCache;
 
-    /** Счетчик переменных в выражении */
-    private Integer countVariables;
-
-    /** Результат вычисления выражения */
-    private Double res;
+    /** Источник значений переменных, не заданных перед вычислением */
+    private VariableResolver resolver;
 
     /**
-     * Анализирует математическое выражение и разделяет его на составляющие: числа, операторы и функции.
+     * Определяет перечень переменных в выражении, для которых не заданы значения.
      *
-     * @param expression математическое выражение для анализа
-     * @param endingSymbol символ, обозначающий конец обработки (пробел, закрывающая скобка ')' или символ модуля '|')
-     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки или недопустимые символы
+     * @return набор имен переменных, требующих определения значений
      */
-    private void parseExpression(String expression, char endingSymbol)
+    private Set<String> getUnresolvedVariables()
     {
-        StringBuilder num = new StringBuilder();
-        boolean waitFunc = false;
-        int unaryCount = 0;
-        String previous = " ", func = "";
-
-        for (int i = 0; i < expression.length(); i++)
-        {
-            char c = expression.charAt(i);
-
-            if (!waitFunc)
-            {
-                // Обработка числа
-                if (Character.isDigit(c) || c == '.')
-                {
-                    if (c == '.' && num.toString().contains("."))
-                        throw new IllegalArgumentException("Multiple dots in a number");
-                    num.append(c);
-                }
-                else // Встречено не число
-                {
-
-                    // Добавление числа
-                    if (num.length() > 0 && !num.toString().equals("-"))
-                    {
-                        numbers.add(num.toString());
-                        num.setLength(0);
-                    }
-
-                    // Обработка унарного минуса
-                    if (c == '-' && (numbers.isEmpty() || operators.size() >= numbers.size()))
-                        num.append('-');
-
-                        // Обработка операций
-                    else if (c == '*' || c == '/' || c == '-' || c == '+' || c == '^' || c == '!')
-                    {
-                        if (numbers.isEmpty())
-                            throw new IllegalArgumentException("An expression cannot start with an operator " + c);
-                        if (operatorsPrecedence.getOrDefault(previous, 0) != 0 && !previous.equals("!"))
-                            throw new IllegalArgumentException("Invalid operator sequence: " + previous + c);
+        Set<String> unresolved = new LinkedHashSet<>();
+        for (int slot = 0; slot < compiled.getVariableCount(); slot++)
+            if (!variables.isSet(slot))
+                unresolved.add(compiled.variableName(slot));
 
-                        if (c == '!')
-                            ++unaryCount;
-                        operators.add(String.valueOf(c));
-                    }
-                    // Обработка выражения внутри скобок или модуля
-                    else if (c == '(' || (c == '|' && endingSymbol != '|'))
-                    {
-                        char endSymb = c;
-                        if (c == '(')
-                            endSymb = ')';
-                        String remaining = expression.substring(i + 1);
-                        Calculator obj = new Calculator(remaining, endSymb);
-
-                        // Внутри скобочек или модуля не было переменных
-                        if (obj.countVariables == 0)
-                        {
-                            double result = obj.getRes();
-                            if (c == '|')
-                                result = Math.abs(result);
-
-                            if (num.toString().equals("-")) {
-                                result = -result;
-                                num.setLength(0);
-                            }
-
-                            numbers.add(String.valueOf(result));
-                        }
-                        // Внутри скобочек или внутри модуля были переменные
-                        else
-                        {
-                            if (num.toString().equals("-"))
-                            {
-                                numbers.add("-" + String.valueOf(c));
-                                operators.add("-" + String.valueOf(c));
-                                num.setLength(0);
-                            }
-                            else
-                            {
-                                numbers.add(String.valueOf(c));
-                                operators.add(String.valueOf(c));
-                            }
-                            numbers.addAll(obj.numbers);
-                            operators.addAll(obj.operators);
-                            numbers.add(String.valueOf(endSymb));
-                            operators.add(String.valueOf(endSymb));
-                            countVariables += obj.countVariables;
-                        }
-                        i = i + obj.endStringIndex + 1;
-                    }
-                    else if (c == endingSymbol)
-                    {
-                        // Обработка вложенного модуля
-                        if (endingSymbol == '|' && numbers.isEmpty())
-                        {
-                            String remaining = expression.substring(i + 1);
-                            Calculator obj = new Calculator(remaining, c);
-
-                            if (obj.countVariables == 0)
-                            {
-                                double result = Math.abs(obj.getRes());
-                                numbers.add(String.valueOf(result));
-                            }
-                            else
-                            {
-                                if (num.toString().equals("-"))
-                                {
-                                    numbers.add("-|");
-                                    operators.add("-|");
-                                    num.setLength(0);
-                                }
-                                else
-                                {
-                                    numbers.add("|");
-                                    operators.add("|");
-                                }
-                                numbers.addAll(obj.numbers);
-                                operators.addAll(obj.operators);
-                                numbers.add("|");
-                                operators.add("|");
-                                countVariables += obj.countVariables;
-                            }
-                            i = i + obj.endStringIndex + 1;
-                        }
-                        else
-                        {
-                            endStringIndex = i;
-                            return;
-                        }
-                    }
-                    // Функция или переменная
-                    else if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z'))
-                    {
-                        waitFunc = true;
-                        func = String.valueOf(c);
-                    }
-                    else
-                        throw new IllegalArgumentException("Unknown symbol: " + c);
-                }
-
-                if (!waitFunc)
-                    previous = String.valueOf(c);
-            }
-            // Собираем название функции или переменной
-            else
-            {
-                if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z'))
-                    func = func + String.valueOf(c);
-                else
-                {
-                    waitFunc = false;
-                    if (SUPPORTED_FUNCTIONS.contains(func))
-                    {
-                        if ((!previous.equals("+")) && (!previous.equals("-")) && (!previous.equals("*")) && (!previous.equals("/")) && (!previous.equals("^")) && (!previous.equals(" ")))
-                            throw new IllegalArgumentException("Invalid operator sequence: " + previous + func);
-                        if  (num.toString().equals("-"))
-                        {
-                            num.setLength(0);
-                            func = "-" + func;
-                        }
-                        operators.add(func);
-                        ++unaryCount;
-                    }
-                    // Переменная
-                    else
-                    {
-                        if (previous.equals("!") || previous.equals("0") || previous.equals("1") || previous.equals("2") || previous.equals("3") || previous.equals("4") || previous.equals("5") || previous.equals("6") || previous.equals("7") || previous.equals("8") || previous.equals("9"))
-                            throw new IllegalArgumentException("Incorrect use of a variable");
-                        if  (num.toString().equals("-"))
-                        {
-                            num.setLength(0);
-                            func = "-" + func;
-                        }
-                        numbers.add(func);
-                        ++countVariables;
-                    }
-                    --i;
-                    previous = func;
-                }
-            }
-        }
-
-        if (num.length() > 0)
-            numbers.add(num.toString());
-        if (waitFunc && !SUPPORTED_FUNCTIONS.contains(func))
-        {
-            if (previous.equals("!") || previous.equals("0") || previous.equals("1") || previous.equals("2") || previous.equals("3") || previous.equals("4") || previous.equals("5") || previous.equals("6") || previous.equals("7") || previous.equals("8") || previous.equals("9"))
-                throw new IllegalArgumentException("Incorrect use of a variable");
-            if  (num.toString().equals("-"))
-            {
-                num.setLength(0);
-                func = "-" + func;
-            }
-            numbers.add(func);
-            ++countVariables;
-        }
-
-        if (endingSymbol == ')')
-            throw new IllegalArgumentException("Met '(', for which there is no ')'");
-        if (endingSymbol == '|')
-            throw new IllegalArgumentException("Met '|', for which there is no '|'");
-        if (numbers.size() == operators.size() - unaryCount)
-            throw new IllegalArgumentException("Incorrect use of operators was encountered in the expression");
+        return unresolved;
     }
 
     /**
-     * Выполняет вычисление математического выражения на основе подготовленных данных.
-     * Операции выполняются с учетом их приоритета и вложенности.
-     * Для переменных, значения которых не заданы, запрашивает ввод у пользователя.
+     * Возвращает значения переменных по номерам слотов, дополненные значениями, полученными от источника.
+     * Значения вычислителя не изменяются: источник запрашивается заново при каждом вычислении.
      *
-     * @throws IllegalArgumentException если выражение состоит только из операторов
-     *         или содержит неопределенные переменные
-     * @throws ArithmeticException при попытке деления на ноль
+     * @param values копия заданных значений по номерам слотов
+     * @param unresolvedVariables набор переменных без значений
+     * @param resolved полученные значения по именам
+     * @return массив values с заполненными слотами переменных без значений
+     * @throws IllegalArgumentException если значение какой-либо переменной не получено
      */
-    private void calculated()
+    private double[] withResolved(double[] values, Set<String> unresolvedVariables, Map<String, Double> resolved)
     {
-        if (numbers.isEmpty())
-            throw new IllegalArgumentException("The expression contains only operators");
-        Set<String> unresolvedVariables = getUnresolvedVariables();
-        if (!unresolvedVariables.isEmpty())
-            requestVariablesFromUser(unresolvedVariables);
-
-        List<Double> numbersCopy = new ArrayList<>();
-        List<String> operatorsCopy = new ArrayList<>(operators);
-
-
-        for (String numberStr : numbers)
-        {
-            try
-            {
-                numbersCopy.add(Double.parseDouble(numberStr));
-            }
-            catch (NumberFormatException e)
-            {
-                if (variables.containsKey(numberStr))
-                    numbersCopy.add(variables.get(numberStr));
-                else if (numberStr.equals("(") || numberStr.equals("-(") || numberStr.equals("|") || numberStr.equals("-|"))
-                {
-                    String exprStr = expressionToString();
-                    Calculator expr = new Calculator(exprStr);
-                    res = expr.getRes();
-                    return;
-                }
-                else
-                    throw new IllegalArgumentException("Unknown variable: " + numberStr);
-            }
-        }
-
-
-        int i = 0;
-        while (operatorsCopy.size() != 0)
+        for (String varName : unresolvedVariables)
         {
-            String currentOp = operatorsCopy.get(i), nextOp = (i + 1 < operatorsCopy.size()) ? operatorsCopy.get(i + 1) : null;
-
-            if (nextOp != null && hasHigherPrecedence(nextOp, currentOp))
-                ++i;
-            else
-            {
-                String operator = operatorsCopy.get(i);
-                double left = numbersCopy.get(i), right = 0;
-
-                if (!operator.equals("!") && !SUPPORTED_FUNCTIONS.contains(operator))
-                    right = numbersCopy.get(i + 1);
-
-                double result = switch (operator)
-                {
-                    case "+" -> left + right;
-                    case "-" -> left - right;
-                    case "*" -> left * right;
-                    case "/" ->
-                    {
-                        if (right == 0) throw new ArithmeticException("Division by zero");
-                        yield left / right;
-                    }
-                    case "^" -> Math.pow(left, right);
-                    case "!" -> factorial(left);
-                    case "sin" -> Math.sin(left);
-                    case "cos" -> Math.cos(left);
-                    case "tg" -> Math.tan(left);
-                    case "ctg" -> 1.0/Math.tan(left);
-                    case "exp" -> Math.exp(left);
-                    case "log" -> Math.log(left);
-                    case "-sin" -> -1*Math.sin(left);
-                    case "-cos" -> -1*Math.cos(left);
-                    case "-tg" -> -1*Math.tan(left);
-                    case "-ctg" -> -1.0/Math.tan(left);
-                    case "-exp" -> -1*Math.exp(left);
-                    case "-log" -> -1*Math.log(left);
-                    default -> throw new IllegalArgumentException("Unknown operator: " + operator);
-                };
-
-                numbersCopy.set(i, result);
-                if (!operator.equals("!") && !SUPPORTED_FUNCTIONS.contains(operator))
-                    numbersCopy.remove(i + 1);
-                operatorsCopy.remove(i);
-                if (i > 0)
-                    --i;
-            }
+            Double value = resolved.get(varName);
+            if (value == null)
+                throw new IllegalArgumentException("Unknown variable: " + varName);
+            values[compiled.slotOf(varName)] = value;
         }
-        res = numbersCopy.get(0);
+        return values;
     }
 
     /**
-     * Формирует строковое представление выражения с подстановкой значений переменных.
-     * Заменяет все переменные на их числовые значения, сохраняя при этом математические функции без изменений.
+     * Вычисляет выражение при заданных значениях всех переменных.
      *
-     * @return выражение в виде строки с вычисленными значениями переменных
+     * @param cache кэш результатов или null
+     * @param values значения переменных по номерам слотов
+     * @return результат вычисления
      */
-    private String expressionToString()
+    private double evaluate(ResultCache cache, double[] values)
     {
-        String result = expressionString;
-        for (Map.Entry<String, Double> entry : variables.entrySet()) {
-            String key = entry.getKey();
-            String value = String.valueOf(entry.getValue());
-            String regex = "(?<!sin|cos|tg|ctg|log|exp)(?<![a-zA-Z_])" + Pattern.quote(key) + "(?!\\w)";
-            result = result.replaceAll(regex, value);
-        }
-        return result;
+        if (cache != null)
+            return cache.evaluate(compiled, values);
+        return compiled.evaluate(values);
     }
 
     /**
-     * Определяет перечень переменных в выражении, для которых не заданы значения.
-     * Идентифицирует переменные, которые не являются числами и отсутствуют в списке заданных переменных.
-     * Игнорирует служебные символы (скобки, знак модуля и другие операторы).
+     * Основной конструктор для создания вычислителя выражений.
      *
-     * @return набор имен переменных, требующих определения значений
+     * @param expression математическое выражение для вычисления
      */
-    private Set<String> getUnresolvedVariables()
+    public Calculator(String expression)
     {
-        Set<String> unresolved = new HashSet<>();
-        for (String item : numbers)
-            if (!isNumeric(item) && !variables.containsKey(item) && !item.equals("(") && !item.equals("-(") && !item.equals(")") && !item.equals("-|") && !item.equals("|"))
-                unresolved.add(item);
-
-        return unresolved;
+        this(expression, VariableResolver.failFast());
     }
 
     /**
-     * Проверяет, может ли строка быть преобразована в число типа Double.
+     * Создает вычислитель, получающий значения незаданных переменных от источника.
+     * Например, {@link VariableResolver#console()} запрашивает их у пользователя.
      *
-     * @param str строка для проверки
-     * @return true если строка может быть преобразована в число, false в противном случае
+     * @param expression математическое выражение для вычисления
+     * @param resolver источник значений переменных
      */
-    private boolean isNumeric(String str)
+    public Calculator(String expression, VariableResolver resolver)
     {
-        try
-        {
-            Double.parseDouble(str);
-            return true;
-        }
-        catch (NumberFormatException e)
-        {
-            return false;
-        }
+        this.compiled = CACHE.get(expression);
+        this.variables = compiled.newBindings();
+        this.resolver = resolver;
     }
 
     /**
-     * Запрашивает ввод значений для переменных через консоль в интерактивном режиме.
-     * Для переменных с отрицательным знаком автоматически применяет отрицание к введенному значению.
-     * Циклически запрашивает данные до получения корректного числового значения для каждой переменной.
+     * Разбирает выражение один раз и возвращает его скомпилированное представление.
+     * Полученный объект неизменяем и может многократно вычисляться из разных потоков
+     * без повторного разбора строки. Часто используемые выражения берутся из общего кэша
+     * (см. {@link #getCache()}).
      *
-     * @param unresolvedVariables набор переменных, требующих определения числовых значений
+     * @param expression математическое выражение для компиляции
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки
      */
-    private void requestVariablesFromUser(Set<String> unresolvedVariables)
+    public static CompiledExpression compile(String expression)
     {
-        Scanner scanner = new Scanner(System.in);
-
-        for (String varName : unresolvedVariables) {
-            String displayName = varName.startsWith("-") ? varName.substring(1) : varName;
+        return CACHE.get(expression);
+    }
 
-            System.out.print("Enter value for variable '" + displayName + "': ");
-            while (true)
-            {
-                try
-                {
-                    String input = scanner.nextLine().trim();
-                    if (input.isEmpty())
-                    {
-                        System.out.print("Value cannot be empty. Enter value for '" + displayName + "': ");
-                        continue;
-                    }
-                    double value = Double.parseDouble(input);
-                    if (varName.charAt(0) == '-')
-                        value = -value;
+    /**
+     * Разбирает и оптимизирует выражение, в котором доступны функции заданного набора.
+     * Такие выражения не попадают в общий кэш; для повторного использования можно создать
+     * собственный кэш ({@link ExpressionCache#ExpressionCache(int, long, FunctionRegistry)}).
+     *
+     * @param expression математическое выражение для компиляции
+     * @param functions набор функций
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки
+     */
+    public static CompiledExpression compile(String expression, FunctionRegistry functions)
+    {
+        return ExpressionOptimizer.optimize(ExpressionParser.parse(expression, functions)).getExpression();
+    }
 
-                    variables.put(varName, value);
-                    break;
-                }
-                catch (NumberFormatException e)
-                {
-                    System.out.print("Invalid number. Please enter a valid value for '" + displayName + "': ");
-                }
-            }
-        }
+    /**
+     * Разбирает выражение для вычисления с двойной-двойной точностью
+     * ({@link CompiledExpression#evaluateExtended(double...)}): константы сохраняют около 32 десятичных знаков,
+     * а части выражения без переменных не сворачиваются заранее в обычной точности.
+     * Такие выражения не оптимизируются и не попадают в общий кэш.
+     *
+     * @param expression математическое выражение для компиляции
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки
+     */
+    public static CompiledExpression compileExtended(String expression)
+    {
+        return compileExtended(expression, FunctionRegistry.standard());
     }
 
     /**
-     * Сравнивает приоритет выполнения двух операторов.
-     * Математические функции обладают наивысшим приоритетом вычисления.
-     * Для остальных операторов сравнение осуществляется на основе таблицы приоритетов.
+     * Разбирает выражение с заданным набором функций для вычисления с двойной-двойной точностью.
      *
-     * @param op1 оператор, приоритет которого проверяется
-     * @param op2 оператор, приоритет которого сравнивается
-     * @return true если op1 имеет более высокий приоритет выполнения, чем op2
+     * @param expression математическое выражение для компиляции
+     * @param functions набор функций
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки
      */
-    private boolean hasHigherPrecedence(String op1, String op2)
+    public static CompiledExpression compileExtended(String expression, FunctionRegistry functions)
     {
-        if (SUPPORTED_FUNCTIONS.contains(op1))
-            return true;
-        if (SUPPORTED_FUNCTIONS.contains(op2))
-            return false;
-        if (operatorsPrecedence.get(op1) == 3 && operatorsPrecedence.get(op2) != 4)
-            return true;
-        return operatorsPrecedence.get(op1) > operatorsPrecedence.get(op2);
+        return ExpressionParser.parse(expression, functions, true);
     }
 
     /**
-     * Вычисляет факториал переданного числа.
-     * Факториал вычисляется только для неотрицательных целых чисел.
+     * Возвращает общий кэш разобранных выражений, используемый конструктором и методом {@link #compile(String)}.
      *
-     * @param n число для вычисления факториала
-     * @return результат вычисления факториала
-     * @throws IllegalArgumentException если число отрицательное или не является целым
+     * @return кэш выражений (например, для чтения статистики попаданий)
      */
-    private double factorial(double n)
+    public static ExpressionCache getCache()
     {
-        if (n < 0)
-            throw new IllegalArgumentException("Factorial is not defined for negative numbers");
-        if (n % 1 != 0)
-            throw new IllegalArgumentException("Factorial is defined only for integers");
+        return CACHE;
+    }
 
-        int integerN = (int) n;
-        if (integerN == 0 || integerN == 1)
-            return 1;
+    /**
+     * Возвращает результат вычисления выражения.
+     * Если в выражении есть переменные без значений, получает их все одним запросом
+     * у источника значений (см. {@link #setVariableResolver(VariableResolver)});
+     * по умолчанию такие переменные считаются ошибкой. Полученные значения используются
+     * только в этом вычислении и не сохраняются в вычислителе, поэтому следующее вычисление
+     * снова обращается к источнику и видит его новые значения.
+     *
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано и не получено
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double getRes()
+    {
+        Set<String> unresolvedVariables = getUnresolvedVariables();
+        if (unresolvedVariables.isEmpty())
+            return evaluate(resultCache, compiled.slotValues(variables));
+        double[] values = variables.values().clone();
+        return evaluate(resultCache, withResolved(values, unresolvedVariables, resolver.resolve(unresolvedVariables)));
+    }
 
-        double result = 1;
-        for (int i = 2; i <= integerN; i++)
-            result *= i;
+    /**
+     * Асинхронно возвращает результат вычисления выражения. Значения переменных без значений
+     * запрашиваются через {@link VariableResolver#resolveAsync(Set)}, поэтому вызывающий поток
+     * не ждет внешнее хранилище; выражение вычисляется в потоке, завершившем запрос.
+     * Заданные значения переменных копируются при вызове, и завершение запроса не изменяет вычислитель.
+     * Ошибки получения значений и вычисления завершают результат исключением.
+     *
+     * @return будущий результат вычисления
+     */
+    public CompletableFuture<Double> getResAsync()
+    {
+        Set<String> unresolvedVariables = getUnresolvedVariables();
+        ResultCache cache = resultCache;
+        if (unresolvedVariables.isEmpty())
+        {
+            try
+            {
+                return CompletableFuture.completedFuture(evaluate(cache, compiled.slotValues(variables)));
+            }
+            catch (RuntimeException e)
+            {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        double[] values = variables.values().clone();
+        return resolver.resolveAsync(unresolvedVariables)
+                .thenApply(resolved -> evaluate(cache, withResolved(values, unresolvedVariables, resolved)));
+    }
 
-        return result;
+    /**
+     * Подставляет значения части переменных и возвращает упрощенное выражение от остальных переменных
+     * (см. {@link CompiledExpression#specialize(Map)}). Значения переменных этого вычислителя не используются.
+     *
+     * @param fixed значения подставляемых переменных
+     * @return остаточное выражение
+     */
+    public CompiledExpression specialize(Map<String, Double> fixed)
+    {
+        return compiled.specialize(fixed);
     }
 
     /**
-     * Служебный конструктор для рекурсивной обработки составных выражений.
-     * Применяется для вычисления вложенных выражений внутри скобок и модулей.
+     * Создает инкрементальный вычислитель этого выражения с текущими значениями переменных.
+     * В отличие от {@link #getRes()}, повторное вычисление после изменения одной переменной
+     * пересчитывает только зависящие от нее подвыражения.
+     * Значения, не заданные в вычислителе, у пользователя не запрашиваются.
      *
-     * @param expression математическое выражение для обработки
-     * @param endingSymbol символ, обозначающий границу обработки выражения
+     * @return новый инкрементальный вычислитель
      */
-    private Calculator(String expression, char endingSymbol)
+    public IncrementalExpression incremental()
     {
-        this.numbers = new ArrayList<>();
-        this.operators = new ArrayList<>();
-        this.variables = new HashMap<>();
-        this.countVariables = 0;
-        this.expressionString = expression;
-        String cleanExpression = expression.replaceAll("\\s+", "");
-        endStringIndex = cleanExpression.length();
-        this.parseExpression(cleanExpression, endingSymbol);
+        IncrementalExpression incremental = compiled.newIncremental();
+        for (int slot = 0; slot < compiled.getVariableCount(); slot++)
+            if (variables.isSet(slot))
+                incremental.set(slot, variables.get(slot));
+        return incremental;
     }
 
     /**
-     * Основной конструктор для создания вычислителя выражений.
+     * Подключает кэш результатов: повторное вычисление с теми же значениями переменных
+     * возвращает сохраненный результат. Один кэш можно разделять между несколькими вычислителями.
      *
-     * @param expression математическое выражение для вычисления
+     * @param resultCache кэш результатов или null, чтобы отключить кэширование
      */
-    public Calculator(String expression)
+    public void setResultCache(ResultCache resultCache)
     {
-        this(expression, ' ');
+        this.resultCache = resultCache;
     }
 
     /**
-     * Возвращает результат вычисления выражения.
-     * Если в выражении есть переменные без значений, запрашивает их у пользователя.
+     * Задает источник значений переменных, которым не заданы значения перед вычислением.
      *
-     * @return результат вычисления
+     * @param resolver источник значений (например, {@link VariableResolver#console()})
      */
-    public double getRes()
+    public void setVariableResolver(VariableResolver resolver)
     {
-        calculated();
-        return res;
+        this.resolver = resolver;
     }
 
     /**
-     * Устанавливает значение для переменной и автоматически создает соответствующую отрицательную переменную.
+     * Устанавливает значение для переменной.
+     * Отрицательные вхождения переменной (например, {@code -k}) используют это же значение.
+     * Переменные, которых нет в выражении, игнорируются.
      * @param k имя переменной (должно быть без префикса минуса)
      * @param v значение переменной
      */
     public void setVariable(String k, Double v)
     {
-        this.variables.put(k, v);
-        this.variables.put("-" + k, -1 * v);
+        int slot = compiled.slotOf(k);
+        if (slot >= 0)
+            this.variables.set(slot, v);
     }
 
     /**
-     * Заменяет всю текущую карту переменных на предоставленную.
+     * Заменяет все текущие значения переменных значениями из предоставленной карты.
      * @param variables новая карта переменных, где ключ - имя переменной, значение - числовое значение
      */
     public void setVariables(Map<String, Double> variables)
     {
-        this.variables = variables;
+        this.variables.clear();
+        for (Map.Entry<String, Double> entry : variables.entrySet())
+            setVariable(entry.getKey(), entry.getValue());
     }
 }
\ No newline at end of file
@@ -0,0 +1,429 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Пакетное вычисление выражения над столбцами значений переменных.
+ *
+ * <p>Программа в обратной польской записи выполняется не построчно, а по столбцам: каждая команда
+ * применяется сразу к блоку строк, и вместо стека чисел используется стек блоков. Интерпретация
+ * команды (выбор оператора) происходит один раз на блок, а сама операция - простой цикл
+ * по массиву, который JIT-компилятор разворачивает в векторные инструкции процессора.
+ *
+ * <p>Блоки небольшие, чтобы стек блоков помещался в кэш процессора независимо от числа строк.
+ * Для каждой строки выполняются те же операции в том же порядке, что и при вычислении
+ * {@link CompiledExpression#evaluate(double...)}, поэтому результаты совпадают побитово.
+ *
+ * <p>Параллельный режим делит строки на диапазоны и вычисляет их задачами {@link ForkJoinPool}.
+ * Выражение неизменяемо, поэтому все задачи разделяют один его экземпляр, а каждая задача
+ * пишет только в свой диапазон выходного массива.
+ *
+ * <p>Агрегирующий режим ({@code reduce}) передает результаты каждого блока в {@link Aggregate},
+ * не сохраняя их; параллельные задачи заполняют собственные накопители, которые затем объединяются.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class ColumnEvaluator
+{
+    /** Количество строк в блоке */
+    static final int BLOCK_SIZE = 256;
+
+    /** Минимальное количество строк в одной параллельной задаче */
+    static final int MIN_TASK_SIZE = 4 * BLOCK_SIZE;
+
+    /** Количество задач на один поток пула (запас для балансировки неравномерной нагрузки) */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private ColumnEvaluator()
+    {
+    }
+
+    /**
+     * Вычисляет выражение для диапазона строк.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns значения переменных по номерам слотов, по одному массиву на переменную
+     * @param from индекс первой строки
+     * @param to индекс, следующий за последней строкой
+     * @param out массив для результатов, индекс - номер строки
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    static void evaluate(CompiledExpression expression, double[][] columns, int from, int to, double[] out)
+    {
+        double[][] stack = new double[Math.max(expression.maxStack, 1)][BLOCK_SIZE];
+        double[][] temporaries = new double[expression.shape.temporaryCount][BLOCK_SIZE];
+        double[][] arguments = MathFunction.argumentBuffers(expression.functions);
+        for (int start = from; start < to; start += BLOCK_SIZE)
+        {
+            int size = Math.min(BLOCK_SIZE, to - start);
+            evaluateBlock(expression, columns, start, size, stack, temporaries, arguments);
+            System.arraycopy(stack[0], 0, out, start, size);
+        }
+    }
+
+    /**
+     * Вычисляет выражение для диапазона строк и передает результаты в накопитель.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns значения переменных по номерам слотов, по одному массиву на переменную
+     * @param from индекс первой строки
+     * @param to индекс, следующий за последней строкой
+     * @param aggregate накопитель результатов
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    static void reduce(CompiledExpression expression, double[][] columns, int from, int to, Aggregate aggregate)
+    {
+        double[][] stack = new double[Math.max(expression.maxStack, 1)][BLOCK_SIZE];
+        double[][] temporaries = new double[expression.shape.temporaryCount][BLOCK_SIZE];
+        double[][] arguments = MathFunction.argumentBuffers(expression.functions);
+        for (int start = from; start < to; start += BLOCK_SIZE)
+        {
+            int size = Math.min(BLOCK_SIZE, to - start);
+            evaluateBlock(expression, columns, start, size, stack, temporaries, arguments);
+            aggregate.acceptBlock(stack[0], size, start);
+        }
+    }
+
+    /**
+     * Вычисляет выражение для строк {@code [0, rows)} параллельно в пуле потоков.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns значения переменных по номерам слотов, по одному массиву на переменную
+     * @param out массив для результатов, индекс - номер строки
+     * @param pool пул потоков
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    static void evaluateParallel(CompiledExpression expression, double[][] columns, double[] out, ForkJoinPool pool)
+    {
+        int rows = out.length;
+        if (rows <= MIN_TASK_SIZE || pool.getParallelism() == 1)
+        {
+            evaluate(expression, columns, 0, rows, out);
+            return;
+        }
+        pool.invoke(new RangeTask(expression, columns, out, 0, rows, taskSize(rows, pool.getParallelism())));
+    }
+
+    /**
+     * Вычисляет выражение для строк {@code [0, rows)} параллельно в пуле потоков и передает результаты в накопитель.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns значения переменных по номерам слотов, по одному массиву на переменную
+     * @param rows количество строк
+     * @param aggregate накопитель результатов
+     * @param pool пул потоков
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    static void reduceParallel(CompiledExpression expression, double[][] columns, int rows, Aggregate aggregate,
+                               ForkJoinPool pool)
+    {
+        if (rows <= MIN_TASK_SIZE || pool.getParallelism() == 1)
+        {
+            reduce(expression, columns, 0, rows, aggregate);
+            return;
+        }
+        aggregate.merge(pool.invoke(new ReduceTask(expression, columns, aggregate, 0, rows,
+                taskSize(rows, pool.getParallelism()))));
+    }
+
+    /**
+     * Выбирает размер параллельной задачи: несколько задач на поток пула, но не меньше {@link #MIN_TASK_SIZE}.
+     * Размер кратен размеру блока, поэтому границы задач совпадают с границами блоков,
+     * и соседние задачи пишут в выходной массив целыми блоками, а не вперемешку.
+     *
+     * @param rows количество строк
+     * @param parallelism количество потоков пула
+     * @return количество строк в задаче
+     */
+    static int taskSize(int rows, int parallelism)
+    {
+        long size = Math.max(MIN_TASK_SIZE, (long) rows / ((long) parallelism * TASKS_PER_THREAD));
+        return (int) Math.min((size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE, Integer.MAX_VALUE - BLOCK_SIZE);
+    }
+
+    /**
+     * Возвращает середину диапазона строк, выровненную по границе блока.
+     *
+     * @param from начало диапазона
+     * @param to конец диапазона
+     * @return индекс середины
+     */
+    private static int middle(int from, int to)
+    {
+        return from + (to - from) / 2 / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    /**
+     * Проверяет, что для каждой переменной есть столбец значений не короче числа строк.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param rows количество строк
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или какой-либо столбец короче числа строк
+     */
+    static void checkColumns(CompiledExpression expression, double[][] columns, int rows)
+    {
+        if (columns.length < expression.getVariableCount())
+            throw new IllegalArgumentException("Unknown variable: " + expression.variableName(columns.length));
+        for (int slot = 0; slot < expression.getVariableCount(); slot++)
+            if (columns[slot].length < rows)
+                throw new IllegalArgumentException("Column " + expression.variableName(slot) + " has "
+                        + columns[slot].length + " values, expected " + rows);
+    }
+
+    /**
+     * Выполняет программу для одного блока строк.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param start индекс первой строки блока
+     * @param size количество строк в блоке
+     * @param stack стек блоков значений
+     * @param temporaries блоки значений общих подвыражений
+     * @param arguments массивы аргументов для функций, получающих массив аргументов
+     *                  ({@link MathFunction#argumentBuffers(MathFunction[])})
+     */
+    private static void evaluateBlock(CompiledExpression expression, double[][] columns, int start, int size,
+                                      double[][] stack, double[][] temporaries, double[][] arguments)
+    {
+        int[] kinds = expression.kinds;
+        int top = 0;
+
+        for (int i = 0; i < kinds.length; i++)
+        {
+            switch (kinds[i])
+            {
+                case CompiledExpression.LITERAL -> Arrays.fill(stack[top++], 0, size, expression.values[i]);
+                case CompiledExpression.VARIABLE ->
+                        System.arraycopy(columns[expression.slots[i]], start, stack[top++], 0, size);
+                case CompiledExpression.NEGATED_VARIABLE ->
+                {
+                    double[] column = columns[expression.slots[i]], target = stack[top++];
+                    for (int row = 0; row < size; row++)
+                        target[row] = -1 * column[start + row];
+                }
+                case CompiledExpression.UNARY_OPERATOR -> applyUnary(expression.slots[i], stack[top - 1], size);
+                case CompiledExpression.LOAD_TEMPORARY ->
+                        System.arraycopy(temporaries[expression.slots[i]], 0, stack[top++], 0, size);
+                case CompiledExpression.STORE_TEMPORARY ->
+                        System.arraycopy(stack[top - 1], 0, temporaries[expression.slots[i]], 0, size);
+                case CompiledExpression.CALL -> top = call(expression.functions[i], stack, top, size, arguments);
+                default ->
+                {
+                    --top;
+                    applyBinary(expression.slots[i], stack[top - 1], stack[top], size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Применяет унарный оператор или встроенную функцию к блоку значений.
+     *
+     * @param operator код операции
+     * @param x блок значений, в который записывается результат
+     * @param size количество строк в блоке
+     */
+    private static void applyUnary(int operator, double[] x, int size)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.NEGATE -> { for (int i = 0; i < size; i++) x[i] = -x[i]; }
+            case CompiledExpression.ABS -> { for (int i = 0; i < size; i++) x[i] = Math.abs(x[i]); }
+            case CompiledExpression.FACTORIAL -> { for (int i = 0; i < size; i++) x[i] = CompiledExpression.factorial(x[i]); }
+            case CompiledExpression.SIN -> { for (int i = 0; i < size; i++) x[i] = Math.sin(x[i]); }
+            case CompiledExpression.COS -> { for (int i = 0; i < size; i++) x[i] = Math.cos(x[i]); }
+            case CompiledExpression.TAN -> { for (int i = 0; i < size; i++) x[i] = Math.tan(x[i]); }
+            case CompiledExpression.COT -> { for (int i = 0; i < size; i++) x[i] = CompiledExpression.ctg(x[i]); }
+            case CompiledExpression.EXP -> { for (int i = 0; i < size; i++) x[i] = Math.exp(x[i]); }
+            case CompiledExpression.LOG -> { for (int i = 0; i < size; i++) x[i] = Math.log(x[i]); }
+            case CompiledExpression.POW_HALF -> { for (int i = 0; i < size; i++) x[i] = CompiledExpression.powHalf(x[i]); }
+            case CompiledExpression.GAMMA_FACTORIAL -> { for (int i = 0; i < size; i++) x[i] = CompiledExpression.gammaFactorial(x[i]); }
+            case CompiledExpression.FAST_COS -> { for (int i = 0; i < size; i++) x[i] = FastMath.cos(x[i]); }
+            case CompiledExpression.FAST_TAN -> { for (int i = 0; i < size; i++) x[i] = FastMath.tan(x[i]); }
+            case CompiledExpression.FAST_COT -> { for (int i = 0; i < size; i++) x[i] = FastMath.cot(x[i]); }
+            case CompiledExpression.FAST_LOG -> { for (int i = 0; i < size; i++) x[i] = FastMath.log(x[i]); }
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Применяет бинарный оператор или встроенную функцию двух аргументов к двум блокам значений.
+     *
+     * @param operator код операции
+     * @param left блок левых операндов, в который записывается результат
+     * @param right блок правых операндов
+     * @param size количество строк в блоке
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    private static void applyBinary(int operator, double[] left, double[] right, int size)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.ADD -> { for (int i = 0; i < size; i++) left[i] += right[i]; }
+            case CompiledExpression.SUBTRACT -> { for (int i = 0; i < size; i++) left[i] -= right[i]; }
+            case CompiledExpression.MULTIPLY -> { for (int i = 0; i < size; i++) left[i] *= right[i]; }
+            case CompiledExpression.DIVIDE ->
+            {
+                // Проверка делителей отдельным циклом, чтобы само деление осталось векторизуемым
+                for (int i = 0; i < size; i++)
+                    if (right[i] == 0)
+                        throw new ArithmeticException("Division by zero");
+                for (int i = 0; i < size; i++)
+                    left[i] /= right[i];
+            }
+            case CompiledExpression.POWER -> { for (int i = 0; i < size; i++) left[i] = Math.pow(left[i], right[i]); }
+            case CompiledExpression.MIN -> { for (int i = 0; i < size; i++) left[i] = Math.min(left[i], right[i]); }
+            case CompiledExpression.MAX -> { for (int i = 0; i < size; i++) left[i] = Math.max(left[i], right[i]); }
+            case CompiledExpression.HYPOT -> { for (int i = 0; i < size; i++) left[i] = Math.hypot(left[i], right[i]); }
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Вызывает функцию из набора функций для каждой строки блока.
+     *
+     * @param function функция
+     * @param stack стек блоков значений
+     * @param top размер стека
+     * @param size количество строк в блоке
+     * @param arguments массивы аргументов по количеству аргументов
+     *                  ({@link MathFunction#argumentBuffers(MathFunction[])})
+     * @return новый размер стека
+     */
+    private static int call(MathFunction function, double[][] stack, int top, int size, double[][] arguments)
+    {
+        int first = top - function.arity;
+        double[] x = stack[first];
+        switch (function.arity)
+        {
+            case 1 -> { for (int i = 0; i < size; i++) x[i] = function.unary.applyAsDouble(x[i]); }
+            case 2 ->
+            {
+                double[] y = stack[top - 1];
+                for (int i = 0; i < size; i++)
+                    x[i] = function.binary.applyAsDouble(x[i], y[i]);
+            }
+            default ->
+            {
+                if (function.ternary != null)
+                {
+                    double[] y = stack[first + 1], z = stack[first + 2];
+                    for (int i = 0; i < size; i++)
+                        x[i] = function.ternary.applyAsDouble(x[i], y[i], z[i]);
+                }
+                else
+                {
+                    double[] buffer = arguments[function.arity];
+                    for (int i = 0; i < size; i++)
+                    {
+                        for (int k = 0; k < buffer.length; k++)
+                            buffer[k] = stack[first + k][i];
+                        x[i] = function.general.applyAsDouble(buffer);
+                    }
+                }
+            }
+        }
+        return first + 1;
+    }
+
+    /**
+     * Задача вычисления диапазона строк, которая делится пополам, пока диапазон больше заданного размера.
+     */
+    @SuppressWarnings("serial")
+    private static final class RangeTask extends RecursiveAction
+    {
+        /** Скомпилированное выражение */
+        private final CompiledExpression expression;
+
+        /** Значения переменных по номерам слотов */
+        private final double[][] columns;
+
+        /** Массив для результатов */
+        private final double[] out;
+
+        /** Начало и конец диапазона строк */
+        private final int from, to;
+
+        /** Размер диапазона, который вычисляется без деления */
+        private final int taskSize;
+
+        RangeTask(CompiledExpression expression, double[][] columns, double[] out, int from, int to, int taskSize)
+        {
+            this.expression = expression;
+            this.columns = columns;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= taskSize)
+            {
+                evaluate(expression, columns, from, to, out);
+                return;
+            }
+            int middle = middle(from, to);
+            invokeAll(new RangeTask(expression, columns, out, from, middle, taskSize),
+                    new RangeTask(expression, columns, out, middle, to, taskSize));
+        }
+    }
+
+    /**
+     * Задача агрегирования диапазона строк. Каждая задача заполняет собственный накопитель,
+     * накопители половин объединяются в порядке строк.
+     */
+    @SuppressWarnings("serial")
+    private static final class ReduceTask extends RecursiveTask<Aggregate>
+    {
+        /** Скомпилированное выражение */
+        private final CompiledExpression expression;
+
+        /** Значения переменных по номерам слотов */
+        private final double[][] columns;
+
+        /** Образец накопителя (задает параметры гистограммы) */
+        private final Aggregate template;
+
+        /** Начало и конец диапазона строк */
+        private final int from, to;
+
+        /** Размер диапазона, который вычисляется без деления */
+        private final int taskSize;
+
+        ReduceTask(CompiledExpression expression, double[][] columns, Aggregate template, int from, int to, int taskSize)
+        {
+            this.expression = expression;
+            this.columns = columns;
+            this.template = template;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected Aggregate compute()
+        {
+            if (to - from <= taskSize)
+            {
+                Aggregate partial = template.emptyCopy();
+                reduce(expression, columns, from, to, partial);
+                return partial;
+            }
+            int middle = middle(from, to);
+            ReduceTask left = new ReduceTask(expression, columns, template, from, middle, taskSize);
+            ReduceTask right = new ReduceTask(expression, columns, template, middle, to, taskSize);
+            invokeAll(left, right);
+            Aggregate result = left.join();
+            result.merge(right.join());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package calculator;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Источник значений переменных, запрашивающий их у пользователя в консоли ({@link VariableResolver#console()}).
+ *
+ * <p>Асинхронные запросы ({@link #resolveAsync(Set)}) ждут ввод в отдельном потоке-демоне,
+ * а не в вызывающем потоке; запросы обслуживаются по очереди.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class ConsoleVariableResolver implements VariableResolver
+{
+    /** Поток чтения ввода */
+    private final Scanner scanner;
+
+    /** Поток вывода приглашений */
+    private final PrintStream out;
+
+    /** Исполнитель асинхронных запросов */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task ->
+    {
+        Thread thread = new Thread(task, "console-variable-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Создает консольный источник.
+     *
+     * @param in поток ввода значений
+     * @param out поток вывода приглашений
+     */
+    ConsoleVariableResolver(InputStream in, PrintStream out)
+    {
+        this.scanner = new Scanner(in);
+        this.out = out;
+    }
+
+    /**
+     * Запрашивает ввод значений для переменных.
+     * Циклически запрашивает данные до получения корректного числового значения для каждой переменной.
+     *
+     * @param names набор переменных, требующих определения числовых значений
+     * @return введенные значения по именам
+     * @throws IllegalArgumentException если ввод закончился раньше, чем были введены все значения
+     */
+    @Override
+    public synchronized Map<String, Double> resolve(Set<String> names)
+    {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (String varName : names)
+        {
+            out.print("Enter value for variable '" + varName + "': ");
+            while (true)
+            {
+                String input;
+                try
+                {
+                    input = scanner.nextLine().trim();
+                }
+                catch (NoSuchElementException e)
+                {
+                    throw new IllegalArgumentException("Unknown variable: " + varName);
+                }
+                if (input.isEmpty())
+                {
+                    out.print("Value cannot be empty. Enter value for '" + varName + "': ");
+                    continue;
+                }
+                try
+                {
+                    values.put(varName, Double.parseDouble(input));
+                    break;
+                }
+                catch (NumberFormatException e)
+                {
+                    out.print("Invalid number. Please enter a valid value for '" + varName + "': ");
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Запрашивает ввод значений для переменных в отдельном потоке, не блокируя вызывающий поток.
+     *
+     * @param names набор переменных, требующих определения числовых значений
+     * @return будущие введенные значения по именам
+     */
+    @Override
+    public CompletableFuture<Map<String, Double>> resolveAsync(Set<String> names)
+    {
+        return CompletableFuture.supplyAsync(() -> resolve(names), executor);
+    }
+}
@@ -0,0 +1,478 @@
+package calculator;
+
+/**
+ * Арифметика чисел двойной-двойной точности: значение хранится невычисленной суммой двух double
+ * {@code hi + lo}, где {@code |lo| ≤ ulp(hi)/2}, что дает около 106 бит мантиссы (примерно 32 десятичных знака).
+ *
+ * <p>Операции не создают объектов: аргументы передаются парами чисел, результат записывается в поля
+ * {@link #hi} и {@link #lo} этого объекта, откуда его забирает вызывающий код. Один объект служит
+ * «регистром» для всех операций одного вычисления, поэтому класс не потокобезопасен.
+ *
+ * <p>Погрешность (относительная, для нормализованных результатов; проверяется сравнением с {@link java.math.BigDecimal}):
+ * <ul>
+ *   <li>сложение, вычитание, умножение, деление, квадратный корень - не более {@code 4·2⁻¹⁰⁶ ≈ 5e-32}
+ *       на операцию;</li>
+ *   <li>exp - не более 1e-30; log - не более 1e-30, а при {@code |ln x| < 1} - абсолютная 1e-30;</li>
+ *   <li>степень {@code a^b} с нецелым или большим (больше 1024 по модулю) показателем - не более
+ *       {@code 1e-31·(1 + |b|)};</li>
+ *   <li>sin, cos, tg, ctg - не более 1e-30 (для sin и cos - абсолютная) при {@code |x| ≤ 1e6};
+ *       при больших аргументах погрешность сведения к периоду растет пропорционально {@code |x|}.</li>
+ * </ul>
+ * Степень с целым показателем до 1024 по модулю вычисляется возведением в квадрат, ее погрешность
+ * не более {@code 2·log₂n} погрешностей умножения. Особые значения (бесконечности, NaN, переполнение)
+ * обрабатываются как в {@link Math}: младшая часть таких результатов равна нулю.
+ *
+ * <p>Арифметические операции в 2-4 раза медленнее операций над double, трансцендентные функции -
+ * примерно в 10-15 раз: ряды Тейлора вычисляются по схеме Горнера с таблицей обратных факториалов.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class DoubleDouble
+{
+    /** Старшая часть ln 2 */
+    private static final double LN2_HI = 6.931471805599452862e-01;
+
+    /** Младшая часть ln 2 */
+    private static final double LN2_LO = 2.319046813846299558e-17;
+
+    /** Три части π/2: старшая, средняя и младшая */
+    private static final double PI_OVER_2_HI = 1.5707963267948966, PI_OVER_2_MID = 6.123233995736766e-17,
+            PI_OVER_2_LO = -1.4973849048591698e-33;
+
+    /** Наибольший модуль целого показателя степени, вычисляемой умножениями */
+    private static final double MAX_INTEGER_EXPONENT = 1024;
+
+    /** Старшие части факториалов от 0 до {@link CompiledExpression#MAX_FACTORIAL} */
+    private static final double[] FACTORIAL_HI = new double[CompiledExpression.MAX_FACTORIAL + 1];
+
+    /** Младшие части факториалов */
+    private static final double[] FACTORIAL_LO = new double[CompiledExpression.MAX_FACTORIAL + 1];
+
+    /** Наибольшая степень членов рядов Тейлора для exp, sin и cos */
+    private static final int MAX_SERIES_TERM = 30;
+
+    /** Старшие части коэффициентов рядов {@code 1/n!} */
+    private static final double[] INVERSE_FACTORIAL_HI = new double[MAX_SERIES_TERM + 1];
+
+    /** Младшие части коэффициентов рядов */
+    private static final double[] INVERSE_FACTORIAL_LO = new double[MAX_SERIES_TERM + 1];
+
+    static
+    {
+        DoubleDouble register = new DoubleDouble();
+        FACTORIAL_HI[0] = 1;
+        for (int i = 1; i <= CompiledExpression.MAX_FACTORIAL; i++)
+        {
+            register.multiply(FACTORIAL_HI[i - 1], FACTORIAL_LO[i - 1], i, 0);
+            FACTORIAL_HI[i] = register.hi;
+            FACTORIAL_LO[i] = register.lo;
+        }
+        for (int i = 0; i <= MAX_SERIES_TERM; i++)
+        {
+            register.divide(1, 0, FACTORIAL_HI[i], FACTORIAL_LO[i]);
+            INVERSE_FACTORIAL_HI[i] = register.hi;
+            INVERSE_FACTORIAL_LO[i] = register.lo;
+        }
+    }
+
+    /** Старшая часть результата последней операции */
+    double hi;
+
+    /** Младшая часть результата последней операции */
+    double lo;
+
+    /**
+     * Записывает результат, нормализуя пару: старшая часть становится округленной суммой.
+     *
+     * @param a большее по модулю слагаемое
+     * @param b меньшее по модулю слагаемое
+     */
+    private void normalize(double a, double b)
+    {
+        double s = a + b;
+        // Для бесконечностей и NaN младшая часть не имеет смысла
+        lo = Double.isFinite(s) ? b - (s - a) : 0;
+        hi = s;
+    }
+
+    /**
+     * Складывает два числа.
+     *
+     * @param ah старшая часть первого слагаемого
+     * @param al младшая часть первого слагаемого
+     * @param bh старшая часть второго слагаемого
+     * @param bl младшая часть второго слагаемого
+     */
+    void add(double ah, double al, double bh, double bl)
+    {
+        // Точные суммы старших и младших частей (алгоритм TwoSum)
+        double s = ah + bh, v = s - ah, e = (ah - (s - v)) + (bh - v);
+        double t = al + bl, w = t - al, f = (al - (t - w)) + (bl - w);
+        if (!Double.isFinite(s))
+        {
+            hi = s;
+            lo = 0;
+            return;
+        }
+        e += t;
+        double h = s + e;
+        e -= h - s;
+        e += f;
+        normalize(h, e);
+    }
+
+    /**
+     * Умножает два числа.
+     *
+     * @param ah старшая часть первого множителя
+     * @param al младшая часть первого множителя
+     * @param bh старшая часть второго множителя
+     * @param bl младшая часть второго множителя
+     */
+    void multiply(double ah, double al, double bh, double bl)
+    {
+        double p = ah * bh;
+        if (!Double.isFinite(p) || p == 0)
+        {
+            hi = p;
+            lo = 0;
+            return;
+        }
+        // Math.fma дает точную ошибку округления старшего произведения
+        double e = Math.fma(ah, bh, -p) + (ah * bl + al * bh);
+        normalize(p, e);
+    }
+
+    /**
+     * Делит одно число на другое.
+     *
+     * @param ah старшая часть делимого
+     * @param al младшая часть делимого
+     * @param bh старшая часть делителя
+     * @param bl младшая часть делителя
+     * @throws ArithmeticException если делитель равен нулю
+     */
+    void divide(double ah, double al, double bh, double bl)
+    {
+        if (bh == 0)
+            throw new ArithmeticException("Division by zero");
+        double q1 = ah / bh;
+        if (!Double.isFinite(q1) || q1 == 0)
+        {
+            hi = q1;
+            lo = 0;
+            return;
+        }
+        // Остаток a - q1·b дает вторую цифру частного, следующий остаток - третью
+        multiply(q1, 0, bh, bl);
+        add(ah, al, -hi, -lo);
+        double q2 = hi / bh, rh = hi, rl = lo;
+        multiply(q2, 0, bh, bl);
+        add(rh, rl, -hi, -lo);
+        double q3 = hi / bh;
+        normalize(q1, q2);
+        add(hi, lo, q3, 0);
+    }
+
+    /**
+     * Вычисляет квадратный корень (метод Ньютона от приближения {@link Math#sqrt}).
+     *
+     * @param ah старшая часть аргумента
+     * @param al младшая часть аргумента
+     */
+    void sqrt(double ah, double al)
+    {
+        if (!(ah > 0) || ah == Double.POSITIVE_INFINITY)
+        {
+            hi = ah == Double.NEGATIVE_INFINITY ? Double.POSITIVE_INFINITY : Math.sqrt(ah) + 0.0;
+            lo = 0;
+            return;
+        }
+        double s = Math.sqrt(ah);
+        multiply(s, 0, s, 0);
+        add(ah, al, -hi, -lo);
+        double correction = hi / (2 * s);
+        add(s, 0, correction, 0);
+    }
+
+    /**
+     * Вычисляет экспоненту: аргумент сводится к {@code r = x - k·ln2}, затем к {@code r/512},
+     * для которого ряд Тейлора быстро сходится, и результат девять раз возводится в квадрат.
+     *
+     * @param ah старшая часть показателя
+     * @param al младшая часть показателя
+     */
+    void exp(double ah, double al)
+    {
+        if (!(ah > -745.2 && ah < 709.8))
+        {
+            hi = Math.exp(ah);
+            lo = 0;
+            return;
+        }
+        // Произведения k на части ln2 вычисляются точно
+        double k = Math.rint(ah / LN2_HI);
+        multiply(k, 0, LN2_HI, 0);
+        add(ah, al, -hi, -lo);
+        double xh = hi, xl = lo;
+        multiply(k, 0, LN2_LO, 0);
+        add(xh, xl, -hi, -lo);
+        double rh = Math.scalb(hi, -9), rl = Math.scalb(lo, -9);
+
+        // e^r - 1 = r·(1 + r·(1/2! + r·(1/3! + ...))) для |r| < 7e-4: сумма без единицы сохраняет младшие разряды
+        series(rh, rl, 1, 1, 10);
+        multiply(hi, lo, rh, rl);
+        double sh = hi, sl = lo;
+        // (1 + s)² - 1 = s·(2 + s)
+        for (int i = 0; i < 9; i++)
+        {
+            add(sh, sl, 2, 0);
+            multiply(sh, sl, hi, lo);
+            sh = hi;
+            sl = lo;
+        }
+        add(sh, sl, 1, 0);
+        int scale = (int) k;
+        hi = Math.scalb(hi, scale);
+        lo = Double.isFinite(hi) ? Math.scalb(lo, scale) : 0;
+    }
+
+    /**
+     * Вычисляет натуральный логарифм одной итерацией Ньютона {@code y + x·e^(-y) - 1}
+     * от приближения {@link Math#log}.
+     *
+     * @param ah старшая часть аргумента
+     * @param al младшая часть аргумента
+     */
+    void log(double ah, double al)
+    {
+        if (!(ah > 0) || ah == Double.POSITIVE_INFINITY)
+        {
+            hi = Math.log(ah);
+            lo = 0;
+            return;
+        }
+        if (ah == 1 && al == 0)
+        {
+            hi = 0;
+            lo = 0;
+            return;
+        }
+        double y = Math.log(ah);
+        exp(-y, 0);
+        multiply(ah, al, hi, lo);
+        add(hi, lo, -1, 0);
+        add(y, 0, hi, lo);
+    }
+
+    /**
+     * Возводит число в степень: целые показатели - умножениями, остальные - через {@code e^(b·ln a)}.
+     *
+     * @param ah старшая часть основания
+     * @param al младшая часть основания
+     * @param bh старшая часть показателя
+     * @param bl младшая часть показателя
+     */
+    void pow(double ah, double al, double bh, double bl)
+    {
+        if (bl == 0 && bh == Math.rint(bh) && Math.abs(bh) <= MAX_INTEGER_EXPONENT && ah != 0 && Double.isFinite(ah))
+        {
+            long n = (long) Math.abs(bh);
+            double rh = 1, rl = 0, xh = ah, xl = al;
+            while (n > 0)
+            {
+                if ((n & 1) != 0)
+                {
+                    multiply(rh, rl, xh, xl);
+                    rh = hi;
+                    rl = lo;
+                }
+                n >>= 1;
+                if (n > 0)
+                {
+                    multiply(xh, xl, xh, xl);
+                    xh = hi;
+                    xl = lo;
+                }
+            }
+            if (bh < 0)
+            {
+                if (rh == 0 || Double.isInfinite(rh))
+                {
+                    hi = Math.pow(ah, bh);
+                    lo = 0;
+                }
+                else
+                    divide(1, 0, rh, rl);
+            }
+            else
+            {
+                hi = rh;
+                lo = rl;
+            }
+            return;
+        }
+        if (!(ah > 0) || !Double.isFinite(ah) || !Double.isFinite(bh))
+        {
+            hi = Math.pow(ah, bh);
+            lo = 0;
+            return;
+        }
+        log(ah, al);
+        multiply(hi, lo, bh, bl);
+        exp(hi, lo);
+    }
+
+    /**
+     * Вычисляет синус.
+     *
+     * @param ah старшая часть аргумента в радианах
+     * @param al младшая часть аргумента
+     */
+    void sin(double ah, double al)
+    {
+        trigonometric(ah, al, 0);
+    }
+
+    /**
+     * Вычисляет косинус.
+     *
+     * @param ah старшая часть аргумента в радианах
+     * @param al младшая часть аргумента
+     */
+    void cos(double ah, double al)
+    {
+        // cos(x) = sin(x + π/2)
+        trigonometric(ah, al, 1);
+    }
+
+    /**
+     * Вычисляет тангенс.
+     *
+     * @param ah старшая часть аргумента в радианах
+     * @param al младшая часть аргумента
+     */
+    void tan(double ah, double al)
+    {
+        cos(ah, al);
+        double ch = hi, cl = lo;
+        sin(ah, al);
+        if (ch == 0)
+        {
+            hi = Math.tan(ah);
+            lo = 0;
+        }
+        else
+            divide(hi, lo, ch, cl);
+    }
+
+    /**
+     * Вычисляет котангенс.
+     *
+     * @param ah старшая часть аргумента в радианах
+     * @param al младшая часть аргумента
+     */
+    void cot(double ah, double al)
+    {
+        sin(ah, al);
+        double sh = hi, sl = lo;
+        cos(ah, al);
+        if (sh == 0)
+        {
+            hi = CompiledExpression.ctg(ah);
+            lo = 0;
+        }
+        else
+            divide(hi, lo, sh, sl);
+    }
+
+    /**
+     * Вычисляет синус аргумента, сдвинутого на заданное число четвертей периода.
+     *
+     * @param ah старшая часть аргумента
+     * @param al младшая часть аргумента
+     * @param shift сдвиг в четвертях периода
+     */
+    private void trigonometric(double ah, double al, int shift)
+    {
+        if (!Double.isFinite(ah))
+        {
+            hi = Double.NaN;
+            lo = 0;
+            return;
+        }
+        // Сведение к [-π/4, π/4]: r = x - k·π/2 с π/2 из трех частей;
+        // произведения k на старшую и среднюю части вычисляются точно
+        double k = Math.rint(ah / PI_OVER_2_HI);
+        multiply(k, 0, PI_OVER_2_HI, 0);
+        add(ah, al, -hi, -lo);
+        double rh = hi, rl = lo;
+        multiply(k, 0, PI_OVER_2_MID, 0);
+        add(rh, rl, -hi, -lo);
+        add(hi, lo, -k * PI_OVER_2_LO, 0);
+        rh = hi;
+        rl = lo;
+        multiply(rh, rl, rh, rl);
+        double r2h = -hi, r2l = -lo;
+
+        long quadrant = (long) k + shift;
+        // Ряд синуса r·(1 - r²/3! + ...) или косинуса 1 - r²/2! + ... по степеням -r²
+        if ((quadrant & 1) != 0)
+            series(r2h, r2l, 0, 2, MAX_SERIES_TERM);
+        else
+        {
+            series(r2h, r2l, 1, 2, MAX_SERIES_TERM - 1);
+            multiply(hi, lo, rh, rl);
+        }
+        double sh = hi, sl = lo;
+        if ((quadrant & 2) != 0)
+        {
+            sh = -sh;
+            sl = -sl;
+        }
+        hi = sh;
+        lo = sl;
+    }
+
+    /**
+     * Вычисляет по схеме Горнера многочлен {@code Σ x^i / (first + step·i)!} с коэффициентами из таблицы
+     * обратных факториалов: в отличие от рекуррентного вычисления членов ряда, обходится без делений.
+     *
+     * @param xh старшая часть переменной многочлена
+     * @param xl младшая часть переменной многочлена
+     * @param first степень факториала при свободном члене
+     * @param step шаг степеней факториалов
+     * @param last степень факториала при старшем члене
+     */
+    private void series(double xh, double xl, int first, int step, int last)
+    {
+        double ph = INVERSE_FACTORIAL_HI[last], pl = INVERSE_FACTORIAL_LO[last];
+        for (int n = last - step; n >= first; n -= step)
+        {
+            multiply(ph, pl, xh, xl);
+            add(hi, lo, INVERSE_FACTORIAL_HI[n], INVERSE_FACTORIAL_LO[n]);
+            ph = hi;
+            pl = lo;
+        }
+        hi = ph;
+        lo = pl;
+    }
+
+    /**
+     * Вычисляет факториал неотрицательного целого числа по таблице.
+     *
+     * @param ah старшая часть аргумента
+     * @param al младшая часть аргумента
+     * @throws IllegalArgumentException если число отрицательное или не является целым
+     */
+    void factorial(double ah, double al)
+    {
+        if (al != 0)
+            throw new IllegalArgumentException("Factorial is defined only for integers");
+        double value = CompiledExpression.factorial(ah);
+        boolean inTable = ah <= CompiledExpression.MAX_FACTORIAL;
+        hi = inTable ? FACTORIAL_HI[(int) ah] : value;
+        lo = inTable ? FACTORIAL_LO[(int) ah] : 0;
+    }
+}
@@ -0,0 +1,34 @@
+package calculator;
+
+/**
+ * Функция трех аргументов типа double, дополняющая {@link java.util.function.DoubleUnaryOperator}
+ * и {@link java.util.function.DoubleBinaryOperator}.
+ *
+ * <p>Функции трех аргументов, добавленные в набор функций в этом виде
+ * ({@link FunctionRegistry#with(String, DoubleTernaryOperator)}), вызываются без создания массива аргументов,
+ * как и функции одного и двух аргументов.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * FunctionRegistry functions = FunctionRegistry.standard().with("lerp", (a, b, t) -> a + (b - a) * t);
+ * double res = Calculator.compile("lerp(0, 10, x)", functions).evaluate(Map.of("x", 0.25)); // Результат: 2.5
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface DoubleTernaryOperator
+{
+    /**
+     * Вычисляет функцию.
+     *
+     * @param x первый аргумент
+     * @param y второй аргумент
+     * @param z третий аргумент
+     * @return значение функции
+     */
+    double applyAsDouble(double x, double y, double z);
+}
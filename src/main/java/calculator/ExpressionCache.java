@@ -0,0 +1,469 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный по размеру потокобезопасный кэш разобранных выражений.
+ *
+ * <p>Ключ кэша - текст выражения без пробельных символов, поэтому строки {@code "a + b"} и {@code "a+b"}
+ * разделяют одну запись. Кэш ограничен и количеством записей, и приблизительным объемом памяти,
+ * который занимают выражения.
+ *
+ * <p>Вытеснение учитывает частоту обращений (политика TinyLFU): частоты всех запрашиваемых выражений,
+ * в том числе отсутствующих в кэше, приблизительно считаются в компактном частотном скетче.
+ * Когда кэш заполнен, новое выражение занимает место кандидата на вытеснение, только если оно
+ * запрашивалось чаще него. Поэтому поток одноразовых формул не вытесняет часто используемые.
+ * Кандидат на вытеснение выбирается по алгоритму «часы»: недавно прочитанные записи получают второй шанс.
+ *
+ * <p>Чтение из кэша не требует блокировок; блокировка берется только при добавлении новой записи.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * ExpressionCache cache = new ExpressionCache(10_000, 64L << 20);
+ * CompiledExpression expr = cache.get("x^2 + 1");
+ * double hitRate = cache.getHitRate();
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class ExpressionCache
+{
+    /** Максимальное значение счетчика частоты */
+    private static final int MAX_FREQUENCY = 15;
+
+    /** Максимальный размер частотного скетча */
+    private static final int MAX_SKETCH_SIZE = 1 << 22;
+
+    /** Дополнительный объем памяти на одну запись (узел, запись в таблице, ключ) */
+    private static final long ENTRY_OVERHEAD = 96;
+
+    /** Максимальное количество записей */
+    private final int maximumEntries;
+
+    /** Максимальный суммарный объем записей в байтах */
+    private final long maximumWeight;
+
+    /** Функции, доступные в выражениях */
+    private final FunctionRegistry functions;
+
+    /** Записи по нормализованному тексту выражения */
+    private final ConcurrentHashMap<String, Node> entries = new ConcurrentHashMap<>();
+
+    /** Очередь записей для выбора кандидата на вытеснение (защищена блокировкой {@link #lock}) */
+    private final ArrayDeque<Node> clock = new ArrayDeque<>();
+
+    /** Блокировка изменения состава кэша */
+    private final Object lock = new Object();
+
+    /** Суммарный объем записей (защищен блокировкой {@link #lock}) */
+    private volatile long weight;
+
+    /** Счетчики частотного скетча */
+    private final AtomicIntegerArray frequencies;
+
+    /** Маска индекса в частотном скетче */
+    private final int mask;
+
+    /** Количество учтенных обращений с момента последнего старения скетча */
+    private final AtomicInteger samples = new AtomicInteger();
+
+    /** Количество обращений, после которого все частоты уменьшаются вдвое */
+    private final int sampleLimit;
+
+    /** Индекс первого счетчика, который текущее старение еще не уменьшило (не меньше размера скетча - старения нет) */
+    private final AtomicInteger agingCursor;
+
+    /** Количество счетчиков, уменьшаемых вдвое при одном обращении во время старения */
+    private final int agingStep;
+
+    /** Счетчики попаданий, промахов, вытеснений и отказов в добавлении */
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+            evictions = new LongAdder(), rejections = new LongAdder();
+
+    /**
+     * Создает кэш, ограниченный только количеством записей.
+     *
+     * @param maximumEntries максимальное количество записей
+     * @throws IllegalArgumentException если количество записей не положительно
+     */
+    public ExpressionCache(int maximumEntries)
+    {
+        this(maximumEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Создает кэш.
+     *
+     * @param maximumEntries максимальное количество записей
+     * @param maximumWeight максимальный суммарный объем записей в байтах
+     * @throws IllegalArgumentException если ограничения не положительны
+     */
+    public ExpressionCache(int maximumEntries, long maximumWeight)
+    {
+        this(maximumEntries, maximumWeight, FunctionRegistry.standard());
+    }
+
+    /**
+     * Создает кэш выражений, в которых доступны функции заданного набора.
+     *
+     * @param maximumEntries максимальное количество записей
+     * @param maximumWeight максимальный суммарный объем записей в байтах
+     * @param functions набор функций
+     * @throws IllegalArgumentException если ограничения не положительны
+     */
+    public ExpressionCache(int maximumEntries, long maximumWeight, FunctionRegistry functions)
+    {
+        if (maximumEntries < 1)
+            throw new IllegalArgumentException("Maximum number of entries must be positive: " + maximumEntries);
+        if (maximumWeight < 1)
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+        this.maximumEntries = maximumEntries;
+        this.maximumWeight = maximumWeight;
+        this.functions = functions;
+
+        // Скетч заметно больше кэша, чтобы одноразовые выражения редко попадали в счетчики популярных
+        int size = Integer.highestOneBit((int) Math.min(MAX_SKETCH_SIZE, Math.max(1024L, 16L * maximumEntries)) * 2 - 1);
+        this.frequencies = new AtomicIntegerArray(size);
+        this.mask = size - 1;
+        this.sampleLimit = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(1024L, 10L * maximumEntries));
+        // Старение проходит весь скетч за четверть периода между порогами
+        this.agingStep = Math.max(16, Math.ceilDiv(size, sampleLimit / 4));
+        this.agingCursor = new AtomicInteger(size);
+    }
+
+    /**
+     * Возвращает разобранное выражение из кэша или разбирает его и, если политика вытеснения позволяет,
+     * добавляет в кэш.
+     *
+     * <p>Разобранное выражение проходит оптимизацию ({@link ExpressionOptimizer}), сохраняющую результат побитово.
+     * Выражения, различающиеся только пробельными символами, разделяют одну запись,
+     * поэтому {@link CompiledExpression#toString()} возвращает строку, с которой запись была создана.
+     *
+     * @param expression математическое выражение
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки (такие выражения не кэшируются)
+     */
+    public CompiledExpression get(String expression)
+    {
+        String key = normalize(expression);
+        int hash = spread(key.hashCode());
+        recordAccess(hash);
+
+        Node node = entries.get(key);
+        if (node != null)
+        {
+            node.referenced = true;
+            hits.increment();
+            return node.expression;
+        }
+
+        misses.increment();
+        CompiledExpression compiled = ExpressionOptimizer.optimize(ExpressionParser.parse(expression, functions)).getExpression();
+        return admit(new Node(key, hash, compiled, ENTRY_OVERHEAD + 40 + 2L * key.length() + compiled.estimatedSize()));
+    }
+
+    /**
+     * Удаляет все записи. Частоты обращений и счетчики статистики сохраняются.
+     */
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            entries.clear();
+            clock.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * Возвращает количество записей.
+     *
+     * @return количество записей
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Возвращает приблизительный суммарный объем записей.
+     *
+     * @return объем в байтах
+     */
+    public long getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Возвращает количество обращений, для которых выражение нашлось в кэше.
+     *
+     * @return количество попаданий
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Возвращает количество обращений, для которых выражение пришлось разбирать.
+     *
+     * @return количество промахов
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Возвращает долю попаданий среди всех обращений.
+     *
+     * @return доля попаданий от 0 до 1 (1, если обращений не было)
+     */
+    public double getHitRate()
+    {
+        long hitCount = hits.sum(), total = hitCount + misses.sum();
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    /**
+     * Возвращает количество записей, вытесненных из кэша.
+     *
+     * @return количество вытеснений
+     */
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Возвращает количество разобранных выражений, не добавленных в кэш политикой вытеснения.
+     *
+     * @return количество отказов
+     */
+    public long getRejectionCount()
+    {
+        return rejections.sum();
+    }
+
+    /**
+     * Возвращает приблизительную частоту обращений к выражению.
+     *
+     * @param expression математическое выражение
+     * @return частота от 0 до 15
+     */
+    int frequency(String expression)
+    {
+        return frequency(spread(normalize(expression).hashCode()));
+    }
+
+    /**
+     * Добавляет запись, вытесняя при необходимости более редкие записи.
+     *
+     * @param node новая запись
+     * @return выражение из кэша (если его успел добавить другой поток) или из новой записи
+     */
+    private CompiledExpression admit(Node node)
+    {
+        if (node.weight > maximumWeight)
+        {
+            rejections.increment();
+            return node.expression;
+        }
+
+        synchronized (lock)
+        {
+            Node existing = entries.get(node.key);
+            if (existing != null)
+                return existing.expression;
+
+            List<Node> victims = new ArrayList<>();
+            long freed = 0;
+            int candidateFrequency = frequency(node.hash);
+            while (entries.size() - victims.size() >= maximumEntries || weight - freed > maximumWeight - node.weight)
+            {
+                Node victim = nextVictim();
+                victims.add(victim);
+                freed += victim.weight;
+                if (frequency(victim.hash) >= candidateFrequency)
+                {
+                    // Новое выражение запрашивалось не чаще вытесняемых - кэш не меняется
+                    for (int i = victims.size() - 1; i >= 0; i--)
+                        clock.addFirst(victims.get(i));
+                    rejections.increment();
+                    return node.expression;
+                }
+            }
+
+            for (Node victim : victims)
+            {
+                entries.remove(victim.key);
+                evictions.increment();
+            }
+            entries.put(node.key, node);
+            clock.addLast(node);
+            weight += node.weight - freed;
+        }
+        return node.expression;
+    }
+
+    /**
+     * Выбирает кандидата на вытеснение по алгоритму «часы» и извлекает его из очереди.
+     * Прочитанные с прошлого прохода записи сбрасывают отметку и перемещаются в конец очереди.
+     *
+     * @return кандидат на вытеснение
+     */
+    private Node nextVictim()
+    {
+        while (true)
+        {
+            Node node = clock.pollFirst();
+            if (!node.referenced)
+                return node;
+            node.referenced = false;
+            clock.addLast(node);
+        }
+    }
+
+    /**
+     * Учитывает обращение к выражению в частотном скетче.
+     * При достижении порога обращений все частоты уменьшаются вдвое, чтобы старая популярность забывалась.
+     * Уменьшение распределено по следующим обращениям: каждое уменьшает небольшой участок скетча
+     * ({@link #agingStep} счетчиков), поэтому ни один вызов не обходит весь скетч.
+     *
+     * @param hash перемешанный хэш ключа
+     */
+    private void recordAccess(int hash)
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            int index = index(hash, i);
+            int value;
+            do
+            {
+                value = frequencies.get(index);
+                if (value >= MAX_FREQUENCY)
+                    break;
+            }
+            while (!frequencies.compareAndSet(index, value, value + 1));
+        }
+
+        if (samples.incrementAndGet() == sampleLimit)
+        {
+            samples.addAndGet(-sampleLimit / 2);
+            agingCursor.set(0);
+        }
+        if (agingCursor.get() < frequencies.length())
+            age();
+    }
+
+    /**
+     * Уменьшает вдвое следующий участок счетчиков текущего старения скетча.
+     * Участки выдаются потокам атомарно, поэтому каждый счетчик уменьшается один раз.
+     */
+    private void age()
+    {
+        int from = agingCursor.getAndAdd(agingStep);
+        int to = Math.min(from + agingStep, frequencies.length());
+        for (int i = from; i < to; i++)
+            frequencies.getAndUpdate(i, v -> v >>> 1);
+    }
+
+    /**
+     * Возвращает приблизительную частоту обращений - минимум из четырех счетчиков скетча.
+     *
+     * @param hash перемешанный хэш ключа
+     * @return частота от 0 до 15
+     */
+    private int frequency(int hash)
+    {
+        int result = MAX_FREQUENCY;
+        for (int i = 0; i < 4; i++)
+            result = Math.min(result, frequencies.get(index(hash, i)));
+        return result;
+    }
+
+    /**
+     * Возвращает индекс счетчика в одной из четырех строк скетча.
+     *
+     * @param hash перемешанный хэш ключа
+     * @param row номер строки скетча
+     * @return индекс счетчика
+     */
+    private int index(int hash, int row)
+    {
+        int h = hash * (0x9E3779B9 + 2 * row * 0x61C88647);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Перемешивает биты хэша ключа.
+     *
+     * @param hash хэш ключа
+     * @return перемешанный хэш
+     */
+    private static int spread(int hash)
+    {
+        int h = hash * 0x45D9F3B;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Удаляет из выражения пробельные символы (те же, что пропускает разборщик).
+     *
+     * @param expression математическое выражение
+     * @return выражение без пробельных символов
+     */
+    static String normalize(String expression)
+    {
+        StringBuilder builder = null;
+        for (int i = 0; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+            boolean space = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+            if (space && builder == null)
+                builder = new StringBuilder(expression.length()).append(expression, 0, i);
+            else if (!space && builder != null)
+                builder.append(c);
+        }
+        return builder == null ? expression : builder.toString();
+    }
+
+    /**
+     * Запись кэша.
+     */
+    private static final class Node
+    {
+        /** Нормализованный текст выражения */
+        final String key;
+
+        /** Перемешанный хэш ключа */
+        final int hash;
+
+        /** Разобранное выражение */
+        final CompiledExpression expression;
+
+        /** Приблизительный объем записи в байтах */
+        final long weight;
+
+        /** Отметка о чтении записи с прошлого прохода «часов» */
+        volatile boolean referenced;
+
+        Node(String key, int hash, CompiledExpression expression, long weight)
+        {
+            this.key = key;
+            this.hash = hash;
+            this.expression = expression;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,790 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Оптимизатор скомпилированных выражений: свертка констант и устранение общих подвыражений.
+ *
+ * <p>Программа в обратной польской записи переводится в ориентированный ациклический граф:
+ * одинаковые подвыражения (тот же оператор над теми же аргументами) становятся одним узлом.
+ * При построении графа выполняются две оптимизации:
+ * <ul>
+ *   <li>Свертка констант: оператор или функция, все аргументы которых - числа, вычисляется сразу,
+ *       например {@code 2*3*x} превращается в {@code 6*x}, а {@code sin(1)} - в число.
+ *       Операции, завершающиеся ошибкой (например, {@code 1/0}), не сворачиваются,
+ *       чтобы ошибка возникла при вычислении, как и без оптимизации.</li>
+ *   <li>Устранение общих подвыражений: в {@code sin(a)*sin(a) + cos(a)*cos(a)} каждая функция
+ *       вычисляется один раз, ее значение сохраняется и затем используется повторно.</li>
+ * </ul>
+ *
+ * <p>Операции не переставляются (сложение чисел с плавающей точкой неассоциативно), поэтому
+ * результат оптимизированного выражения побитово совпадает с результатом исходного.
+ *
+ * <p>Дополнительно можно включить упрощение операций ({@link #optimize(CompiledExpression, boolean)}),
+ * результат которого совпадает с исходным не побитово, а с указанной ниже точностью:
+ * <ul>
+ *   <li>Степень с целым показателем от 2 до {@value #MAX_INTEGER_POWER} вычисляется умножениями
+ *       (возведение в квадрат), {@code x^1} заменяется на {@code x}, {@code x^0} - на 1 (только если
+ *       основание - число или переменная, чтобы не потерять ошибку в вычислении основания),
+ *       а {@code x^0.5} - на квадратный корень с теми же особыми случаями, что у {@link Math#pow}.
+ *       Для нормализованных результатов относительное расхождение с {@link Math#pow} при показателе
+ *       {@code n} не превышает {@code n·2⁻⁵²}. Отрицательные и дробные показатели не меняются.</li>
+ *   <li>Многочлен от одной переменной, записанный суммой одночленов ({@code a*x^3 + b*x^2 + c*x + d}),
+ *       вычисляется по схеме Горнера {@code ((a*x + b)*x + c)*x + d}. Одночлены одной степени объединяются.
+ *       Расхождение с почленным вычислением многочлена степени {@code n} не превышает
+ *       {@code 2n·2⁻⁵²·Σ|aₖ·xᵏ|} - той же величины, что и погрешность самого почленного вычисления.
+ *       Произведения многочленов ({@code (x + 1)*(x - 1)}) не раскрываются, чтобы не ухудшить точность.</li>
+ * </ul>
+ * Эти оценки относятся к конечным результатам. Бесконечности и NaN могут получаться иначе: например,
+ * {@code x^3 + x^2 - x^2 + x} при {@code x = +∞} почленно дает NaN ({@code ∞ - ∞}), а после объединения
+ * одночленов - {@code +∞}. Поэтому упрощение операций не включается ни {@link Calculator}, ни
+ * {@link ExpressionCache}: его нужно запросить явно.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * ExpressionOptimizer.Result result = ExpressionOptimizer.optimize(Calculator.compile("sin(a)*sin(a) + 2*3"));
+ * CompiledExpression optimized = result.getExpression();
+ * int removed = result.getRemovedNodes();
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class ExpressionOptimizer
+{
+    /** Наибольший целый показатель степени, заменяемой умножениями */
+    static final int MAX_INTEGER_POWER = 16;
+
+    /** Наибольшая степень многочлена, вычисляемого по схеме Горнера */
+    private static final int MAX_DEGREE = 32;
+
+    private ExpressionOptimizer()
+    {
+    }
+
+    /**
+     * Результат оптимизации выражения.
+     */
+    public static final class Result
+    {
+        /** Оптимизированное выражение */
+        private final CompiledExpression expression;
+
+        /** Количество команд до и после оптимизации */
+        private final int originalNodes, optimizedNodes;
+
+        /** Количество команд, удаленных сверткой констант */
+        private final int foldedNodes;
+
+        /** Количество общих подвыражений */
+        private final int sharedSubexpressions;
+
+        /** Количество упрощенных степеней и многочленов */
+        private final int strengthReductions;
+
+        Result(CompiledExpression expression, int originalNodes, int optimizedNodes, int foldedNodes,
+               int sharedSubexpressions, int strengthReductions)
+        {
+            this.expression = expression;
+            this.originalNodes = originalNodes;
+            this.optimizedNodes = optimizedNodes;
+            this.foldedNodes = foldedNodes;
+            this.sharedSubexpressions = sharedSubexpressions;
+            this.strengthReductions = strengthReductions;
+        }
+
+        /**
+         * Возвращает оптимизированное выражение.
+         *
+         * @return оптимизированное выражение (исходное, если оптимизировать нечего)
+         */
+        public CompiledExpression getExpression()
+        {
+            return expression;
+        }
+
+        /**
+         * Возвращает, на сколько уменьшилось количество команд, выполняемых при вычислении.
+         * Команды сохранения общих подвыражений не учитываются: значение остается на стеке и только копируется.
+         *
+         * @return количество удаленных команд
+         */
+        public int getRemovedNodes()
+        {
+            return originalNodes - optimizedNodes;
+        }
+
+        /**
+         * Возвращает количество команд, удаленных сверткой констант.
+         *
+         * @return количество свернутых команд
+         */
+        public int getFoldedNodes()
+        {
+            return foldedNodes;
+        }
+
+        /**
+         * Возвращает количество подвыражений, которые вычисляются один раз и используются повторно.
+         *
+         * @return количество общих подвыражений
+         */
+        public int getSharedSubexpressions()
+        {
+            return sharedSubexpressions;
+        }
+
+        /**
+         * Возвращает количество степеней, замененных умножениями или корнем, и многочленов,
+         * переведенных в схему Горнера.
+         *
+         * @return количество упрощений
+         */
+        public int getStrengthReductions()
+        {
+            return strengthReductions;
+        }
+    }
+
+    /**
+     * Оптимизирует выражение, сохраняя побитово тот же результат.
+     *
+     * @param expression скомпилированное выражение
+     * @return оптимизированное выражение и статистика оптимизации
+     */
+    public static Result optimize(CompiledExpression expression)
+    {
+        return optimize(expression, false);
+    }
+
+    /**
+     * Оптимизирует выражение.
+     *
+     * @param expression скомпилированное выражение
+     * @param reduceStrength true, чтобы упрощать степени и многочлены (результат совпадает с исходным
+     *                       с точностью, указанной в описании класса)
+     * @return оптимизированное выражение и статистика оптимизации
+     */
+    public static Result optimize(CompiledExpression expression, boolean reduceStrength)
+    {
+        Graph graph = new Graph(expression.kinds.length, reduceStrength);
+        int folded = graph.build(expression);
+        if (reduceStrength)
+            graph.rewritePolynomials();
+        return graph.emit(expression, folded);
+    }
+
+    /**
+     * Граф выражения с общими узлами для одинаковых подвыражений.
+     */
+    private static final class Graph
+    {
+        /** Отсутствующий узел */
+        private static final int NONE = -1;
+
+        /** Аргументы узла-листа */
+        private static final int[] NO_ARGUMENTS = new int[0];
+
+        /** Признак упрощения степеней и многочленов */
+        private final boolean reduceStrength;
+
+        /** Виды узлов (виды команд) */
+        private int[] kinds;
+
+        /** Значения констант */
+        private double[] values;
+
+        /** Номера слотов переменных и коды операций */
+        private int[] slots;
+
+        /** Функции узлов-вызовов */
+        private MathFunction[] functions;
+
+        /** Аргументы узлов в порядке вычисления */
+        private int[][] arguments;
+
+        /** Коэффициенты многочлена, который вычисляет узел, или null (заполняются при упрощении) */
+        private double[][] polynomials;
+
+        /** Слот переменной многочлена (NONE для многочлена без переменной) */
+        private int[] polynomialSlots;
+
+        /** Количество узлов */
+        private int count;
+
+        /** Номер узла по его содержимому */
+        private final Map<NodeKey, Integer> index = new HashMap<>();
+
+        /** Корень графа */
+        private int root;
+
+        /** Количество упрощенных степеней и многочленов */
+        private int reductions;
+
+        Graph(int capacity, boolean reduceStrength)
+        {
+            int size = Math.max(capacity, 1);
+            this.reduceStrength = reduceStrength;
+            kinds = new int[size];
+            values = new double[size];
+            slots = new int[size];
+            functions = new MathFunction[size];
+            arguments = new int[size][];
+            polynomials = new double[size][];
+            polynomialSlots = new int[size];
+        }
+
+        /**
+         * Строит граф по программе, сворачивая константы и объединяя одинаковые узлы.
+         *
+         * @param expression скомпилированное выражение
+         * @return количество команд, удаленных сверткой констант
+         */
+        int build(CompiledExpression expression)
+        {
+            int[] stack = new int[Math.max(expression.maxStack, 1)];
+            int[] temporaries = new int[expression.shape.temporaryCount];
+            int top = 0, folded = 0;
+
+            for (int i = 0; i < expression.kinds.length; i++)
+            {
+                int kind = expression.kinds[i];
+                switch (kind)
+                {
+                    case CompiledExpression.LITERAL -> stack[top++] = literal(expression.values[i]);
+                    case CompiledExpression.VARIABLE, CompiledExpression.NEGATED_VARIABLE ->
+                            stack[top++] = node(kind, 0, expression.slots[i], null, NO_ARGUMENTS);
+                    case CompiledExpression.LOAD_TEMPORARY -> stack[top++] = temporaries[expression.slots[i]];
+                    case CompiledExpression.STORE_TEMPORARY -> temporaries[expression.slots[i]] = stack[top - 1];
+                    default ->
+                    {
+                        int operator = expression.slots[i];
+                        MathFunction function = expression.functions[i];
+                        int arity = kind == CompiledExpression.UNARY_OPERATOR ? 1
+                                : kind == CompiledExpression.BINARY_OPERATOR ? 2 : function.arity;
+                        top -= arity;
+                        int[] operands = Arrays.copyOfRange(stack, top, top + arity);
+
+                        int result = fold(kind, operator, function, operands);
+                        if (result != NONE)
+                            folded += arity;
+                        else if (reduceStrength && kind == CompiledExpression.BINARY_OPERATOR
+                                && operator == CompiledExpression.POWER
+                                && kinds[operands[1]] == CompiledExpression.LITERAL
+                                && (result = power(operands[0], values[operands[1]])) != NONE)
+                            ++reductions;
+                        else
+                            result = node(kind, 0, operator, function, operands);
+                        stack[top++] = result;
+                    }
+                }
+            }
+            root = stack[0];
+            return folded;
+        }
+
+        /**
+         * Заменяет степень с постоянным показателем более дешевыми операциями.
+         *
+         * @param base основание
+         * @param exponent показатель
+         * @return узел-результат или {@link #NONE}, если показатель не подходит
+         */
+        private int power(int base, double exponent)
+        {
+            // Основание отбрасывается только там, где его вычисление не может завершиться ошибкой
+            if (exponent == 0)
+                return kinds[base] == CompiledExpression.LITERAL || kinds[base] == CompiledExpression.VARIABLE
+                        || kinds[base] == CompiledExpression.NEGATED_VARIABLE ? literal(1) : NONE;
+            if (exponent == 0.5)
+                return node(CompiledExpression.UNARY_OPERATOR, 0, CompiledExpression.POW_HALF, null, new int[] {base});
+            if (exponent != Math.rint(exponent) || exponent < 1 || exponent > MAX_INTEGER_POWER)
+                return NONE;
+
+            // Возведение в квадрат: x^13 = x * x^4 * x^8
+            int n = (int) exponent, result = NONE, square = base;
+            while (true)
+            {
+                if ((n & 1) != 0)
+                    result = result == NONE ? square : binary(CompiledExpression.MULTIPLY, result, square);
+                n >>= 1;
+                if (n == 0)
+                    return result;
+                square = binary(CompiledExpression.MULTIPLY, square, square);
+            }
+        }
+
+        /**
+         * Заменяет многочлены от одной переменной, записанные суммой одночленов, схемой Горнера.
+         *
+         * <p>Узлы графа создаются после своих аргументов, поэтому обход по возрастанию номеров
+         * перестраивает узел, когда его аргументы уже перестроены. Многочлен заменяется целиком
+         * в узле-границе - корне графа или аргументе узла, который многочленом не является.
+         */
+        void rewritePolynomials()
+        {
+            int size = count;
+            boolean[] reachable = new boolean[size], boundary = new boolean[size];
+            int[] pending = new int[size + 1];
+            int top = 0;
+            pending[top++] = root;
+            reachable[root] = true;
+            boundary[root] = true;
+            while (top > 0)
+            {
+                int node = pending[--top];
+                for (int child : arguments[node])
+                {
+                    if (polynomials[node] == null)
+                        boundary[child] = true;
+                    if (!reachable[child])
+                    {
+                        reachable[child] = true;
+                        pending[top++] = child;
+                    }
+                }
+            }
+
+            int[] mapped = new int[size];
+            for (int node = 0; node < size; node++)
+            {
+                if (!reachable[node])
+                    continue;
+                if (boundary[node] && worthHorner(polynomials[node]))
+                {
+                    mapped[node] = horner(polynomials[node], polynomialSlots[node]);
+                    ++reductions;
+                }
+                else if (arguments[node].length == 0)
+                    mapped[node] = node;
+                else
+                {
+                    int[] operands = new int[arguments[node].length];
+                    for (int k = 0; k < operands.length; k++)
+                        operands[k] = mapped[arguments[node][k]];
+                    mapped[node] = node(kinds[node], values[node], slots[node], functions[node], operands);
+                }
+            }
+            root = mapped[root];
+        }
+
+        /**
+         * Проверяет, выгодно ли вычислять многочлен по схеме Горнера: степень не ниже второй,
+         * хотя бы два одночлена с переменной и не слишком много пропущенных степеней.
+         *
+         * @param coefficients коэффициенты многочлена или null
+         * @return true если схема Горнера выгоднее
+         */
+        private static boolean worthHorner(double[] coefficients)
+        {
+            if (coefficients == null || coefficients.length < 3)
+                return false;
+            int terms = terms(coefficients) - (coefficients[0] != 0 ? 1 : 0);
+            return terms >= 2 && coefficients.length - 1 <= 2 * terms;
+        }
+
+        /**
+         * Строит вычисление многочлена по схеме Горнера.
+         *
+         * @param coefficients коэффициенты многочлена по возрастанию степеней
+         * @param slot слот переменной
+         * @return узел-результат
+         */
+        private int horner(double[] coefficients, int slot)
+        {
+            int x = node(CompiledExpression.VARIABLE, 0, slot, null, NO_ARGUMENTS);
+            int degree = coefficients.length - 1;
+            int result = coefficients[degree] == 1 ? x
+                    : binary(CompiledExpression.MULTIPLY, literal(coefficients[degree]), x);
+            for (int k = degree - 1; k >= 0; k--)
+            {
+                if (coefficients[k] != 0)
+                    result = binary(CompiledExpression.ADD, result, literal(coefficients[k]));
+                if (k > 0)
+                    result = binary(CompiledExpression.MULTIPLY, result, x);
+            }
+            return result;
+        }
+
+        /**
+         * Определяет, вычисляет ли узел многочлен от одной переменной, записанный суммой одночленов.
+         *
+         * @param node номер нового узла
+         */
+        private void describePolynomial(int node)
+        {
+            double[] result = null;
+            int slot = NONE;
+            switch (kinds[node])
+            {
+                case CompiledExpression.LITERAL -> result = new double[] {values[node]};
+                case CompiledExpression.VARIABLE, CompiledExpression.NEGATED_VARIABLE ->
+                {
+                    result = new double[] {0, kinds[node] == CompiledExpression.VARIABLE ? 1 : -1};
+                    slot = slots[node];
+                }
+                case CompiledExpression.UNARY_OPERATOR ->
+                {
+                    int argument = arguments[node][0];
+                    if (slots[node] == CompiledExpression.NEGATE && polynomials[argument] != null)
+                    {
+                        result = polynomials[argument].clone();
+                        for (int k = 0; k < result.length; k++)
+                            result[k] = -result[k];
+                        slot = polynomialSlots[argument];
+                    }
+                }
+                case CompiledExpression.BINARY_OPERATOR ->
+                {
+                    int left = arguments[node][0], right = arguments[node][1];
+                    double[] a = polynomials[left], b = polynomials[right];
+                    int slotA = polynomialSlots[left], slotB = polynomialSlots[right];
+                    if (a == null || b == null || (slotA != NONE && slotB != NONE && slotA != slotB))
+                        break;
+                    slot = slotA != NONE ? slotA : slotB;
+                    switch (slots[node])
+                    {
+                        case CompiledExpression.ADD, CompiledExpression.SUBTRACT ->
+                        {
+                            boolean add = slots[node] == CompiledExpression.ADD;
+                            result = Arrays.copyOf(a, Math.max(a.length, b.length));
+                            for (int k = 0; k < b.length; k++)
+                                result[k] = add ? result[k] + b[k] : result[k] - b[k];
+                        }
+                        case CompiledExpression.MULTIPLY ->
+                        {
+                            // Перемножаются только одночлены: раскрытие скобок может ухудшить точность
+                            if (terms(a) > 1 || terms(b) > 1 || a.length + b.length - 1 > MAX_DEGREE + 1)
+                                break;
+                            result = new double[a.length + b.length - 1];
+                            for (int i = 0; i < a.length; i++)
+                                for (int j = 0; j < b.length; j++)
+                                    if (a[i] != 0 && b[j] != 0)
+                                        result[i + j] = a[i] * b[j];
+                        }
+                        default -> { }
+                    }
+                }
+                default -> { }
+            }
+            if (result != null)
+            {
+                // Старшие нулевые коэффициенты (после сокращения одночленов) отбрасываются
+                int length = result.length;
+                while (length > 1 && result[length - 1] == 0)
+                    --length;
+                result = length > MAX_DEGREE + 1 ? null : Arrays.copyOf(result, length);
+            }
+            polynomials[node] = result;
+            polynomialSlots[node] = slot;
+        }
+
+        /**
+         * Возвращает количество ненулевых коэффициентов многочлена.
+         *
+         * @param coefficients коэффициенты многочлена
+         * @return количество одночленов
+         */
+        private static int terms(double[] coefficients)
+        {
+            int terms = 0;
+            for (double coefficient : coefficients)
+                if (coefficient != 0)
+                    ++terms;
+            return terms;
+        }
+
+        /**
+         * Переводит граф обратно в программу: первое вычисление общего подвыражения сохраняет значение,
+         * последующие - читают сохраненное. Обход итеративный, чтобы глубина выражения не была ограничена стеком потока.
+         *
+         * @param expression исходное выражение
+         * @param folded количество команд, удаленных сверткой констант
+         * @return результат оптимизации
+         */
+        Result emit(CompiledExpression expression, int folded)
+        {
+            // Количество использований узлов (листья не сохраняются - их чтение не дороже чтения сохраненного значения)
+            int[] uses = new int[count];
+            boolean[] visited = new boolean[count];
+            int[] pending = new int[count + 1];
+            int size = 0;
+            pending[size++] = root;
+            visited[root] = true;
+            while (size > 0)
+            {
+                int node = pending[--size];
+                for (int child : arguments[node])
+                {
+                    ++uses[child];
+                    if (!visited[child])
+                    {
+                        visited[child] = true;
+                        pending[size++] = child;
+                    }
+                }
+            }
+
+            int[] temporaryOf = new int[count];
+            Arrays.fill(temporaryOf, NONE);
+            int temporaries = 0;
+
+            Program program = new Program(expression.kinds.length);
+            int[] nodes = new int[16];
+            boolean[] expanded = new boolean[16];
+            size = 0;
+            nodes[size] = root;
+            expanded[size++] = false;
+
+            while (size > 0)
+            {
+                int node = nodes[--size];
+                boolean done = expanded[size];
+                if (!done && temporaryOf[node] != NONE)
+                {
+                    program.add(CompiledExpression.LOAD_TEMPORARY, 0, temporaryOf[node], null);
+                    continue;
+                }
+                int[] operands = arguments[node];
+                if (!done && operands.length > 0)
+                {
+                    // Сначала аргументы (первый вычисляется первым), затем сам узел
+                    if (size + operands.length + 1 > nodes.length)
+                    {
+                        nodes = Arrays.copyOf(nodes, 2 * (size + operands.length + 1));
+                        expanded = Arrays.copyOf(expanded, nodes.length);
+                    }
+                    nodes[size] = node;
+                    expanded[size++] = true;
+                    for (int k = operands.length - 1; k >= 0; k--)
+                    {
+                        nodes[size] = operands[k];
+                        expanded[size++] = false;
+                    }
+                    continue;
+                }
+                program.add(kinds[node], values[node], slots[node], functions[node]);
+                if (operands.length > 0 && uses[node] > 1)
+                {
+                    temporaryOf[node] = temporaries++;
+                    program.add(CompiledExpression.STORE_TEMPORARY, 0, temporaryOf[node], null);
+                }
+            }
+
+            int original = expression.kinds.length;
+            if (folded == 0 && temporaries == 0 && reductions == 0)
+                return new Result(expression, original, original, 0, 0, 0);
+
+            String[] variableNames = new String[expression.getVariableCount()];
+            for (int slot = 0; slot < variableNames.length; slot++)
+                variableNames[slot] = expression.variableName(slot);
+            ExpressionShape shape = ExpressionShape.of(Arrays.copyOf(program.kinds, program.count),
+                    Arrays.copyOf(program.slots, program.count), Arrays.copyOf(program.functions, program.count),
+                    program.maxStack, variableNames);
+            CompiledExpression optimized = new CompiledExpression(expression.toString(), shape,
+                    Arrays.copyOf(program.values, program.count));
+            return new Result(optimized, original, program.count - temporaries, folded, temporaries, reductions);
+        }
+
+        /**
+         * Пытается свернуть операцию над константами.
+         *
+         * @param kind вид команды
+         * @param operator код операции
+         * @param function функция команды вызова
+         * @param operands аргументы
+         * @return узел-константа или {@link #NONE}, если свертка невозможна
+         */
+        private int fold(int kind, int operator, MathFunction function, int[] operands)
+        {
+            double[] constants = new double[Math.max(operands.length, 2)];
+            for (int k = 0; k < operands.length; k++)
+            {
+                if (kinds[operands[k]] != CompiledExpression.LITERAL)
+                    return NONE;
+                constants[k] = values[operands[k]];
+            }
+            try
+            {
+                if (kind == CompiledExpression.CALL)
+                {
+                    function.call(constants, operands.length);
+                    return literal(constants[0]);
+                }
+                return literal(CompiledExpression.apply(operator, constants[0], constants[1]));
+            }
+            catch (ArithmeticException | IllegalArgumentException e)
+            {
+                return NONE;
+            }
+        }
+
+        /**
+         * Возвращает узел-константу.
+         *
+         * @param value значение константы
+         * @return номер узла
+         */
+        private int literal(double value)
+        {
+            return node(CompiledExpression.LITERAL, value, 0, null, NO_ARGUMENTS);
+        }
+
+        /**
+         * Возвращает узел бинарного оператора.
+         *
+         * @param operator код операции
+         * @param left левый аргумент
+         * @param right правый аргумент
+         * @return номер узла
+         */
+        private int binary(int operator, int left, int right)
+        {
+            return node(CompiledExpression.BINARY_OPERATOR, 0, operator, null, new int[] {left, right});
+        }
+
+        /**
+         * Возвращает узел с заданным содержимым, создавая его только если такого узла еще нет.
+         *
+         * @param kind вид узла
+         * @param value значение константы
+         * @param slot номер слота переменной или код операции
+         * @param function функция узла-вызова
+         * @param operands аргументы
+         * @return номер узла
+         */
+        private int node(int kind, double value, int slot, MathFunction function, int[] operands)
+        {
+            NodeKey key = new NodeKey(kind, Double.doubleToLongBits(value), slot, function, operands);
+            Integer existing = index.get(key);
+            if (existing != null)
+                return existing;
+
+            if (count == kinds.length)
+            {
+                kinds = Arrays.copyOf(kinds, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+                slots = Arrays.copyOf(slots, count * 2);
+                functions = Arrays.copyOf(functions, count * 2);
+                arguments = Arrays.copyOf(arguments, count * 2);
+                polynomials = Arrays.copyOf(polynomials, count * 2);
+                polynomialSlots = Arrays.copyOf(polynomialSlots, count * 2);
+            }
+            kinds[count] = kind;
+            values[count] = value;
+            slots[count] = slot;
+            functions[count] = function;
+            arguments[count] = operands;
+            index.put(key, count);
+            if (reduceStrength)
+                describePolynomial(count);
+            return count++;
+        }
+    }
+
+    /**
+     * Содержимое узла графа для поиска одинаковых узлов.
+     */
+    private static final class NodeKey
+    {
+        /** Вид узла и номер слота или код операции */
+        private final int kind, slot;
+
+        /** Биты значения константы */
+        private final long valueBits;
+
+        /** Функция узла-вызова */
+        private final MathFunction function;
+
+        /** Аргументы узла */
+        private final int[] operands;
+
+        /** Хэш ключа */
+        private final int hash;
+
+        NodeKey(int kind, long valueBits, int slot, MathFunction function, int[] operands)
+        {
+            this.kind = kind;
+            this.valueBits = valueBits;
+            this.slot = slot;
+            this.function = function;
+            this.operands = operands;
+            this.hash = ((31 * kind + Long.hashCode(valueBits)) * 31 + slot) * 31 + Arrays.hashCode(operands)
+                    + System.identityHashCode(function);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof NodeKey other && kind == other.kind && valueBits == other.valueBits
+                    && slot == other.slot && function == other.function && Arrays.equals(operands, other.operands);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Формируемая программа в обратной польской записи.
+     */
+    private static final class Program
+    {
+        /** Виды команд */
+        private int[] kinds;
+
+        /** Значения констант */
+        private double[] values;
+
+        /** Номера слотов и коды операций */
+        private int[] slots;
+
+        /** Функции команд вызова */
+        private MathFunction[] functions;
+
+        /** Количество команд */
+        private int count;
+
+        /** Текущая и максимальная глубина стека значений */
+        private int depth, maxStack;
+
+        Program(int capacity)
+        {
+            int size = Math.max(capacity, 1);
+            kinds = new int[size];
+            values = new double[size];
+            slots = new int[size];
+            functions = new MathFunction[size];
+        }
+
+        void add(int kind, double value, int slot, MathFunction function)
+        {
+            if (count == kinds.length)
+            {
+                kinds = Arrays.copyOf(kinds, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+                slots = Arrays.copyOf(slots, count * 2);
+                functions = Arrays.copyOf(functions, count * 2);
+            }
+            kinds[count] = kind;
+            values[count] = value;
+            slots[count] = slot;
+            functions[count] = function;
+            ++count;
+
+            switch (kind)
+            {
+                case CompiledExpression.BINARY_OPERATOR -> --depth;
+                case CompiledExpression.CALL -> depth -= function.arity - 1;
+                case CompiledExpression.UNARY_OPERATOR, CompiledExpression.STORE_TEMPORARY -> { }
+                default -> maxStack = Math.max(maxStack, ++depth);
+            }
+        }
+    }
+}
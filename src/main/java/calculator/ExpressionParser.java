@@ -0,0 +1,606 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Однопроходный разборщик математических выражений.
+ *
+ * <p>Строка просматривается один раз по индексу, без выделения подстрок для вложенных скобок
+ * и без рекурсии: открытые скобки, модули и ожидающие операторы хранятся в явном стеке
+ * (алгоритм сортировочной станции). Поэтому время и память разбора линейны по длине выражения,
+ * а глубина вложенности ограничена только памятью.
+ *
+ * <p>Результат разбора - программа в обратной польской записи. Функции разрешаются по набору функций
+ * ({@link FunctionRegistry}) сразу при разборе: встроенные становятся командами с кодом операции,
+ * остальные - командами вызова со ссылкой на функцию, поэтому при вычислении строки не сравниваются.
+ * Унарный минус перед функцией, скобками или модулем - отдельная команда {@link CompiledExpression#NEGATE}.
+ * Группы без переменных сворачиваются в число сразу при разборе. Числовые константы программы отделяются от ее
+ * структуры ({@link ExpressionShape}), которая разделяется выражениями, различающимися только константами.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class ExpressionParser
+{
+    /** Элемент стека операторов - бинарный оператор */
+    private static final int BINARY = 0;
+
+    /** Элемент стека операторов - функция одного аргумента, ожидающая аргумент */
+    private static final int PREFIX = 1;
+
+    /** Элемент стека операторов - начало выражения в скобках */
+    private static final int GROUP = 2;
+
+    /** Элемент стека операторов - начало выражения под модулем */
+    private static final int ABS = 3;
+
+    /** Элемент стека операторов - начало списка аргументов функции */
+    private static final int CALL = 4;
+
+    /** Исходная строка выражения */
+    private final String source;
+
+    /** Набор функций, доступных в выражении */
+    private final FunctionRegistry registry;
+
+    /** Символы выражения без пробельных символов */
+    private final char[] chars;
+
+    /** Количество значимых символов */
+    private final int length;
+
+    /** Виды команд результирующей программы */
+    private int[] kinds = new int[16];
+
+    /** Значения числовых констант */
+    private double[] values = new double[16];
+
+    /** Номера слотов переменных и коды операций */
+    private int[] slots = new int[16];
+
+    /** Функции команд вызова */
+    private MathFunction[] functions = new MathFunction[16];
+
+    /** Младшие части числовых констант (только при разборе для вычисления с двойной-двойной точностью) */
+    private double[] lows;
+
+    /** Количество команд */
+    private int count;
+
+    /** Текущая и максимальная глубина стека значений программы */
+    private int stackDepth, maxStack;
+
+    /** Виды элементов стека операторов */
+    private int[] operatorKinds = new int[8];
+
+    /** Коды бинарных операторов в стеке */
+    private int[] operatorCodes = new int[8];
+
+    /** Функции в стеке (для функций, ожидающих аргумент, и списков аргументов) */
+    private MathFunction[] operatorFunctions = new MathFunction[8];
+
+    /** Признаки унарного минуса перед функцией или группой */
+    private boolean[] operatorNegated = new boolean[8];
+
+    /** Для списка аргументов - количество уже прочитанных аргументов */
+    private int[] argumentCounts = new int[8];
+
+    /** Для начала группы - индекс первой команды группы */
+    private int[] groupStarts = new int[8];
+
+    /** Для начала группы - количество переменных на момент ее открытия */
+    private int[] groupVariables = new int[8];
+
+    /** Размер стека операторов */
+    private int operatorCount;
+
+    /** Позиции начал открытых групп в стеке операторов */
+    private int[] groups = new int[8];
+
+    /** Глубина вложенности открытых групп */
+    private int depth;
+
+    /** Счетчик переменных в выражении */
+    private int countVariables;
+
+    /** Номера слотов переменных по именам, в порядке первого появления */
+    private final Map<String, Integer> variables = new LinkedHashMap<>();
+
+    /** Начало и конец предыдущей лексемы (для сообщений об ошибках) */
+    private int previousStart, previousEnd;
+
+    /**
+     * Создает разборщик для выражения.
+     *
+     * @param expression математическое выражение для анализа
+     * @param registry набор функций
+     * @param extended признак разбора для вычисления с двойной-двойной точностью
+     */
+    private ExpressionParser(String expression, FunctionRegistry registry, boolean extended)
+    {
+        this.source = expression;
+        this.registry = registry;
+        this.lows = extended ? new double[16] : null;
+        char[] buffer = new char[expression.length()];
+        int size = 0;
+        for (int i = 0; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r')
+                buffer[size++] = c;
+        }
+        this.chars = buffer;
+        this.length = size;
+    }
+
+    /**
+     * Разбирает выражение и возвращает его скомпилированное представление.
+     *
+     * @param expression математическое выражение для анализа
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки или недопустимые символы
+     */
+    static CompiledExpression parse(String expression)
+    {
+        return parse(expression, FunctionRegistry.standard());
+    }
+
+    /**
+     * Разбирает выражение с заданным набором функций.
+     *
+     * @param expression математическое выражение для анализа
+     * @param registry набор функций
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки, недопустимые символы
+     *                                  или неверное количество аргументов функции
+     */
+    static CompiledExpression parse(String expression, FunctionRegistry registry)
+    {
+        return parse(expression, registry, false);
+    }
+
+    /**
+     * Разбирает выражение с заданным набором функций, при необходимости - для вычисления
+     * с двойной-двойной точностью: тогда константы сохраняют младшие части, а группы без переменных
+     * не сворачиваются в число (свертка выполняется в обычной точности).
+     *
+     * @param expression математическое выражение для анализа
+     * @param registry набор функций
+     * @param extended признак разбора для вычисления с двойной-двойной точностью
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки, недопустимые символы
+     *                                  или неверное количество аргументов функции
+     */
+    static CompiledExpression parse(String expression, FunctionRegistry registry, boolean extended)
+    {
+        ExpressionParser parser = new ExpressionParser(expression, registry, extended);
+        parser.parseExpression();
+        ExpressionShape shape = ExpressionShape.of(Arrays.copyOf(parser.kinds, parser.count),
+                Arrays.copyOf(parser.slots, parser.count), Arrays.copyOf(parser.functions, parser.count),
+                parser.maxStack, parser.variables.keySet().toArray(new String[0]));
+        return new CompiledExpression(parser.source, shape, Arrays.copyOf(parser.values, parser.count),
+                extended ? Arrays.copyOf(parser.lows, parser.count) : null);
+    }
+
+    /**
+     * Анализирует выражение и переводит его в обратную польскую запись.
+     *
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки или недопустимые символы
+     */
+    private void parseExpression()
+    {
+        boolean expectOperand = true, negate = false, levelEmpty = true;
+        int i = 0;
+
+        while (i < length)
+        {
+            char c = chars[i];
+            int start = i;
+
+            // Обработка числа
+            if (Character.isDigit(c) || c == '.')
+            {
+                if (!expectOperand)
+                    throw new IllegalArgumentException("Incorrect use of operators was encountered in the expression");
+                boolean dot = false;
+                while (i < length && (Character.isDigit(chars[i]) || chars[i] == '.'))
+                {
+                    if (chars[i] == '.')
+                    {
+                        if (dot)
+                            throw new IllegalArgumentException("Multiple dots in a number");
+                        dot = true;
+                    }
+                    ++i;
+                }
+                double number = parseNumber(start, i);
+                emit(CompiledExpression.LITERAL, negate ? -number : number, 0, null);
+                if (lows != null && Double.isFinite(number))
+                {
+                    // Остаток десятичной записи, не представимый в double
+                    double low = new BigDecimal(chars, start, i - start).subtract(new BigDecimal(number)).doubleValue();
+                    lows[count - 1] = negate ? -low : low;
+                }
+                completeOperand();
+                negate = false;
+                expectOperand = false;
+                levelEmpty = false;
+            }
+            // Функция или переменная
+            else if (isLetter(c))
+            {
+                while (i < length && isLetter(chars[i]))
+                    ++i;
+                String name = new String(chars, start, i - start);
+
+                MathFunction function = registry.get(name);
+                // Имя функции нескольких аргументов без скобок - это переменная (например, min + 1)
+                if (function != null && function.arity != 1 && (i == length || chars[i] != '('))
+                    function = null;
+                if (function != null)
+                {
+                    if (!expectOperand)
+                        throw new IllegalArgumentException("Invalid operator sequence: " + previous() + name);
+                    if (function.arity == 1)
+                        pushOperator(PREFIX, 0, function, negate);
+                    else
+                    {
+                        openGroup(CALL, function, negate);
+                        levelEmpty = true;
+                        ++i;
+                    }
+                    negate = false;
+                }
+                else
+                {
+                    if (!expectOperand)
+                        throw new IllegalArgumentException("Incorrect use of a variable");
+                    Integer slot = variables.get(name);
+                    if (slot == null)
+                    {
+                        slot = variables.size();
+                        variables.put(name, slot);
+                    }
+                    emit(negate ? CompiledExpression.NEGATED_VARIABLE : CompiledExpression.VARIABLE, 0, slot, null);
+                    completeOperand();
+                    ++countVariables;
+                    negate = false;
+                    expectOperand = false;
+                    levelEmpty = false;
+                }
+            }
+            // Обработка унарного минуса
+            else if (c == '-' && expectOperand)
+            {
+                if (negate)
+                    throw new IllegalArgumentException("Invalid operator sequence: " + previous() + c);
+                negate = true;
+                ++i;
+            }
+            // Обработка операций
+            else if (c == '*' || c == '/' || c == '-' || c == '+' || c == '^' || c == '!')
+            {
+                if (expectOperand)
+                {
+                    if (levelEmpty)
+                        throw new IllegalArgumentException("An expression cannot start with an operator " + c);
+                    throw new IllegalArgumentException("Invalid operator sequence: " + previous() + c);
+                }
+                if (c == '!')
+                    emit(CompiledExpression.UNARY_OPERATOR, 0, registry.hasGammaFactorial()
+                            ? CompiledExpression.GAMMA_FACTORIAL : CompiledExpression.FACTORIAL, null);
+                else
+                {
+                    int operator = switch (c)
+                    {
+                        case '+' -> CompiledExpression.ADD;
+                        case '-' -> CompiledExpression.SUBTRACT;
+                        case '*' -> CompiledExpression.MULTIPLY;
+                        case '/' -> CompiledExpression.DIVIDE;
+                        default -> CompiledExpression.POWER;
+                    };
+                    popOperators(precedence(operator), c == '^');
+                    pushOperator(BINARY, operator, null, false);
+                    expectOperand = true;
+                }
+                ++i;
+            }
+            // Начало выражения в скобках или модуле
+            else if (c == '(' || (c == '|' && expectOperand))
+            {
+                if (!expectOperand)
+                    throw new IllegalArgumentException("Incorrect use of operators was encountered in the expression");
+                openGroup(c == '(' ? GROUP : ABS, null, negate);
+                negate = false;
+                levelEmpty = true;
+                ++i;
+            }
+            // Конец выражения в скобках или модуле
+            else if (c == ')' || c == '|')
+            {
+                boolean abs = c == '|';
+                if (depth == 0 || (operatorKinds[groups[depth - 1]] == ABS) != abs)
+                {
+                    if (abs)
+                        throw new IllegalArgumentException("Met '|', for which there is no '|'");
+                    throw new IllegalArgumentException("Unknown symbol: " + c);
+                }
+                if (expectOperand)
+                    throw new IllegalArgumentException("Incorrect use of operators was encountered in the expression");
+                closeGroup();
+                levelEmpty = false;
+                ++i;
+            }
+            // Разделитель аргументов функции
+            else if (c == ',')
+            {
+                if (depth == 0 || operatorKinds[groups[depth - 1]] != CALL)
+                    throw new IllegalArgumentException("Met ',' outside of function arguments");
+                if (expectOperand)
+                    throw new IllegalArgumentException("Incorrect use of operators was encountered in the expression");
+                popOperators(0, false);
+                int group = groups[depth - 1];
+                MathFunction function = operatorFunctions[group];
+                if (++argumentCounts[group] >= function.arity)
+                    throw new IllegalArgumentException("Function " + function.name + " expects " + function.arity
+                            + " arguments");
+                expectOperand = true;
+                levelEmpty = true;
+                ++i;
+            }
+            else
+                throw new IllegalArgumentException("Unknown symbol: " + c);
+
+            previousStart = start;
+            previousEnd = i;
+        }
+
+        if (depth > 0)
+        {
+            if (operatorKinds[groups[depth - 1]] == ABS)
+                throw new IllegalArgumentException("Met '|', for which there is no '|'");
+            throw new IllegalArgumentException("Met '(', for which there is no ')'");
+        }
+        if (expectOperand)
+            throw new IllegalArgumentException("Incorrect use of operators was encountered in the expression");
+        popOperators(0, false);
+    }
+
+    /**
+     * Переносит в программу бинарные операторы из стека, которые должны выполниться раньше нового оператора.
+     * Возведение в степень правоассоциативно, остальные операторы - левоассоциативны.
+     *
+     * @param precedence приоритет нового оператора (0 - перенести все операторы текущего уровня)
+     * @param rightAssociative true если новый оператор правоассоциативный
+     */
+    private void popOperators(int precedence, boolean rightAssociative)
+    {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] == BINARY)
+        {
+            int top = precedence(operatorCodes[operatorCount - 1]);
+            if (top < precedence || (top == precedence && rightAssociative))
+                break;
+            --operatorCount;
+            emit(CompiledExpression.BINARY_OPERATOR, 0, operatorCodes[operatorCount], null);
+        }
+    }
+
+    /**
+     * Возвращает приоритет бинарного оператора.
+     *
+     * @param operator код операции
+     * @return приоритет (чем больше, тем раньше выполняется оператор)
+     */
+    private static int precedence(int operator)
+    {
+        return switch (operator)
+        {
+            case CompiledExpression.POWER -> 3;
+            case CompiledExpression.MULTIPLY, CompiledExpression.DIVIDE -> 2;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Завершает операнд: применяет к нему функции, ожидающие аргумент.
+     */
+    private void completeOperand()
+    {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] == PREFIX)
+        {
+            --operatorCount;
+            emitFunction(operatorFunctions[operatorCount], operatorNegated[operatorCount]);
+        }
+    }
+
+    /**
+     * Добавляет в программу применение функции к аргументам на вершине стека.
+     *
+     * @param function функция
+     * @param negated true если перед функцией стоит унарный минус
+     */
+    private void emitFunction(MathFunction function, boolean negated)
+    {
+        if (function.operator == MathFunction.NO_OPERATOR)
+            emit(CompiledExpression.CALL, 0, 0, function);
+        else if (function.arity == 1)
+            emit(CompiledExpression.UNARY_OPERATOR, 0, function.operator, null);
+        else
+            emit(CompiledExpression.BINARY_OPERATOR, 0, function.operator, null);
+        if (negated)
+            emit(CompiledExpression.UNARY_OPERATOR, 0, CompiledExpression.NEGATE, null);
+    }
+
+    /**
+     * Открывает новую группу (скобки, модуль или список аргументов функции).
+     *
+     * @param kind вид начала группы
+     * @param function функция для списка аргументов
+     * @param negated true если перед группой стоит унарный минус
+     */
+    private void openGroup(int kind, MathFunction function, boolean negated)
+    {
+        if (depth == groups.length)
+            groups = Arrays.copyOf(groups, depth * 2);
+        groups[depth++] = operatorCount;
+        pushOperator(kind, 0, function, negated);
+    }
+
+    /**
+     * Закрывает текущую группу. Группа без переменных сразу вычисляется и заменяется числом.
+     *
+     * @throws IllegalArgumentException если функции передано меньше аргументов, чем она принимает
+     */
+    private void closeGroup()
+    {
+        popOperators(0, false);
+        --depth;
+        --operatorCount;
+        int kind = operatorKinds[operatorCount], start = groupStarts[operatorCount];
+        boolean negated = operatorNegated[operatorCount];
+
+        switch (kind)
+        {
+            case CALL ->
+            {
+                MathFunction function = operatorFunctions[operatorCount];
+                int arguments = argumentCounts[operatorCount] + 1;
+                if (arguments != function.arity)
+                    throw new IllegalArgumentException("Function " + function.name + " expects " + function.arity
+                            + " arguments, got " + arguments);
+                emitFunction(function, negated);
+            }
+            case ABS ->
+            {
+                emit(CompiledExpression.UNARY_OPERATOR, 0, CompiledExpression.ABS, null);
+                if (negated)
+                    emit(CompiledExpression.UNARY_OPERATOR, 0, CompiledExpression.NEGATE, null);
+            }
+            default ->
+            {
+                if (negated)
+                    emit(CompiledExpression.UNARY_OPERATOR, 0, CompiledExpression.NEGATE, null);
+            }
+        }
+
+        // Внутри группы не было переменных
+        if (groupVariables[operatorCount] == countVariables && lows == null)
+        {
+            double result = CompiledExpression.evaluateRange(kinds, values, slots, functions, start, count, count - start,
+                    0, null);
+            Arrays.fill(functions, start, count, null);
+            count = start;
+            --stackDepth;
+            emit(CompiledExpression.LITERAL, result, 0, null);
+        }
+        completeOperand();
+    }
+
+    /**
+     * Помещает элемент в стек операторов.
+     *
+     * @param kind вид элемента
+     * @param operator код бинарного оператора
+     * @param function функция
+     * @param negated признак унарного минуса
+     */
+    private void pushOperator(int kind, int operator, MathFunction function, boolean negated)
+    {
+        if (operatorCount == operatorKinds.length)
+        {
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorCount * 2);
+            operatorCodes = Arrays.copyOf(operatorCodes, operatorCount * 2);
+            operatorFunctions = Arrays.copyOf(operatorFunctions, operatorCount * 2);
+            operatorNegated = Arrays.copyOf(operatorNegated, operatorCount * 2);
+            argumentCounts = Arrays.copyOf(argumentCounts, operatorCount * 2);
+            groupStarts = Arrays.copyOf(groupStarts, operatorCount * 2);
+            groupVariables = Arrays.copyOf(groupVariables, operatorCount * 2);
+        }
+        operatorKinds[operatorCount] = kind;
+        operatorCodes[operatorCount] = operator;
+        operatorFunctions[operatorCount] = function;
+        operatorNegated[operatorCount] = negated;
+        argumentCounts[operatorCount] = 0;
+        groupStarts[operatorCount] = count;
+        groupVariables[operatorCount] = countVariables;
+        ++operatorCount;
+    }
+
+    /**
+     * Добавляет команду в конец программы.
+     *
+     * @param kind вид команды
+     * @param value значение числовой константы
+     * @param slot номер слота переменной или код операции
+     * @param function функция команды вызова
+     */
+    private void emit(int kind, double value, int slot, MathFunction function)
+    {
+        if (count == kinds.length)
+        {
+            kinds = Arrays.copyOf(kinds, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+            slots = Arrays.copyOf(slots, count * 2);
+            functions = Arrays.copyOf(functions, count * 2);
+            if (lows != null)
+                lows = Arrays.copyOf(lows, count * 2);
+        }
+        kinds[count] = kind;
+        values[count] = value;
+        slots[count] = slot;
+        functions[count] = function;
+        ++count;
+
+        if (kind == CompiledExpression.BINARY_OPERATOR)
+            --stackDepth;
+        else if (kind == CompiledExpression.CALL)
+            stackDepth -= function.arity - 1;
+        else if (kind != CompiledExpression.UNARY_OPERATOR)
+            maxStack = Math.max(maxStack, ++stackDepth);
+    }
+
+    /**
+     * Преобразует последовательность цифр и точек в число.
+     *
+     * @param start индекс первого символа числа
+     * @param end индекс символа, следующего за числом
+     * @return значение числа
+     * @throws IllegalArgumentException если число записано некорректно
+     */
+    private double parseNumber(int start, int end)
+    {
+        String number = new String(chars, start, end - start);
+        try
+        {
+            return Double.parseDouble(number);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid number: " + number);
+        }
+    }
+
+    /**
+     * Возвращает текст предыдущей лексемы для сообщений об ошибках.
+     *
+     * @return текст предыдущей лексемы
+     */
+    private String previous()
+    {
+        return new String(chars, previousStart, previousEnd - previousStart);
+    }
+
+    /**
+     * Проверяет, является ли символ латинской буквой.
+     *
+     * @param c проверяемый символ
+     * @return true если символ - буква
+     */
+    private static boolean isLetter(char c)
+    {
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+    }
+}
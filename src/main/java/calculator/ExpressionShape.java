@@ -0,0 +1,197 @@
+package calculator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Структура выражения без значений числовых констант.
+ *
+ * <p>Выражения {@code 3.5*x + 12} и {@code 7.25*x + 4} различаются только константами, поэтому
+ * у них одна структура: одинаковые команды, операторы, функции и переменные. Разборщик выносит константы
+ * в отдельный вектор, а структуру регистрирует в общем реестре, так что все такие выражения
+ * ссылаются на один экземпляр структуры. К структуре привязаны и производные от нее артефакты,
+ * например сгенерированный {@link BytecodeCompiler} класс: он создается один раз и получает
+ * константы конкретного выражения при создании объекта.
+ *
+ * <p>Реестр хранит структуры по слабым ссылкам: структура и ее сгенерированный класс освобождаются,
+ * когда не остается выражений с такой структурой.
+ *
+ * <p>Класс неизменяемый (кроме лениво создаваемых артефактов) и потокобезопасный.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class ExpressionShape
+{
+    /** Реестр структур: каждой структуре соответствует единственный экземпляр */
+    private static final Map<ExpressionShape, WeakReference<ExpressionShape>> SHAPES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /** Виды команд в обратной польской записи */
+    final int[] kinds;
+
+    /** Номера слотов переменных, номера общих подвыражений и коды операций */
+    final int[] slots;
+
+    /** Функции команд вызова (для остальных команд - null) */
+    final MathFunction[] functions;
+
+    /** Максимальная глубина стека значений при вычислении */
+    final int maxStack;
+
+    /** Имена переменных по номерам слотов */
+    final String[] variableNames;
+
+    /** Номера слотов по именам переменных */
+    final Map<String, Integer> slotIndex;
+
+    /** Имена всех переменных выражения */
+    final Set<String> variables;
+
+    /** Количество числовых констант */
+    final int constantCount;
+
+    /** Количество общих подвыражений, значения которых сохраняются при вычислении */
+    final int temporaryCount;
+
+    /** Хэш структуры */
+    private final int hash;
+
+    /** Конструктор сгенерированного класса или null, если класс еще не создан */
+    private volatile MethodHandle generatedConstructor;
+
+    /** Признак того, что выражение не помещается в сгенерированный метод */
+    private volatile boolean notCompilable;
+
+    /**
+     * Создает структуру выражения.
+     *
+     * @param kinds виды команд
+     * @param slots номера слотов переменных и коды операций
+     * @param functions функции команд вызова
+     * @param maxStack максимальная глубина стека значений
+     * @param variableNames имена переменных по номерам слотов
+     */
+    private ExpressionShape(int[] kinds, int[] slots, MathFunction[] functions, int maxStack, String[] variableNames)
+    {
+        this.kinds = kinds;
+        this.slots = slots;
+        this.functions = functions;
+        this.maxStack = maxStack;
+        this.variableNames = variableNames;
+
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < variableNames.length; i++)
+            index.put(variableNames[i], i);
+        this.slotIndex = index;
+        this.variables = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(variableNames)));
+
+        int constants = 0, temporaries = 0;
+        for (int i = 0; i < kinds.length; i++)
+        {
+            if (kinds[i] == CompiledExpression.LITERAL)
+                ++constants;
+            else if (kinds[i] == CompiledExpression.STORE_TEMPORARY)
+                temporaries = Math.max(temporaries, slots[i] + 1);
+        }
+        this.constantCount = constants;
+        this.temporaryCount = temporaries;
+
+        int h = Arrays.hashCode(kinds);
+        h = 31 * h + Arrays.hashCode(slots);
+        h = 31 * h + Arrays.hashCode(functions);
+        h = 31 * h + Arrays.hashCode(variableNames);
+        this.hash = 31 * h + maxStack;
+    }
+
+    /**
+     * Возвращает единственный экземпляр структуры с заданными командами.
+     *
+     * @param kinds виды команд
+     * @param slots номера слотов переменных, общих подвыражений и коды операций (для остальных команд - 0)
+     * @param functions функции команд вызова (для остальных команд - null)
+     * @param maxStack максимальная глубина стека значений
+     * @param variableNames имена переменных по номерам слотов
+     * @return общий экземпляр структуры
+     */
+    static ExpressionShape of(int[] kinds, int[] slots, MathFunction[] functions, int maxStack, String[] variableNames)
+    {
+        ExpressionShape shape = new ExpressionShape(kinds, slots, functions, maxStack, variableNames);
+
+        synchronized (SHAPES)
+        {
+            WeakReference<ExpressionShape> reference = SHAPES.get(shape);
+            ExpressionShape existing = reference == null ? null : reference.get();
+            if (existing != null)
+                return existing;
+            SHAPES.put(shape, new WeakReference<>(shape));
+            return shape;
+        }
+    }
+
+    /**
+     * Возвращает конструктор сгенерированного класса для этой структуры.
+     *
+     * @return конструктор, принимающий массив констант, или null, если класс еще не создан
+     */
+    MethodHandle generatedConstructor()
+    {
+        return generatedConstructor;
+    }
+
+    /**
+     * Запоминает конструктор сгенерированного класса.
+     * Если другой поток успел сгенерировать класс раньше, остается его конструктор.
+     *
+     * @param constructor конструктор нового класса
+     * @return конструктор, который следует использовать
+     */
+    synchronized MethodHandle installGeneratedConstructor(MethodHandle constructor)
+    {
+        if (generatedConstructor == null)
+            generatedConstructor = constructor;
+        return generatedConstructor;
+    }
+
+    /**
+     * Проверяет, известно ли, что выражение не помещается в сгенерированный метод.
+     *
+     * @return true если для структуры используется интерпретатор
+     */
+    boolean isNotCompilable()
+    {
+        return notCompilable;
+    }
+
+    /**
+     * Отмечает, что выражение не помещается в сгенерированный метод.
+     */
+    void markNotCompilable()
+    {
+        notCompilable = true;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (!(o instanceof ExpressionShape other) || hash != other.hash)
+            return false;
+        return maxStack == other.maxStack && Arrays.equals(kinds, other.kinds) && Arrays.equals(slots, other.slots)
+                && Arrays.equals(functions, other.functions) && Arrays.equals(variableNames, other.variableNames);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,186 @@
+package calculator;
+
+/**
+ * Вычисление выражения с двойной-двойной точностью ({@link DoubleDouble}).
+ *
+ * <p>Программа в обратной польской записи выполняется так же, как в {@link CompiledExpression},
+ * но стек значений состоит из двух массивов - старших и младших частей. Массивы и «регистр»
+ * {@link DoubleDouble} создаются один раз на вычисление, сами операции объектов не создают.
+ *
+ * <p>Константы выражения, разобранного методом {@link Calculator#compileExtended(String)}, хранят
+ * младшие части, поэтому, например, {@code 0.1} представлена с точностью около 10⁻³³, а не 10⁻¹⁷.
+ * У остальных выражений младшие части констант равны нулю. Функции из набора функций, не являющиеся
+ * встроенными, вычисляются в обычной точности от старших частей аргументов.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class ExtendedEvaluator
+{
+    private ExtendedEvaluator()
+    {
+    }
+
+    /**
+     * Вычисляет выражение.
+     *
+     * @param expression скомпилированное выражение
+     * @param variables значения переменных по номерам слотов
+     * @param result массив, в который записываются старшая ({@code result[0]}) и младшая ({@code result[1]}) части
+     * @throws ArithmeticException при попытке деления на ноль
+     * @throws IllegalArgumentException если факториал вычисляется от недопустимого числа
+     */
+    static void evaluate(CompiledExpression expression, double[] variables, double[] result)
+    {
+        int[] kinds = expression.kinds, slots = expression.slots;
+        double[] values = expression.values, lows = expression.lows;
+        MathFunction[] functions = expression.functions;
+        int stackSize = Math.max(expression.maxStack, 1), temporaryCount = expression.shape.temporaryCount;
+        double[] hi = new double[stackSize], lo = new double[stackSize];
+        double[] temporaryHi = new double[temporaryCount], temporaryLo = new double[temporaryCount];
+        DoubleDouble register = new DoubleDouble();
+        int top = 0;
+
+        for (int i = 0; i < kinds.length; i++)
+        {
+            switch (kinds[i])
+            {
+                case CompiledExpression.LITERAL ->
+                {
+                    hi[top] = values[i];
+                    lo[top++] = lows == null ? 0 : lows[i];
+                }
+                case CompiledExpression.VARIABLE ->
+                {
+                    hi[top] = variables[slots[i]];
+                    lo[top++] = 0;
+                }
+                case CompiledExpression.NEGATED_VARIABLE ->
+                {
+                    hi[top] = -1 * variables[slots[i]];
+                    lo[top++] = 0;
+                }
+                case CompiledExpression.UNARY_OPERATOR ->
+                {
+                    unary(register, slots[i], hi[top - 1], lo[top - 1]);
+                    hi[top - 1] = register.hi;
+                    lo[top - 1] = register.lo;
+                }
+                case CompiledExpression.BINARY_OPERATOR ->
+                {
+                    --top;
+                    binary(register, slots[i], hi[top - 1], lo[top - 1], hi[top], lo[top]);
+                    hi[top - 1] = register.hi;
+                    lo[top - 1] = register.lo;
+                }
+                case CompiledExpression.LOAD_TEMPORARY ->
+                {
+                    hi[top] = temporaryHi[slots[i]];
+                    lo[top++] = temporaryLo[slots[i]];
+                }
+                case CompiledExpression.STORE_TEMPORARY ->
+                {
+                    temporaryHi[slots[i]] = hi[top - 1];
+                    temporaryLo[slots[i]] = lo[top - 1];
+                }
+                default ->
+                {
+                    // Функция вызывается от старших частей аргументов, лежащих на стеке старших частей
+                    top = functions[i].call(hi, top);
+                    lo[top - 1] = 0;
+                }
+            }
+        }
+        result[0] = hi[0];
+        result[1] = lo[0];
+    }
+
+    /**
+     * Выполняет унарный оператор или встроенную функцию.
+     *
+     * @param register регистр для результата
+     * @param operator код операции
+     * @param xh старшая часть аргумента
+     * @param xl младшая часть аргумента
+     */
+    private static void unary(DoubleDouble register, int operator, double xh, double xl)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.NEGATE ->
+            {
+                register.hi = -xh;
+                register.lo = -xl;
+            }
+            case CompiledExpression.ABS ->
+            {
+                boolean negative = xh < 0 || (xh == 0 && xl < 0);
+                register.hi = negative ? -xh : Math.abs(xh);
+                register.lo = negative ? -xl : xl;
+            }
+            case CompiledExpression.FACTORIAL -> register.factorial(xh, xl);
+            case CompiledExpression.GAMMA_FACTORIAL ->
+            {
+                if (xl == 0 && xh == Math.rint(xh) && xh >= 0)
+                    register.factorial(xh, xl);
+                else
+                {
+                    register.hi = CompiledExpression.gammaFactorial(xh);
+                    register.lo = 0;
+                }
+            }
+            case CompiledExpression.SIN -> register.sin(xh, xl);
+            case CompiledExpression.COS, CompiledExpression.FAST_COS -> register.cos(xh, xl);
+            case CompiledExpression.TAN, CompiledExpression.FAST_TAN -> register.tan(xh, xl);
+            case CompiledExpression.COT, CompiledExpression.FAST_COT -> register.cot(xh, xl);
+            case CompiledExpression.EXP -> register.exp(xh, xl);
+            case CompiledExpression.LOG, CompiledExpression.FAST_LOG -> register.log(xh, xl);
+            case CompiledExpression.POW_HALF -> register.sqrt(xh, xl);
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Выполняет бинарный оператор или встроенную функцию двух аргументов.
+     *
+     * @param register регистр для результата
+     * @param operator код операции
+     * @param ah старшая часть левого операнда
+     * @param al младшая часть левого операнда
+     * @param bh старшая часть правого операнда
+     * @param bl младшая часть правого операнда
+     */
+    private static void binary(DoubleDouble register, int operator, double ah, double al, double bh, double bl)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.ADD -> register.add(ah, al, bh, bl);
+            case CompiledExpression.SUBTRACT -> register.add(ah, al, -bh, -bl);
+            case CompiledExpression.MULTIPLY -> register.multiply(ah, al, bh, bl);
+            case CompiledExpression.DIVIDE -> register.divide(ah, al, bh, bl);
+            case CompiledExpression.POWER -> register.pow(ah, al, bh, bl);
+            case CompiledExpression.MIN, CompiledExpression.MAX ->
+            {
+                boolean less = ah < bh || (ah == bh && al < bl) || Double.isNaN(ah);
+                boolean left = less == (operator == CompiledExpression.MIN);
+                register.hi = Double.isNaN(ah) || Double.isNaN(bh) ? Double.NaN : left ? ah : bh;
+                register.lo = Double.isNaN(register.hi) ? 0 : left ? al : bl;
+            }
+            case CompiledExpression.HYPOT ->
+            {
+                if (!Double.isFinite(ah) || !Double.isFinite(bh) || Math.max(Math.abs(ah), Math.abs(bh)) > 1e150)
+                {
+                    register.hi = Math.hypot(ah, bh);
+                    register.lo = 0;
+                    return;
+                }
+                register.multiply(ah, al, ah, al);
+                double squareHi = register.hi, squareLo = register.lo;
+                register.multiply(bh, bl, bh, bl);
+                register.add(squareHi, squareLo, register.hi, register.lo);
+                register.sqrt(register.hi, register.lo);
+            }
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package calculator;
+
+/**
+ * Быстрые приближения трансцендентных функций для режима пониженной точности
+ * ({@link FunctionRegistry#withFastMath()}).
+ *
+ * <p>Каждая функция сводит аргумент к малому отрезку и вычисляет многочлен по схеме Эстрина
+ * (пары членов независимы, поэтому процессор вычисляет их параллельно). На основном пути нет таблиц
+ * и вызовов библиотечных функций - только умножения, сложения, одно деление и операции с битами числа,
+ * поэтому циклы {@link ColumnEvaluator} над такими функциями не упираются в задержки обращений к памяти.
+ * Аргументы вне рабочего диапазона (бесконечности, NaN, слишком большие по модулю и денормализованные числа)
+ * вычисляются точными функциями {@link Math}.
+ *
+ * <p>Максимальная погрешность (измерена на равномерной выборке рабочего диапазона с запасом):
+ * <ul>
+ *   <li>{@link #sin}, {@link #cos}: абсолютная погрешность не более 1e-13 при {@code |x| ≤ 1e5};</li>
+ *   <li>{@link #tan}, {@link #cot}: относительная погрешность не более 1e-12 при {@code |x| ≤ 1e5};</li>
+ *   <li>{@link #log}: абсолютная погрешность не более 1e-12, относительная - не более 1e-11.</li>
+ * </ul>
+ *
+ * <p>Приближений синуса и экспоненты в режиме пониженной точности нет: {@link Math#sin} и {@link Math#exp}
+ * встроены в JVM, и многочлен почти не быстрее их. {@link #sin} нужен для производной быстрого косинуса.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class FastMath
+{
+    /** Наибольший модуль аргумента тригонометрических функций, сводимого приближенно */
+    static final double MAX_TRIGONOMETRIC_ARGUMENT = 1e5;
+
+    /** 2/π */
+    private static final double TWO_OVER_PI = 0.636619772367581343076;
+
+    /** Старшие 33 бита π/2 */
+    private static final double PI_OVER_2_HI = 1.57079632673412561417e+00;
+
+    /** Следующие 33 бита π/2 */
+    private static final double PI_OVER_2_MID = 6.07710050630396597660e-11;
+
+    /** Остаток π/2 */
+    private static final double PI_OVER_2_LO = 2.02226624879595063154e-21;
+
+    /** Старшие биты ln 2 (произведение на целое до 2¹¹ точное) */
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+
+    /** Остаток ln 2 */
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+
+    /** 1.5·2⁵²: после прибавления к числу до 2⁵¹ по модулю младшие биты представления содержат его округление до целого */
+    private static final double SHIFTER = 0x1.8p52;
+
+    /** Биты представления √2/2 */
+    private static final long SQRT2_OVER_2_BITS = 0x3FE6A09E667F3BCDL;
+
+    private FastMath()
+    {
+    }
+
+    /**
+     * Вычисляет синус.
+     *
+     * @param x аргумент в радианах
+     * @return приближенный синус
+     */
+    static double sin(double x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return Math.sin(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        return quadrant(reduce(x, k), (int) Double.doubleToRawLongBits(shifted));
+    }
+
+    /**
+     * Вычисляет косинус.
+     *
+     * @param x аргумент в радианах
+     * @return приближенный косинус
+     */
+    static double cos(double x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return Math.cos(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        // cos(x) = sin(x + π/2): та же остаточная часть в следующей четверти
+        return quadrant(reduce(x, k), (int) Double.doubleToRawLongBits(shifted) + 1);
+    }
+
+    /**
+     * Вычисляет тангенс.
+     *
+     * @param x аргумент в радианах
+     * @return приближенный тангенс
+     */
+    static double tan(double x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return Math.tan(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        double r = reduce(x, k), r2 = r * r;
+        long s = Double.doubleToRawLongBits(sinPolynomial(r, r2)), c = Double.doubleToRawLongBits(cosPolynomial(r2));
+        long odd = -(Double.doubleToRawLongBits(shifted) & 1);
+        // В четной четверти s/c, в нечетной -c/s
+        return Double.longBitsToDouble(s & ~odd | (c ^ Long.MIN_VALUE) & odd)
+                / Double.longBitsToDouble(c & ~odd | s & odd);
+    }
+
+    /**
+     * Вычисляет котангенс.
+     *
+     * @param x аргумент в радианах
+     * @return приближенный котангенс
+     */
+    static double cot(double x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return CompiledExpression.ctg(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        double r = reduce(x, k), r2 = r * r;
+        long s = Double.doubleToRawLongBits(sinPolynomial(r, r2)), c = Double.doubleToRawLongBits(cosPolynomial(r2));
+        long odd = -(Double.doubleToRawLongBits(shifted) & 1);
+        // В четной четверти c/s, в нечетной -s/c
+        return Double.longBitsToDouble(c & ~odd | (s ^ Long.MIN_VALUE) & odd)
+                / Double.longBitsToDouble(s & ~odd | c & odd);
+    }
+
+    /**
+     * Вычисляет натуральный логарифм: {@code ln x = k·ln2 + ln m}, где {@code √2/2 ≤ m < √2},
+     * а {@code ln m = 2·atanh(s)}, {@code s = (m - 1)/(m + 1)}.
+     *
+     * @param x аргумент
+     * @return приближенный логарифм
+     */
+    static double log(double x)
+    {
+        if (!(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY))
+            return Math.log(x);
+        // Сдвиг на биты √2/2 переносит границу порядка в √2/2, поэтому m попадает в [√2/2, √2)
+        // без условного перехода
+        long bits = Double.doubleToRawLongBits(x) - SQRT2_OVER_2_BITS;
+        double k = bits >> 52;
+        double m = Double.longBitsToDouble((bits & 0x000FFFFFFFFFFFFFL) + SQRT2_OVER_2_BITS);
+        double f = m - 1, s = f / (2 + f), z = s * s, z2 = z * z;
+        double p = s * ((2 + z * (2.0 / 3)) + z2 * ((2.0 / 5 + z * (2.0 / 7)) + z2 * ((2.0 / 9 + z * (2.0 / 11))
+                + z2 * (2.0 / 13))));
+        return k * LN2_HI + (p + k * LN2_LO);
+    }
+
+    /**
+     * Сводит аргумент тригонометрической функции к отрезку {@code [-π/4, π/4]}.
+     *
+     * @param x аргумент
+     * @param k номер четверти, ближайшее к {@code x·2/π} целое
+     * @return {@code x - k·π/2}
+     */
+    private static double reduce(double x, double k)
+    {
+        return x - k * PI_OVER_2_HI - k * PI_OVER_2_MID - k * PI_OVER_2_LO;
+    }
+
+    /**
+     * Вычисляет синус {@code r + q·π/2} по остаточной части и номеру четверти.
+     *
+     * @param r остаточная часть аргумента
+     * @param q номер четверти
+     * @return синус
+     */
+    private static double quadrant(double r, int q)
+    {
+        // Четверть случайных аргументов непредсказуема, поэтому многочлен и знак выбираются
+        // операциями с битами, а не условными переходами
+        double r2 = r * r;
+        long sin = Double.doubleToRawLongBits(sinPolynomial(r, r2));
+        long cos = Double.doubleToRawLongBits(cosPolynomial(r2));
+        long odd = -(long) (q & 1);
+        return Double.longBitsToDouble((sin & ~odd | cos & odd) ^ (long) (q & 2) << 62);
+    }
+
+    /**
+     * Вычисляет многочлен Тейлора синуса до 13-й степени.
+     *
+     * @param r аргумент из отрезка {@code [-π/4, π/4]}
+     * @param r2 квадрат аргумента
+     * @return приближенный синус
+     */
+    private static double sinPolynomial(double r, double r2)
+    {
+        double r4 = r2 * r2;
+        return r + r * r2 * ((-1.0 / 6 + r2 * (1.0 / 120)) + r4 * ((-1.0 / 5040 + r2 * (1.0 / 362880))
+                + r4 * (-1.0 / 39916800 + r2 * (1.0 / 6227020800L))));
+    }
+
+    /**
+     * Вычисляет многочлен Тейлора косинуса до 14-й степени.
+     *
+     * @param r2 квадрат аргумента из отрезка {@code [-π/4, π/4]}
+     * @return приближенный косинус
+     */
+    private static double cosPolynomial(double r2)
+    {
+        double r4 = r2 * r2;
+        return 1 + r2 * ((-1.0 / 2 + r2 * (1.0 / 24)) + r4 * ((-1.0 / 720 + r2 * (1.0 / 40320))
+                + r4 * ((-1.0 / 3628800 + r2 * (1.0 / 479001600)) + r4 * (-1.0 / 87178291200L))));
+    }
+}
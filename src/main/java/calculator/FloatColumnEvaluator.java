@@ -0,0 +1,218 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Пакетное вычисление выражения над столбцами значений одинарной точности ({@code float}).
+ *
+ * <p>Выполняет ту же программу, что и {@link ColumnEvaluator}, блоками по {@link ColumnEvaluator#BLOCK_SIZE}
+ * строк, но столбцы, стек блоков и результаты хранятся во float: из памяти читается и записывается вдвое
+ * меньше байт, а в векторный регистр процессора помещается вдвое больше значений. Арифметика выполняется
+ * во float, встроенные функции - ядрами {@link FloatMath}; степень, факториал и функции из набора функций
+ * вычисляются в double с округлением результата.
+ *
+ * <p>Константы выражения округляются до float при загрузке. Части выражения без переменных
+ * свернуты оптимизатором заранее в double, поэтому они округляются один раз.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class FloatColumnEvaluator
+{
+    private FloatColumnEvaluator()
+    {
+    }
+
+    /**
+     * Вычисляет выражение для диапазона строк.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns значения переменных по номерам слотов, по одному массиву на переменную
+     * @param from индекс первой строки
+     * @param to индекс, следующий за последней строкой
+     * @param out массив для результатов, индекс - номер строки
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    static void evaluate(CompiledExpression expression, float[][] columns, int from, int to, float[] out)
+    {
+        float[][] stack = new float[Math.max(expression.maxStack, 1)][ColumnEvaluator.BLOCK_SIZE];
+        float[][] temporaries = new float[expression.shape.temporaryCount][ColumnEvaluator.BLOCK_SIZE];
+        double[][] arguments = MathFunction.argumentBuffers(expression.functions);
+        for (int start = from; start < to; start += ColumnEvaluator.BLOCK_SIZE)
+        {
+            int size = Math.min(ColumnEvaluator.BLOCK_SIZE, to - start);
+            evaluateBlock(expression, columns, start, size, stack, temporaries, arguments);
+            System.arraycopy(stack[0], 0, out, start, size);
+        }
+    }
+
+    /**
+     * Проверяет, что для каждой переменной есть столбец значений не короче числа строк.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param rows количество строк
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или какой-либо столбец короче числа строк
+     */
+    static void checkColumns(CompiledExpression expression, float[][] columns, int rows)
+    {
+        if (columns.length < expression.getVariableCount())
+            throw new IllegalArgumentException("Unknown variable: " + expression.variableName(columns.length));
+        for (int slot = 0; slot < expression.getVariableCount(); slot++)
+            if (columns[slot].length < rows)
+                throw new IllegalArgumentException("Column " + expression.variableName(slot) + " has "
+                        + columns[slot].length + " values, expected " + rows);
+    }
+
+    /**
+     * Выполняет программу для одного блока строк.
+     *
+     * @param expression скомпилированное выражение
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param start индекс первой строки блока
+     * @param size количество строк в блоке
+     * @param stack стек блоков значений
+     * @param temporaries блоки значений общих подвыражений
+     * @param arguments массивы аргументов для функций, получающих массив аргументов
+     *                  ({@link MathFunction#argumentBuffers(MathFunction[])})
+     */
+    private static void evaluateBlock(CompiledExpression expression, float[][] columns, int start, int size,
+                                      float[][] stack, float[][] temporaries, double[][] arguments)
+    {
+        int[] kinds = expression.kinds;
+        int top = 0;
+
+        for (int i = 0; i < kinds.length; i++)
+        {
+            switch (kinds[i])
+            {
+                case CompiledExpression.LITERAL -> Arrays.fill(stack[top++], 0, size, (float) expression.values[i]);
+                case CompiledExpression.VARIABLE ->
+                        System.arraycopy(columns[expression.slots[i]], start, stack[top++], 0, size);
+                case CompiledExpression.NEGATED_VARIABLE ->
+                {
+                    float[] column = columns[expression.slots[i]], target = stack[top++];
+                    for (int row = 0; row < size; row++)
+                        target[row] = -column[start + row];
+                }
+                case CompiledExpression.UNARY_OPERATOR -> applyUnary(expression.slots[i], stack[top - 1], size);
+                case CompiledExpression.LOAD_TEMPORARY ->
+                        System.arraycopy(temporaries[expression.slots[i]], 0, stack[top++], 0, size);
+                case CompiledExpression.STORE_TEMPORARY ->
+                        System.arraycopy(stack[top - 1], 0, temporaries[expression.slots[i]], 0, size);
+                case CompiledExpression.CALL -> top = call(expression.functions[i], stack, top, size, arguments);
+                default ->
+                {
+                    --top;
+                    applyBinary(expression.slots[i], stack[top - 1], stack[top], size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Применяет унарный оператор или встроенную функцию к блоку значений.
+     * Быстрые варианты функций ({@link FunctionRegistry#withFastMath()}) вычисляются теми же ядрами
+     * {@link FloatMath}: они уже не точнее, чем требует float.
+     *
+     * @param operator код операции
+     * @param x блок значений, в который записывается результат
+     * @param size количество строк в блоке
+     */
+    private static void applyUnary(int operator, float[] x, int size)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.NEGATE -> { for (int i = 0; i < size; i++) x[i] = -x[i]; }
+            case CompiledExpression.ABS -> { for (int i = 0; i < size; i++) x[i] = Math.abs(x[i]); }
+            case CompiledExpression.FACTORIAL -> { for (int i = 0; i < size; i++) x[i] = (float) CompiledExpression.factorial(x[i]); }
+            case CompiledExpression.SIN -> { for (int i = 0; i < size; i++) x[i] = FloatMath.sin(x[i]); }
+            case CompiledExpression.COS, CompiledExpression.FAST_COS -> { for (int i = 0; i < size; i++) x[i] = FloatMath.cos(x[i]); }
+            case CompiledExpression.TAN, CompiledExpression.FAST_TAN -> { for (int i = 0; i < size; i++) x[i] = FloatMath.tan(x[i]); }
+            case CompiledExpression.COT, CompiledExpression.FAST_COT -> { for (int i = 0; i < size; i++) x[i] = FloatMath.cot(x[i]); }
+            case CompiledExpression.EXP -> { for (int i = 0; i < size; i++) x[i] = FloatMath.exp(x[i]); }
+            case CompiledExpression.LOG, CompiledExpression.FAST_LOG -> { for (int i = 0; i < size; i++) x[i] = FloatMath.log(x[i]); }
+            case CompiledExpression.POW_HALF -> { for (int i = 0; i < size; i++) x[i] = (float) CompiledExpression.powHalf(x[i]); }
+            case CompiledExpression.GAMMA_FACTORIAL -> { for (int i = 0; i < size; i++) x[i] = (float) CompiledExpression.gammaFactorial(x[i]); }
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Применяет бинарный оператор или встроенную функцию двух аргументов к двум блокам значений.
+     *
+     * @param operator код операции
+     * @param left блок левых операндов, в который записывается результат
+     * @param right блок правых операндов
+     * @param size количество строк в блоке
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    private static void applyBinary(int operator, float[] left, float[] right, int size)
+    {
+        switch (operator)
+        {
+            case CompiledExpression.ADD -> { for (int i = 0; i < size; i++) left[i] += right[i]; }
+            case CompiledExpression.SUBTRACT -> { for (int i = 0; i < size; i++) left[i] -= right[i]; }
+            case CompiledExpression.MULTIPLY -> { for (int i = 0; i < size; i++) left[i] *= right[i]; }
+            case CompiledExpression.DIVIDE ->
+            {
+                for (int i = 0; i < size; i++)
+                    if (right[i] == 0)
+                        throw new ArithmeticException("Division by zero");
+                for (int i = 0; i < size; i++)
+                    left[i] /= right[i];
+            }
+            case CompiledExpression.POWER -> { for (int i = 0; i < size; i++) left[i] = (float) Math.pow(left[i], right[i]); }
+            case CompiledExpression.MIN -> { for (int i = 0; i < size; i++) left[i] = Math.min(left[i], right[i]); }
+            case CompiledExpression.MAX -> { for (int i = 0; i < size; i++) left[i] = Math.max(left[i], right[i]); }
+            case CompiledExpression.HYPOT -> { for (int i = 0; i < size; i++) left[i] = FloatMath.hypot(left[i], right[i]); }
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Вызывает функцию из набора функций для каждой строки блока.
+     *
+     * @param function функция
+     * @param stack стек блоков значений
+     * @param top размер стека
+     * @param size количество строк в блоке
+     * @param arguments массивы аргументов по количеству аргументов
+     * @return новый размер стека
+     */
+    private static int call(MathFunction function, float[][] stack, int top, int size, double[][] arguments)
+    {
+        int first = top - function.arity;
+        float[] x = stack[first];
+        switch (function.arity)
+        {
+            case 1 -> { for (int i = 0; i < size; i++) x[i] = (float) function.unary.applyAsDouble(x[i]); }
+            case 2 ->
+            {
+                float[] y = stack[top - 1];
+                for (int i = 0; i < size; i++)
+                    x[i] = (float) function.binary.applyAsDouble(x[i], y[i]);
+            }
+            default ->
+            {
+                if (function.ternary != null)
+                {
+                    float[] y = stack[first + 1], z = stack[first + 2];
+                    for (int i = 0; i < size; i++)
+                        x[i] = (float) function.ternary.applyAsDouble(x[i], y[i], z[i]);
+                }
+                else
+                {
+                    double[] buffer = arguments[function.arity];
+                    for (int i = 0; i < size; i++)
+                    {
+                        for (int k = 0; k < buffer.length; k++)
+                            buffer[k] = stack[first + k][i];
+                        x[i] = (float) function.general.applyAsDouble(buffer);
+                    }
+                }
+            }
+        }
+        return first + 1;
+    }
+}
@@ -0,0 +1,228 @@
+package calculator;
+
+/**
+ * Трансцендентные функции одинарной точности для пакетного вычисления над столбцами {@code float}
+ * ({@link FloatColumnEvaluator}).
+ *
+ * <p>Схема та же, что у {@link FastMath}: сведение аргумента к малому отрезку и многочлен, но степени
+ * многочленов подобраны под 24-битную мантиссу и вдвое меньше. Сведение тригонометрических функций
+ * выполняется в double по схеме Коди-Уэйта с π/2 из двух частей, остальное - в float. Аргументы вне рабочего
+ * диапазона вычисляются функциями {@link Math} с округлением результата до float.
+ *
+ * <p>Максимальная погрешность (измерена на равномерной выборке рабочего диапазона с запасом):
+ * <ul>
+ *   <li>{@link #sin}, {@link #cos}: абсолютная погрешность не более 2e-7 при {@code |x| ≤ 1e5};</li>
+ *   <li>{@link #tan}, {@link #cot}: относительная погрешность не более 5e-7 при {@code |x| ≤ 1e5};</li>
+ *   <li>{@link #exp}: относительная погрешность не более 3e-7;</li>
+ *   <li>{@link #log}: абсолютная погрешность не более 2e-7, относительная - не более 5e-7.</li>
+ * </ul>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class FloatMath
+{
+    /** Наибольший модуль аргумента тригонометрических функций, сводимого приближенно */
+    static final float MAX_TRIGONOMETRIC_ARGUMENT = 1e5f;
+
+    /** 2/π */
+    private static final double TWO_OVER_PI = 0.636619772367581343076;
+
+    /** Старшие 33 бита π/2 (произведение на целое до 2¹⁷ точное) */
+    private static final double PI_OVER_2_HI = 0x1.921fb544p0;
+
+    /** Остаток π/2 */
+    private static final double PI_OVER_2_LO = 0x1.0b4611a626331p-34;
+
+    /** 1.5·2⁵²: после прибавления к числу до 2⁵¹ по модулю младшие биты представления содержат его округление до целого */
+    private static final double SHIFTER = 0x1.8p52;
+
+    /** 1.5·2²³: то же для float и чисел до 2²² по модулю */
+    private static final float FLOAT_SHIFTER = 0x1.8p23f;
+
+    /** log2(e) */
+    private static final float LOG2_E = 1.44269504f;
+
+    /** Старшие 9 бит ln 2 (произведение на целое до 2⁸ точное) */
+    private static final float LN2_HI = 0.693359375f;
+
+    /** Остаток ln 2 */
+    private static final float LN2_LO = -2.12194440e-4f;
+
+    /** √2 */
+    private static final float SQRT2 = 1.41421356f;
+
+    private FloatMath()
+    {
+    }
+
+    /**
+     * Вычисляет синус.
+     *
+     * @param x аргумент в радианах
+     * @return синус с точностью float
+     */
+    static float sin(float x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return (float) Math.sin(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        return quadrant(remainder(x, k), (int) Double.doubleToRawLongBits(shifted));
+    }
+
+    /**
+     * Вычисляет косинус.
+     *
+     * @param x аргумент в радианах
+     * @return косинус с точностью float
+     */
+    static float cos(float x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return (float) Math.cos(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        // cos(x) = sin(x + π/2): та же остаточная часть в следующей четверти
+        return quadrant(remainder(x, k), (int) Double.doubleToRawLongBits(shifted) + 1);
+    }
+
+    /**
+     * Вычисляет тангенс.
+     *
+     * @param x аргумент в радианах
+     * @return тангенс с точностью float
+     */
+    static float tan(float x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return (float) Math.tan(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        float r = remainder(x, k), r2 = r * r;
+        float s = sinPolynomial(r, r2), c = cosPolynomial(r2);
+        return (Double.doubleToRawLongBits(shifted) & 1) == 0 ? s / c : -c / s;
+    }
+
+    /**
+     * Вычисляет котангенс.
+     *
+     * @param x аргумент в радианах
+     * @return котангенс с точностью float
+     */
+    static float cot(float x)
+    {
+        if (!(Math.abs(x) <= MAX_TRIGONOMETRIC_ARGUMENT))
+            return (float) CompiledExpression.ctg(x);
+        double shifted = x * TWO_OVER_PI + SHIFTER, k = shifted - SHIFTER;
+        float r = remainder(x, k), r2 = r * r;
+        float s = sinPolynomial(r, r2), c = cosPolynomial(r2);
+        return (Double.doubleToRawLongBits(shifted) & 1) == 0 ? c / s : -s / c;
+    }
+
+    /**
+     * Вычисляет экспоненту: {@code e^x = 2^k · e^r}, где {@code |r| ≤ ln2/2}.
+     *
+     * @param x показатель
+     * @return экспонента с точностью float
+     */
+    static float exp(float x)
+    {
+        // За пределами отрезка результат переполняется или становится денормализованным
+        if (!(x > -87f && x < 88f))
+            return (float) Math.exp(x);
+        float shifted = x * LOG2_E + FLOAT_SHIFTER, k = shifted - FLOAT_SHIFTER;
+        float r = x - k * LN2_HI - k * LN2_LO;
+        float r2 = r * r, r4 = r2 * r2;
+        float p = (1 + r) + r2 * (1f / 2 + r * (1f / 6))
+                + r4 * ((1f / 24 + r * (1f / 120)) + r2 * (1f / 720 + r * (1f / 5040)));
+        // Младшие биты представления shifted - это k, поэтому сдвиг дает порядок числа 2^k
+        return p * Float.intBitsToFloat((Float.floatToRawIntBits(shifted) + 127) << 23);
+    }
+
+    /**
+     * Вычисляет натуральный логарифм: {@code ln x = k·ln2 + ln m}, где {@code √2/2 < m ≤ √2},
+     * а {@code ln m = 2·atanh(s)}, {@code s = (m - 1)/(m + 1)}.
+     *
+     * @param x аргумент
+     * @return логарифм с точностью float
+     */
+    static float log(float x)
+    {
+        if (!(x >= Float.MIN_NORMAL && x < Float.POSITIVE_INFINITY))
+            return (float) Math.log(x);
+        int bits = Float.floatToRawIntBits(x);
+        float k = (bits >>> 23) - 127;
+        float m = Float.intBitsToFloat(bits & 0x007FFFFF | 0x3F800000);
+        if (m > SQRT2)
+        {
+            m *= 0.5f;
+            k += 1;
+        }
+        float f = m - 1, s = f / (2 + f), z = s * s;
+        float p = s * (2 + z * (2f / 3 + z * (2f / 5 + z * (2f / 7 + z * (2f / 9)))));
+        return k * LN2_HI + (p + k * LN2_LO);
+    }
+
+    /**
+     * Вычисляет длину гипотенузы: квадраты чисел float не переполняют double.
+     *
+     * @param x первый катет
+     * @param y второй катет
+     * @return {@code √(x² + y²)} с точностью float
+     */
+    static float hypot(float x, float y)
+    {
+        if (Float.isInfinite(x) || Float.isInfinite(y))
+            return Float.POSITIVE_INFINITY;
+        return (float) Math.sqrt((double) x * x + (double) y * y);
+    }
+
+    /**
+     * Вычисляет остаточную часть аргумента {@code x - k·π/2}. Вычитание старшей части точное,
+     * поэтому относительная погрешность сохраняется и вблизи нулей синуса и косинуса.
+     *
+     * @param x аргумент
+     * @param k ближайшее к {@code x·2/π} целое
+     * @return остаточная часть из отрезка {@code [-π/4, π/4]}
+     */
+    private static float remainder(float x, double k)
+    {
+        return (float) (x - k * PI_OVER_2_HI - k * PI_OVER_2_LO);
+    }
+
+    /**
+     * Вычисляет синус {@code r + q·π/2} по остаточной части и номеру четверти.
+     *
+     * @param r остаточная часть аргумента
+     * @param q номер четверти
+     * @return синус
+     */
+    private static float quadrant(float r, int q)
+    {
+        float r2 = r * r;
+        float value = (q & 1) == 0 ? sinPolynomial(r, r2) : cosPolynomial(r2);
+        return (q & 2) == 0 ? value : -value;
+    }
+
+    /**
+     * Вычисляет многочлен Тейлора синуса до 9-й степени.
+     *
+     * @param r аргумент из отрезка {@code [-π/4, π/4]}
+     * @param r2 квадрат аргумента
+     * @return приближенный синус
+     */
+    private static float sinPolynomial(float r, float r2)
+    {
+        return r + r * r2 * ((-1f / 6 + r2 * (1f / 120)) + r2 * r2 * (-1f / 5040 + r2 * (1f / 362880)));
+    }
+
+    /**
+     * Вычисляет многочлен Тейлора косинуса до 10-й степени.
+     *
+     * @param r2 квадрат аргумента из отрезка {@code [-π/4, π/4]}
+     * @return приближенный косинус
+     */
+    private static float cosPolynomial(float r2)
+    {
+        float r4 = r2 * r2;
+        return 1 + r2 * ((-1f / 2 + r2 * (1f / 24)) + r4 * ((-1f / 720 + r2 * (1f / 40320)) + r4 * (-1f / 3628800)));
+    }
+}
@@ -0,0 +1,552 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Лист именованных формул, которые ссылаются друг на друга как на переменные.
+ *
+ * <p>Переменная формулы означает другую формулу листа, если формула с таким именем определена,
+ * и входное значение ({@link #setInput(String, double)}) в противном случае. Лист хранит граф
+ * зависимостей формул; циклические зависимости обнаруживаются при определении формулы.
+ *
+ * <p>Изменение входного значения или определения формулы помечает устаревшими только формулы,
+ * зависящие от него. Пересчет ({@link #recompute()}) вычисляет устаревшие формулы уровнями: на каждом
+ * уровне собраны формулы, все аргументы которых уже вычислены, поэтому формулы одного уровня
+ * не зависят друг от друга и вычисляются параллельно в пуле потоков. Статистика каждого пересчета
+ * показывает, сколько формул было вычислено ({@link Statistics}).
+ *
+ * <p>Ошибка вычисления формулы (например, деление на ноль или не заданное входное значение)
+ * не прерывает пересчет остальных формул: она запоминается и выбрасывается при чтении значения
+ * этой формулы и зависящих от нее формул.
+ *
+ * <p>Класс не потокобезопасный: лист изменяется и читается одним потоком, а пул потоков
+ * используется только внутри пересчета.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * FormulaSheet sheet = new FormulaSheet();
+ * sheet.define("margin", "price - cost");
+ * sheet.define("risk", "margin * exp(vol)");
+ * sheet.setInput("price", 10.0);
+ * sheet.setInput("cost", 7.0);
+ * sheet.setInput("vol", 0.0);
+ * double risk = sheet.get("risk"); // Результат: 3.0
+ * sheet.setInput("vol", 0.5);      // устаревшей становится только risk
+ * FormulaSheet.Statistics stats = sheet.recompute(); // stats.getEvaluatedFormulas() == 1
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class FormulaSheet
+{
+    /** Наименьшее количество формул уровня, при котором они вычисляются параллельно */
+    static final int MIN_PARALLEL_LEVEL = 4;
+
+    /** Пул потоков для параллельного пересчета */
+    private final ForkJoinPool pool;
+
+    /** Набор функций, доступных в формулах */
+    private final FunctionRegistry functions;
+
+    /** Формулы по именам в порядке определения */
+    private final Map<String, Formula> formulas = new LinkedHashMap<>();
+
+    /** Входные значения по именам */
+    private final Map<String, Double> inputs = new HashMap<>();
+
+    /** Формулы, в которых встречается переменная с данным именем (формула или входное значение) */
+    private final Map<String, Set<Formula>> users = new HashMap<>();
+
+    /** Устаревшие формулы */
+    private final Set<Formula> dirty = new LinkedHashSet<>();
+
+    /** Статистика последнего пересчета */
+    private Statistics lastStatistics = new Statistics(0, 0, 0, 0, 0);
+
+    /**
+     * Статистика одного пересчета листа.
+     */
+    public static final class Statistics
+    {
+        /** Количество формул листа */
+        private final int formulaCount;
+
+        /** Количество вычисленных формул */
+        private final int evaluatedFormulas;
+
+        /** Количество уровней пересчета */
+        private final int levels;
+
+        /** Наибольшее количество формул одного уровня */
+        private final int maxLevelWidth;
+
+        /** Длительность пересчета в наносекундах */
+        private final long elapsedNanos;
+
+        Statistics(int formulaCount, int evaluatedFormulas, int levels, int maxLevelWidth, long elapsedNanos)
+        {
+            this.formulaCount = formulaCount;
+            this.evaluatedFormulas = evaluatedFormulas;
+            this.levels = levels;
+            this.maxLevelWidth = maxLevelWidth;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Возвращает количество формул листа на момент пересчета.
+         *
+         * @return количество формул
+         */
+        public int getFormulaCount()
+        {
+            return formulaCount;
+        }
+
+        /**
+         * Возвращает количество формул, вычисленных при пересчете (устаревших формул).
+         *
+         * @return количество вычисленных формул
+         */
+        public int getEvaluatedFormulas()
+        {
+            return evaluatedFormulas;
+        }
+
+        /**
+         * Возвращает количество уровней: длину самой длинной цепочки зависимостей среди вычисленных формул.
+         *
+         * @return количество уровней
+         */
+        public int getLevels()
+        {
+            return levels;
+        }
+
+        /**
+         * Возвращает наибольшее количество независимых формул, вычисленных на одном уровне.
+         *
+         * @return ширина самого широкого уровня
+         */
+        public int getMaxLevelWidth()
+        {
+            return maxLevelWidth;
+        }
+
+        /**
+         * Возвращает длительность пересчета.
+         *
+         * @return длительность в наносекундах
+         */
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "evaluated " + evaluatedFormulas + " of " + formulaCount + " formulas in " + levels
+                    + " levels (max width " + maxLevelWidth + ", " + elapsedNanos + " ns)";
+        }
+    }
+
+    /**
+     * Создает лист со стандартным набором функций и пересчетом в общем пуле потоков.
+     */
+    public FormulaSheet()
+    {
+        this(FunctionRegistry.standard(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Создает лист.
+     *
+     * @param functions набор функций, доступных в формулах
+     * @param pool пул потоков для параллельного пересчета
+     */
+    public FormulaSheet(FunctionRegistry functions, ForkJoinPool pool)
+    {
+        this.functions = functions;
+        this.pool = pool;
+    }
+
+    /**
+     * Определяет или заменяет формулу. Переменные формулы, совпадающие с именами других формул,
+     * ссылаются на их значения. Если с этим именем было задано входное значение, оно удаляется.
+     *
+     * @param name имя формулы
+     * @param expression математическое выражение
+     * @throws IllegalArgumentException если в выражении есть синтаксические ошибки или формула
+     *         через другие формулы зависит от самой себя
+     */
+    public void define(String name, String expression)
+    {
+        CompiledExpression compiled = functions == FunctionRegistry.standard()
+                ? Calculator.compile(expression) : Calculator.compile(expression, functions);
+        checkCycle(name, compiled);
+
+        Formula previous = formulas.get(name);
+        if (previous != null)
+        {
+            for (String variable : previous.expression.getVariables())
+                users.get(variable).remove(previous);
+            dirty.remove(previous);
+        }
+        Formula formula = new Formula(name, compiled);
+        formulas.put(name, formula);
+        inputs.remove(name);
+        for (String variable : compiled.getVariables())
+            users.computeIfAbsent(variable, k -> new LinkedHashSet<>()).add(formula);
+        invalidate(formula);
+        invalidateUsers(name);
+    }
+
+    /**
+     * Удаляет формулу. Формулы, которые ссылались на нее, начинают ссылаться на входное значение с этим именем.
+     *
+     * @param name имя формулы
+     * @return true если формула была определена
+     */
+    public boolean remove(String name)
+    {
+        Formula formula = formulas.remove(name);
+        if (formula == null)
+            return false;
+        for (String variable : formula.expression.getVariables())
+            users.get(variable).remove(formula);
+        dirty.remove(formula);
+        invalidateUsers(name);
+        return true;
+    }
+
+    /**
+     * Задает входное значение и помечает устаревшими зависящие от него формулы.
+     * Если значение не изменилось, ничего не пересчитывается.
+     *
+     * @param name имя входного значения
+     * @param value значение
+     * @throws IllegalArgumentException если с этим именем определена формула
+     */
+    public void setInput(String name, double value)
+    {
+        if (formulas.containsKey(name))
+            throw new IllegalArgumentException("Cannot set formula " + name + " as an input");
+        Double previous = inputs.put(name, value);
+        if (previous == null || Double.doubleToRawLongBits(previous) != Double.doubleToRawLongBits(value))
+            invalidateUsers(name);
+    }
+
+    /**
+     * Задает несколько входных значений; зависящие от них формулы пересчитываются вместе.
+     *
+     * @param values входные значения по именам
+     * @throws IllegalArgumentException если с каким-либо именем определена формула
+     */
+    public void setInputs(Map<String, Double> values)
+    {
+        for (String name : values.keySet())
+            if (formulas.containsKey(name))
+                throw new IllegalArgumentException("Cannot set formula " + name + " as an input");
+        for (Map.Entry<String, Double> entry : values.entrySet())
+            setInput(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Возвращает значение формулы, предварительно пересчитав устаревшие формулы.
+     *
+     * @param name имя формулы
+     * @return значение формулы
+     * @throws IllegalArgumentException если формула не определена или для нее не задано входное значение
+     * @throws ArithmeticException если при вычислении формулы или ее аргументов произошло деление на ноль
+     */
+    public double get(String name)
+    {
+        Formula formula = formulas.get(name);
+        if (formula == null)
+            throw new IllegalArgumentException("Unknown formula: " + name);
+        if (!dirty.isEmpty())
+            recompute();
+        if (formula.error != null)
+            throw formula.error;
+        return formula.value;
+    }
+
+    /**
+     * Возвращает имена формул листа.
+     *
+     * @return имена в порядке определения
+     */
+    public Set<String> getFormulas()
+    {
+        return Collections.unmodifiableSet(formulas.keySet());
+    }
+
+    /**
+     * Возвращает количество устаревших формул, ожидающих пересчета.
+     *
+     * @return количество устаревших формул
+     */
+    public int getPendingCount()
+    {
+        return dirty.size();
+    }
+
+    /**
+     * Возвращает статистику последнего пересчета.
+     *
+     * @return статистика
+     */
+    public Statistics getLastStatistics()
+    {
+        return lastStatistics;
+    }
+
+    /**
+     * Пересчитывает устаревшие формулы уровнями; формулы одного уровня вычисляются параллельно.
+     *
+     * @return статистика пересчета
+     */
+    public Statistics recompute()
+    {
+        long start = System.nanoTime();
+        // Количество еще не вычисленных устаревших аргументов каждой устаревшей формулы
+        Map<Formula, Integer> waiting = new HashMap<>();
+        List<Formula> level = new ArrayList<>();
+        for (Formula formula : dirty)
+        {
+            int count = 0;
+            for (String variable : formula.expression.getVariables())
+            {
+                Formula argument = formulas.get(variable);
+                if (argument != null && dirty.contains(argument))
+                    ++count;
+            }
+            if (count == 0)
+                level.add(formula);
+            else
+                waiting.put(formula, count);
+        }
+
+        int evaluated = 0, levels = 0, maxWidth = 0;
+        while (!level.isEmpty())
+        {
+            evaluate(level);
+            evaluated += level.size();
+            ++levels;
+            maxWidth = Math.max(maxWidth, level.size());
+
+            List<Formula> next = new ArrayList<>();
+            for (Formula formula : level)
+                for (Formula user : users.getOrDefault(formula.name, Set.of()))
+                {
+                    Integer count = waiting.get(user);
+                    if (count == null)
+                        continue;
+                    if (count == 1)
+                    {
+                        waiting.remove(user);
+                        next.add(user);
+                    }
+                    else
+                        waiting.put(user, count - 1);
+                }
+            level = next;
+        }
+        dirty.clear();
+        lastStatistics = new Statistics(formulas.size(), evaluated, levels, maxWidth, System.nanoTime() - start);
+        return lastStatistics;
+    }
+
+    /**
+     * Вычисляет формулы одного уровня: последовательно, если их мало, иначе - параллельно в пуле потоков.
+     *
+     * @param level формулы, аргументы которых уже вычислены
+     */
+    private void evaluate(List<Formula> level)
+    {
+        for (Formula formula : level)
+            formula.bind(this);
+        if (level.size() < MIN_PARALLEL_LEVEL || pool.getParallelism() == 1)
+            for (Formula formula : level)
+                formula.evaluate();
+        else
+            pool.invoke(new LevelTask(level, 0, level.size()));
+    }
+
+    /**
+     * Помечает устаревшими формулу и все формулы, зависящие от нее.
+     *
+     * @param formula формула
+     */
+    private void invalidate(Formula formula)
+    {
+        ArrayDeque<Formula> pending = new ArrayDeque<>();
+        if (dirty.add(formula))
+            pending.push(formula);
+        while (!pending.isEmpty())
+            for (Formula user : users.getOrDefault(pending.pop().name, Set.of()))
+                if (dirty.add(user))
+                    pending.push(user);
+    }
+
+    /**
+     * Помечает устаревшими формулы, в которых встречается переменная с данным именем, и зависящие от них.
+     *
+     * @param name имя формулы или входного значения
+     */
+    private void invalidateUsers(String name)
+    {
+        for (Formula user : users.getOrDefault(name, Set.of()))
+            invalidate(user);
+    }
+
+    /**
+     * Проверяет, что новая формула не зависит от самой себя через другие формулы.
+     *
+     * @param name имя формулы
+     * @param expression выражение формулы
+     * @throws IllegalArgumentException если обнаружена циклическая зависимость
+     */
+    private void checkCycle(String name, CompiledExpression expression)
+    {
+        // Обход в глубину от переменных новой формулы; путь восстанавливается по ссылкам на предыдущую формулу
+        Map<String, String> reachedFrom = new HashMap<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        for (String variable : expression.getVariables())
+            if (reachedFrom.putIfAbsent(variable, name) == null)
+                pending.push(variable);
+        while (!pending.isEmpty())
+        {
+            String current = pending.pop();
+            if (current.equals(name))
+            {
+                StringBuilder cycle = new StringBuilder(name);
+                for (String step = reachedFrom.get(name); !step.equals(name); step = reachedFrom.get(step))
+                    cycle.insert(0, step + " -> ");
+                throw new IllegalArgumentException("Cyclic dependency: " + name + " -> " + cycle);
+            }
+            Formula formula = formulas.get(current);
+            if (formula != null)
+                for (String variable : formula.expression.getVariables())
+                    if (reachedFrom.putIfAbsent(variable, current) == null)
+                        pending.push(variable);
+        }
+    }
+
+    /**
+     * Формула листа и ее последнее вычисленное значение.
+     */
+    private static final class Formula
+    {
+        /** Имя формулы */
+        final String name;
+
+        /** Выражение формулы */
+        final CompiledExpression expression;
+
+        /** Значения аргументов по номерам слотов */
+        private final double[] values;
+
+        /** Последнее вычисленное значение */
+        double value;
+
+        /** Ошибка последнего вычисления или null */
+        RuntimeException error;
+
+        Formula(String name, CompiledExpression expression)
+        {
+            this.name = name;
+            this.expression = expression;
+            this.values = new double[expression.getVariableCount()];
+        }
+
+        /**
+         * Связывает переменные с формулами и входными значениями листа и собирает значения аргументов.
+         * Вызывается в потоке пересчета до параллельного вычисления уровня.
+         *
+         * @param sheet лист формул
+         */
+        void bind(FormulaSheet sheet)
+        {
+            error = null;
+            for (int slot = 0; slot < values.length; slot++)
+            {
+                String variable = expression.variableName(slot);
+                Formula argument = sheet.formulas.get(variable);
+                if (argument != null)
+                {
+                    if (argument.error != null && error == null)
+                        error = argument.error;
+                    values[slot] = argument.value;
+                    continue;
+                }
+                Double input = sheet.inputs.get(variable);
+                if (input == null && error == null)
+                    error = new IllegalArgumentException("Unknown variable: " + variable);
+                values[slot] = input == null ? 0 : input;
+            }
+        }
+
+        /**
+         * Вычисляет формулу по собранным значениям аргументов.
+         */
+        void evaluate()
+        {
+            if (error != null)
+                return;
+            try
+            {
+                value = expression.evaluate(values);
+            }
+            catch (RuntimeException e)
+            {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Задача вычисления части уровня, которая делится пополам, пока в ней больше одной формулы.
+     */
+    @SuppressWarnings("serial")
+    private static final class LevelTask extends RecursiveAction
+    {
+        /** Формулы уровня */
+        private final List<Formula> level;
+
+        /** Границы части уровня */
+        private final int from, to;
+
+        LevelTask(List<Formula> level, int from, int to)
+        {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from == 1)
+            {
+                level.get(from).evaluate();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelTask(level, from, middle), new LevelTask(level, middle, to));
+        }
+    }
+}
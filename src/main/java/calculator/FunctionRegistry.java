@@ -0,0 +1,330 @@
+package calculator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Набор функций, доступных в выражениях.
+ *
+ * <p>Стандартный набор ({@link #standard()}) содержит функции одного аргумента sin, cos, tg, ctg, exp, log,
+ * функции двух аргументов min, max, hypot и функцию трех аргументов {@code clamp(x, low, high)}.
+ * Собственные функции добавляются методами {@code with}, каждый из которых возвращает новый набор:
+ * <pre>
+ * {@code
+ * FunctionRegistry functions = FunctionRegistry.standard()
+ *         .with("sq", x -> x * x)
+ *         .with("discount", (price, rate) -> price * (1 - rate))
+ *         .with("lerp", (a, b, t) -> a + (b - a) * t)
+ *         .with("avg", 4, args -> (args[0] + args[1] + args[2] + args[3]) / 4);
+ * CompiledExpression expr = Calculator.compile("discount(lerp(a, b, t), 0.1) + sq(x) - avg(a, b, t, x)", functions);
+ * }
+ * </pre>
+ *
+ * <p>Функции одного, двух и трех аргументов, заданные операторами ({@link DoubleUnaryOperator},
+ * {@link DoubleBinaryOperator}, {@link DoubleTernaryOperator}), вызываются без создания массива аргументов.
+ * Функция, получающая массив аргументов, получает массив, который повторно используется
+ * для следующих вызовов, поэтому сохранять его после возврата из функции нельзя.
+ *
+ * <p>Функция одного аргумента, как и встроенные, записывается и без скобок ({@code sin2}), функция
+ * нескольких аргументов - только со скобками и аргументами через запятую. Имя функции нескольких аргументов
+ * без следующей за ним скобки считается именем переменной, поэтому формулы с переменными
+ * {@code min}, {@code max} и т.п. разбираются как прежде. Функция разрешается один раз
+ * при разборе, количество аргументов проверяется там же; при вычислении функция вызывается
+ * напрямую, без поиска по имени. Функции должны быть чистыми: вызов с постоянными аргументами
+ * выполняется один раз при разборе или оптимизации выражения.
+ *
+ * <p>Набор, полученный методом {@link #withGammaFactorial()}, дополнительно вычисляет факториал
+ * нецелых чисел через гамма-функцию и содержит функции {@code gamma} и {@code lgamma}.
+ *
+ * <p>Набор, полученный методом {@link #withFastMath()}, вычисляет cos, tg, ctg и log
+ * быстрыми приближениями с ограниченной погрешностью ({@link FastMath}) - для задач вроде
+ * моделирования методом Монте-Карло и построения графиков, где полная точность не нужна.
+ * Стандартный набор вычисляет эти функции точно.
+ *
+ * <p>Класс неизменяемый и потокобезопасный.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class FunctionRegistry
+{
+    /** Стандартный набор функций */
+    private static final FunctionRegistry STANDARD = createStandard();
+
+    /** Функции по именам */
+    private final Map<String, MathFunction> functions;
+
+    /** Признак вычисления факториала нецелых чисел через гамма-функцию */
+    private final boolean gammaFactorial;
+
+    /** Признак быстрых приближенных трансцендентных функций */
+    private final boolean fastMath;
+
+    /**
+     * Создает набор функций.
+     *
+     * @param functions функции по именам
+     * @param gammaFactorial признак вычисления факториала через гамма-функцию
+     * @param fastMath признак быстрых приближенных функций
+     */
+    private FunctionRegistry(Map<String, MathFunction> functions, boolean gammaFactorial, boolean fastMath)
+    {
+        this.functions = functions;
+        this.gammaFactorial = gammaFactorial;
+        this.fastMath = fastMath;
+    }
+
+    /**
+     * Возвращает стандартный набор функций.
+     *
+     * @return стандартный набор
+     */
+    public static FunctionRegistry standard()
+    {
+        return STANDARD;
+    }
+
+    /**
+     * Возвращает набор, в котором к функциям этого набора добавлена функция одного аргумента.
+     *
+     * @param name имя функции (латинские буквы)
+     * @param function реализация функции
+     * @return новый набор функций
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public FunctionRegistry with(String name, DoubleUnaryOperator function)
+    {
+        return with(MathFunction.of(checkName(name), function));
+    }
+
+    /**
+     * Возвращает набор, в котором к функциям этого набора добавлена функция двух аргументов.
+     *
+     * @param name имя функции (латинские буквы)
+     * @param function реализация функции
+     * @return новый набор функций
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public FunctionRegistry with(String name, DoubleBinaryOperator function)
+    {
+        return with(MathFunction.of(checkName(name), function));
+    }
+
+    /**
+     * Возвращает набор, в котором к функциям этого набора добавлена функция трех аргументов.
+     *
+     * @param name имя функции (латинские буквы)
+     * @param function реализация функции
+     * @return новый набор функций
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public FunctionRegistry with(String name, DoubleTernaryOperator function)
+    {
+        return with(MathFunction.of(checkName(name), function));
+    }
+
+    /**
+     * Возвращает набор, в котором к функциям этого набора добавлена функция заданного количества аргументов.
+     * Массив аргументов действителен только во время вызова: вычислитель заполняет тот же массив
+     * для следующих вызовов.
+     *
+     * @param name имя функции (латинские буквы)
+     * @param arity количество аргументов
+     * @param function реализация функции, получающая массив аргументов
+     * @return новый набор функций
+     * @throws IllegalArgumentException если имя некорректно или уже занято, или количество аргументов не положительно
+     */
+    public FunctionRegistry with(String name, int arity, ToDoubleFunction<double[]> function)
+    {
+        if (arity < 1)
+            throw new IllegalArgumentException("Function must have at least one argument: " + arity);
+        return with(MathFunction.of(checkName(name), arity, function));
+    }
+
+    /**
+     * Возвращает набор, в котором факториал нецелого числа вычисляется как {@code n! = Γ(n + 1)}
+     * вместо ошибки, и добавлены функции {@code gamma(x)} и {@code lgamma(x)} (логарифм модуля гамма-функции).
+     * Факториал целых чисел не меняется; факториал отрицательного целого числа по-прежнему ошибка.
+     *
+     * @return новый набор функций
+     * @throws IllegalArgumentException если имена gamma или lgamma уже заняты
+     */
+    public FunctionRegistry withGammaFactorial()
+    {
+        FunctionRegistry registry = with(MathFunction.of("gamma", CompiledExpression::gamma))
+                .with(MathFunction.of("lgamma", CompiledExpression::lgamma));
+        return new FunctionRegistry(registry.functions, true, fastMath);
+    }
+
+    /**
+     * Проверяет, вычисляется ли в этом наборе факториал нецелых чисел через гамма-функцию.
+     *
+     * @return true если набор получен методом {@link #withGammaFactorial()}
+     */
+    public boolean hasGammaFactorial()
+    {
+        return gammaFactorial;
+    }
+
+    /**
+     * Возвращает набор, в котором cos, tg, ctg и log вычисляются быстрыми приближениями.
+     * Погрешность приближений указана в описании {@link FastMath}: не более 1e-12 относительной
+     * (для cos - 1e-13 абсолютной) в рабочем диапазоне, за его пределами функции точные.
+     * При пакетном вычислении приближения быстрее точных функций: cos - в 1,1-1,2 раза,
+     * log - в 1,2-1,4 раза, tg и ctg - в 1,5 раза ({@code FastMathBenchmark}).
+     * Синус и экспонента остаются точными: встроенные в JVM {@link Math#sin} и {@link Math#exp}
+     * не медленнее приближений, и замена лишь ухудшила бы точность.
+     * Остальные функции набора не меняются.
+     *
+     * @return новый набор функций
+     */
+    public FunctionRegistry withFastMath()
+    {
+        Map<String, MathFunction> copy = new LinkedHashMap<>();
+        for (MathFunction function : functions.values())
+        {
+            int operator = fastOperator(function.operator);
+            copy.put(function.name, operator == function.operator ? function
+                    : MathFunction.operator(function.name, function.arity, operator));
+        }
+        return new FunctionRegistry(copy, gammaFactorial, true);
+    }
+
+    /**
+     * Проверяет, вычисляются ли в этом наборе трансцендентные функции быстрыми приближениями.
+     *
+     * @return true если набор получен методом {@link #withFastMath()}
+     */
+    public boolean hasFastMath()
+    {
+        return fastMath;
+    }
+
+    /**
+     * Проверяет, есть ли в наборе функция с заданным именем.
+     *
+     * @param name имя функции
+     * @return true если функция есть
+     */
+    public boolean contains(String name)
+    {
+        return functions.containsKey(name);
+    }
+
+    /**
+     * Возвращает количество аргументов функции.
+     *
+     * @param name имя функции
+     * @return количество аргументов
+     * @throws IllegalArgumentException если функции нет в наборе
+     */
+    public int arity(String name)
+    {
+        MathFunction function = functions.get(name);
+        if (function == null)
+            throw new IllegalArgumentException("Unknown function: " + name);
+        return function.arity;
+    }
+
+    /**
+     * Возвращает имена всех функций набора.
+     *
+     * @return неизменяемый набор имен
+     */
+    public Set<String> getNames()
+    {
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+
+    /**
+     * Возвращает функцию по имени.
+     *
+     * @param name имя функции
+     * @return функция или null, если ее нет в наборе
+     */
+    MathFunction get(String name)
+    {
+        return functions.get(name);
+    }
+
+    /**
+     * Возвращает набор с добавленной функцией.
+     *
+     * @param function новая функция
+     * @return новый набор функций
+     */
+    private FunctionRegistry with(MathFunction function)
+    {
+        if (functions.containsKey(function.name))
+            throw new IllegalArgumentException("Function is already defined: " + function.name);
+        Map<String, MathFunction> copy = new LinkedHashMap<>(functions);
+        copy.put(function.name, function);
+        return new FunctionRegistry(copy, gammaFactorial, fastMath);
+    }
+
+    /**
+     * Возвращает код операции быстрого приближения встроенной функции.
+     *
+     * @param operator код операции
+     * @return код операции приближения или тот же код, если приближения нет
+     */
+    private static int fastOperator(int operator)
+    {
+        return switch (operator)
+        {
+            case CompiledExpression.COS -> CompiledExpression.FAST_COS;
+            case CompiledExpression.TAN -> CompiledExpression.FAST_TAN;
+            case CompiledExpression.COT -> CompiledExpression.FAST_COT;
+            case CompiledExpression.LOG -> CompiledExpression.FAST_LOG;
+            default -> operator;
+        };
+    }
+
+    /**
+     * Проверяет, что имя функции состоит из латинских букв (иначе разборщик не выделит его из выражения).
+     *
+     * @param name имя функции
+     * @return то же имя
+     * @throws IllegalArgumentException если имя пустое или содержит другие символы
+     */
+    private static String checkName(String name)
+    {
+        if (name.isEmpty())
+            throw new IllegalArgumentException("Function name must not be empty");
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = name.charAt(i);
+            if (!('a' <= c && c <= 'z') && !('A' <= c && c <= 'Z'))
+                throw new IllegalArgumentException("Function name must consist of Latin letters: " + name);
+        }
+        return name;
+    }
+
+    /**
+     * Создает стандартный набор функций.
+     *
+     * @return стандартный набор
+     */
+    private static FunctionRegistry createStandard()
+    {
+        Map<String, MathFunction> functions = new LinkedHashMap<>();
+        for (MathFunction function : new MathFunction[] {
+                MathFunction.operator("sin", 1, CompiledExpression.SIN),
+                MathFunction.operator("cos", 1, CompiledExpression.COS),
+                MathFunction.operator("tg", 1, CompiledExpression.TAN),
+                MathFunction.operator("ctg", 1, CompiledExpression.COT),
+                MathFunction.operator("exp", 1, CompiledExpression.EXP),
+                MathFunction.operator("log", 1, CompiledExpression.LOG),
+                MathFunction.operator("min", 2, CompiledExpression.MIN),
+                MathFunction.operator("max", 2, CompiledExpression.MAX),
+                MathFunction.operator("hypot", 2, CompiledExpression.HYPOT),
+                MathFunction.of("clamp", (x, low, high) -> Math.clamp(x, low, high))})
+            functions.put(function.name, function);
+        return new FunctionRegistry(functions, false, false);
+    }
+}
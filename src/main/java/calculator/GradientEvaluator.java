@@ -0,0 +1,520 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Вычисление выражения вместе с градиентом по всем переменным методом автоматического дифференцирования.
+ *
+ * <p>Программа выражения разворачивается в граф подвыражений. За один прямой проход вычисляются значения
+ * узлов и локальные производные каждого узла по его аргументам, после чего производные собираются по правилу
+ * дифференцирования сложной функции одним из двух способов:
+ * <ul>
+ *   <li>прямой режим: вместе со значением каждого узла переносится вектор его производных по всем
+ *       переменным; стоимость пропорциональна размеру выражения, умноженному на число переменных,
+ *       и нет обратного прохода - выгоден при нескольких переменных;</li>
+ *   <li>обратный режим: обратный проход от корня переносит к аргументам производную результата по узлу;
+ *       стоимость не зависит от числа переменных - выгоден при многих переменных.</li>
+ * </ul>
+ * Режим по умолчанию ({@link CompiledExpression#gradient()}) выбирается по числу переменных:
+ * прямой - при не более чем {@value #FORWARD_MODE_LIMIT} переменных, иначе обратный.
+ *
+ * <p>Значение выражения вычисляется теми же операциями, что и {@link CompiledExpression#evaluate(double...)},
+ * и совпадает с ним побитово. Производные встроенных операций вычисляются по формулам; производная
+ * факториала - производная его продолжения гамма-функцией {@code x!·ψ(x + 1)}, модуля - знак аргумента,
+ * минимума и максимума - производная выбранного аргумента. Производная {@code a^b} по показателю при
+ * {@code a < 0} не определена (NaN). Функции из набора функций, кроме встроенных, дифференцируются
+ * численно центральной разностью (относительная погрешность около 1e-10).
+ *
+ * <p>Класс неизменяемый и потокобезопасный: рабочие массивы создаются при каждом вызове.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * GradientEvaluator grad = Calculator.compile("x^2 * y + sin(y)").gradient();
+ * double[] gradient = new double[grad.getVariableCount()];
+ * double value = grad.evaluate(new double[] {3.0, 0.0}, gradient);
+ * // value = 0.0, gradient = {0.0, 10.0}: d/dx = 2xy, d/dy = x^2 + cos(y)
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class GradientEvaluator
+{
+    /** Наибольшее число переменных, при котором режим по умолчанию - прямой */
+    static final int FORWARD_MODE_LIMIT = 4;
+
+    /** Относительный шаг численного дифференцирования (кубический корень из машинного эпсилон) */
+    private static final double DIFFERENCE_STEP = 6.055454452393343e-6;
+
+    /** Скомпилированное выражение */
+    private final CompiledExpression expression;
+
+    /** Признак обратного режима */
+    private final boolean reverse;
+
+    /** Индексы команд программы, вычисляющих узлы; узлы нумеруются в порядке программы */
+    private final int[] instructions;
+
+    /** Узлы-аргументы каждого узла */
+    private final int[][] arguments;
+
+    /** Начало локальных производных каждого узла в общем массиве производных */
+    private final int[] offsets;
+
+    /** Общее количество аргументов всех узлов */
+    private final int partialCount;
+
+    /** Наибольшее количество аргументов функции из набора функций */
+    private final int maxArity;
+
+    /**
+     * Строит граф подвыражений.
+     *
+     * @param expression скомпилированное выражение
+     * @param reverse true для обратного режима, false для прямого
+     */
+    GradientEvaluator(CompiledExpression expression, boolean reverse)
+    {
+        this.expression = expression;
+        this.reverse = reverse;
+        int[] kinds = expression.kinds, slots = expression.slots;
+
+        int count = 0;
+        for (int kind : kinds)
+            if (kind != CompiledExpression.LOAD_TEMPORARY && kind != CompiledExpression.STORE_TEMPORARY)
+                ++count;
+        instructions = new int[count];
+        arguments = new int[count][];
+        offsets = new int[count];
+
+        // Выполнение программы над номерами узлов вместо значений: стек хранит узел каждого значения
+        int[] stack = new int[Math.max(expression.maxStack, 1)];
+        int[] temporaries = new int[expression.shape.temporaryCount];
+        int top = 0, node = 0, partials = 0, arityLimit = 0;
+        for (int i = 0; i < kinds.length; i++)
+        {
+            int arity;
+            switch (kinds[i])
+            {
+                case CompiledExpression.LOAD_TEMPORARY ->
+                {
+                    stack[top++] = temporaries[slots[i]];
+                    continue;
+                }
+                case CompiledExpression.STORE_TEMPORARY ->
+                {
+                    temporaries[slots[i]] = stack[top - 1];
+                    continue;
+                }
+                case CompiledExpression.LITERAL, CompiledExpression.VARIABLE, CompiledExpression.NEGATED_VARIABLE -> arity = 0;
+                case CompiledExpression.UNARY_OPERATOR -> arity = 1;
+                case CompiledExpression.CALL ->
+                {
+                    arity = expression.functions[i].arity;
+                    arityLimit = Math.max(arityLimit, arity);
+                }
+                default -> arity = 2;
+            }
+            top -= arity;
+            arguments[node] = Arrays.copyOfRange(stack, top, top + arity);
+            offsets[node] = partials;
+            partials += arity;
+            instructions[node] = i;
+            stack[top++] = node++;
+        }
+        partialCount = partials;
+        maxArity = arityLimit;
+    }
+
+    /**
+     * Возвращает выражение, градиент которого вычисляется.
+     *
+     * @return скомпилированное выражение
+     */
+    public CompiledExpression getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Возвращает количество переменных, то есть длину градиента.
+     *
+     * @return количество переменных
+     */
+    public int getVariableCount()
+    {
+        return expression.getVariableCount();
+    }
+
+    /**
+     * Проверяет, используется ли обратный режим дифференцирования.
+     *
+     * @return true для обратного режима, false для прямого
+     */
+    public boolean isReverseMode()
+    {
+        return reverse;
+    }
+
+    /**
+     * Вычисляет значение выражения и градиент за один проход.
+     *
+     * @param values значения переменных, где индекс - номер слота (см. {@link CompiledExpression#slotOf(String)})
+     * @param gradient массив для частных производных по переменным, где индекс - номер слота
+     * @return значение выражения
+     * @throws IllegalArgumentException если значений меньше, чем переменных, или массив градиента короче
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(double[] values, double[] gradient)
+    {
+        expression.checkValues(values);
+        checkGradient(gradient.length);
+        return sweep(values, gradient, new Workspace(this));
+    }
+
+    /**
+     * Вычисляет значение выражения и градиент с заданными значениями переменных.
+     *
+     * @param values карта значений переменных, где ключ - имя переменной
+     * @param gradient карта, в которую записываются частные производные по именам переменных
+     * @return значение выражения
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(Map<String, Double> values, Map<String, Double> gradient)
+    {
+        double[] partials = new double[getVariableCount()];
+        double value = evaluate(expression.slotValues(values), partials);
+        for (int slot = 0; slot < partials.length; slot++)
+            gradient.put(expression.variableName(slot), partials[slot]);
+        return value;
+    }
+
+    /**
+     * Вычисляет значение выражения и градиент для каждой строки таблицы значений переменных,
+     * заданной столбцами по номерам слотов. Рабочие массивы создаются один раз на весь вызов.
+     *
+     * @param columns столбцы значений, где индекс - номер слота
+     * @param out массив для значений выражения; его длина задает количество строк
+     * @param gradients столбцы частных производных, где индекс - номер слота переменной, а индекс в столбце - номер строки
+     * @throws IllegalArgumentException если столбцов значений или производных меньше, чем переменных,
+     *         или какой-либо столбец короче {@code out}
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public void evaluateColumns(double[][] columns, double[] out, double[][] gradients)
+    {
+        int variables = getVariableCount(), rows = out.length;
+        ColumnEvaluator.checkColumns(expression, columns, rows);
+        ColumnEvaluator.checkColumns(expression, gradients, rows);
+
+        Workspace workspace = new Workspace(this);
+        double[] values = new double[variables], gradient = new double[variables];
+        for (int row = 0; row < rows; row++)
+        {
+            for (int slot = 0; slot < variables; slot++)
+                values[slot] = columns[slot][row];
+            out[row] = sweep(values, gradient, workspace);
+            for (int slot = 0; slot < variables; slot++)
+                gradients[slot][row] = gradient[slot];
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return (reverse ? "reverse" : "forward") + " gradient of " + expression;
+    }
+
+    /**
+     * Проверяет длину массива градиента.
+     *
+     * @param length длина массива
+     * @throws IllegalArgumentException если массив короче количества переменных
+     */
+    private void checkGradient(int length)
+    {
+        if (length < getVariableCount())
+            throw new IllegalArgumentException("Expected " + getVariableCount() + " gradient slots, got " + length);
+    }
+
+    /**
+     * Выполняет прямой проход и собирает градиент выбранным режимом.
+     *
+     * @param variables значения переменных по номерам слотов
+     * @param gradient массив для частных производных
+     * @param workspace рабочие массивы
+     * @return значение выражения
+     */
+    private double sweep(double[] variables, double[] gradient, Workspace workspace)
+    {
+        int n = getVariableCount(), root = instructions.length - 1;
+        double[] nodeValues = workspace.nodeValues, partials = workspace.partials;
+        for (int node = 0; node <= root; node++)
+            nodeValues[node] = computeNode(node, variables, nodeValues, partials, workspace);
+
+        if (reverse)
+        {
+            double[] adjoints = workspace.adjoints;
+            Arrays.fill(adjoints, 0);
+            Arrays.fill(gradient, 0, n, 0);
+            adjoints[root] = 1;
+            for (int node = root; node >= 0; node--)
+            {
+                double adjoint = adjoints[node];
+                if (adjoint == 0)
+                    continue;
+                int i = instructions[node];
+                switch (expression.kinds[i])
+                {
+                    case CompiledExpression.VARIABLE -> gradient[expression.slots[i]] += adjoint;
+                    case CompiledExpression.NEGATED_VARIABLE -> gradient[expression.slots[i]] -= adjoint;
+                    default ->
+                    {
+                        int[] args = arguments[node];
+                        for (int k = 0; k < args.length; k++)
+                            adjoints[args[k]] += partials[offsets[node] + k] * adjoint;
+                    }
+                }
+            }
+        }
+        else
+        {
+            // Производные узла по переменным хранятся подряд: tangents[node * n + slot]
+            double[] tangents = workspace.tangents;
+            for (int node = 0; node <= root; node++)
+            {
+                int i = instructions[node], base = node * n;
+                Arrays.fill(tangents, base, base + n, 0);
+                switch (expression.kinds[i])
+                {
+                    case CompiledExpression.VARIABLE -> tangents[base + expression.slots[i]] = 1;
+                    case CompiledExpression.NEGATED_VARIABLE -> tangents[base + expression.slots[i]] = -1;
+                    default ->
+                    {
+                        int[] args = arguments[node];
+                        for (int k = 0; k < args.length; k++)
+                        {
+                            double partial = partials[offsets[node] + k];
+                            int argument = args[k] * n;
+                            // Пропуск нулевых производных аргумента: бесконечная или неопределенная
+                            // локальная производная по константе не должна давать NaN
+                            for (int slot = 0; slot < n; slot++)
+                                if (tangents[argument + slot] != 0)
+                                    tangents[base + slot] += partial * tangents[argument + slot];
+                        }
+                    }
+                }
+            }
+            System.arraycopy(tangents, root * n, gradient, 0, n);
+        }
+        return nodeValues[root];
+    }
+
+    /**
+     * Вычисляет значение узла и его локальные производные по аргументам.
+     *
+     * @param node узел
+     * @param variables значения переменных по номерам слотов
+     * @param nodeValues значения узлов (значения аргументов уже вычислены)
+     * @param partials массив локальных производных
+     * @param workspace рабочие массивы (стек и массивы аргументов для вызова функции из набора функций)
+     * @return значение узла
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    private double computeNode(int node, double[] variables, double[] nodeValues, double[] partials, Workspace workspace)
+    {
+        int i = instructions[node], offset = offsets[node];
+        int[] args = arguments[node];
+        int operator = expression.slots[i];
+        switch (expression.kinds[i])
+        {
+            case CompiledExpression.LITERAL ->
+            {
+                return expression.values[i];
+            }
+            case CompiledExpression.VARIABLE ->
+            {
+                return variables[operator];
+            }
+            case CompiledExpression.NEGATED_VARIABLE ->
+            {
+                return -1 * variables[operator];
+            }
+            case CompiledExpression.UNARY_OPERATOR ->
+            {
+                double x = nodeValues[args[0]];
+                double value = CompiledExpression.apply(operator, x, 0);
+                partials[offset] = unaryDerivative(operator, x, value);
+                return value;
+            }
+            case CompiledExpression.CALL ->
+            {
+                MathFunction function = expression.functions[i];
+                double value = call(function, args, nodeValues, workspace);
+                for (int k = 0; k < args.length; k++)
+                {
+                    double x = nodeValues[args[k]], h = DIFFERENCE_STEP * Math.max(1, Math.abs(x));
+                    double up = x + h, down = x - h;
+                    nodeValues[args[k]] = up;
+                    double upper = call(function, args, nodeValues, workspace);
+                    nodeValues[args[k]] = down;
+                    double lower = call(function, args, nodeValues, workspace);
+                    nodeValues[args[k]] = x;
+                    partials[offset + k] = (upper - lower) / (up - down);
+                }
+                return value;
+            }
+            default ->
+            {
+                double a = nodeValues[args[0]], b = nodeValues[args[1]];
+                double value = CompiledExpression.apply(operator, a, b);
+                binaryDerivatives(operator, a, b, value, partials, offset);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Вызывает функцию из набора функций над значениями узлов-аргументов.
+     *
+     * @param function функция
+     * @param args узлы-аргументы
+     * @param nodeValues значения узлов
+     * @param workspace рабочие массивы
+     * @return значение функции
+     */
+    private static double call(MathFunction function, int[] args, double[] nodeValues, Workspace workspace)
+    {
+        double[] callStack = workspace.callStack;
+        for (int k = 0; k < args.length; k++)
+            callStack[k] = nodeValues[args[k]];
+        function.call(callStack, args.length, workspace.arguments);
+        return callStack[0];
+    }
+
+    /**
+     * Вычисляет производную унарного оператора или встроенной функции одного аргумента.
+     *
+     * @param operator код операции
+     * @param x аргумент
+     * @param value значение операции
+     * @return производная
+     */
+    static double unaryDerivative(int operator, double x, double value)
+    {
+        return switch (operator)
+        {
+            case CompiledExpression.NEGATE -> -1;
+            case CompiledExpression.ABS -> Math.signum(x);
+            case CompiledExpression.FACTORIAL, CompiledExpression.GAMMA_FACTORIAL -> value * CompiledExpression.digamma(x + 1);
+            case CompiledExpression.SIN -> Math.cos(x);
+            case CompiledExpression.COS -> -Math.sin(x);
+            case CompiledExpression.FAST_COS -> -FastMath.sin(x);
+            case CompiledExpression.TAN, CompiledExpression.FAST_TAN -> 1 + value * value;
+            case CompiledExpression.COT, CompiledExpression.FAST_COT -> -(1 + value * value);
+            case CompiledExpression.EXP -> value;
+            case CompiledExpression.LOG, CompiledExpression.FAST_LOG -> 1 / x;
+            case CompiledExpression.POW_HALF -> 0.5 / value;
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        };
+    }
+
+    /**
+     * Вычисляет частные производные бинарного оператора или встроенной функции двух аргументов.
+     *
+     * @param operator код операции
+     * @param a левый аргумент
+     * @param b правый аргумент
+     * @param value значение операции
+     * @param partials массив, в который записываются производные по левому и правому аргументам
+     * @param offset индекс производной по левому аргументу
+     */
+    static void binaryDerivatives(int operator, double a, double b, double value, double[] partials, int offset)
+    {
+        double left, right;
+        switch (operator)
+        {
+            case CompiledExpression.ADD ->
+            {
+                left = 1;
+                right = 1;
+            }
+            case CompiledExpression.SUBTRACT ->
+            {
+                left = 1;
+                right = -1;
+            }
+            case CompiledExpression.MULTIPLY ->
+            {
+                left = b;
+                right = a;
+            }
+            case CompiledExpression.DIVIDE ->
+            {
+                left = 1 / b;
+                right = -value / b;
+            }
+            case CompiledExpression.POWER ->
+            {
+                left = b == 0 ? 0 : b * Math.pow(a, b - 1);
+                right = a > 0 ? value * Math.log(a) : a == 0 ? 0 : Double.NaN;
+            }
+            case CompiledExpression.MIN ->
+            {
+                left = a <= b ? 1 : 0;
+                right = 1 - left;
+            }
+            case CompiledExpression.MAX ->
+            {
+                left = a >= b ? 1 : 0;
+                right = 1 - left;
+            }
+            case CompiledExpression.HYPOT ->
+            {
+                left = value == 0 ? 0 : a / value;
+                right = value == 0 ? 0 : b / value;
+            }
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+        partials[offset] = left;
+        partials[offset + 1] = right;
+    }
+
+    /**
+     * Рабочие массивы одного вычисления.
+     */
+    private static final class Workspace
+    {
+        /** Значения узлов */
+        final double[] nodeValues;
+
+        /** Локальные производные узлов по аргументам */
+        final double[] partials;
+
+        /** Производные результата по узлам (обратный режим) или null */
+        final double[] adjoints;
+
+        /** Производные узлов по переменным (прямой режим) или null */
+        final double[] tangents;
+
+        /** Стек аргументов для вызова функции из набора функций */
+        final double[] callStack;
+
+        /** Массивы аргументов для функций, получающих массив аргументов */
+        final double[][] arguments;
+
+        Workspace(GradientEvaluator evaluator)
+        {
+            int nodes = evaluator.instructions.length;
+            nodeValues = new double[nodes];
+            partials = new double[evaluator.partialCount];
+            adjoints = evaluator.reverse ? new double[nodes] : null;
+            tangents = evaluator.reverse ? null : new double[nodes * evaluator.getVariableCount()];
+            callStack = new double[evaluator.maxArity];
+            arguments = MathFunction.argumentBuffers(evaluator.expression.functions);
+        }
+    }
+}
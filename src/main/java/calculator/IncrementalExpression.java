@@ -0,0 +1,345 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Выражение, которое после изменения переменной пересчитывает только зависящие от нее подвыражения.
+ *
+ * <p>Программа выражения разворачивается в граф подвыражений: каждый узел хранит последнее вычисленное
+ * значение, ссылки на аргументы и на использующие его узлы, а каждая переменная - список узлов, в которых
+ * она встречается. Изменение переменной помечает устаревшими только узлы на путях от ее вхождений
+ * к корню; следующее вычисление пересчитывает их в порядке программы, а значения остальных узлов
+ * берет из сохраненных. Поэтому стоимость вычисления после изменения одной переменной пропорциональна
+ * числу зависящих от нее узлов, а не размеру всего выражения. Общие подвыражения остаются общими узлами
+ * и пересчитываются один раз.
+ *
+ * <p>Каждый узел вычисляется теми же операциями, что и при {@link CompiledExpression#evaluate(double...)},
+ * поэтому результаты совпадают побитово.
+ *
+ * <p>Объект изменяемый и не потокобезопасный: каждому потоку нужен собственный экземпляр.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * IncrementalExpression expr = Calculator.compile("price * (1 - discount) + log(volume)").newIncremental();
+ * expr.set("price", 100.0);
+ * expr.set("discount", 0.1);
+ * expr.set("volume", 7.0);
+ * double res1 = expr.evaluate(); // вычисляются все узлы
+ * expr.set("discount", 0.2);
+ * double res2 = expr.evaluate(); // пересчитываются только узлы на пути от discount к корню
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class IncrementalExpression
+{
+    /** Выражение, для которого создан граф */
+    private final CompiledExpression expression;
+
+    /** Индексы команд программы, вычисляющих узлы; узлы нумеруются в порядке программы */
+    private final int[] instructions;
+
+    /** Узлы-аргументы каждого узла */
+    private final int[][] arguments;
+
+    /** Узлы, использующие значение каждого узла */
+    private final int[][] users;
+
+    /** Узлы-вхождения каждой переменной по номерам слотов */
+    private final int[][] occurrences;
+
+    /** Последние вычисленные значения узлов */
+    private final double[] nodeValues;
+
+    /** Признаки устаревших значений узлов */
+    private final boolean[] dirty;
+
+    /** Устаревшие узлы в порядке пометки */
+    private final int[] dirtyNodes;
+
+    /** Количество устаревших узлов */
+    private int dirtyCount;
+
+    /** Значения переменных по номерам слотов */
+    private final double[] variables;
+
+    /** Признаки того, что значение слота задано */
+    private final boolean[] assigned;
+
+    /** Количество заданных слотов */
+    private int assignedCount;
+
+    /** Стек узлов, ожидающих пометки, при пометке устаревших узлов */
+    private final int[] pending;
+
+    /** Стек аргументов для вызова функции из набора функций */
+    private final double[] callStack;
+
+    /** Массивы аргументов для функций, получающих массив аргументов */
+    private final double[][] callArguments;
+
+    /** Количество узлов, пересчитанных последним вычислением */
+    private int lastRecomputed;
+
+    /**
+     * Строит граф подвыражений. Все узлы изначально считаются устаревшими.
+     *
+     * @param expression скомпилированное выражение
+     */
+    IncrementalExpression(CompiledExpression expression)
+    {
+        this.expression = expression;
+        int[] kinds = expression.kinds, slots = expression.slots;
+
+        int count = 0;
+        for (int kind : kinds)
+            if (kind != CompiledExpression.LOAD_TEMPORARY && kind != CompiledExpression.STORE_TEMPORARY)
+                ++count;
+        instructions = new int[count];
+        arguments = new int[count][];
+
+        // Выполнение программы над номерами узлов вместо значений: стек хранит узел каждого значения
+        int[] stack = new int[Math.max(expression.maxStack, 1)];
+        int[] temporaries = new int[expression.shape.temporaryCount];
+        int[] useCounts = new int[count];
+        int[] occurrenceCounts = new int[expression.getVariableCount()];
+        int top = 0, node = 0, maxArity = 0;
+        for (int i = 0; i < kinds.length; i++)
+        {
+            int arity;
+            switch (kinds[i])
+            {
+                case CompiledExpression.LOAD_TEMPORARY ->
+                {
+                    stack[top++] = temporaries[slots[i]];
+                    continue;
+                }
+                case CompiledExpression.STORE_TEMPORARY ->
+                {
+                    temporaries[slots[i]] = stack[top - 1];
+                    continue;
+                }
+                case CompiledExpression.LITERAL -> arity = 0;
+                case CompiledExpression.VARIABLE, CompiledExpression.NEGATED_VARIABLE ->
+                {
+                    arity = 0;
+                    ++occurrenceCounts[slots[i]];
+                }
+                case CompiledExpression.UNARY_OPERATOR -> arity = 1;
+                case CompiledExpression.CALL -> arity = expression.functions[i].arity;
+                default -> arity = 2;
+            }
+            maxArity = Math.max(maxArity, arity);
+            top -= arity;
+            arguments[node] = Arrays.copyOfRange(stack, top, top + arity);
+            for (int argument : arguments[node])
+                ++useCounts[argument];
+            instructions[node] = i;
+            stack[top++] = node++;
+        }
+
+        users = new int[count][];
+        for (int i = 0; i < count; i++)
+            users[i] = new int[useCounts[i]];
+        occurrences = new int[occurrenceCounts.length][];
+        for (int slot = 0; slot < occurrences.length; slot++)
+            occurrences[slot] = new int[occurrenceCounts[slot]];
+        for (int i = 0; i < count; i++)
+        {
+            for (int argument : arguments[i])
+                users[argument][--useCounts[argument]] = i;
+            int kind = kinds[instructions[i]];
+            if (kind == CompiledExpression.VARIABLE || kind == CompiledExpression.NEGATED_VARIABLE)
+            {
+                int slot = slots[instructions[i]];
+                occurrences[slot][--occurrenceCounts[slot]] = i;
+            }
+        }
+
+        nodeValues = new double[count];
+        dirty = new boolean[count];
+        dirtyNodes = new int[count];
+        Arrays.fill(dirty, true);
+        for (int i = 0; i < count; i++)
+            dirtyNodes[i] = i;
+        dirtyCount = count;
+        variables = new double[expression.getVariableCount()];
+        assigned = new boolean[variables.length];
+        pending = new int[count];
+        callStack = new double[maxArity];
+        callArguments = MathFunction.argumentBuffers(expression.functions);
+    }
+
+    /**
+     * Возвращает выражение, для которого создан граф.
+     *
+     * @return скомпилированное выражение
+     */
+    public CompiledExpression getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Возвращает номер слота переменной.
+     *
+     * @param name имя переменной
+     * @return номер слота или -1, если такой переменной в выражении нет
+     */
+    public int slotOf(String name)
+    {
+        return expression.slotOf(name);
+    }
+
+    /**
+     * Устанавливает значение переменной по номеру слота и помечает устаревшими зависящие от нее узлы.
+     * Если значение не изменилось, ничего не пересчитывается.
+     *
+     * @param slot номер слота
+     * @param v значение переменной
+     * @throws IndexOutOfBoundsException если слота с таким номером нет
+     */
+    public void set(int slot, double v)
+    {
+        if (assigned[slot])
+        {
+            if (Double.doubleToRawLongBits(variables[slot]) == Double.doubleToRawLongBits(v))
+                return;
+        }
+        else
+        {
+            assigned[slot] = true;
+            ++assignedCount;
+        }
+        variables[slot] = v;
+        for (int node : occurrences[slot])
+            invalidate(node);
+    }
+
+    /**
+     * Устанавливает значение переменной по имени.
+     *
+     * @param name имя переменной
+     * @param v значение переменной
+     * @throws IllegalArgumentException если такой переменной в выражении нет
+     */
+    public void set(String name, double v)
+    {
+        int slot = slotOf(name);
+        if (slot < 0)
+            throw new IllegalArgumentException("Unknown variable: " + name);
+        set(slot, v);
+    }
+
+    /**
+     * Вычисляет выражение, пересчитывая только устаревшие узлы.
+     * Если вычисление прервано исключением, непересчитанные узлы остаются устаревшими.
+     *
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate()
+    {
+        if (assignedCount < variables.length)
+            for (int slot = 0; ; slot++)
+                if (!assigned[slot])
+                    throw new IllegalArgumentException("Unknown variable: " + expression.variableName(slot));
+
+        // Номера узлов идут в порядке программы, поэтому аргументы пересчитываются раньше использующих их узлов
+        Arrays.sort(dirtyNodes, 0, dirtyCount);
+        int done = 0;
+        try
+        {
+            for (; done < dirtyCount; done++)
+            {
+                int node = dirtyNodes[done];
+                nodeValues[node] = compute(node);
+                dirty[node] = false;
+            }
+        }
+        finally
+        {
+            lastRecomputed = done;
+            dirtyCount -= done;
+            System.arraycopy(dirtyNodes, done, dirtyNodes, 0, dirtyCount);
+        }
+        return nodeValues[nodeValues.length - 1];
+    }
+
+    /**
+     * Возвращает количество узлов, пересчитанных последним вызовом {@link #evaluate()}.
+     *
+     * @return количество пересчитанных узлов
+     */
+    public int getLastRecomputeCount()
+    {
+        return lastRecomputed;
+    }
+
+    /**
+     * Возвращает количество узлов графа подвыражений.
+     *
+     * @return количество узлов
+     */
+    public int getNodeCount()
+    {
+        return nodeValues.length;
+    }
+
+    /**
+     * Помечает устаревшими узел и все узлы, использующие его значение.
+     *
+     * @param node узел
+     */
+    private void invalidate(int node)
+    {
+        if (dirty[node])
+            return;
+        int top = 0;
+        pending[top++] = node;
+        dirty[node] = true;
+        while (top > 0)
+        {
+            int current = pending[--top];
+            dirtyNodes[dirtyCount++] = current;
+            for (int user : users[current])
+                if (!dirty[user])
+                {
+                    dirty[user] = true;
+                    pending[top++] = user;
+                }
+        }
+    }
+
+    /**
+     * Вычисляет значение узла по сохраненным значениям его аргументов.
+     *
+     * @param node узел
+     * @return значение узла
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    private double compute(int node)
+    {
+        int i = instructions[node];
+        int[] args = arguments[node];
+        return switch (expression.kinds[i])
+        {
+            case CompiledExpression.LITERAL -> expression.values[i];
+            case CompiledExpression.VARIABLE -> variables[expression.slots[i]];
+            case CompiledExpression.NEGATED_VARIABLE -> -1 * variables[expression.slots[i]];
+            case CompiledExpression.UNARY_OPERATOR -> CompiledExpression.apply(expression.slots[i], nodeValues[args[0]], 0);
+            case CompiledExpression.CALL ->
+            {
+                for (int k = 0; k < args.length; k++)
+                    callStack[k] = nodeValues[args[k]];
+                expression.functions[i].call(callStack, args.length, callArguments);
+                yield callStack[0];
+            }
+            default -> CompiledExpression.apply(expression.slots[i], nodeValues[args[0]], nodeValues[args[1]]);
+        };
+    }
+}
@@ -1,5 +1,8 @@
 package calculator;
 
+import java.util.Arrays;
+import java.util.Map;
+
 /**
  * <p>Класс демонстрирует ключевые функции вычислителя математических выражений:
  * <ul>
@@ -25,6 +28,7 @@ public class Main
      *   <li>Математические функции (синус, косинус, экспонента)</li>
      *   <li>Работа с переменными</li>
      *   <li>Комплексное выражение, объединяющее все возможности</li>
+     *   <li>Пакетное вычисление выражения по столбцам значений переменных</li>
      * </ol>
      */
     public static void main(String[] args)
@@ -54,6 +58,16 @@ public class Main
         calculator4.setVariable("d", 0.0);
         System.out.println("   (a + b) * |c|^b - exp(d) = " + calculator4.getRes() + " (при a=5, b=-4, c=12, d=0)");
 
+        System.out.println("5. Пакетное вычисление по столбцам:");
+        CompiledExpression expression = Calculator.compile("(a + b) * |c|^b - exp(d)");
+        double[] results = new double[3];
+        expression.evaluate(Map.of(
+                "a", new double[] {5.0, 1.0, 2.0},
+                "b", new double[] {-4.0, 2.0, 1.0},
+                "c", new double[] {12.0, 3.0, -2.0},
+                "d", new double[] {0.0, 0.0, 1.0}), results);
+        System.out.println("   " + Arrays.toString(results));
+
         System.out.println("=" .repeat(60));
     }
 }
\ No newline at end of file
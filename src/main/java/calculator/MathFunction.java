@@ -0,0 +1,237 @@
+package calculator;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Функция, доступная в выражениях: имя, количество аргументов и реализация.
+ *
+ * <p>Функция разрешается один раз при разборе. Встроенные функции, для которых есть код операции
+ * ({@link CompiledExpression#SIN} и другие), становятся командами-операторами с этим кодом.
+ * Остальные функции становятся командами вызова ({@link CompiledExpression#CALL}), которые хранят
+ * ссылку на объект функции и вызывают ее реализацию напрямую, без поиска по имени.
+ *
+ * <p>Класс неизменяемый и потокобезопасный.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+final class MathFunction
+{
+    /** Функция вызывается командой {@link CompiledExpression#CALL}, а не оператором */
+    static final int NO_OPERATOR = -1;
+
+    /** Имя функции */
+    final String name;
+
+    /** Количество аргументов */
+    final int arity;
+
+    /** Код операции встроенной функции или {@link #NO_OPERATOR} */
+    final int operator;
+
+    /** Реализация функции одного аргумента или null */
+    final DoubleUnaryOperator unary;
+
+    /** Реализация функции двух аргументов или null */
+    final DoubleBinaryOperator binary;
+
+    /** Реализация функции трех аргументов, вызываемая без массива аргументов, или null */
+    final DoubleTernaryOperator ternary;
+
+    /** Реализация функции трех и более аргументов, получающая массив аргументов, или null */
+    final ToDoubleFunction<double[]> general;
+
+    /**
+     * Создает функцию.
+     *
+     * @param name имя функции
+     * @param arity количество аргументов
+     * @param operator код операции или {@link #NO_OPERATOR}
+     * @param unary реализация для одного аргумента
+     * @param binary реализация для двух аргументов
+     * @param ternary реализация для трех аргументов без массива
+     * @param general реализация для трех и более аргументов с массивом
+     */
+    private MathFunction(String name, int arity, int operator, DoubleUnaryOperator unary,
+                         DoubleBinaryOperator binary, DoubleTernaryOperator ternary, ToDoubleFunction<double[]> general)
+    {
+        this.name = name;
+        this.arity = arity;
+        this.operator = operator;
+        this.unary = unary;
+        this.binary = binary;
+        this.ternary = ternary;
+        this.general = general;
+    }
+
+    /**
+     * Создает встроенную функцию, выполняемую оператором с заданным кодом.
+     *
+     * @param name имя функции
+     * @param arity количество аргументов (1 или 2)
+     * @param operator код операции
+     * @return функция
+     */
+    static MathFunction operator(String name, int arity, int operator)
+    {
+        return arity == 1
+                ? new MathFunction(name, 1, operator, x -> CompiledExpression.apply(operator, x, 0), null, null, null)
+                : new MathFunction(name, 2, operator, null, (x, y) -> CompiledExpression.apply(operator, x, y), null, null);
+    }
+
+    /**
+     * Создает функцию одного аргумента.
+     *
+     * @param name имя функции
+     * @param function реализация
+     * @return функция
+     */
+    static MathFunction of(String name, DoubleUnaryOperator function)
+    {
+        return new MathFunction(name, 1, NO_OPERATOR, function, null, null, null);
+    }
+
+    /**
+     * Создает функцию двух аргументов.
+     *
+     * @param name имя функции
+     * @param function реализация
+     * @return функция
+     */
+    static MathFunction of(String name, DoubleBinaryOperator function)
+    {
+        return new MathFunction(name, 2, NO_OPERATOR, null, function, null, null);
+    }
+
+    /**
+     * Создает функцию трех аргументов, вызываемую без создания массива аргументов.
+     *
+     * @param name имя функции
+     * @param function реализация
+     * @return функция
+     */
+    static MathFunction of(String name, DoubleTernaryOperator function)
+    {
+        return new MathFunction(name, 3, NO_OPERATOR, null, null, function, null);
+    }
+
+    /**
+     * Создает функцию произвольного количества аргументов.
+     * Функции одного и двух аргументов вызываются через операторы одного и двух аргументов, создающие массив
+     * при каждом вызове; функции трех и более аргументов получают повторно используемый массив
+     * ({@link #call(double[], int, double[][])}).
+     *
+     * @param name имя функции
+     * @param arity количество аргументов
+     * @param function реализация, получающая массив аргументов
+     * @return функция
+     */
+    static MathFunction of(String name, int arity, ToDoubleFunction<double[]> function)
+    {
+        return switch (arity)
+        {
+            case 1 -> of(name, x -> function.applyAsDouble(new double[] {x}));
+            case 2 -> of(name, (x, y) -> function.applyAsDouble(new double[] {x, y}));
+            default -> new MathFunction(name, arity, NO_OPERATOR, null, null, null, function);
+        };
+    }
+
+    /**
+     * Вызывает функцию над аргументами на вершине стека значений и кладет результат на их место.
+     * Функции, получающей массив аргументов, передается новый массив.
+     *
+     * @param stack стек значений
+     * @param top размер стека
+     * @return новый размер стека
+     */
+    int call(double[] stack, int top)
+    {
+        return call(stack, top, null);
+    }
+
+    /**
+     * Вызывает функцию над аргументами на вершине стека значений и кладет результат на их место.
+     * Функция, получающая массив аргументов, получает массив из {@code arguments} с индексом, равным
+     * количеству аргументов; недостающий массив создается и сохраняется в {@code arguments}.
+     *
+     * @param stack стек значений
+     * @param top размер стека
+     * @param arguments повторно используемые массивы аргументов по количеству аргументов
+     *                  (см. {@link #argumentBuffers(MathFunction[])}) или null
+     * @return новый размер стека
+     */
+    int call(double[] stack, int top, double[][] arguments)
+    {
+        switch (arity)
+        {
+            case 1 ->
+            {
+                stack[top - 1] = unary.applyAsDouble(stack[top - 1]);
+                return top;
+            }
+            case 2 ->
+            {
+                stack[top - 2] = binary.applyAsDouble(stack[top - 2], stack[top - 1]);
+                return top - 1;
+            }
+            default ->
+            {
+                int first = top - arity;
+                if (ternary != null)
+                    stack[first] = ternary.applyAsDouble(stack[first], stack[first + 1], stack[first + 2]);
+                else
+                {
+                    double[] buffer = argumentBuffer(arguments);
+                    System.arraycopy(stack, first, buffer, 0, arity);
+                    stack[first] = general.applyAsDouble(buffer);
+                }
+                return first + 1;
+            }
+        }
+    }
+
+    /**
+     * Возвращает массив аргументов этой функции из повторно используемых массивов.
+     *
+     * @param arguments массивы аргументов по количеству аргументов или null
+     * @return массив длиной {@link #arity}
+     */
+    double[] argumentBuffer(double[][] arguments)
+    {
+        if (arguments == null || arity >= arguments.length)
+            return new double[arity];
+        double[] buffer = arguments[arity];
+        if (buffer == null)
+            buffer = arguments[arity] = new double[arity];
+        return buffer;
+    }
+
+    /**
+     * Создает массивы аргументов для функций, получающих массив аргументов: по одному массиву на каждое
+     * встречающееся количество аргументов. Один массив можно передавать всем вызовам функций с этим
+     * количеством аргументов в одном потоке, так как функция получает аргументы только на время вызова.
+     *
+     * @param functions функции команд вызова (элементы могут быть null)
+     * @return массивы аргументов, индекс - количество аргументов (null для неиспользуемых)
+     */
+    static double[][] argumentBuffers(MathFunction[] functions)
+    {
+        int maxArity = 0;
+        for (MathFunction function : functions)
+            if (function != null && function.general != null)
+                maxArity = Math.max(maxArity, function.arity);
+        double[][] buffers = new double[maxArity + 1][];
+        for (MathFunction function : functions)
+            if (function != null && function.general != null && buffers[function.arity] == null)
+                buffers[function.arity] = new double[function.arity];
+        return buffers;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + "/" + arity;
+    }
+}
@@ -0,0 +1,342 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограниченный по размеру потокобезопасный кэш результатов вычисления выражений.
+ *
+ * <p>Ключ кэша - само выражение (по ссылке) и значения всех его переменных, поэтому повторное
+ * вычисление той же формулы с теми же значениями возвращает сохраненный результат без вычисления.
+ * Выражения без переменных не кэшируются: их вычисление дешевле поиска в кэше.
+ * Вычисления, завершившиеся исключением, тоже не кэшируются.
+ *
+ * <p>При заполнении кэша вытесняются записи, которые давно не читались (алгоритм «часы»).
+ * Дополнительно можно задать время жизни записи, после которого результат вычисляется заново.
+ *
+ * <p>Чтение из кэша не требует блокировок; блокировка берется только при добавлении новой записи.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * ResultCache cache = new ResultCache(100_000, 60, TimeUnit.SECONDS);
+ * CompiledExpression expr = Calculator.compile("sin(x) * exp(y)");
+ * double res = cache.evaluate(expr, 0.5, 1.5);
+ * double hitRate = cache.getHitRate();
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class ResultCache
+{
+    /** Максимальное количество записей */
+    private final int maximumEntries;
+
+    /** Время жизни записи в наносекундах (0 - без ограничения) */
+    private final long timeToLive;
+
+    /** Источник времени в наносекундах */
+    private final LongSupplier ticker;
+
+    /** Записи по ключу */
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Очередь записей для выбора кандидата на вытеснение (защищена блокировкой {@link #lock}) */
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+
+    /** Блокировка изменения состава кэша */
+    private final Object lock = new Object();
+
+    /** Счетчики попаданий, промахов, вытеснений, устареваний и вычислений без кэша */
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder(),
+            expirations = new LongAdder(), bypasses = new LongAdder();
+
+    /**
+     * Создает кэш без ограничения времени жизни записей.
+     *
+     * @param maximumEntries максимальное количество записей
+     * @throws IllegalArgumentException если количество записей не положительно
+     */
+    public ResultCache(int maximumEntries)
+    {
+        this(maximumEntries, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Создает кэш с ограниченным временем жизни записей.
+     *
+     * @param maximumEntries максимальное количество записей
+     * @param timeToLive время жизни записи (0 - без ограничения)
+     * @param unit единица измерения времени жизни
+     * @throws IllegalArgumentException если количество записей не положительно или время жизни отрицательно
+     */
+    public ResultCache(int maximumEntries, long timeToLive, TimeUnit unit)
+    {
+        this(maximumEntries, timeToLive, unit, System::nanoTime);
+    }
+
+    /**
+     * Создает кэш с заданным источником времени.
+     *
+     * @param maximumEntries максимальное количество записей
+     * @param timeToLive время жизни записи (0 - без ограничения)
+     * @param unit единица измерения времени жизни
+     * @param ticker источник времени в наносекундах
+     * @throws IllegalArgumentException если количество записей не положительно или время жизни отрицательно
+     */
+    ResultCache(int maximumEntries, long timeToLive, TimeUnit unit, LongSupplier ticker)
+    {
+        if (maximumEntries < 1)
+            throw new IllegalArgumentException("Maximum number of entries must be positive: " + maximumEntries);
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("Time to live must not be negative: " + timeToLive);
+        this.maximumEntries = maximumEntries;
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.ticker = ticker;
+    }
+
+    /**
+     * Возвращает результат вычисления выражения из кэша или вычисляет и сохраняет его.
+     *
+     * @param expression скомпилированное выражение
+     * @param values значения переменных, где индекс - номер слота
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значений меньше, чем переменных в выражении
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(CompiledExpression expression, double... values)
+    {
+        int count = expression.getVariableCount();
+        if (count == 0)
+        {
+            bypasses.increment();
+            return expression.evaluate(values);
+        }
+        expression.checkValues(values);
+
+        Key key = new Key(expression, values.length == count ? values.clone() : Arrays.copyOf(values, count));
+        Entry entry = entries.get(key);
+        if (entry != null)
+        {
+            if (timeToLive == 0 || ticker.getAsLong() - entry.created < timeToLive)
+            {
+                entry.referenced = true;
+                hits.increment();
+                return entry.result;
+            }
+            expire(entry);
+        }
+
+        misses.increment();
+        double result = expression.evaluate(values);
+        insert(new Entry(key, result, timeToLive == 0 ? 0 : ticker.getAsLong()));
+        return result;
+    }
+
+    /**
+     * Возвращает результат вычисления выражения из кэша или вычисляет и сохраняет его.
+     *
+     * @param expression скомпилированное выражение
+     * @param values карта значений переменных, где ключ - имя переменной
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(CompiledExpression expression, Map<String, Double> values)
+    {
+        return evaluate(expression, expression.slotValues(values));
+    }
+
+    /**
+     * Удаляет все записи. Счетчики статистики сохраняются.
+     */
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            entries.clear();
+            clock.clear();
+        }
+    }
+
+    /**
+     * Возвращает количество записей (включая устаревшие, но еще не удаленные).
+     *
+     * @return количество записей
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Возвращает количество вычислений, результат которых нашелся в кэше.
+     *
+     * @return количество попаданий
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Возвращает количество вычислений, выполненных из-за отсутствия результата в кэше.
+     *
+     * @return количество промахов
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Возвращает долю попаданий среди кэшируемых вычислений.
+     *
+     * @return доля попаданий от 0 до 1 (1, если кэшируемых вычислений не было)
+     */
+    public double getHitRate()
+    {
+        long hitCount = hits.sum(), total = hitCount + misses.sum();
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    /**
+     * Возвращает количество записей, вытесненных при заполнении кэша.
+     *
+     * @return количество вытеснений
+     */
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Возвращает количество записей, удаленных по истечении времени жизни.
+     *
+     * @return количество устареваний
+     */
+    public long getExpirationCount()
+    {
+        return expirations.sum();
+    }
+
+    /**
+     * Возвращает количество вычислений выражений без переменных, выполненных без кэша.
+     *
+     * @return количество вычислений без кэша
+     */
+    public long getBypassCount()
+    {
+        return bypasses.sum();
+    }
+
+    /**
+     * Добавляет запись, вытесняя при необходимости давно не читавшиеся записи.
+     *
+     * @param entry новая запись
+     */
+    private void insert(Entry entry)
+    {
+        synchronized (lock)
+        {
+            if (entries.containsKey(entry.key))
+                return;
+            // Устаревшие записи удаляются из очереди не сразу, а пачкой, когда их набирается много
+            if (clock.size() >= 2 * maximumEntries)
+                clock.removeIf(queued -> entries.get(queued.key) != queued);
+            while (entries.size() >= maximumEntries)
+            {
+                Entry victim = clock.pollFirst();
+                if (victim.referenced)
+                {
+                    victim.referenced = false;
+                    clock.addLast(victim);
+                }
+                else if (entries.remove(victim.key, victim))
+                    evictions.increment();
+            }
+            entries.put(entry.key, entry);
+            clock.addLast(entry);
+        }
+    }
+
+    /**
+     * Удаляет устаревшую запись.
+     *
+     * @param entry устаревшая запись
+     */
+    private void expire(Entry entry)
+    {
+        synchronized (lock)
+        {
+            if (entries.remove(entry.key, entry))
+                expirations.increment();
+        }
+    }
+
+    /**
+     * Ключ кэша: выражение и значения его переменных.
+     */
+    private static final class Key
+    {
+        /** Выражение */
+        private final CompiledExpression expression;
+
+        /** Значения переменных по номерам слотов */
+        private final double[] values;
+
+        /** Хэш ключа */
+        private final int hash;
+
+        Key(CompiledExpression expression, double[] values)
+        {
+            this.expression = expression;
+            this.values = values;
+            this.hash = 31 * System.identityHashCode(expression) + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Key other && expression == other.expression && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Запись кэша.
+     */
+    private static final class Entry
+    {
+        /** Ключ записи */
+        final Key key;
+
+        /** Результат вычисления */
+        final double result;
+
+        /** Время создания записи в наносекундах */
+        final long created;
+
+        /** Отметка о чтении записи с прошлого прохода «часов» */
+        volatile boolean referenced;
+
+        Entry(Key key, double result, long created)
+        {
+            this.key = key;
+            this.result = result;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Общий для нескольких потоков набор значений переменных с номерами версий.
+ *
+ * <p>Набор хранится неизменяемыми снимками ({@link Snapshot}): каждое изменение создает копию массива
+ * значений с новой версией и атомарно публикует ее (копирование при записи). Поэтому:
+ * <ul>
+ *   <li>чтение не берет блокировок и никогда не ждет записывающие потоки - это одно чтение
+ *       volatile-ссылки на текущий снимок;</li>
+ *   <li>все значения одного снимка согласованы: изменение нескольких переменных методом
+ *       {@link #setAll(Map)} видно читателям целиком или не видно вовсе;</li>
+ *   <li>результат вычисления ({@link Result}) содержит версию снимка, по которому он получен.</li>
+ * </ul>
+ *
+ * <p>Запись тоже выполняется без блокировок: при одновременном изменении другим потоком снимок
+ * строится заново. Каждая запись копирует все значения, поэтому набор рассчитан на десятки и сотни
+ * переменных, которые читаются гораздо чаще, чем изменяются.
+ *
+ * <p>Набор можно использовать и как источник значений для {@link Calculator}
+ * ({@link VariableResolver}): при каждом вычислении все недостающие значения берутся из одного,
+ * текущего на момент вычисления снимка. Версию снимка такой результат не содержит - для нее
+ * нужно вычислять выражение методом {@link #evaluate(CompiledExpression)}.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * SharedEnvironment env = new SharedEnvironment();
+ * env.setAll(Map.of("bid", 99.5, "ask", 100.5));   // поток обновления данных
+ *
+ * CompiledExpression mid = Calculator.compile("(bid + ask) / 2");
+ * SharedEnvironment.Result res = env.evaluate(mid); // потоки вычисления
+ * double value = res.getValue();                    // Результат: 100.0
+ * long version = res.getVersion();                  // Результат: 1
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class SharedEnvironment implements VariableResolver
+{
+    /** Текущий снимок значений */
+    private final AtomicReference<Snapshot> current =
+            new AtomicReference<>(new Snapshot(0, Collections.emptyMap(), new double[0]));
+
+    /**
+     * Возвращает текущий снимок значений. Снимок не меняется при последующих изменениях набора.
+     *
+     * @return текущий снимок
+     */
+    public Snapshot snapshot()
+    {
+        return current.get();
+    }
+
+    /**
+     * Возвращает версию текущего снимка. Пустой набор имеет версию 0, каждое изменение увеличивает ее на 1.
+     *
+     * @return номер версии
+     */
+    public long getVersion()
+    {
+        return current.get().version;
+    }
+
+    /**
+     * Устанавливает значение переменной.
+     *
+     * @param name имя переменной
+     * @param value значение переменной
+     * @return версия снимка, в котором установлено значение
+     */
+    public long set(String name, double value)
+    {
+        return setAll(Map.of(name, value));
+    }
+
+    /**
+     * Атомарно устанавливает значения нескольких переменных: ни один читатель не увидит
+     * часть новых значений вместе с частью старых.
+     *
+     * @param values новые значения по именам
+     * @return версия снимка, в котором установлены значения
+     * @throws NullPointerException если значение какой-либо переменной равно null
+     */
+    public long setAll(Map<String, Double> values)
+    {
+        while (true)
+        {
+            Snapshot snapshot = current.get();
+            Snapshot next = snapshot.with(values);
+            if (current.compareAndSet(snapshot, next))
+                return next.version;
+        }
+    }
+
+    /**
+     * Вычисляет выражение по текущему снимку значений.
+     *
+     * @param expression скомпилированное выражение
+     * @return результат вычисления и версия снимка
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public Result evaluate(CompiledExpression expression)
+    {
+        Snapshot snapshot = current.get();
+        return new Result(snapshot.evaluate(expression), snapshot.version);
+    }
+
+    /**
+     * Возвращает значения переменных из текущего снимка.
+     *
+     * @param names имена переменных
+     * @return найденные значения по именам
+     */
+    @Override
+    public Map<String, Double> resolve(Set<String> names)
+    {
+        Snapshot snapshot = current.get();
+        Map<String, Double> values = new HashMap<>();
+        for (String name : names)
+        {
+            Integer index = snapshot.indices.get(name);
+            if (index != null)
+                values.put(name, snapshot.values[index]);
+        }
+        return values;
+    }
+
+    /**
+     * Неизменяемый согласованный снимок значений переменных.
+     */
+    public static final class Snapshot
+    {
+        /** Номер версии */
+        private final long version;
+
+        /** Номера переменных в массиве значений по именам (не изменяется после публикации) */
+        private final Map<String, Integer> indices;
+
+        /** Значения переменных по номерам */
+        private final double[] values;
+
+        Snapshot(long version, Map<String, Integer> indices, double[] values)
+        {
+            this.version = version;
+            this.indices = indices;
+            this.values = values;
+        }
+
+        /**
+         * Возвращает номер версии снимка.
+         *
+         * @return номер версии
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Возвращает имена всех переменных снимка.
+         *
+         * @return неизменяемый набор имен
+         */
+        public Set<String> getNames()
+        {
+            return Collections.unmodifiableSet(indices.keySet());
+        }
+
+        /**
+         * Проверяет, задано ли значение переменной.
+         *
+         * @param name имя переменной
+         * @return true если значение задано
+         */
+        public boolean contains(String name)
+        {
+            return indices.containsKey(name);
+        }
+
+        /**
+         * Возвращает значение переменной.
+         *
+         * @param name имя переменной
+         * @return значение переменной
+         * @throws IllegalArgumentException если значение переменной не задано
+         */
+        public double get(String name)
+        {
+            Integer index = indices.get(name);
+            if (index == null)
+                throw new IllegalArgumentException("Unknown variable: " + name);
+            return values[index];
+        }
+
+        /**
+         * Вычисляет выражение по значениям снимка. Несколько выражений, вычисленных по одному снимку,
+         * используют одни и те же значения переменных.
+         *
+         * @param expression скомпилированное выражение
+         * @return результат вычисления
+         * @throws IllegalArgumentException если значение какой-либо переменной не задано
+         * @throws ArithmeticException при попытке деления на ноль
+         */
+        public double evaluate(CompiledExpression expression)
+        {
+            double[] slotValues = new double[expression.getVariableCount()];
+            for (int slot = 0; slot < slotValues.length; slot++)
+                slotValues[slot] = get(expression.variableName(slot));
+            return expression.evaluate(slotValues);
+        }
+
+        /**
+         * Возвращает следующий снимок с измененными значениями.
+         * Таблица номеров копируется только при появлении новых переменных.
+         */
+        private Snapshot with(Map<String, Double> changes)
+        {
+            Map<String, Integer> nextIndices = indices;
+            double[] nextValues = Arrays.copyOf(values, values.length + changes.size());
+            int size = values.length;
+            for (Map.Entry<String, Double> entry : changes.entrySet())
+            {
+                Integer index = nextIndices.get(entry.getKey());
+                if (index == null)
+                {
+                    if (nextIndices == indices)
+                        nextIndices = new HashMap<>(indices);
+                    index = size++;
+                    nextIndices.put(entry.getKey(), index);
+                }
+                nextValues[index] = entry.getValue();
+            }
+            return new Snapshot(version + 1, nextIndices,
+                    size == nextValues.length ? nextValues : Arrays.copyOf(nextValues, size));
+        }
+    }
+
+    /**
+     * Результат вычисления выражения вместе с версией снимка, по которому он получен.
+     */
+    public static final class Result
+    {
+        /** Результат вычисления */
+        private final double value;
+
+        /** Версия снимка значений */
+        private final long version;
+
+        Result(double value, long version)
+        {
+            this.value = value;
+            this.version = version;
+        }
+
+        /**
+         * Возвращает результат вычисления.
+         *
+         * @return результат вычисления
+         */
+        public double getValue()
+        {
+            return value;
+        }
+
+        /**
+         * Возвращает версию снимка значений, использованного при вычислении.
+         *
+         * @return номер версии
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package calculator;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Многоуровневое выполнение выражений: интерпретация редко вычисляемых и компиляция часто вычисляемых.
+ *
+ * <p>Новое выражение вычисляется интерпретатором {@link CompiledExpression}, который не требует
+ * затрат на генерацию кода. Каждое выражение считает свои вычисления; как только их число достигает
+ * порога, выражение компилируется в байт-код ({@link BytecodeCompiler}) в фоновом потоке, и после
+ * завершения компиляции все последующие вычисления выполняются скомпилированной функцией.
+ * Редкие формулы, вычисляемые один-два раза, так и не доходят до компиляции.
+ *
+ * <p>Счетчики движка показывают, сколько вычислений выполнено на каждом уровне и сколько
+ * выражений было скомпилировано, что позволяет подобрать порог под реальную нагрузку.
+ * Выражения, не помещающиеся в один метод байт-кода, остаются в интерпретаторе и учитываются
+ * отдельно ({@link #getCompilationsSkipped()}). После неудачной компиляции выражение продолжает
+ * работать в интерпретаторе и компилируется повторно еще через порог вычислений,
+ * всего не более {@value #MAX_COMPILATION_ATTEMPTS} попыток.
+ *
+ * <p>Класс потокобезопасный.
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * TieredEngine engine = new TieredEngine(1000);
+ * TieredExpression expr = engine.compile("x^2 + sin(x)");
+ * for (int i = 0; i < 100000; i++)
+ *     expr.evaluate(i * 0.01);
+ * long compiled = engine.getCompiledEvaluations();
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class TieredEngine
+{
+    /** Порог компиляции по умолчанию */
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    /** Наибольшее количество попыток компиляции одного выражения */
+    static final int MAX_COMPILATION_ATTEMPTS = 3;
+
+    /** Количество вычислений, после которого выражение компилируется */
+    private final int threshold;
+
+    /** Исполнитель фоновой компиляции */
+    private final Executor executor;
+
+    /** Количество вычислений интерпретатором */
+    private final LongAdder interpretedEvaluations = new LongAdder();
+
+    /** Количество вычислений скомпилированным кодом */
+    private final LongAdder compiledEvaluations = new LongAdder();
+
+    /** Количество запущенных компиляций */
+    private final LongAdder compilationsStarted = new LongAdder();
+
+    /** Количество завершенных компиляций */
+    private final LongAdder compilationsCompleted = new LongAdder();
+
+    /** Количество компиляций, завершившихся ошибкой */
+    private final LongAdder compilationsFailed = new LongAdder();
+
+    /** Количество выражений, оставленных в интерпретаторе из-за размера */
+    private final LongAdder compilationsSkipped = new LongAdder();
+
+    /**
+     * Создает движок с порогом компиляции по умолчанию и фоновой компиляцией в общем пуле потоков.
+     */
+    public TieredEngine()
+    {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Создает движок с фоновой компиляцией в общем пуле потоков.
+     *
+     * @param threshold количество вычислений выражения, после которого оно компилируется
+     * @throws IllegalArgumentException если порог меньше единицы
+     */
+    public TieredEngine(int threshold)
+    {
+        this(threshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Создает движок.
+     *
+     * @param threshold количество вычислений выражения, после которого оно компилируется
+     * @param executor исполнитель фоновой компиляции
+     * @throws IllegalArgumentException если порог меньше единицы
+     */
+    public TieredEngine(int threshold, Executor executor)
+    {
+        if (threshold < 1)
+            throw new IllegalArgumentException("Compilation threshold must be positive: " + threshold);
+        this.threshold = threshold;
+        this.executor = executor;
+    }
+
+    /**
+     * Разбирает выражение и подготавливает его к многоуровневому выполнению.
+     *
+     * @param expression математическое выражение
+     * @return выражение, начинающее выполнение в интерпретаторе
+     * @throws IllegalArgumentException если в выражении обнаружены синтаксические ошибки
+     */
+    public TieredExpression compile(String expression)
+    {
+        return new TieredExpression(this, Calculator.compile(expression));
+    }
+
+    /**
+     * Подготавливает уже разобранное выражение к многоуровневому выполнению.
+     *
+     * @param expression скомпилированное выражение
+     * @return выражение, начинающее выполнение в интерпретаторе
+     */
+    public TieredExpression prepare(CompiledExpression expression)
+    {
+        return new TieredExpression(this, expression);
+    }
+
+    /**
+     * Возвращает порог компиляции.
+     *
+     * @return количество вычислений, после которого выражение компилируется
+     */
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Возвращает количество вычислений, выполненных интерпретатором.
+     *
+     * @return количество вычислений
+     */
+    public long getInterpretedEvaluations()
+    {
+        return interpretedEvaluations.sum();
+    }
+
+    /**
+     * Возвращает количество вычислений, выполненных скомпилированным кодом.
+     *
+     * @return количество вычислений
+     */
+    public long getCompiledEvaluations()
+    {
+        return compiledEvaluations.sum();
+    }
+
+    /**
+     * Возвращает количество выражений, отправленных на компиляцию.
+     *
+     * @return количество запущенных компиляций
+     */
+    public long getCompilationsStarted()
+    {
+        return compilationsStarted.sum();
+    }
+
+    /**
+     * Возвращает количество выражений, переключенных на скомпилированный код.
+     *
+     * @return количество завершенных компиляций
+     */
+    public long getCompilationsCompleted()
+    {
+        return compilationsCompleted.sum();
+    }
+
+    /**
+     * Возвращает количество компиляций, завершившихся ошибкой (такие выражения остаются в интерпретаторе
+     * до следующей попытки).
+     *
+     * @return количество неудачных компиляций
+     */
+    public long getCompilationsFailed()
+    {
+        return compilationsFailed.sum();
+    }
+
+    /**
+     * Возвращает количество выражений, которые не помещаются в один метод байт-кода
+     * и поэтому остаются в интерпретаторе.
+     *
+     * @return количество пропущенных компиляций
+     */
+    public long getCompilationsSkipped()
+    {
+        return compilationsSkipped.sum();
+    }
+
+    /**
+     * Возвращает значения всех счетчиков.
+     *
+     * @return карта, где ключ - название счетчика
+     */
+    public Map<String, Long> getCounters()
+    {
+        return Map.of(
+                "interpreted", getInterpretedEvaluations(),
+                "compiled", getCompiledEvaluations(),
+                "compilationsStarted", getCompilationsStarted(),
+                "compilationsCompleted", getCompilationsCompleted(),
+                "compilationsFailed", getCompilationsFailed(),
+                "compilationsSkipped", getCompilationsSkipped()
+        );
+    }
+
+    /**
+     * Учитывает вычисление выражения.
+     *
+     * @param compiled true если вычисление выполнено скомпилированным кодом
+     */
+    void recordEvaluation(boolean compiled)
+    {
+        if (compiled)
+            compiledEvaluations.increment();
+        else
+            interpretedEvaluations.increment();
+    }
+
+    /**
+     * Запускает фоновую компиляцию выражения.
+     *
+     * @param expression выражение, достигшее порога
+     */
+    void scheduleCompilation(TieredExpression expression)
+    {
+        compilationsStarted.increment();
+        try
+        {
+            executor.execute(() -> compile(expression));
+        }
+        catch (RuntimeException e)
+        {
+            // Исполнитель отклонил задачу - выражение продолжает работать в интерпретаторе
+            compilationsFailed.increment();
+            expression.compilationFailed();
+        }
+    }
+
+    /**
+     * Компилирует выражение и переключает его на скомпилированный код.
+     * Выражение, не помещающееся в один метод, остается в интерпретаторе.
+     *
+     * @param expression выражение, достигшее порога
+     */
+    private void compile(TieredExpression expression)
+    {
+        try
+        {
+            ToDoubleFunction<double[]> function = BytecodeCompiler.tryCompile(expression.getExpression());
+            if (function == null)
+            {
+                compilationsSkipped.increment();
+                return;
+            }
+            expression.install(function);
+            compilationsCompleted.increment();
+        }
+        catch (RuntimeException | LinkageError e)
+        {
+            compilationsFailed.increment();
+            expression.compilationFailed();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package calculator;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Выражение, которое выполняется интерпретатором до достижения порога вычислений,
+ * а затем - скомпилированным байт-кодом.
+ *
+ * <p>Создается методами {@link TieredEngine#compile(String)} и {@link TieredEngine#prepare(CompiledExpression)}.
+ * Переключение на скомпилированный код происходит атомарно: пока идет фоновая компиляция,
+ * вычисления продолжают выполняться интерпретатором, а оба уровня дают одинаковые результаты.
+ *
+ * <p>Класс потокобезопасный.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public final class TieredExpression
+{
+    /** Движок, управляющий выражением */
+    private final TieredEngine engine;
+
+    /** Выражение для интерпретатора */
+    private final CompiledExpression expression;
+
+    /** Количество вычислений в интерпретаторе */
+    private final AtomicLong evaluations = new AtomicLong();
+
+    /** Скомпилированная функция или null, пока выражение выполняется интерпретатором */
+    private volatile ToDoubleFunction<double[]> function;
+
+    /** Номер вычисления в интерпретаторе, на котором запускается компиляция */
+    private volatile long nextCompilation;
+
+    /** Количество неудачных попыток компиляции */
+    private int failedCompilations;
+
+    /**
+     * Создает выражение, начинающее выполнение в интерпретаторе.
+     *
+     * @param engine движок, управляющий выражением
+     * @param expression скомпилированное выражение
+     */
+    TieredExpression(TieredEngine engine, CompiledExpression expression)
+    {
+        this.engine = engine;
+        this.expression = expression;
+        this.nextCompilation = engine.getThreshold();
+    }
+
+    /**
+     * Вычисляет выражение со значениями переменных, заданными по номерам слотов.
+     *
+     * @param values значения переменных, где индекс - номер слота (см. {@link CompiledExpression#slotOf(String)})
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значений меньше, чем переменных в выражении
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(double... values)
+    {
+        expression.checkValues(values);
+        ToDoubleFunction<double[]> compiled = function;
+        if (compiled != null)
+        {
+            engine.recordEvaluation(true);
+            return compiled.applyAsDouble(values);
+        }
+
+        if (evaluations.incrementAndGet() == nextCompilation)
+            engine.scheduleCompilation(this);
+        engine.recordEvaluation(false);
+        return expression.evaluate(values);
+    }
+
+    /**
+     * Вычисляет выражение с заданными значениями переменных.
+     *
+     * @param values карта значений переменных, где ключ - имя переменной
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(Map<String, Double> values)
+    {
+        return evaluate(expression.slotValues(values));
+    }
+
+    /**
+     * Вычисляет выражение с набором значений переменных.
+     *
+     * @param bindings значения переменных, созданные методом {@link CompiledExpression#newBindings()}
+     * @return результат вычисления
+     * @throws IllegalArgumentException если набор создан для другого выражения или задан не полностью
+     * @throws ArithmeticException при попытке деления на ноль
+     */
+    public double evaluate(Bindings bindings)
+    {
+        return evaluate(expression.slotValues(bindings));
+    }
+
+    /**
+     * Возвращает выражение, выполняемое интерпретатором.
+     *
+     * @return скомпилированное выражение
+     */
+    public CompiledExpression getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Проверяет, переключено ли выражение на скомпилированный код.
+     *
+     * @return true если вычисления выполняются скомпилированным кодом
+     */
+    public boolean isCompiled()
+    {
+        return function != null;
+    }
+
+    /**
+     * Возвращает количество вычислений, выполненных интерпретатором.
+     *
+     * @return количество вычислений
+     */
+    public long getInterpretedEvaluations()
+    {
+        return evaluations.get();
+    }
+
+    /**
+     * Переключает выражение на скомпилированный код.
+     *
+     * @param compiled скомпилированная функция
+     */
+    void install(ToDoubleFunction<double[]> compiled)
+    {
+        this.function = compiled;
+    }
+
+    /**
+     * Учитывает неудачную компиляцию: следующая попытка запускается еще через порог вычислений,
+     * если попытки не исчерпаны. Вызывается только из единственной выполняющейся компиляции выражения.
+     */
+    void compilationFailed()
+    {
+        if (++failedCompilations < TieredEngine.MAX_COMPILATION_ATTEMPTS)
+            nextCompilation = evaluations.get() + engine.getThreshold();
+        else
+            nextCompilation = -1;
+    }
+
+    /**
+     * Возвращает исходную строку выражения.
+     *
+     * @return строка, из которой было скомпилировано выражение
+     */
+    @Override
+    public String toString()
+    {
+        return expression.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package calculator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Источник значений переменных, которым не заданы значения перед вычислением ({@link Calculator#getRes()}).
+ *
+ * <p>Все недостающие имена передаются одним вызовом, поэтому реализация может получить их из внешнего
+ * хранилища одним запросом. Синхронный вариант {@link #resolve(Set)} вызывается из {@link Calculator#getRes()},
+ * асинхронный {@link #resolveAsync(Set)} - из {@link Calculator#getResAsync()}; по умолчанию асинхронный
+ * вариант выполняет синхронный в вызывающем потоке.
+ *
+ * <p>Готовые реализации:
+ * <ul>
+ *   <li>{@link #failFast()} - сразу сообщает об ошибке; используется вычислителем по умолчанию
+ *       и никогда не блокируется на вводе-выводе;</li>
+ *   <li>{@link #of(Map)} - читает значения из карты (например, из {@link java.util.concurrent.ConcurrentHashMap},
+ *       которую обновляют другие потоки);</li>
+ *   <li>{@link #console()} - запрашивает значения у пользователя в консоли;</li>
+ *   <li>{@link CachingVariableResolver} - кэширует значения другого источника с ограниченным временем жизни.</li>
+ * </ul>
+ *
+ * <p><b>Пример использования:</b>
+ * <pre>
+ * {@code
+ * Map<String, Double> store = new ConcurrentHashMap<>(Map.of("rate", 0.05));
+ * VariableResolver resolver = new CachingVariableResolver(VariableResolver.of(store), 10, TimeUnit.SECONDS);
+ * Calculator calc = new Calculator("rate * amount", resolver);
+ * calc.setVariable("amount", 200.0);
+ * double res = calc.getRes(); // Результат: 10.0
+ * }
+ * </pre>
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public interface VariableResolver
+{
+    /**
+     * Возвращает значения переменных.
+     *
+     * @param names имена переменных без значений (не пустой набор)
+     * @return найденные значения по именам; имена, которых нет в результате, считаются неизвестными
+     * @throws IllegalArgumentException если значение какой-либо переменной получить нельзя
+     */
+    Map<String, Double> resolve(Set<String> names);
+
+    /**
+     * Асинхронно возвращает значения переменных. Реализация по умолчанию вызывает {@link #resolve(Set)}
+     * в вызывающем потоке и возвращает завершенный результат; реализации, которые ждут ввод-вывод,
+     * должны переопределить метод и выполнять ожидание в другом потоке.
+     *
+     * @param names имена переменных без значений (не пустой набор)
+     * @return будущие значения по именам; ошибка получения значений завершает его исключением
+     */
+    default CompletableFuture<Map<String, Double>> resolveAsync(Set<String> names)
+    {
+        try
+        {
+            return CompletableFuture.completedFuture(resolve(names));
+        }
+        catch (RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Возвращает источник, который не знает ни одной переменной: вычисление с переменными без значений
+     * сразу завершается ошибкой.
+     *
+     * @return источник, сообщающий об ошибке
+     */
+    static VariableResolver failFast()
+    {
+        return names ->
+        {
+            throw new IllegalArgumentException("Unknown variable: " + names.iterator().next());
+        };
+    }
+
+    /**
+     * Возвращает источник, читающий значения из карты при каждом запросе.
+     * Карта не копируется, поэтому изменения в ней видны следующим вычислениям.
+     *
+     * @param store хранилище значений по именам
+     * @return источник значений
+     */
+    static VariableResolver of(Map<String, Double> store)
+    {
+        return names ->
+        {
+            Map<String, Double> values = new HashMap<>();
+            for (String name : names)
+            {
+                Double value = store.get(name);
+                if (value != null)
+                    values.put(name, value);
+            }
+            return values;
+        };
+    }
+
+    /**
+     * Возвращает источник, запрашивающий значения у пользователя через стандартный ввод.
+     * Синхронный запрос блокирует вызывающий поток до ввода всех значений, поэтому подходит только
+     * для интерактивной работы; асинхронный ждет ввод в отдельном потоке.
+     *
+     * @return консольный источник значений
+     */
+    static VariableResolver console()
+    {
+        return new ConsoleVariableResolver(System.in, System.out);
+    }
+}
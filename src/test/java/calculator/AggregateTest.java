@@ -0,0 +1,125 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Тесты для проверки агрегирования значений выражения {@link Aggregate}.
+ */
+public class AggregateTest
+{
+    @Test
+    void testReduceMatchesMaterializedResults()
+    {
+        int rows = 10_007;
+        Random random = new Random(3);
+        double[] a = new double[rows], b = new double[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            a[i] = random.nextDouble() * 10 - 5;
+            b[i] = random.nextDouble() * 2;
+        }
+        CompiledExpression expr = Calculator.compile("a * b + sin(a)");
+        double[] out = new double[rows];
+        expr.evaluate(Map.of("a", a, "b", b), out);
+
+        Aggregate aggregate = Aggregate.withHistogram(-10, 10, 20);
+        expr.reduce(Map.of("a", a, "b", b), rows, aggregate);
+
+        double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        long argMin = -1, argMax = -1;
+        long[] histogram = new long[20];
+        for (int i = 0; i < rows; i++)
+        {
+            sum += out[i];
+            if (out[i] < min) { min = out[i]; argMin = i; }
+            if (out[i] > max) { max = out[i]; argMax = i; }
+            ++histogram[(int) Math.floor(out[i] + 10)];
+        }
+        double mean = sum / rows, variance = 0;
+        for (double value : out)
+            variance += (value - mean) * (value - mean);
+
+        assertEquals(rows, aggregate.getCount());
+        assertEquals(sum, aggregate.getSum(), 1e-9);
+        assertEquals(min, aggregate.getMin());
+        assertEquals(argMin, aggregate.getArgMin());
+        assertEquals(max, aggregate.getMax());
+        assertEquals(argMax, aggregate.getArgMax());
+        assertEquals(mean, aggregate.getMean(), 1e-12);
+        assertEquals(variance / rows, aggregate.getVariance(), 1e-9);
+        assertEquals(variance / (rows - 1), aggregate.getSampleVariance(), 1e-9);
+        assertArrayEquals(histogram, aggregate.getHistogram());
+        assertEquals(0, aggregate.getUnderflow() + aggregate.getOverflow());
+    }
+
+    @Test
+    void testParallelReduceMatchesSequential()
+    {
+        int rows = 200_000;
+        double[] x = new double[rows];
+        for (int i = 0; i < rows; i++)
+            x[i] = (i * 7919) % 1000;
+        CompiledExpression expr = Calculator.compile("x / 10 - 50");
+
+        Aggregate sequential = Aggregate.withHistogram(-50, 50, 10);
+        expr.reduceColumns(new double[][] {x}, rows, sequential);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            Aggregate parallel = Aggregate.withHistogram(-50, 50, 10);
+            expr.reduceColumnsParallel(new double[][] {x}, rows, parallel, pool);
+
+            assertEquals(sequential.getCount(), parallel.getCount());
+            assertEquals(sequential.getSum(), parallel.getSum(), 1e-6);
+            assertEquals(sequential.getMin(), parallel.getMin());
+            assertEquals(sequential.getArgMin(), parallel.getArgMin());
+            assertEquals(sequential.getMax(), parallel.getMax());
+            assertEquals(sequential.getArgMax(), parallel.getArgMax());
+            assertEquals(sequential.getVariance(), parallel.getVariance(), 1e-9);
+            assertArrayEquals(sequential.getHistogram(), parallel.getHistogram());
+            assertEquals(0, parallel.getArgMin());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCompensatedSum()
+    {
+        Aggregate aggregate = new Aggregate();
+        aggregate.accept(1e16, 0);
+        for (int i = 1; i <= 1000; i++)
+            aggregate.accept(1.0, i);
+        aggregate.accept(-1e16, 1001);
+        assertEquals(1000.0, aggregate.getSum());
+
+        Aggregate infinite = new Aggregate();
+        infinite.accept(1.0, 0);
+        infinite.accept(Double.POSITIVE_INFINITY, 1);
+        assertEquals(Double.POSITIVE_INFINITY, infinite.getSum());
+    }
+
+    @Test
+    void testEmptyAndMergeErrors()
+    {
+        Aggregate empty = new Aggregate();
+        assertEquals(0, empty.getCount());
+        assertEquals(-1, empty.getArgMax());
+        assertTrue(Double.isNaN(empty.getMean()));
+        assertEquals(0, empty.getHistogram().length);
+
+        assertThrows(IllegalArgumentException.class, () -> empty.merge(Aggregate.withHistogram(0, 1, 2)));
+        assertThrows(IllegalArgumentException.class, () -> Aggregate.withHistogram(1, 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> Aggregate.withHistogram(0, 1, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> Calculator.compile("x").reduceColumns(new double[][] {{1}}, 2, new Aggregate()));
+    }
+}
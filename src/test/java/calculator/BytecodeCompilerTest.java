@@ -0,0 +1,107 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Тесты для проверки компиляции выражений в байт-код {@link BytecodeCompiler}.
+ */
+public class BytecodeCompilerTest
+{
+    /** Выражения, покрывающие все операторы и функции */
+    private static final String[] EXPRESSIONS = {
+            "a + b * c - d / e",
+            "a ^ b ^ 0.5",
+            "c! + 3!",
+            "sin(a) + cos(b) + tg(c) + ctg(d) + exp(e) + log(c)",
+            "-sin(a) - -cos(b) * -tg(c) + -ctg(d) - -exp(e) + -log(c)",
+            "-(a - b) * |b - c| - -|d|",
+            "-a + -b * (c + |-e|)",
+            "(a + b) * |c|^b - exp(d)",
+            "2 * 3 + 4"
+    };
+
+    @Test
+    void testMatchesInterpreter()
+    {
+        double[][] inputs = {
+                {0.5, 2.0, 3.0, 1.5, 0.25},
+                {-1.25, 3.0, 4.0, -2.0, 1.0},
+                {3.0, -4.0, 0.0, 0.75, -0.5}
+        };
+        for (String source : EXPRESSIONS)
+        {
+            CompiledExpression expr = Calculator.compile(source);
+            ToDoubleFunction<double[]> function = BytecodeCompiler.compile(expr);
+            assertTrue(function.getClass().isHidden(), source);
+            for (double[] input : inputs)
+            {
+                double[] values = new double[expr.getVariableCount()];
+                for (int slot = 0; slot < values.length; slot++)
+                    values[slot] = input["abcde".indexOf(expr.variableName(slot))];
+                assertEquals(Double.doubleToLongBits(expr.evaluate(values)),
+                        Double.doubleToLongBits(function.applyAsDouble(values)), source);
+            }
+        }
+    }
+
+    @Test
+    void testErrors()
+    {
+        ToDoubleFunction<double[]> division = BytecodeCompiler.compile(Calculator.compile("a / b"));
+        assertEquals(2.0, division.applyAsDouble(new double[] {4.0, 2.0}));
+        assertThrows(ArithmeticException.class, () -> division.applyAsDouble(new double[] {4.0, 0.0}));
+        // Сообщение об ошибке совпадает с сообщением интерпретатора
+        IllegalArgumentException compiled = assertThrows(IllegalArgumentException.class,
+                () -> division.applyAsDouble(new double[] {4.0}));
+        IllegalArgumentException interpreted = assertThrows(IllegalArgumentException.class,
+                () -> Calculator.compile("a / b").evaluate(4.0));
+        assertEquals("Unknown variable: b", compiled.getMessage());
+        assertEquals(interpreted.getMessage(), compiled.getMessage());
+
+        ToDoubleFunction<double[]> factorial = BytecodeCompiler.compile(Calculator.compile("n!"));
+        assertEquals(120.0, factorial.applyAsDouble(new double[] {5.0}));
+        assertThrows(IllegalArgumentException.class, () -> factorial.applyAsDouble(new double[] {-1.0}));
+    }
+
+    @Test
+    void testLargeExpression()
+    {
+        StringBuilder source = new StringBuilder("x");
+        for (int i = 0; i < 40000; i++)
+            source.append("+x");
+        CompiledExpression expr = Calculator.compile(source.toString());
+        ToDoubleFunction<double[]> function = BytecodeCompiler.compile(expr);
+        assertEquals(40001.0, function.applyAsDouble(new double[] {1.0}));
+    }
+
+    @Test
+    void testManySlots()
+    {
+        StringBuilder source = new StringBuilder("v");
+        StringBuilder name = new StringBuilder("v");
+        for (int i = 0; i < 300; i++)
+        {
+            name.append(i % 2 == 0 ? "a" : "b");
+            source.append("+").append(name);
+        }
+        CompiledExpression expr = Calculator.compile(source.toString());
+        double[] values = new double[expr.getVariableCount()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i;
+        assertEquals(expr.evaluate(values), BytecodeCompiler.compile(expr).applyAsDouble(values));
+    }
+
+    @Test
+    void testClassSharedBetweenShapes()
+    {
+        ToDoubleFunction<double[]> first = BytecodeCompiler.compile(Calculator.compile("2.5 * x^3 - sin(1.5 * x)"));
+        ToDoubleFunction<double[]> second = BytecodeCompiler.compile(Calculator.compile("4 * x^3 - sin(0.5 * x)"));
+        assertSame(first.getClass(), second.getClass());
+        assertEquals(2.5 * 8 - Math.sin(3.0), first.applyAsDouble(new double[] {2.0}));
+        assertEquals(4 * 8 - Math.sin(1.0), second.applyAsDouble(new double[] {2.0}));
+        assertNotSame(first.getClass(), BytecodeCompiler.compile(Calculator.compile("2.5 * x^3 + sin(1.5 * x)")).getClass());
+    }
+}
@@ -377,6 +377,23 @@ public class CalculatorTest
         });
     }
 
+    @Test
+    void testLargeFactorial()
+    {
+        double expected = 1;
+        for (int i = 2; i <= 170; i++)
+            expected *= i;
+        assertEquals(expected, new Calculator("170!").getRes());
+        assertEquals(Double.POSITIVE_INFINITY, new Calculator("171!").getRes());
+        assertEquals(Double.POSITIVE_INFINITY, new Calculator("1000000000!").getRes());
+
+        CompiledExpression expr = Calculator.compile("n!");
+        assertEquals(Double.POSITIVE_INFINITY, expr.evaluate(1e300));
+        assertEquals(Double.POSITIVE_INFINITY, expr.evaluate(Double.POSITIVE_INFINITY));
+        assertThrows(IllegalArgumentException.class, () -> expr.evaluate(1e9 + 0.5));
+        assertThrows(IllegalArgumentException.class, () -> expr.evaluate(Double.NaN));
+    }
+
     @Test
     void testMixedFactorialAndAbsolute()
     {
@@ -728,4 +745,74 @@ public class CalculatorTest
         solver.setVariable("t", 5.0);
         assertEquals(400.0, solver.getRes());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDeeplyNestedExpressions()
+    {
+        int depth = 100000;
+        String constant = "(".repeat(depth) + "1+2" + ")".repeat(depth);
+        assertEquals(3.0, new Calculator(constant).getRes());
+
+        String abs = "|".repeat(depth) + "-5" + "|".repeat(depth);
+        assertEquals(5.0, new Calculator(abs).getRes());
+
+        Calculator calculator = new Calculator("(".repeat(depth) + "x*2" + ")".repeat(depth) + "+1");
+        calculator.setVariable("x", 4.0);
+        assertEquals(9.0, calculator.getRes());
+    }
+
+    @Test
+    void testOperatorAfterFactorial()
+    {
+        assertEquals(4.0, new Calculator("3!-2").getRes());
+        assertEquals(8.0, new Calculator("3--5").getRes());
+    }
+
+    @Test
+    void testInvalidOperandSequences()
+    {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Calculator("--5");
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Calculator("2(3)");
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Calculator("x2");
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            new Calculator("|3|4|");
+        });
+    }
+
+    @Test
+    void testLongOperatorChain()
+    {
+        int terms = 200000;
+        StringBuilder sum = new StringBuilder("x");
+        for (int i = 1; i < terms; i++)
+            sum.append(i % 2 == 0 ? "+x" : "-1*x+2*x");
+        Calculator calculator = new Calculator(sum.toString());
+        calculator.setVariable("x", 1.0);
+        assertEquals(terms, calculator.getRes());
+    }
+
+    @Test
+    void testOperatorAssociativity()
+    {
+        assertEquals(1.0, new Calculator("8-4-2-1").getRes());
+        assertEquals(1.0, new Calculator("64/8/4/2").getRes());
+        assertEquals(2.0, new Calculator("2^1^3^2").getRes());
+        assertEquals(36.0, new Calculator("3!^2").getRes());
+        assertEquals(720.0, new Calculator("3!!").getRes());
+        assertEquals(Math.pow(Math.sin(2), 2), new Calculator("sin2^2").getRes());
+
+        Calculator calculator = new Calculator("-sin(x)^2 + -log(y)");
+        calculator.setVariable("x", 3.0);
+        calculator.setVariable("y", 2.0);
+        assertEquals(Math.pow(-Math.sin(3), 2) - Math.log(2), calculator.getRes());
+    }
+}
@@ -0,0 +1,107 @@
+package calculator;
+
+import java.util.Random;
+
+/**
+ * Сравнение пропускной способности пакетного вычисления по столбцам {@code double}
+ * ({@link CompiledExpression#evaluateColumns(double[][], double[])}) и {@code float}
+ * ({@link CompiledExpression#evaluateFloatColumns(float[][], float[])}).
+ *
+ * <p>Столбцы намного больше кэша процессора, поэтому простые выражения упираются в пропускную
+ * способность памяти, и время определяется количеством прочитанных и записанных байт.
+ * Для каждого выражения выводится лучшее из нескольких измерений после прогрева.
+ *
+ * <p>Запуск: {@code ./gradlew benchmark -Pbenchmark=ColumnBenchmark [-Pargs=количество строк]}.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public class ColumnBenchmark
+{
+    /** Количество строк по умолчанию */
+    private static final int DEFAULT_ROWS = 1 << 22;
+
+    /** Количество прогревочных прогонов */
+    private static final int WARMUP = 5;
+
+    /** Количество измеряемых прогонов */
+    private static final int RUNS = 10;
+
+    /**
+     * Выполняет измерения и выводит время на строку и ускорение.
+     *
+     * @param args необязательное количество строк
+     */
+    public static void main(String[] args)
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        String[] expressions = {"a + b", "a * b + c", "(a - b) * (c + d)", "|a - b| / (c * c + 1)", "exp(a) * sin(b)"};
+
+        Random random = new Random(1);
+        double[][] doubles = new double[4][rows];
+        float[][] floats = new float[4][rows];
+        for (int slot = 0; slot < doubles.length; slot++)
+            for (int i = 0; i < rows; i++)
+            {
+                floats[slot][i] = (float) (random.nextDouble() * 4 - 2);
+                doubles[slot][i] = floats[slot][i];
+            }
+        double[] doubleOut = new double[rows];
+        float[] floatOut = new float[rows];
+
+        System.out.printf("%-24s %12s %12s %8s%n", "expression", "double ns/row", "float ns/row", "speedup");
+        for (String source : expressions)
+        {
+            CompiledExpression expression = Calculator.compile(source);
+            double[][] doubleColumns = slotColumns(expression, doubles);
+            float[][] floatColumns = slotColumns(expression, floats);
+
+            long doubleTime = Long.MAX_VALUE, floatTime = Long.MAX_VALUE;
+            for (int run = 0; run < WARMUP + RUNS; run++)
+            {
+                long start = System.nanoTime();
+                expression.evaluateColumns(doubleColumns, doubleOut);
+                long middle = System.nanoTime();
+                expression.evaluateFloatColumns(floatColumns, floatOut);
+                long end = System.nanoTime();
+                if (run >= WARMUP)
+                {
+                    doubleTime = Math.min(doubleTime, middle - start);
+                    floatTime = Math.min(floatTime, end - middle);
+                }
+            }
+            System.out.printf("%-24s %12.3f %12.3f %7.2fx%n", source, (double) doubleTime / rows,
+                    (double) floatTime / rows, (double) doubleTime / floatTime);
+        }
+    }
+
+    /**
+     * Раскладывает столбцы a, b, c, d по номерам слотов выражения.
+     *
+     * @param expression выражение
+     * @param columns столбцы переменных a, b, c, d
+     * @return столбцы по номерам слотов
+     */
+    private static double[][] slotColumns(CompiledExpression expression, double[][] columns)
+    {
+        double[][] slotColumns = new double[expression.getVariableCount()][];
+        for (int slot = 0; slot < slotColumns.length; slot++)
+            slotColumns[slot] = columns[expression.variableName(slot).charAt(0) - 'a'];
+        return slotColumns;
+    }
+
+    /**
+     * Раскладывает столбцы a, b, c, d одинарной точности по номерам слотов выражения.
+     *
+     * @param expression выражение
+     * @param columns столбцы переменных a, b, c, d
+     * @return столбцы по номерам слотов
+     */
+    private static float[][] slotColumns(CompiledExpression expression, float[][] columns)
+    {
+        float[][] slotColumns = new float[expression.getVariableCount()][];
+        for (int slot = 0; slot < slotColumns.length; slot++)
+            slotColumns[slot] = columns[expression.variableName(slot).charAt(0) - 'a'];
+        return slotColumns;
+    }
+}
@@ -0,0 +1,150 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Тесты для проверки пакетного вычисления выражений по столбцам {@link ColumnEvaluator}.
+ */
+public class ColumnEvaluatorTest
+{
+    @Test
+    void testMatchesScalarEvaluation()
+    {
+        String[] expressions = {
+                "(a + b) * |c|^b - exp(d)",
+                "-a * sin(b) + -cos(c) / (d + 10) - ctg(a) + -|b - c|",
+                "tg(a) - -tg(b) + log(|c| + 1) + -log(|d| + 1) - -exp(a) * -sin(c) + -ctg(d) - -(a - b)",
+                "a - -b + 3"
+        };
+        Random random = new Random(7);
+        int rows = 3 * ColumnEvaluator.BLOCK_SIZE + 17;
+        double[] a = new double[rows], b = new double[rows], c = new double[rows], d = new double[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            a[i] = random.nextDouble() * 10 - 5;
+            b[i] = random.nextDouble() * 6 - 3;
+            c[i] = random.nextDouble() * 20 - 10;
+            d[i] = random.nextDouble() * 4 - 2;
+        }
+        Map<String, double[]> columns = Map.of("a", a, "b", b, "c", c, "d", d);
+
+        for (String source : expressions)
+        {
+            CompiledExpression expr = Calculator.compile(source);
+            double[] out = new double[rows];
+            expr.evaluate(columns, out);
+            for (int i = 0; i < rows; i++)
+            {
+                double expected = expr.evaluate(Map.of("a", a[i], "b", b[i], "c", c[i], "d", d[i]));
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(out[i]), source + " row " + i);
+            }
+        }
+    }
+
+    @Test
+    void testConstantAndFactorial()
+    {
+        double[] out = new double[5];
+        Calculator.compile("2 + 3!").evaluateColumns(new double[0][], out);
+        assertArrayEquals(new double[] {8, 8, 8, 8, 8}, out);
+
+        Calculator.compile("n!").evaluateColumns(new double[][] {{0, 1, 2, 3, 4}}, out);
+        assertArrayEquals(new double[] {1, 1, 2, 6, 24}, out);
+    }
+
+    @Test
+    void testMultiArgumentFunctions()
+    {
+        FunctionRegistry functions = FunctionRegistry.standard()
+                .with("sumt", 3, args -> args[0] + args[1] + args[2])
+                .with("mixf", 4, args -> args[0] * args[1] - args[2] / args[3]);
+        CompiledExpression expr = Calculator.compile("mixf(a, sumt(a, b, c), b, c + 2) - sumt(c, a, mixf(b, b, a, 3))", functions);
+        Random random = new Random(11);
+        int rows = 2 * ColumnEvaluator.BLOCK_SIZE + 5;
+        double[] a = new double[rows], b = new double[rows], c = new double[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            a[i] = random.nextDouble() * 10 - 5;
+            b[i] = random.nextDouble() * 6 - 3;
+            c[i] = random.nextDouble() * 4 + 1;
+        }
+        double[] out = new double[rows];
+        expr.evaluate(Map.of("a", a, "b", b, "c", c), out);
+        for (int i = 0; i < rows; i++)
+        {
+            double expected = expr.evaluate(Map.of("a", a[i], "b", b[i], "c", c[i]));
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(out[i]), "row " + i);
+        }
+    }
+
+    @Test
+    void testErrors()
+    {
+        CompiledExpression expr = Calculator.compile("a / b");
+        double[] out = new double[3];
+        assertThrows(ArithmeticException.class,
+                () -> expr.evaluate(Map.of("a", new double[] {1, 2, 3}, "b", new double[] {1, 0, 1}), out));
+        assertThrows(IllegalArgumentException.class,
+                () -> expr.evaluate(Map.of("a", new double[] {1, 2, 3}), out));
+        assertThrows(IllegalArgumentException.class,
+                () -> expr.evaluate(Map.of("a", new double[] {1, 2, 3}, "b", new double[] {1, 2}), out));
+        assertThrows(IllegalArgumentException.class,
+                () -> expr.evaluateColumns(new double[][] {{1, 2, 3}}, out));
+    }
+
+    @Test
+    void testParallelMatchesSequential()
+    {
+        CompiledExpression expr = Calculator.compile("(a + b) * |c|^b - exp(d)");
+        Random random = new Random(11);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for (int rows : new int[] {0, 1, 1000, 100_003})
+            {
+                double[][] columns = new double[4][rows];
+                for (double[] column : columns)
+                    for (int i = 0; i < rows; i++)
+                        column[i] = random.nextDouble() * 4 - 2;
+
+                double[] expected = new double[rows], actual = new double[rows], common = new double[rows];
+                expr.evaluateColumns(columns, expected);
+                expr.evaluateColumnsParallel(columns, actual, pool);
+                expr.evaluateParallel(Map.of("a", columns[0], "b", columns[1], "c", columns[2], "d", columns[3]), common);
+                assertArrayEquals(expected, actual);
+                assertArrayEquals(expected, common);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelErrors()
+    {
+        int rows = 50_000;
+        double[] a = new double[rows], b = new double[rows];
+        Arrays.fill(b, 1);
+        b[rows - 7] = 0;
+        CompiledExpression expr = Calculator.compile("a / b");
+        assertThrows(ArithmeticException.class, () -> expr.evaluateParallel(Map.of("a", a, "b", b), new double[rows]));
+        assertThrows(IllegalArgumentException.class, () -> expr.evaluateParallel(Map.of("a", a), new double[rows]));
+    }
+
+    @Test
+    void testTaskSize()
+    {
+        assertEquals(ColumnEvaluator.MIN_TASK_SIZE, ColumnEvaluator.taskSize(10_000, 32));
+        int size = ColumnEvaluator.taskSize(500_000_000, 32);
+        assertEquals(0, size % ColumnEvaluator.BLOCK_SIZE);
+        assertTrue(500_000_000L / size >= 32 * 4);
+    }
+}
@@ -0,0 +1,191 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+
+/**
+ * Тесты для проверки скомпилированных выражений {@link CompiledExpression}.
+ */
+public class CompiledExpressionTest
+{
+    @Test
+    void testConstantExpression()
+    {
+        CompiledExpression expr = Calculator.compile("2 + 3 * 4");
+        assertEquals(14.0, expr.evaluate());
+        assertEquals(14.0, expr.evaluate());
+        assertTrue(expr.getVariables().isEmpty());
+    }
+
+    @Test
+    void testEvaluateWithDifferentValues()
+    {
+        CompiledExpression expr = Calculator.compile("(a + b) * 2");
+        assertEquals(6.0, expr.evaluate(Map.of("a", 1.0, "b", 2.0)));
+        assertEquals(14.0, expr.evaluate(Map.of("a", 3.0, "b", 4.0)));
+    }
+
+    @Test
+    void testVariablesInsideGroups()
+    {
+        CompiledExpression expr = Calculator.compile("(a + b) * |c|^b - exp(d)");
+        assertEquals(Set.of("a", "b", "c", "d"), expr.getVariables());
+        assertEquals(1.0 * Math.pow(12.0, -4.0) - 1.0, expr.evaluate(Map.of("a", 5.0, "b", -4.0, "c", 12.0, "d", 0.0)));
+        assertEquals(-8.0, Calculator.compile("-|x|").evaluate(Map.of("x", -8.0)));
+        assertEquals(-4.0, Calculator.compile("-(x - 9)").evaluate(Map.of("x", 13.0)));
+        assertEquals(8.0, Calculator.compile("||x||").evaluate(Map.of("x", -8.0)));
+        assertEquals(12.0, Calculator.compile("|-|x|-6|").evaluate(Map.of("x", -6.0)));
+        assertEquals(6.0, Calculator.compile("(|x - y|)!").evaluate(Map.of("x", 1.0, "y", 4.0)));
+    }
+
+    @Test
+    void testNegatedVariable()
+    {
+        CompiledExpression expr = Calculator.compile("-a + b");
+        assertEquals(7.0, expr.evaluate(Map.of("a", 8.0, "b", 15.0)));
+    }
+
+    @Test
+    void testMissingVariable()
+    {
+        CompiledExpression expr = Calculator.compile("x + y");
+        assertThrows(IllegalArgumentException.class, () -> {
+            expr.evaluate(Map.of("x", 1.0));
+        });
+    }
+
+    @Test
+    void testDivisionByZeroOnEvaluate()
+    {
+        CompiledExpression expr = Calculator.compile("1 / x");
+        assertEquals(0.5, expr.evaluate(Map.of("x", 2.0)));
+        assertThrows(ArithmeticException.class, () -> {
+            expr.evaluate(Map.of("x", 0.0));
+        });
+    }
+
+    @Test
+    void testConcurrentEvaluation() throws Exception
+    {
+        CompiledExpression expr = Calculator.compile("x * (x + 1)");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++)
+                        if (expr.evaluate(Map.of("x", (double) i)) != (double) i * (i + 1))
+                            return false;
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures)
+                assertTrue(future.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testNestedEvaluation()
+    {
+        CompiledExpression inner = Calculator.compile("(x + 1) * (x + 2) - 1 / x");
+        FunctionRegistry functions = FunctionRegistry.standard().with("inner", x -> inner.evaluate(x));
+        CompiledExpression outer = Calculator.compile("a * 2 + (a - 1) * inner(a) - inner(a + 1) / (a + 3)", functions);
+        for (double a : new double[] {0.5, 1.5, 4})
+        {
+            double expected = a * 2 + (a - 1) * ((a + 1) * (a + 2) - 1 / a)
+                    - ((a + 2) * (a + 3) - 1 / (a + 1)) / (a + 3);
+            assertEquals(expected, outer.evaluate(a), 1e-12);
+        }
+
+        // Ошибка во вложенном вычислении не оставляет рабочие массивы потока занятыми
+        assertThrows(ArithmeticException.class, () -> outer.evaluate(0.0));
+        assertEquals(3.0, Calculator.compile("x * (x + 2)").evaluate(1.0));
+    }
+
+    @Test
+    void testSlotBinding()
+    {
+        CompiledExpression expr = Calculator.compile("x^2 + y - x");
+        assertEquals(2, expr.getVariableCount());
+        assertEquals(0, expr.slotOf("x"));
+        assertEquals(1, expr.slotOf("y"));
+        assertEquals(-1, expr.slotOf("z"));
+        assertEquals("y", expr.variableName(1));
+
+        double[] values = new double[2];
+        values[expr.slotOf("x")] = 3.0;
+        values[expr.slotOf("y")] = 1.0;
+        assertEquals(7.0, expr.evaluate(values));
+        values[expr.slotOf("x")] = -2.0;
+        assertEquals(7.0, expr.evaluate(values));
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            expr.evaluate(1.0);
+        });
+    }
+
+    @Test
+    void testBindings()
+    {
+        CompiledExpression expr = Calculator.compile("-a * |b|");
+        Bindings bindings = expr.newBindings();
+        int a = bindings.slotOf("a");
+        bindings.set(a, 2.0);
+        assertThrows(IllegalArgumentException.class, () -> {
+            expr.evaluate(bindings);
+        });
+
+        bindings.set("b", -5.0);
+        assertEquals(-10.0, expr.evaluate(bindings));
+        bindings.set(a, -1.0);
+        assertEquals(5.0, expr.evaluate(bindings));
+        assertTrue(bindings.isSet(a));
+
+        bindings.clear();
+        assertFalse(bindings.isSet(a));
+        assertThrows(IllegalArgumentException.class, () -> {
+            bindings.set("c", 1.0);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            Calculator.compile("a").evaluate(bindings);
+        });
+    }
+
+    @Test
+    void testToString()
+    {
+        assertEquals("a + 1", Calculator.compile("a + 1").toString());
+    }
+
+    @Test
+    void testSharedShape()
+    {
+        CompiledExpression first = Calculator.compile("3.5*x + 12");
+        CompiledExpression second = Calculator.compile("7.25*x + 4");
+        assertTrue(first.hasSameShape(second));
+        assertArrayEquals(new double[] {3.5, 12}, first.getConstants());
+        assertArrayEquals(new double[] {7.25, 4}, second.getConstants());
+        assertEquals(19.0, first.evaluate(2.0));
+        assertEquals(18.5, second.evaluate(2.0));
+
+        // Свернутые группы тоже становятся константами
+        assertTrue(first.hasSameShape(Calculator.compile("(1 + 2) * x + |-5|")));
+        assertFalse(first.hasSameShape(Calculator.compile("3.5*y + 12")));
+        assertFalse(first.hasSameShape(Calculator.compile("3.5*x - 12")));
+        assertFalse(first.hasSameShape(Calculator.compile("3.5*x + 12*x")));
+    }
+}
@@ -0,0 +1,158 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Random;
+
+/**
+ * Тесты для проверки вычислений с двойной-двойной точностью ({@link CompiledExpression#evaluateExtended(double...)}).
+ * Эталонные значения вычисляются через {@link BigDecimal}.
+ */
+public class DoubleDoubleTest
+{
+    private static final MathContext REFERENCE = new MathContext(50);
+
+    /**
+     * Возвращает точную сумму частей результата.
+     */
+    private static BigDecimal extended(CompiledExpression expression, double... values)
+    {
+        double[] result = new double[2];
+        expression.evaluateExtended(values, result);
+        return new BigDecimal(result[0]).add(new BigDecimal(result[1]));
+    }
+
+    /**
+     * Проверяет относительную погрешность результата.
+     */
+    private static void assertClose(BigDecimal expected, BigDecimal actual, double relative, String message)
+    {
+        BigDecimal error = expected.subtract(actual).abs();
+        BigDecimal bound = expected.abs().multiply(BigDecimal.valueOf(relative));
+        assertTrue(error.compareTo(bound) <= 0, message + ": expected " + expected + ", actual " + actual);
+    }
+
+    @Test
+    void testDecimalConstants()
+    {
+        CompiledExpression expr = Calculator.compileExtended("0.1 + 0.2 - 0.3");
+        assertNotEquals(0.0, Calculator.compile("0.1 + 0.2 - 0.3").evaluate());
+        assertTrue(extended(expr).abs().compareTo(new BigDecimal("1e-30")) < 0);
+
+        assertEquals(1.0, Calculator.compileExtended("10000000000000000 + 1 - 10000000000000000").evaluateExtended());
+        assertEquals(-0.1, Calculator.compileExtended("-0.1").evaluateExtended());
+        assertClose(new BigDecimal("0.3333333333333333333333333333333333"),
+                extended(Calculator.compileExtended("1 / 3")), 1e-31, "1/3");
+    }
+
+    @Test
+    void testArithmeticAgainstBigDecimal()
+    {
+        CompiledExpression interest = Calculator.compileExtended("p * (1 + r / n) ^ (n * t)");
+        CompiledExpression mixed = Calculator.compileExtended("(a - b) * (a + b) / (a * a - b * b) + a / b - b / a");
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++)
+        {
+            double p = Math.rint(random.nextDouble() * 1e6), r = Math.rint(random.nextDouble() * 2000) / 10000;
+            double n = 1 + random.nextInt(365), t = 1 + random.nextInt(30);
+            BigDecimal expected = BigDecimal.valueOf(p).multiply(BigDecimal.ONE.add(new BigDecimal(r)
+                    .divide(BigDecimal.valueOf(n), REFERENCE)).pow((int) (n * t), REFERENCE), REFERENCE);
+            assertClose(expected, extended(interest, p, r, n, t), 1e-31 * (1 + n * t), "interest " + i);
+
+            double a = random.nextDouble() * 200 - 100, b = random.nextDouble() * 200 - 100;
+            BigDecimal ba = new BigDecimal(a), bb = new BigDecimal(b);
+            expected = BigDecimal.ONE.add(ba.divide(bb, REFERENCE)).subtract(bb.divide(ba, REFERENCE));
+            assertClose(expected, extended(mixed, a, b), 1e-29, "mixed " + i);
+        }
+    }
+
+    @Test
+    void testFunctionsAgainstBigDecimal()
+    {
+        CompiledExpression exp = Calculator.compileExtended("exp(x)");
+        CompiledExpression log = Calculator.compileExtended("log(x)");
+        CompiledExpression root = Calculator.compileExtended("x ^ 0.5");
+        CompiledExpression pythagoras = Calculator.compileExtended("sin(x)^2 + cos(x)^2 - 1");
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++)
+        {
+            double x = random.nextDouble() * 100 - 50;
+            BigDecimal bx = new BigDecimal(x), e = BigDecimalMath.exp(bx);
+            assertClose(e, extended(exp, x), 1e-30, "exp " + x);
+
+            double y = Math.exp(random.nextDouble() * 100 - 50);
+            BigDecimal logReference = BigDecimalMath.log(new BigDecimal(y));
+            BigDecimal error = logReference.subtract(extended(log, y)).abs();
+            assertTrue(error.doubleValue() <= 1e-30 * Math.max(1, Math.abs(logReference.doubleValue())), "log " + y);
+
+            assertClose(new BigDecimal(y).sqrt(REFERENCE), extended(root, y), 1e-31, "sqrt " + y);
+            assertTrue(extended(pythagoras, x).abs().doubleValue() < 1e-30, "sin² + cos² " + x);
+        }
+        assertClose(new BigDecimal("0.84147098480789650665250232163029899962256306079837"),
+                extended(Calculator.compileExtended("sin 1")), 1e-30, "sin 1");
+        assertClose(new BigDecimal("1.5574077246549022305069748074583601730872507723815"),
+                extended(Calculator.compileExtended("tg 1")), 1e-30, "tg 1");
+        assertClose(new BigDecimal("2.7182818284590452353602874713526624977572470937000"),
+                extended(Calculator.compileExtended("exp 1")), 1e-31, "e");
+    }
+
+    @Test
+    void testFactorialAndSpecialValues()
+    {
+        CompiledExpression factorial = Calculator.compileExtended("n!");
+        BigInteger expected = BigInteger.ONE;
+        for (int n = 1; n <= 25; n++)
+            expected = expected.multiply(BigInteger.valueOf(n));
+        assertEquals(0, new BigDecimal(expected).compareTo(extended(factorial, 25)));
+        assertEquals(Double.POSITIVE_INFINITY, factorial.evaluateExtended(171));
+        assertThrows(IllegalArgumentException.class, () -> factorial.evaluateExtended(-1));
+
+        assertThrows(ArithmeticException.class, () -> Calculator.compileExtended("1 / (x - x)").evaluateExtended(2));
+        assertEquals(Double.POSITIVE_INFINITY, Calculator.compileExtended("exp(x)").evaluateExtended(1000));
+        assertTrue(Double.isNaN(Calculator.compileExtended("log(x)").evaluateExtended(-1)));
+        assertEquals(Double.POSITIVE_INFINITY, Calculator.compileExtended("10 ^ 400").evaluateExtended());
+        assertEquals(5.0, Calculator.compileExtended("hypot(3, 4)").evaluateExtended());
+
+        FunctionRegistry functions = FunctionRegistry.standard().with("twice", x -> 2 * x);
+        assertEquals(7.0, Calculator.compileExtended("twice(x) + 1", functions).evaluateExtended(3));
+        // Выражения, скомпилированные обычным образом, тоже вычисляются, но константы в них округлены
+        assertEquals(Calculator.compile("x * 3 + 1").evaluate(2), Calculator.compile("x * 3 + 1").evaluateExtended(2));
+    }
+
+    /**
+     * Эталонные экспонента и логарифм с точностью {@link #REFERENCE}.
+     */
+    private static final class BigDecimalMath
+    {
+        static BigDecimal exp(BigDecimal x)
+        {
+            // e^x = (e^(x/2^k))^(2^k), ряд Тейлора для малого аргумента
+            int k = 12;
+            BigDecimal r = x.divide(BigDecimal.valueOf(1L << k), new MathContext(70));
+            MathContext context = new MathContext(70);
+            BigDecimal sum = BigDecimal.ONE, term = BigDecimal.ONE;
+            for (int n = 1; n < 40; n++)
+            {
+                term = term.multiply(r, context).divide(BigDecimal.valueOf(n), context);
+                sum = sum.add(term, context);
+            }
+            for (int i = 0; i < k; i++)
+                sum = sum.multiply(sum, context);
+            return sum.round(REFERENCE);
+        }
+
+        static BigDecimal log(BigDecimal x)
+        {
+            // Приближение Math.log уточняется тремя итерациями Ньютона
+            MathContext context = new MathContext(70);
+            BigDecimal y = new BigDecimal(Math.log(x.doubleValue()));
+            for (int i = 0; i < 3; i++)
+                y = y.add(x.multiply(exp(y.negate()), context)).subtract(BigDecimal.ONE);
+            return y.round(REFERENCE);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для проверки кэша разобранных выражений {@link ExpressionCache}.
+ */
+public class ExpressionCacheTest
+{
+    @Test
+    void testNormalizedKey()
+    {
+        ExpressionCache cache = new ExpressionCache(10);
+        CompiledExpression first = cache.get("a + b * 2");
+        assertSame(first, cache.get("a+b*2"));
+        assertSame(first, cache.get(" a +\tb\n* 2 "));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-12);
+        assertEquals("a+b*2", ExpressionCache.normalize("a + b * 2"));
+    }
+
+    @Test
+    void testOneOffExpressionsDoNotEvictHotSet()
+    {
+        ExpressionCache cache = new ExpressionCache(8);
+        CompiledExpression[] hot = new CompiledExpression[8];
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < hot.length; i++)
+                hot[i] = cache.get("x * " + i);
+
+        // Одноразовые выражения вперемешку с обращениями к популярным
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.get("y + " + i);
+            cache.get("x * " + i % hot.length);
+        }
+
+        for (int i = 0; i < hot.length; i++)
+            assertSame(hot[i], cache.get("x * " + i));
+        assertEquals(8, cache.size());
+        assertTrue(cache.getRejectionCount() >= 1000 - 8);
+    }
+
+    @Test
+    void testFrequentNewcomerIsAdmitted()
+    {
+        ExpressionCache cache = new ExpressionCache(2);
+        cache.get("a");
+        cache.get("b");
+        for (int i = 0; i < 5; i++)
+            cache.get("c");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        long misses = cache.getMissCount();
+        cache.get("c");
+        assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    void testAgingIsSpreadOverAccesses()
+    {
+        // Скетч из 1024 счетчиков, порог старения - 1024 обращения, за одно обращение стареют 16 счетчиков
+        ExpressionCache cache = new ExpressionCache(8);
+        for (int i = 0; i < 20; i++)
+            cache.get("x");
+        assertEquals(15, cache.frequency("x"));
+
+        for (int i = 0; i < 1024 - 20; i++)
+            cache.get(i + "");
+        // Обращение, достигшее порога, уменьшило только первый участок скетча
+        assertEquals(15, cache.frequency("x"));
+
+        for (int i = 0; i < 1024 / 16; i++)
+            cache.get("-" + i);
+        assertEquals(7, cache.frequency("x"));
+    }
+
+    @Test
+    void testMemoryBudget()
+    {
+        long budget = 20_000;
+        ExpressionCache cache = new ExpressionCache(1000, budget);
+        for (int i = 0; i < 200; i++)
+            cache.get("a * b + c - " + i);
+        assertTrue(cache.getWeight() <= budget);
+        assertTrue(cache.size() < 200);
+
+        // Часто запрашиваемое выражение вытесняет записи, пока не поместится в бюджет
+        int size = cache.size();
+        for (int repeat = 0; repeat < 5; repeat++)
+            cache.get("sin(a) * cos(b) + exp(c) - log(d) * tg(e) / ctg(f) + a * b * c * d * e * f");
+        assertTrue(cache.getWeight() <= budget);
+        assertTrue(cache.getEvictionCount() > 1);
+        assertTrue(cache.size() < size);
+
+        // Выражение больше всего бюджета не кэшируется
+        StringBuilder huge = new StringBuilder("x");
+        for (int i = 0; i < 5000; i++)
+            huge.append("+x");
+        ExpressionCache small = new ExpressionCache(10, 1000);
+        assertEquals(5001.0, small.get(huge.toString()).evaluate(1.0));
+        assertEquals(0, small.size());
+        assertEquals(1, small.getRejectionCount());
+    }
+
+    @Test
+    void testErrors()
+    {
+        ExpressionCache cache = new ExpressionCache(10);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("2 +"));
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionCache(0));
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionCache(10, 0));
+    }
+
+    @Test
+    void testConcurrentAccess() throws InterruptedException
+    {
+        ExpressionCache cache = new ExpressionCache(16, 1 << 16);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++)
+                {
+                    int n = (i * 31 + seed) % 64;
+                    assertEquals(n + 1.0, cache.get("x + " + n).evaluate(1.0));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(cache.size() <= 16);
+        assertTrue(cache.getWeight() <= 1 << 16);
+        assertEquals(80000, cache.getHitCount() + cache.getMissCount());
+    }
+}
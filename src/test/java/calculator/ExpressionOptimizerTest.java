@@ -0,0 +1,254 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Тесты для проверки оптимизатора выражений {@link ExpressionOptimizer}.
+ */
+public class ExpressionOptimizerTest
+{
+    @Test
+    void testConstantFolding()
+    {
+        ExpressionOptimizer.Result result = ExpressionOptimizer.optimize(ExpressionParser.parse("2*3*x + sin(0) + 3!"));
+        assertEquals(4, result.getFoldedNodes());
+        assertEquals(4, result.getRemovedNodes());
+        assertArrayEquals(new double[] {6, 0, 6}, result.getExpression().getConstants());
+        assertEquals(18.0, result.getExpression().evaluate(2.0));
+
+        // Операции над константами после переменной не переставляются
+        assertEquals(0, ExpressionOptimizer.optimize(ExpressionParser.parse("x*2*3")).getRemovedNodes());
+    }
+
+    @Test
+    void testCommonSubexpressions()
+    {
+        CompiledExpression expr = ExpressionParser.parse("sin(a)*sin(a) + cos(a)*cos(a)");
+        ExpressionOptimizer.Result result = ExpressionOptimizer.optimize(expr);
+        assertEquals(2, result.getSharedSubexpressions());
+        // Два вызова функций и два чтения переменной заменены чтениями сохраненных значений
+        assertEquals(2, result.getRemovedNodes());
+        for (double a = -3; a <= 3; a += 0.25)
+            assertEquals(expr.evaluate(a), result.getExpression().evaluate(a));
+
+        ExpressionOptimizer.Result nested = ExpressionOptimizer.optimize(
+                ExpressionParser.parse("exp(a*b + 1) / (1 + exp(a*b + 1)) - |a*b|"));
+        assertEquals(2, nested.getSharedSubexpressions());
+        assertEquals(Math.exp(7) / (1 + Math.exp(7)) - 6, nested.getExpression().evaluate(2, 3));
+    }
+
+    @Test
+    void testErrorsAreNotFolded()
+    {
+        CompiledExpression expr = ExpressionOptimizer.optimize(ExpressionParser.parse("x + 1/0")).getExpression();
+        assertThrows(ArithmeticException.class, () -> expr.evaluate(1.0));
+        CompiledExpression factorial = ExpressionOptimizer.optimize(ExpressionParser.parse("x + 2.5!")).getExpression();
+        assertThrows(IllegalArgumentException.class, () -> factorial.evaluate(1.0));
+    }
+
+    @Test
+    void testAllBackendsMatchUnoptimized()
+    {
+        Random random = new Random(5);
+        String[] atoms = {"a", "b", "-a", "2", "0.5", "sin(a)", "cos(b)", "|a - b|", "exp(b)"};
+        String[] operators = {" + ", " - ", " * ", " / ", "^"};
+        for (int n = 0; n < 300; n++)
+        {
+            StringBuilder source = new StringBuilder(atoms[random.nextInt(atoms.length)]);
+            for (int i = random.nextInt(6); i >= 0; i--)
+            {
+                String atom = atoms[random.nextInt(atoms.length)];
+                if (random.nextBoolean())
+                    atom = "(" + atom + operators[random.nextInt(3)] + atoms[random.nextInt(atoms.length)] + ")";
+                source.append(operators[random.nextInt(operators.length)]).append(atom);
+            }
+
+            CompiledExpression plain = ExpressionParser.parse(source.toString());
+            CompiledExpression optimized = ExpressionOptimizer.optimize(plain).getExpression();
+            ToDoubleFunction<double[]> function = BytecodeCompiler.compile(optimized);
+            double[] as = new double[10], bs = new double[10], out = new double[10];
+            for (int row = 0; row < as.length; row++)
+            {
+                as[row] = random.nextDouble() * 4 - 2;
+                bs[row] = random.nextDouble() * 4 - 2 + 0.001;
+            }
+            boolean columnsFailed = false;
+            try
+            {
+                optimized.evaluate(Map.of("a", as, "b", bs), out);
+            }
+            catch (ArithmeticException e)
+            {
+                columnsFailed = true;
+            }
+
+            for (int row = 0; row < as.length; row++)
+            {
+                Map<String, Double> values = Map.of("a", as[row], "b", bs[row]);
+                double expected;
+                try
+                {
+                    expected = plain.evaluate(values);
+                }
+                catch (ArithmeticException e)
+                {
+                    assertThrows(ArithmeticException.class, () -> optimized.evaluate(values));
+                    continue;
+                }
+                long bits = Double.doubleToLongBits(expected);
+                assertEquals(bits, Double.doubleToLongBits(optimized.evaluate(values)), source.toString());
+                assertEquals(bits, Double.doubleToLongBits(function.applyAsDouble(optimized.slotValues(values))),
+                        source.toString());
+                if (!columnsFailed)
+                    assertEquals(bits, Double.doubleToLongBits(out[row]), source.toString());
+            }
+        }
+    }
+
+    @Test
+    void testDeepExpression()
+    {
+        int depth = 100_000;
+        String source = "(".repeat(depth) + "sin(x) + sin(x)" + ")".repeat(depth);
+        ExpressionOptimizer.Result result = ExpressionOptimizer.optimize(ExpressionParser.parse(source));
+        assertEquals(2 * Math.sin(1.0), result.getExpression().evaluate(1.0));
+        assertEquals(1, result.getSharedSubexpressions());
+    }
+
+    @Test
+    void testIntegerPowers()
+    {
+        double[] xs = {-3.7, -1, -0.0, 0.1, 0.999, 1.5, 12.25, 1e10, Double.NaN, Double.POSITIVE_INFINITY};
+        for (int n = 0; n <= ExpressionOptimizer.MAX_INTEGER_POWER; n++)
+        {
+            ExpressionOptimizer.Result result = ExpressionOptimizer.optimize(ExpressionParser.parse("x^" + n), true);
+            CompiledExpression expr = result.getExpression();
+            assertEquals(1, result.getStrengthReductions());
+            assertFalse(hasPower(expr));
+            for (double x : xs)
+            {
+                double expected = Math.pow(x, n);
+                double tolerance = Double.isFinite(expected) ? Math.abs(expected) * n * 0x1p-52 : 0;
+                assertEquals(expected, expr.evaluate(x), tolerance, "x^" + n + " at " + x);
+            }
+        }
+
+        CompiledExpression root = ExpressionOptimizer.optimize(ExpressionParser.parse("x^0.5"), true).getExpression();
+        for (double x : new double[] {-0.0, 0.0, 2, 1e-300, -4, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY})
+            assertEquals(Double.doubleToLongBits(Math.pow(x, 0.5)), Double.doubleToLongBits(root.evaluate(x)));
+
+        assertEquals(0, ExpressionOptimizer.optimize(ExpressionParser.parse("x^2.5 + x^-2 + x^17"), true)
+                .getStrengthReductions());
+
+        // Нулевая степень не отбрасывает основание, вычисление которого может завершиться ошибкой
+        CompiledExpression reciprocal = ExpressionOptimizer.optimize(ExpressionParser.parse("(1/x)^0"), true).getExpression();
+        assertThrows(ArithmeticException.class, () -> reciprocal.evaluate(0.0));
+        assertEquals(1.0, reciprocal.evaluate(2.0));
+        CompiledExpression factorial = ExpressionOptimizer.optimize(ExpressionParser.parse("x!^0"), true).getExpression();
+        assertThrows(IllegalArgumentException.class, () -> factorial.evaluate(2.5));
+    }
+
+    @Test
+    void testHornerForm()
+    {
+        CompiledExpression plain = ExpressionParser.parse("2*x^3 - 4*x^2 + 3*x - 7");
+        ExpressionOptimizer.Result result = ExpressionOptimizer.optimize(plain, true);
+        // Две степени и сам многочлен
+        assertEquals(3, result.getStrengthReductions());
+        CompiledExpression horner = result.getExpression();
+        assertFalse(hasPower(horner));
+        assertTrue(result.getRemovedNodes() > 0);
+
+        ToDoubleFunction<double[]> function = BytecodeCompiler.compile(horner);
+        double[] xs = new double[1000], out = new double[xs.length];
+        Random random = new Random(7);
+        for (int i = 0; i < xs.length; i++)
+            xs[i] = random.nextDouble() * 20 - 10;
+        horner.evaluate(Map.of("x", xs), out);
+        for (int i = 0; i < xs.length; i++)
+        {
+            double x = xs[i];
+            double magnitude = 2 * Math.abs(x * x * x) + 4 * x * x + 3 * Math.abs(x) + 7;
+            assertEquals(plain.evaluate(x), horner.evaluate(x), 2 * 3 * 0x1p-52 * magnitude);
+            assertEquals(horner.evaluate(x), function.applyAsDouble(new double[] {x}));
+            assertEquals(horner.evaluate(x), out[i]);
+        }
+    }
+
+    @Test
+    void testPolynomialRecognition()
+    {
+        // Одночлены одной степени объединяются, многочлен внутри другого выражения тоже упрощается
+        assertEquals(37.0, ExpressionOptimizer.optimize(ExpressionParser.parse("x^2 + 2*x^2 + x*3 + 1"), true)
+                .getExpression().evaluate(3.0));
+        ExpressionOptimizer.Result nested = ExpressionOptimizer.optimize(ExpressionParser.parse("sin(x^2 - x + 1) * y"), true);
+        assertEquals(2, nested.getStrengthReductions());
+        assertEquals(Math.sin(3) * 2, nested.getExpression().evaluate(2, 2));
+
+        // Многочлены от двух переменных и произведения многочленов не меняются
+        assertEquals(2, ExpressionOptimizer.optimize(ExpressionParser.parse("x^2 + y^2 + x"), true).getStrengthReductions());
+        assertEquals(0, ExpressionOptimizer.optimize(ExpressionParser.parse("(x + 1)*(x - 1) + x"), true)
+                .getStrengthReductions());
+    }
+
+    @Test
+    void testStrengthReductionIsOptIn()
+    {
+        // На бесконечности объединение одночленов дает другой результат, чем почленное вычисление
+        String source = "x^3 + x^2 - x^2 + x";
+        CompiledExpression reduced = ExpressionOptimizer.optimize(ExpressionParser.parse(source), true).getExpression();
+        assertEquals(Double.POSITIVE_INFINITY, reduced.evaluate(Double.POSITIVE_INFINITY));
+        assertTrue(Double.isNaN(ExpressionParser.parse(source).evaluate(Double.POSITIVE_INFINITY)));
+
+        // По умолчанию вычислитель сохраняет результат почленного вычисления
+        assertTrue(Double.isNaN(Calculator.compile(source).evaluate(Double.POSITIVE_INFINITY)));
+        assertTrue(Double.isNaN(Calculator.compile(source, FunctionRegistry.standard()).evaluate(Double.POSITIVE_INFINITY)));
+        assertTrue(Double.isNaN(Calculator.compile(source + " + y").specialize(Map.of("y", 0.0))
+                .evaluate(Double.POSITIVE_INFINITY)));
+        assertTrue(hasPower(Calculator.compile(source)));
+    }
+
+    @Test
+    void testSpecialize()
+    {
+        CompiledExpression expr = Calculator.compile("rate * exp(-vol * vol / 2) * x + sin(rate) * -vol + y / cost");
+        CompiledExpression residual = expr.specialize(Map.of("rate", 0.05, "vol", 0.2, "cost", 4.0, "other", 1.0));
+        assertEquals(Set.of("x", "y"), residual.getVariables());
+        assertEquals(3, residual.getConstants().length);
+
+        Random random = new Random(21);
+        for (int i = 0; i < 100; i++)
+        {
+            double x = random.nextDouble() * 10 - 5, y = random.nextDouble() * 10 - 5;
+            double expected = expr.evaluate(Map.of("rate", 0.05, "vol", 0.2, "cost", 4.0, "x", x, "y", y));
+            assertEquals(expected, residual.evaluate(Map.of("x", x, "y", y)));
+            assertEquals(expected, BytecodeCompiler.compile(residual).applyAsDouble(new double[] {x, y}));
+        }
+
+        CompiledExpression constant = expr.specialize(Map.of("rate", 1.0, "vol", 0.0, "cost", 2.0, "x", 3.0, "y", 4.0));
+        assertEquals(0, constant.getVariableCount());
+        assertEquals(1, constant.getConstants().length);
+        assertEquals(5.0, constant.evaluate());
+
+        assertSame(expr, expr.specialize(Map.of()));
+        assertThrows(ArithmeticException.class,
+                () -> new Calculator("a / b + c").specialize(Map.of("b", 0.0)).evaluate(1.0, 2.0));
+    }
+
+    /**
+     * Проверяет, есть ли в программе выражения оператор возведения в степень.
+     */
+    private static boolean hasPower(CompiledExpression expr)
+    {
+        for (int i = 0; i < expr.kinds.length; i++)
+            if (expr.kinds[i] == CompiledExpression.BINARY_OPERATOR && expr.slots[i] == CompiledExpression.POWER)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package calculator;
+
+import java.util.Random;
+
+/**
+ * Сравнение скорости точных функций и их быстрых приближений ({@link FunctionRegistry#withFastMath()})
+ * при пакетном вычислении по столбцам ({@link CompiledExpression#evaluateColumns(double[][], double[])}).
+ *
+ * <p>Для каждой функции набора вычисляется выражение из одного вызова над столбцом аргументов из ее рабочего
+ * диапазона. Столбец помещается в кэш процессора, поэтому время определяется вычислением функции,
+ * а не пропускной способностью памяти. Для каждой функции выводится лучшее из нескольких измерений после прогрева.
+ *
+ * <p>Запуск: {@code ./gradlew benchmark -Pbenchmark=FastMathBenchmark [-Pargs=количество строк]}.
+ *
+ * @author Анастасия
+ * @version 1.0
+ */
+public class FastMathBenchmark
+{
+    /** Количество строк по умолчанию */
+    private static final int DEFAULT_ROWS = 1 << 16;
+
+    /** Количество прогревочных прогонов */
+    private static final int WARMUP = 200;
+
+    /** Количество измеряемых прогонов */
+    private static final int RUNS = 200;
+
+    /**
+     * Выполняет измерения и выводит время на строку и ускорение для каждой функции.
+     *
+     * @param args необязательное количество строк
+     */
+    public static void main(String[] args)
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        String[] functions = {"cos", "tg", "ctg", "log"};
+        double[][] ranges = {{-Math.PI, Math.PI}, {-1.5, 1.5}, {0.05, 3.0}, {1e-3, 1e3}};
+        FunctionRegistry exact = FunctionRegistry.standard(), fast = exact.withFastMath();
+
+        Random random = new Random(1);
+        double[] out = new double[rows];
+        System.out.printf("%-8s %12s %12s %8s%n", "function", "exact ns/row", "fast ns/row", "speedup");
+        for (int f = 0; f < functions.length; f++)
+        {
+            double[][] columns = new double[1][rows];
+            for (int i = 0; i < rows; i++)
+                columns[0][i] = ranges[f][0] + random.nextDouble() * (ranges[f][1] - ranges[f][0]);
+            CompiledExpression exactExpression = Calculator.compile(functions[f] + "(x)", exact);
+            CompiledExpression fastExpression = Calculator.compile(functions[f] + "(x)", fast);
+
+            long exactTime = Long.MAX_VALUE, fastTime = Long.MAX_VALUE;
+            for (int run = 0; run < WARMUP + RUNS; run++)
+            {
+                long start = System.nanoTime();
+                exactExpression.evaluateColumns(columns, out);
+                long middle = System.nanoTime();
+                fastExpression.evaluateColumns(columns, out);
+                long end = System.nanoTime();
+                if (run >= WARMUP)
+                {
+                    exactTime = Math.min(exactTime, middle - start);
+                    fastTime = Math.min(fastTime, end - middle);
+                }
+            }
+            System.out.printf("%-8s %12.3f %12.3f %7.2fx%n", functions[f], (double) exactTime / rows,
+                    (double) fastTime / rows, (double) exactTime / fastTime);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Тесты для проверки быстрых приближений {@link FastMath} и режима {@link FunctionRegistry#withFastMath()}.
+ */
+public class FastMathTest
+{
+    @Test
+    void testErrorBounds()
+    {
+        Random random = new Random(5);
+        for (int i = 0; i < 200_000; i++)
+        {
+            double x = (random.nextDouble() * 2 - 1) * (i % 2 == 0 ? 10 : FastMath.MAX_TRIGONOMETRIC_ARGUMENT);
+            assertEquals(StrictMath.sin(x), FastMath.sin(x), 1e-13, "sin " + x);
+            assertEquals(StrictMath.cos(x), FastMath.cos(x), 1e-13, "cos " + x);
+            double tan = StrictMath.tan(x);
+            assertEquals(tan, FastMath.tan(x), 1e-12 * Math.abs(tan), "tg " + x);
+            assertEquals(1 / tan, FastMath.cot(x), 1e-12 * Math.abs(1 / tan), "ctg " + x);
+
+            double l = i % 3 == 0 ? 1 + (random.nextDouble() * 2 - 1) * 0.5 : Math.exp((random.nextDouble() * 2 - 1) * 700);
+            double log = StrictMath.log(l);
+            assertEquals(log, FastMath.log(l), Math.min(1e-12, 1e-11 * Math.abs(log)), "log " + l);
+        }
+    }
+
+    @Test
+    void testSpecialValues()
+    {
+        assertEquals(0.0, FastMath.log(1));
+        assertEquals(0.0, FastMath.sin(0));
+        assertEquals(1.0, FastMath.cos(0));
+        assertEquals(Double.NEGATIVE_INFINITY, FastMath.log(0));
+        assertTrue(Double.isNaN(FastMath.log(-1)));
+        assertEquals(Math.log(Double.MIN_VALUE), FastMath.log(Double.MIN_VALUE));
+        assertTrue(Double.isNaN(FastMath.sin(Double.POSITIVE_INFINITY)));
+        assertEquals(Math.sin(1e10), FastMath.sin(1e10));
+    }
+
+    @Test
+    void testFastMathRegistry()
+    {
+        FunctionRegistry functions = FunctionRegistry.standard().with("sq", x -> x * x);
+        FunctionRegistry fast = functions.withFastMath();
+        assertTrue(fast.hasFastMath());
+        assertFalse(FunctionRegistry.standard().hasFastMath());
+        assertTrue(fast.contains("sq"));
+
+        String source = "sin(x) * cos(y) + tg(x / 4) - ctg(y + 1) + exp(x) * log(|y| + 1) + sq(x)";
+        CompiledExpression exact = Calculator.compile(source, functions);
+        CompiledExpression approximate = Calculator.compile(source, fast);
+        assertFalse(exact.hasSameShape(approximate));
+
+        Random random = new Random(9);
+        int rows = ColumnEvaluator.BLOCK_SIZE + 3;
+        double[][] columns = new double[2][rows];
+        for (int i = 0; i < rows; i++)
+        {
+            columns[0][i] = random.nextDouble() * 4 - 2;
+            columns[1][i] = random.nextDouble() * 4 - 2;
+        }
+        double[] out = new double[rows];
+        approximate.evaluateColumns(columns, out);
+        ToDoubleFunction<double[]> compiled = BytecodeCompiler.compile(approximate);
+        for (int i = 0; i < rows; i++)
+        {
+            double[] row = {columns[0][i], columns[1][i]};
+            double value = approximate.evaluate(row);
+            assertEquals(exact.evaluate(row), value, 1e-9 * Math.max(1, Math.abs(value)));
+            assertEquals(value, out[i]);
+            assertEquals(value, compiled.applyAsDouble(row));
+        }
+        assertEquals(Math.exp(2), Calculator.compile("exp(x)").evaluate(Map.of("x", 2.0)));
+
+        // Синус и экспонента не заменяются приближениями
+        assertTrue(Calculator.compile("sin(x) + exp(y)", fast).hasSameShape(Calculator.compile("sin(x) + exp(y)", functions)));
+        assertEquals(Math.sin(0.3) + Math.exp(0.7), Calculator.compile("sin(x) + exp(y)", fast).evaluate(0.3, 0.7));
+    }
+}
@@ -0,0 +1,110 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Тесты для проверки пакетного вычисления над столбцами {@code float} {@link FloatColumnEvaluator}
+ * и ядер одинарной точности {@link FloatMath}.
+ */
+public class FloatColumnEvaluatorTest
+{
+    @Test
+    void testErrorBounds()
+    {
+        Random random = new Random(3);
+        for (int i = 0; i < 200_000; i++)
+        {
+            float x = (float) ((random.nextDouble() * 2 - 1) * (i % 2 == 0 ? 10 : FloatMath.MAX_TRIGONOMETRIC_ARGUMENT));
+            assertEquals(StrictMath.sin(x), FloatMath.sin(x), 2e-7, "sin " + x);
+            assertEquals(StrictMath.cos(x), FloatMath.cos(x), 2e-7, "cos " + x);
+            double tan = StrictMath.tan(x);
+            assertEquals(tan, FloatMath.tan(x), 5e-7 * Math.abs(tan), "tg " + x);
+            assertEquals(1 / tan, FloatMath.cot(x), 5e-7 * Math.abs(1 / tan), "ctg " + x);
+
+            float e = (float) ((random.nextDouble() * 2 - 1) * 87);
+            assertEquals(StrictMath.exp(e), FloatMath.exp(e), 3e-7 * StrictMath.exp(e), "exp " + e);
+
+            float l = (float) (i % 3 == 0 ? 1 + (random.nextDouble() * 2 - 1) * 0.5 : Math.exp((random.nextDouble() * 2 - 1) * 87));
+            double log = StrictMath.log(l);
+            assertEquals(log, FloatMath.log(l), Math.max(2e-7, 5e-7 * Math.abs(log)), "log " + l);
+        }
+    }
+
+    @Test
+    void testSpecialValues()
+    {
+        assertEquals(1f, FloatMath.exp(0));
+        assertEquals(0f, FloatMath.log(1));
+        assertEquals(0f, FloatMath.sin(0));
+        assertEquals(1f, FloatMath.cos(0));
+        assertEquals(Float.POSITIVE_INFINITY, FloatMath.exp(100));
+        assertEquals(0f, FloatMath.exp(-200));
+        assertEquals(Float.NEGATIVE_INFINITY, FloatMath.log(0));
+        assertTrue(Float.isNaN(FloatMath.log(-1)));
+        assertTrue(Float.isNaN(FloatMath.sin(Float.POSITIVE_INFINITY)));
+        assertTrue(Float.isNaN(FloatMath.exp(Float.NaN)));
+        assertEquals(Float.POSITIVE_INFINITY, FloatMath.hypot(Float.NEGATIVE_INFINITY, Float.NaN));
+        assertEquals(5f, FloatMath.hypot(3, 4));
+    }
+
+    @Test
+    void testMatchesDoubleEvaluation()
+    {
+        String[] expressions = {
+                "(a + b) * |c|^b - exp(d)",
+                "-a * sin(b) + -cos(c) / (d + 10) - ctg(a) + -|b - c|",
+                "tg(a) - -tg(b) + log(|c| + 1) + -log(|d| + 1) - -exp(a) * -sin(c) + -ctg(d) - -(a - b)",
+                "min(a, b) + max(c, d) * hypot(a, c) + clamp(b, -1, 1)",
+                "(a + b) * (a + b) + 0.1"
+        };
+        Random random = new Random(13);
+        int rows = 2 * ColumnEvaluator.BLOCK_SIZE + 5;
+        float[][] columns = new float[4][rows];
+        for (float[] column : columns)
+            for (int i = 0; i < rows; i++)
+                column[i] = (float) (random.nextDouble() * 4 - 2);
+
+        for (String source : expressions)
+        {
+            CompiledExpression expr = Calculator.compile(source);
+            float[] out = new float[rows];
+            expr.evaluateFloat(Map.of("a", columns[0], "b", columns[1], "c", columns[2], "d", columns[3]), out);
+            for (int i = 0; i < rows; i++)
+            {
+                double expected = expr.evaluate(Map.of("a", (double) columns[0][i], "b", (double) columns[1][i],
+                        "c", (double) columns[2][i], "d", (double) columns[3][i]));
+                assertEquals(expected, out[i], 1e-4 * Math.max(1, Math.abs(expected)), source + " row " + i);
+            }
+        }
+    }
+
+    @Test
+    void testConstantAndFactorial()
+    {
+        float[] out = new float[5];
+        Calculator.compile("2 + 3!").evaluateFloatColumns(new float[0][], out);
+        assertArrayEquals(new float[] {8, 8, 8, 8, 8}, out);
+
+        Calculator.compile("n!").evaluateFloatColumns(new float[][] {{0, 1, 2, 3, 4}}, out);
+        assertArrayEquals(new float[] {1, 1, 2, 6, 24}, out);
+    }
+
+    @Test
+    void testErrors()
+    {
+        CompiledExpression expr = Calculator.compile("a / b");
+        float[] out = new float[3];
+        assertThrows(ArithmeticException.class,
+                () -> expr.evaluateFloat(Map.of("a", new float[] {1, 2, 3}, "b", new float[] {1, 0, 1}), out));
+        assertThrows(IllegalArgumentException.class,
+                () -> expr.evaluateFloat(Map.of("a", new float[] {1, 2, 3}), out));
+        assertThrows(IllegalArgumentException.class,
+                () -> expr.evaluateFloat(Map.of("a", new float[] {1, 2, 3}, "b", new float[] {1, 2}), out));
+        assertThrows(IllegalArgumentException.class,
+                () -> expr.evaluateFloatColumns(new float[][] {{1, 2, 3}}, out));
+    }
+}
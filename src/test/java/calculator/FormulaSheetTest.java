@@ -0,0 +1,114 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Тесты для проверки листа взаимозависимых формул {@link FormulaSheet}.
+ */
+public class FormulaSheetTest
+{
+    @Test
+    void testDependentFormulas()
+    {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.define("risk", "margin * exp(vol)");
+        sheet.define("margin", "price - cost");
+        sheet.setInputs(Map.of("price", 10.0, "cost", 7.0, "vol", 0.0));
+        assertEquals(3.0, sheet.get("risk"));
+        assertEquals(3.0, sheet.get("margin"));
+        assertEquals(2, sheet.getLastStatistics().getEvaluatedFormulas());
+        assertEquals(2, sheet.getLastStatistics().getLevels());
+
+        sheet.setInput("vol", 0.5);
+        assertEquals(1, sheet.getPendingCount());
+        FormulaSheet.Statistics stats = sheet.recompute();
+        assertEquals(1, stats.getEvaluatedFormulas());
+        assertEquals(3 * Math.exp(0.5), sheet.get("risk"));
+
+        sheet.setInput("vol", 0.5);
+        assertEquals(0, sheet.getPendingCount());
+
+        sheet.define("margin", "price - cost * 2");
+        assertEquals(2, sheet.getPendingCount());
+        assertEquals(-4 * Math.exp(0.5), sheet.get("risk"));
+
+        assertTrue(sheet.remove("margin"));
+        assertThrows(IllegalArgumentException.class, () -> sheet.get("risk"));
+        sheet.setInput("margin", 1.0);
+        assertEquals(Math.exp(0.5), sheet.get("risk"));
+        assertThrows(IllegalArgumentException.class, () -> sheet.get("margin"));
+    }
+
+    @Test
+    void testCycles()
+    {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.define("a", "b + 1");
+        sheet.define("b", "c * 2");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> sheet.define("c", "a - 1"));
+        assertEquals("Cyclic dependency: c -> a -> b -> c", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> sheet.define("d", "d + 1"));
+        assertFalse(sheet.getFormulas().contains("c"));
+        assertThrows(IllegalArgumentException.class, () -> sheet.setInput("a", 1.0));
+
+        sheet.setInput("c", 3.0);
+        assertEquals(7.0, sheet.get("a"));
+    }
+
+    @Test
+    void testErrorsPropagate()
+    {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.define("ratio", "x / y");
+        sheet.define("scaled", "ratio * 10");
+        sheet.define("other", "x + 1");
+        sheet.setInput("x", 1.0);
+        sheet.setInput("y", 0.0);
+        assertThrows(ArithmeticException.class, () -> sheet.get("scaled"));
+        assertEquals(2.0, sheet.get("other"));
+        sheet.setInput("y", 4.0);
+        assertEquals(2.5, sheet.get("scaled"));
+    }
+
+    @Test
+    void testParallelLevels()
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            FormulaSheet sheet = new FormulaSheet(FunctionRegistry.standard(), pool);
+            StringBuilder total = new StringBuilder("0");
+            for (int i = 0; i < 100; i++)
+            {
+                String name = "f" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+                sheet.define(name, "sin(x * " + i + ") + y");
+                total.append(" + ").append(name);
+            }
+            sheet.define("total", total.toString());
+            sheet.define("unrelated", "z * 2");
+            sheet.setInputs(Map.of("x", 0.25, "y", 1.0, "z", 3.0));
+
+            FormulaSheet.Statistics stats = sheet.recompute();
+            assertEquals(102, stats.getEvaluatedFormulas());
+            assertEquals(2, stats.getLevels());
+            assertEquals(101, stats.getMaxLevelWidth());
+            double expected = 0;
+            for (int i = 0; i < 100; i++)
+                expected = expected + (Math.sin(0.25 * i) + 1);
+            assertEquals(expected, sheet.get("total"), 1e-9);
+
+            sheet.setInput("y", 2.0);
+            assertEquals(101, sheet.recompute().getEvaluatedFormulas());
+            assertEquals(expected + 100, sheet.get("total"), 1e-9);
+            assertEquals(6.0, sheet.get("unrelated"));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Тесты для проверки набора функций {@link FunctionRegistry} и функций нескольких аргументов.
+ */
+public class FunctionRegistryTest
+{
+    @Test
+    void testStandardFunctions()
+    {
+        assertEquals(2.0, Calculator.compile("min(2, 3)").evaluate(), 1e-12);
+        assertEquals(3.0, Calculator.compile("max(2, 3)").evaluate(), 1e-12);
+        assertEquals(5.0, Calculator.compile("hypot(3, 4)").evaluate(), 1e-12);
+        assertEquals(1.0, Calculator.compile("clamp(x, 0, 1)").evaluate(Map.of("x", 7.0)), 1e-12);
+        assertEquals(-4.0, Calculator.compile("-max(a, b)").evaluate(Map.of("a", 4.0, "b", -1.0)), 1e-12);
+        assertEquals(-1.0, Calculator.compile("-sin(x)").evaluate(Map.of("x", Math.PI / 2)), 1e-12);
+        assertEquals(10.0, Calculator.compile("max(min(a, b) * 2, hypot(a, -b)) + 4").evaluate(Map.of("a", 3.0, "b", 4.0)), 1e-12);
+
+        FunctionRegistry standard = FunctionRegistry.standard();
+        assertTrue(standard.contains("sin"));
+        assertEquals(3, standard.arity("clamp"));
+        assertThrows(IllegalArgumentException.class, () -> standard.arity("foo"));
+    }
+
+    @Test
+    void testCustomFunctions()
+    {
+        FunctionRegistry functions = FunctionRegistry.standard()
+                .with("sq", x -> x * x)
+                .with("discount", (price, rate) -> price * (1 - rate))
+                .with("lerp", 3, args -> args[0] + (args[1] - args[0]) * args[2]);
+
+        assertEquals(10.0, Calculator.compile("sq(3) + 1", functions).evaluate(), 1e-12);
+        assertEquals(4.0, Calculator.compile("sq 2", functions).evaluate(), 1e-12);
+        assertEquals(90.0, Calculator.compile("discount(p, 0.1)", functions).evaluate(Map.of("p", 100.0)), 1e-12);
+        assertEquals(-18.0, Calculator.compile("-discount(lerp(a, b, t), 0.1)", functions)
+                .evaluate(Map.of("a", 10.0, "b", 30.0, "t", 0.5)), 1e-12);
+        assertFalse(FunctionRegistry.standard().contains("sq"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("sq(2)"));
+    }
+
+    @Test
+    void testArgumentErrors()
+    {
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("min(1)"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("min(1, 2, 3)"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("min 1"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("min(1, )"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("1, 2"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("(1, 2)"));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("sin(1, 2)"));
+
+        FunctionRegistry standard = FunctionRegistry.standard();
+        assertThrows(IllegalArgumentException.class, () -> standard.with("min", (a, b) -> a));
+        assertThrows(IllegalArgumentException.class, () -> standard.with("f1", x -> x));
+        assertThrows(IllegalArgumentException.class, () -> standard.with("", x -> x));
+        assertThrows(IllegalArgumentException.class, () -> standard.with("f", 0, args -> 0));
+    }
+
+    @Test
+    void testFunctionNamesAsVariables()
+    {
+        // Без скобки имя функции нескольких аргументов остается именем переменной
+        assertEquals(3.0, Calculator.compile("min + 1").evaluate(Map.of("min", 2.0)));
+        CompiledExpression expr = Calculator.compile("max * min(max, hypot) - clamp");
+        assertEquals(Set.of("max", "hypot", "clamp"), expr.getVariables());
+        assertEquals(4 * 3 - 1.0, expr.evaluate(Map.of("max", 4.0, "hypot", 3.0, "clamp", 1.0)));
+    }
+
+    @Test
+    void testConstantCallsAreFolded()
+    {
+        int[] calls = new int[1];
+        FunctionRegistry functions = FunctionRegistry.standard().with("twice", x -> {
+            ++calls[0];
+            return 2 * x;
+        });
+        CompiledExpression expr = Calculator.compile("twice(3) + max(1, 2) * x", functions);
+        int foldedCalls = calls[0];
+        assertEquals(11.0, expr.evaluate(Map.of("x", 2.5)), 1e-12);
+        assertEquals(foldedCalls, calls[0]);
+        for (int kind : expr.kinds)
+            assertNotEquals(CompiledExpression.CALL, kind);
+    }
+
+    @Test
+    void testAllEvaluatorsAgree()
+    {
+        FunctionRegistry functions = FunctionRegistry.standard()
+                .with("sq", x -> x * x)
+                .with("avg", (x, y) -> (x + y) / 2)
+                .with("mid", 3, args -> Math.max(Math.min(args[0], args[1]), Math.min(Math.max(args[0], args[1]), args[2])))
+                .with("lerp", (x, y, t) -> x + (y - x) * t)
+                .with("poly", 4, args -> ((args[0] * args[3] + args[1]) * args[3] + args[2]) * args[3]);
+        String[] expressions = {
+                "sq(a) + avg(b, c) * -mid(a, b, c)",
+                "clamp(a * b, -|c|, |c|) - -hypot(a, min(b, c)) + sq(sq(a))",
+                "mid(sq(a), avg(a, b), max(b, c)) * mid(sq(a), avg(a, b), max(b, c))",
+                "lerp(a, b, c) - poly(a, poly(b, c, a, 0.5), lerp(c, a, b), poly(c, b, a, c)) / (1 + sq(a))"
+        };
+        Random random = new Random(11);
+        int rows = 2 * ColumnEvaluator.BLOCK_SIZE + 5;
+        double[][] columns = new double[3][rows];
+        for (double[] column : columns)
+            for (int i = 0; i < rows; i++)
+                column[i] = random.nextDouble() * 10 - 5;
+
+        for (String source : expressions)
+        {
+            CompiledExpression expr = Calculator.compile(source, functions);
+            ToDoubleFunction<double[]> compiled = BytecodeCompiler.compile(expr);
+            assertNotNull(expr.shape.generatedConstructor(), source);
+            double[] out = new double[rows];
+            expr.evaluateColumns(columns, out);
+            for (int i = 0; i < rows; i++)
+            {
+                double[] row = {columns[0][i], columns[1][i], columns[2][i]};
+                double expected = expr.evaluate(row);
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(out[i]), source + " row " + i);
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(compiled.applyAsDouble(row)),
+                        source + " row " + i);
+            }
+        }
+    }
+
+    @Test
+    void testArgumentArrayIsReused()
+    {
+        List<double[]> arrays = new ArrayList<>();
+        FunctionRegistry functions = FunctionRegistry.standard().with("diff", 4, args -> {
+            arrays.add(args);
+            return args[0] - args[1] + args[2] - args[3];
+        });
+        CompiledExpression expr = Calculator.compile("diff(a, b, diff(b, a, c, 1), c) * diff(c, c, a, b)", functions);
+        double[] values = {1, 2, 3};
+        for (int i = 0; i < 3; i++)
+            assertEquals(1.0, expr.evaluate(values));
+        assertEquals(9, arrays.size());
+        for (double[] array : arrays)
+            assertSame(arrays.get(0), array);
+
+        arrays.clear();
+        assertEquals(1.0, BytecodeCompiler.compile(expr).applyAsDouble(values));
+        assertEquals(3, arrays.size());
+        assertSame(arrays.get(0), arrays.get(2));
+    }
+
+    @Test
+    void testGammaFactorial()
+    {
+        FunctionRegistry functions = FunctionRegistry.standard().withGammaFactorial();
+        assertTrue(functions.hasGammaFactorial());
+        assertFalse(FunctionRegistry.standard().hasGammaFactorial());
+
+        CompiledExpression expr = Calculator.compile("n!", functions);
+        assertEquals(120.0, expr.evaluate(5.0));
+        assertEquals(Math.sqrt(Math.PI) / 2, expr.evaluate(0.5), 1e-14);
+        assertEquals(11.631728396567446, expr.evaluate(3.5), 1e-13);
+        assertEquals(-2 * Math.sqrt(Math.PI), expr.evaluate(-1.5), 1e-13);
+        assertEquals(Double.POSITIVE_INFINITY, expr.evaluate(170.7));
+        assertEquals(Double.POSITIVE_INFINITY, expr.evaluate(1e12));
+        assertThrows(IllegalArgumentException.class, () -> expr.evaluate(-2.0));
+        assertThrows(IllegalArgumentException.class, () -> Calculator.compile("3.5!").evaluate());
+
+        assertEquals(24.0, Calculator.compile("gamma(5)", functions).evaluate(), 1e-12);
+        assertEquals(Math.log(Math.sqrt(Math.PI)), Calculator.compile("lgamma(0.5)", functions).evaluate(), 1e-14);
+        assertEquals(857.9336698258574, Calculator.compile("lgamma(x)", functions).evaluate(200.0), 1e-10);
+
+        double[] out = new double[3];
+        expr.evaluateColumns(new double[][] {{3, 3.5, 200}}, out);
+        assertArrayEquals(new double[] {6, expr.evaluate(3.5), Double.POSITIVE_INFINITY}, out);
+        assertEquals(expr.evaluate(2.25), BytecodeCompiler.compile(expr).applyAsDouble(new double[] {2.25}));
+    }
+}
@@ -0,0 +1,165 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Тесты для проверки автоматического дифференцирования {@link GradientEvaluator}.
+ */
+public class GradientEvaluatorTest
+{
+    @Test
+    void testKnownGradient()
+    {
+        GradientEvaluator grad = Calculator.compile("x^2 * y + sin(y)").gradient();
+        assertFalse(grad.isReverseMode());
+        double[] gradient = new double[2];
+        assertEquals(0.0, grad.evaluate(new double[] {3.0, 0.0}, gradient));
+        assertArrayEquals(new double[] {0.0, 10.0}, gradient);
+
+        Map<String, Double> named = new HashMap<>();
+        assertEquals(3.0, Calculator.compile("a / b - -b").gradient(true).evaluate(Map.of("a", 2.0, "b", 2.0), named));
+        assertEquals(Map.of("a", 0.5, "b", 0.5), named);
+    }
+
+    @Test
+    void testMatchesFiniteDifferences()
+    {
+        String[] expressions = {
+                "a + b - c * d / (e + 10)",
+                "|a|^b + c^2 + d^0.5 + 3^e",
+                "sin(a) * cos(b) + tg(c / 2) - ctg(d + 1) + exp(e) * log(a + 10)",
+                "min(a, b) * max(c, d) + hypot(e, a)",
+                "clamp(a * 2, -1, 1) + -a * -|b - c|",
+                "(a*b + 1) * (a*b + 1) / (1 + exp(a*b + 1))"
+        };
+        Random random = new Random(31);
+        for (String source : expressions)
+        {
+            CompiledExpression expr = Calculator.compile(source);
+            GradientEvaluator forward = expr.gradient(false), reverse = expr.gradient(true);
+            int n = expr.getVariableCount();
+            for (int trial = 0; trial < 50; trial++)
+            {
+                double[] values = new double[n];
+                for (int slot = 0; slot < n; slot++)
+                    values[slot] = 0.2 + random.nextDouble() * 1.5;
+
+                double[] forwardGradient = new double[n], reverseGradient = new double[n];
+                double value = expr.evaluate(values);
+                assertEquals(value, forward.evaluate(values, forwardGradient), source);
+                assertEquals(value, reverse.evaluate(values, reverseGradient), source);
+                for (int slot = 0; slot < n; slot++)
+                {
+                    double expected = centralDifference(expr, values, slot);
+                    double tolerance = 1e-6 * Math.max(1, Math.abs(expected));
+                    assertEquals(expected, forwardGradient[slot], tolerance, source + " d/d" + expr.variableName(slot));
+                    assertEquals(forwardGradient[slot], reverseGradient[slot],
+                            1e-12 * Math.max(1, Math.abs(forwardGradient[slot])), source);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFactorial()
+    {
+        // Производная факториала - производная его продолжения гамма-функцией
+        CompiledExpression gamma = Calculator.compile("(x + 3)! * y", FunctionRegistry.standard().withGammaFactorial());
+        double[] gradient = new double[2];
+        for (double x = 0.25; x < 3; x += 0.5)
+        {
+            double[] values = {x, 1.5};
+            gamma.gradient().evaluate(values, gradient);
+            assertEquals(centralDifference(gamma, values, 0), gradient[0], 1e-6 * Math.abs(gradient[0]));
+            assertEquals(gamma.evaluate(x, 1.0), gradient[1], 1e-12 * gradient[1]);
+        }
+
+        Calculator.compile("n! + 1").gradient().evaluate(new double[] {3}, gradient);
+        assertEquals(6 * (1 + 1.0 / 2 + 1.0 / 3 - 0.5772156649015329), gradient[0], 1e-12);
+    }
+
+    @Test
+    void testModeSelection()
+    {
+        StringBuilder source = new StringBuilder("0");
+        for (char c = 'a'; c <= 'j'; c++)
+            source.append(" + ").append(c).append(" * ").append(c);
+        CompiledExpression expr = Calculator.compile(source.toString());
+        GradientEvaluator grad = expr.gradient();
+        assertTrue(grad.isReverseMode());
+        double[] values = new double[10], gradient = new double[10];
+        for (int i = 0; i < 10; i++)
+            values[i] = i;
+        grad.evaluate(values, gradient);
+        for (int i = 0; i < 10; i++)
+            assertEquals(2.0 * i, gradient[i]);
+    }
+
+    @Test
+    void testColumns()
+    {
+        CompiledExpression expr = Calculator.compile("x * exp(y) - log(|x| + 1)");
+        Random random = new Random(37);
+        int rows = 1000;
+        double[][] columns = new double[2][rows];
+        for (double[] column : columns)
+            for (int i = 0; i < rows; i++)
+                column[i] = random.nextDouble() * 4 - 2;
+
+        for (boolean reverse : new boolean[] {false, true})
+        {
+            GradientEvaluator grad = expr.gradient(reverse);
+            double[] out = new double[rows];
+            double[][] gradients = new double[2][rows];
+            grad.evaluateColumns(columns, out, gradients);
+            double[] gradient = new double[2];
+            for (int i = 0; i < rows; i++)
+            {
+                assertEquals(grad.evaluate(new double[] {columns[0][i], columns[1][i]}, gradient), out[i]);
+                assertEquals(gradient[0], gradients[0][i]);
+                assertEquals(gradient[1], gradients[1][i]);
+            }
+            assertThrows(IllegalArgumentException.class, () -> grad.evaluateColumns(columns, out, new double[1][rows]));
+        }
+    }
+
+    @Test
+    void testErrors()
+    {
+        GradientEvaluator grad = Calculator.compile("a / b").gradient();
+        assertThrows(ArithmeticException.class, () -> grad.evaluate(new double[] {1, 0}, new double[2]));
+        assertThrows(IllegalArgumentException.class, () -> grad.evaluate(new double[] {1}, new double[2]));
+        assertThrows(IllegalArgumentException.class, () -> grad.evaluate(new double[] {1, 2}, new double[1]));
+    }
+
+    @Test
+    void testDigamma()
+    {
+        double eulerGamma = 0.5772156649015329;
+        assertEquals(-eulerGamma, CompiledExpression.digamma(1), 1e-14);
+        assertEquals(1 - eulerGamma, CompiledExpression.digamma(2), 1e-14);
+        assertEquals(-eulerGamma - 2 * Math.log(2), CompiledExpression.digamma(0.5), 1e-14);
+        assertEquals(Math.log(100) - 1.0 / 200, CompiledExpression.digamma(100), 1e-5);
+        assertTrue(Double.isNaN(CompiledExpression.digamma(-2)));
+        assertEquals(CompiledExpression.digamma(0.5) + 2, CompiledExpression.digamma(-0.5), 1e-13);
+    }
+
+    /**
+     * Вычисляет производную центральной разностью с шагом, оптимальным для double.
+     */
+    private static double centralDifference(CompiledExpression expr, double[] values, int slot)
+    {
+        double[] shifted = values.clone();
+        double h = 1e-5 * Math.max(1, Math.abs(values[slot]));
+        shifted[slot] = values[slot] + h;
+        double upper = expr.evaluate(shifted);
+        shifted[slot] = values[slot] - h;
+        double lower = expr.evaluate(shifted);
+        return (upper - lower) / (2 * h);
+    }
+}
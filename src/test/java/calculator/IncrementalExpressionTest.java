@@ -0,0 +1,101 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Тесты для проверки инкрементального пересчета выражений {@link IncrementalExpression}.
+ */
+public class IncrementalExpressionTest
+{
+    @Test
+    void testMatchesFullEvaluation()
+    {
+        String[] expressions = {
+                "(a + b) * |c|^b - exp(d)",
+                "-a * sin(b) + -cos(c) / (d + 10) - ctg(a) + -|b - c|",
+                "(a + b) * (a + b) + sin(a + b) - min(c, d) + clamp(a, b, c + 5)",
+                "a - -b + 3"
+        };
+        Random random = new Random(17);
+        for (String source : expressions)
+        {
+            CompiledExpression expr = Calculator.compile(source);
+            IncrementalExpression incremental = expr.newIncremental();
+            double[] values = new double[expr.getVariableCount()];
+            for (int slot = 0; slot < values.length; slot++)
+            {
+                values[slot] = random.nextDouble() * 4 - 2;
+                incremental.set(slot, values[slot]);
+            }
+            assertEquals(expr.evaluate(values), incremental.evaluate(), source);
+            assertEquals(incremental.getNodeCount(), incremental.getLastRecomputeCount());
+
+            for (int step = 0; step < 200; step++)
+            {
+                int slot = random.nextInt(values.length);
+                values[slot] = random.nextDouble() * 4 - 2;
+                incremental.set(slot, values[slot]);
+                assertEquals(Double.doubleToLongBits(expr.evaluate(values)),
+                        Double.doubleToLongBits(incremental.evaluate()), source + " step " + step);
+            }
+        }
+    }
+
+    @Test
+    void testRecomputesOnlyDependentNodes()
+    {
+        String[] names = new String[50];
+        for (int i = 0; i < names.length; i++)
+            names[i] = "x" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+        StringBuilder source = new StringBuilder(names[0]);
+        for (int i = 1; i < names.length; i++)
+            source.append(" + sin(").append(names[i]).append(") * ").append(i);
+        IncrementalExpression incremental = Calculator.compile(source.toString()).newIncremental();
+        for (int i = 0; i < names.length; i++)
+            incremental.set(names[i], i);
+        incremental.evaluate();
+        int total = incremental.getNodeCount();
+
+        incremental.set(names[49], 1.5);
+        incremental.evaluate();
+        assertTrue(incremental.getLastRecomputeCount() <= 5, "recomputed " + incremental.getLastRecomputeCount());
+
+        incremental.set(names[1], 2.5);
+        incremental.evaluate();
+        assertTrue(incremental.getLastRecomputeCount() < total / 2);
+
+        incremental.set(names[1], 2.5);
+        incremental.evaluate();
+        assertEquals(0, incremental.getLastRecomputeCount());
+    }
+
+    @Test
+    void testErrors()
+    {
+        IncrementalExpression incremental = Calculator.compile("a / b").newIncremental();
+        assertThrows(IllegalArgumentException.class, () -> incremental.set("c", 1));
+        incremental.set("a", 1);
+        assertThrows(IllegalArgumentException.class, incremental::evaluate);
+
+        incremental.set("b", 0);
+        assertThrows(ArithmeticException.class, incremental::evaluate);
+        incremental.set("b", 4);
+        assertEquals(0.25, incremental.evaluate());
+    }
+
+    @Test
+    void testFromCalculator()
+    {
+        Calculator calculator = new Calculator("a * b + 1");
+        calculator.setVariable("a", 3.0);
+        calculator.setVariable("b", 4.0);
+        IncrementalExpression incremental = calculator.incremental();
+        assertEquals(calculator.getRes(), incremental.evaluate());
+        incremental.set("b", 5);
+        assertEquals(16.0, incremental.evaluate());
+        assertEquals(5.0, Calculator.compile("2 + 3").newIncremental().evaluate());
+    }
+}
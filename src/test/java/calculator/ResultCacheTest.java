@@ -0,0 +1,108 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Тесты для проверки кэша результатов вычисления {@link ResultCache}.
+ */
+public class ResultCacheTest
+{
+    @Test
+    void testHitsAndMisses()
+    {
+        ResultCache cache = new ResultCache(100);
+        CompiledExpression expr = Calculator.compile("sin(x) * exp(y)");
+        double expected = Math.sin(0.5) * Math.exp(1.5);
+
+        assertEquals(expected, cache.evaluate(expr, 0.5, 1.5));
+        assertEquals(expected, cache.evaluate(expr, 0.5, 1.5));
+        assertEquals(expected, cache.evaluate(expr, Map.of("x", 0.5, "y", 1.5)));
+        assertEquals(Math.sin(0.5) * Math.exp(2.5), cache.evaluate(expr, 0.5, 2.5));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testConstantExpressionsAreNotCached()
+    {
+        ResultCache cache = new ResultCache(100);
+        assertEquals(5.0, cache.evaluate(Calculator.compile("2 + 3")));
+        assertEquals(5.0, cache.evaluate(Calculator.compile("2 + 3")));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getBypassCount());
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+    }
+
+    @Test
+    void testEviction()
+    {
+        ResultCache cache = new ResultCache(4);
+        CompiledExpression expr = Calculator.compile("x * 2");
+        cache.evaluate(expr, 0.0);
+        for (int i = 1; i < 20; i++)
+        {
+            cache.evaluate(expr, 0.0);
+            cache.evaluate(expr, i);
+        }
+        assertEquals(4, cache.size());
+        assertEquals(16, cache.getEvictionCount());
+
+        // Часто читаемая запись не вытесняется
+        long misses = cache.getMissCount();
+        cache.evaluate(expr, 0.0);
+        assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    void testTimeToLive()
+    {
+        AtomicLong time = new AtomicLong();
+        ResultCache cache = new ResultCache(10, 5, TimeUnit.SECONDS, time::get);
+        CompiledExpression expr = Calculator.compile("x + 1");
+
+        cache.evaluate(expr, 1.0);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        cache.evaluate(expr, 1.0);
+        assertEquals(1, cache.getHitCount());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(2.0, cache.evaluate(expr, 1.0));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testErrorsAreNotCached()
+    {
+        ResultCache cache = new ResultCache(10);
+        CompiledExpression expr = Calculator.compile("1 / x");
+        assertThrows(ArithmeticException.class, () -> cache.evaluate(expr, 0.0));
+        assertThrows(IllegalArgumentException.class, () -> cache.evaluate(expr));
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new ResultCache(0));
+    }
+
+    @Test
+    void testCalculatorWithResultCache()
+    {
+        ResultCache cache = new ResultCache(10);
+        for (int i = 0; i < 3; i++)
+        {
+            Calculator calculator = new Calculator("a * b");
+            calculator.setResultCache(cache);
+            calculator.setVariable("a", 3.0);
+            calculator.setVariable("b", 4.0);
+            assertEquals(12.0, calculator.getRes());
+        }
+        assertEquals(2, cache.getHitCount());
+    }
+}
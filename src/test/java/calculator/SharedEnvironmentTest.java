@@ -0,0 +1,125 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Тесты для проверки общего набора значений переменных {@link SharedEnvironment}.
+ */
+public class SharedEnvironmentTest
+{
+    @Test
+    void testVersionedSnapshots()
+    {
+        SharedEnvironment env = new SharedEnvironment();
+        assertEquals(0, env.getVersion());
+        assertEquals(1, env.setAll(Map.of("bid", 99.5, "ask", 100.5)));
+
+        CompiledExpression mid = Calculator.compile("(bid + ask) / 2");
+        SharedEnvironment.Result result = env.evaluate(mid);
+        assertEquals(100.0, result.getValue());
+        assertEquals(1, result.getVersion());
+
+        SharedEnvironment.Snapshot snapshot = env.snapshot();
+        assertEquals(2, env.set("bid", 100.0));
+        assertEquals(3, env.set("fee", 0.25));
+        assertEquals(100.0, snapshot.evaluate(mid));
+        assertFalse(snapshot.contains("fee"));
+        assertEquals(Set.of("bid", "ask"), snapshot.getNames());
+        assertEquals(99.5, snapshot.get("bid"));
+
+        SharedEnvironment.Snapshot latest = env.snapshot();
+        assertEquals(3, latest.getVersion());
+        assertEquals(100.25, latest.evaluate(mid));
+        assertEquals(0.25, latest.get("fee"));
+        assertEquals(3, env.getVersion());
+    }
+
+    @Test
+    void testErrors()
+    {
+        SharedEnvironment env = new SharedEnvironment();
+        env.set("a", 1.0);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> env.evaluate(Calculator.compile("a + b")));
+        assertEquals("Unknown variable: b", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> env.snapshot().get("b"));
+        env.set("b", 0.0);
+        assertThrows(ArithmeticException.class, () -> env.evaluate(Calculator.compile("a / b")));
+    }
+
+    @Test
+    void testAsVariableResolver()
+    {
+        SharedEnvironment env = new SharedEnvironment();
+        env.setAll(Map.of("rate", 0.05, "amount", 200.0));
+        Calculator calculator = new Calculator("rate * amount + extra", env);
+        assertThrows(IllegalArgumentException.class, calculator::getRes);
+        calculator.setVariable("extra", 1.0);
+        assertEquals(11.0, calculator.getRes());
+        assertEquals(Map.of("rate", 0.05), env.resolve(Set.of("rate", "other")));
+
+        // Каждое вычисление берет значения из текущего снимка
+        Calculator doubled = new Calculator("p * 2", env);
+        env.set("p", 1.0);
+        assertEquals(2.0, doubled.getRes());
+        env.set("p", 5.0);
+        assertEquals(10.0, doubled.getRes());
+        env.set("p", 7.0);
+        assertEquals(14.0, (double) doubled.getResAsync().join());
+    }
+
+    @Test
+    void testConcurrentReadersSeeConsistentSnapshots() throws InterruptedException
+    {
+        SharedEnvironment env = new SharedEnvironment();
+        env.setAll(Map.of("a", 0.0, "b", 0.0));
+        CompiledExpression sum = Calculator.compile("a + b");
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 2; w++)
+        {
+            threads.add(new Thread(() ->
+            {
+                for (int i = 1; i <= 20_000; i++)
+                    env.setAll(Map.of("a", (double) i, "b", (double) -i));
+            }));
+        }
+        for (int r = 0; r < 4; r++)
+        {
+            threads.add(new Thread(() ->
+            {
+                long lastVersion = -1;
+                while (running.get())
+                {
+                    SharedEnvironment.Result result = env.evaluate(sum);
+                    if (result.getValue() != 0.0)
+                        failure.set("inconsistent snapshot " + result.getVersion() + ": " + result.getValue());
+                    if (result.getVersion() < lastVersion)
+                        failure.set("version went back: " + lastVersion + " -> " + result.getVersion());
+                    lastVersion = result.getVersion();
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        threads.get(0).join();
+        threads.get(1).join();
+        running.set(false);
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure.get());
+        assertEquals(40_001, env.getVersion());
+        assertEquals(0.0, env.evaluate(sum).getValue());
+    }
+}
@@ -0,0 +1,156 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Тесты для проверки многоуровневого выполнения выражений {@link TieredEngine}.
+ */
+public class TieredEngineTest
+{
+    @Test
+    void testPromotionAfterThreshold()
+    {
+        TieredEngine engine = new TieredEngine(3, Runnable::run);
+        TieredExpression expr = engine.compile("x^2 + sin(x)");
+
+        for (int i = 0; i < 2; i++)
+            assertEquals(4 + Math.sin(2), expr.evaluate(2.0));
+        assertFalse(expr.isCompiled());
+        assertEquals(0, engine.getCompilationsStarted());
+
+        assertEquals(9 + Math.sin(3), expr.evaluate(3.0));
+        assertTrue(expr.isCompiled());
+        assertEquals(16 + Math.sin(4), expr.evaluate(Map.of("x", 4.0)));
+
+        assertEquals(3, engine.getInterpretedEvaluations());
+        assertEquals(1, engine.getCompiledEvaluations());
+        assertEquals(1, engine.getCompilationsStarted());
+        assertEquals(1, engine.getCompilationsCompleted());
+        assertEquals(0, engine.getCompilationsFailed());
+        assertEquals(3, expr.getInterpretedEvaluations());
+    }
+
+    @Test
+    void testColdExpressionsStayInterpreted()
+    {
+        List<Runnable> tasks = new ArrayList<>();
+        TieredEngine engine = new TieredEngine(2, tasks::add);
+        TieredExpression cold = engine.compile("a + 1");
+        TieredExpression hot = engine.compile("a * 2");
+
+        cold.evaluate(1.0);
+        hot.evaluate(1.0);
+        hot.evaluate(1.0);
+        hot.evaluate(1.0);
+
+        // Пока компиляция не выполнена, вычисления продолжаются в интерпретаторе
+        assertEquals(1, tasks.size());
+        assertFalse(hot.isCompiled());
+        assertEquals(4, engine.getInterpretedEvaluations());
+
+        tasks.get(0).run();
+        assertTrue(hot.isCompiled());
+        assertFalse(cold.isCompiled());
+        assertEquals(6.0, hot.evaluate(3.0));
+        assertEquals(Map.of("interpreted", 4L, "compiled", 1L, "compilationsStarted", 1L,
+                "compilationsCompleted", 1L, "compilationsFailed", 0L, "compilationsSkipped", 0L), engine.getCounters());
+    }
+
+    @Test
+    void testLargeExpressionStaysInterpreted()
+    {
+        StringBuilder source = new StringBuilder("x");
+        for (int i = 0; i < 40000; i++)
+            source.append("+x");
+        TieredEngine engine = new TieredEngine(1, Runnable::run);
+        TieredExpression expr = engine.compile(source.toString());
+        assertEquals(40001.0, expr.evaluate(1.0));
+        assertEquals(40001.0, expr.evaluate(1.0));
+
+        assertFalse(expr.isCompiled());
+        assertEquals(1, engine.getCompilationsStarted());
+        assertEquals(1, engine.getCompilationsSkipped());
+        assertEquals(0, engine.getCompilationsCompleted());
+        assertEquals(2, engine.getInterpretedEvaluations());
+        assertEquals(0, engine.getCompiledEvaluations());
+    }
+
+    @Test
+    void testFailedCompilationIsRetried()
+    {
+        int[] calls = new int[1];
+        TieredEngine engine = new TieredEngine(2, task ->
+        {
+            if (calls[0]++ == 0)
+                throw new IllegalStateException("rejected");
+            task.run();
+        });
+        TieredExpression expr = engine.compile("a + 1");
+        expr.evaluate(1.0);
+        expr.evaluate(1.0);
+        assertFalse(expr.isCompiled());
+        assertEquals(1, engine.getCompilationsFailed());
+
+        expr.evaluate(1.0);
+        assertFalse(expr.isCompiled());
+        expr.evaluate(1.0);
+        assertTrue(expr.isCompiled());
+        assertEquals(2, engine.getCompilationsStarted());
+        assertEquals(1, engine.getCompilationsCompleted());
+
+        // Число попыток ограничено
+        TieredEngine rejecting = new TieredEngine(1, task ->
+        {
+            throw new IllegalStateException("rejected");
+        });
+        TieredExpression cold = rejecting.compile("a + 2");
+        for (int i = 0; i < 10; i++)
+            cold.evaluate(1.0);
+        assertEquals(TieredEngine.MAX_COMPILATION_ATTEMPTS, rejecting.getCompilationsStarted());
+        assertEquals(TieredEngine.MAX_COMPILATION_ATTEMPTS, rejecting.getCompilationsFailed());
+    }
+
+    @Test
+    void testErrorsInBothTiers()
+    {
+        TieredEngine engine = new TieredEngine(1, Runnable::run);
+        TieredExpression expr = engine.compile("a / b");
+        assertThrows(ArithmeticException.class, () -> expr.evaluate(1.0, 0.0));
+        assertTrue(expr.isCompiled());
+        assertThrows(ArithmeticException.class, () -> expr.evaluate(1.0, 0.0));
+        assertThrows(IllegalArgumentException.class, () -> expr.evaluate(1.0));
+        assertThrows(IllegalArgumentException.class, () -> expr.evaluate(Map.of("a", 1.0)));
+    }
+
+    @Test
+    void testInvalidThreshold()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new TieredEngine(0));
+    }
+
+    @Test
+    void testConcurrentPromotion() throws InterruptedException
+    {
+        TieredEngine engine = new TieredEngine(100);
+        TieredExpression expr = engine.compile("a * b + 1");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++)
+                    assertEquals(i * 2.0 + 1, expr.evaluate(i, 2.0));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(1, engine.getCompilationsStarted());
+        assertEquals(40000, engine.getInterpretedEvaluations() + engine.getCompiledEvaluations());
+    }
+}
@@ -0,0 +1,184 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Тесты для проверки источников значений переменных {@link VariableResolver}.
+ */
+public class VariableResolverTest
+{
+    @Test
+    void testFailFastByDefault()
+    {
+        Calculator calculator = new Calculator("a + b");
+        calculator.setVariable("a", 1.0);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, calculator::getRes);
+        assertEquals("Unknown variable: b", e.getMessage());
+        CompletionException async = assertThrows(CompletionException.class, () -> calculator.getResAsync().join());
+        assertTrue(async.getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void testBatchedResolve()
+    {
+        List<Set<String>> requests = new ArrayList<>();
+        Map<String, Double> store = new ConcurrentHashMap<>(Map.of("a", 2.0, "b", 3.0, "c", 4.0));
+        VariableResolver source = VariableResolver.of(store);
+        Calculator calculator = new Calculator("a * b + c", names ->
+        {
+            requests.add(Set.copyOf(names));
+            return source.resolve(names);
+        });
+        calculator.setVariable("c", 1.0);
+        assertEquals(7.0, calculator.getRes());
+        assertEquals(List.of(Set.of("a", "b")), requests);
+
+        // Полученные значения не сохраняются: следующее вычисление видит новое значение источника
+        store.put("a", 10.0);
+        assertEquals(31.0, calculator.getRes());
+        assertEquals(List.of(Set.of("a", "b"), Set.of("a", "b")), requests);
+        store.put("a", 1.0);
+        assertEquals(4.0, (double) calculator.getResAsync().join());
+        assertEquals(3, requests.size());
+
+        Calculator partial = new Calculator("a + d", source);
+        assertThrows(IllegalArgumentException.class, partial::getRes);
+        partial.setVariable("d", 1.0);
+        assertEquals(2.0, partial.getRes());
+    }
+
+    @Test
+    void testCachingWithTimeToLive()
+    {
+        AtomicLong time = new AtomicLong();
+        List<Set<String>> requests = new ArrayList<>();
+        Map<String, Double> store = new ConcurrentHashMap<>(Map.of("a", 1.0, "b", 2.0));
+        VariableResolver source = VariableResolver.of(store);
+        CachingVariableResolver cache = new CachingVariableResolver(names ->
+        {
+            requests.add(Set.copyOf(names));
+            return source.resolve(names);
+        }, 10, TimeUnit.NANOSECONDS, time::get);
+
+        assertEquals(Map.of("a", 1.0), cache.resolve(Set.of("a")));
+        assertEquals(Map.of("a", 1.0, "b", 2.0), cache.resolve(Set.of("a", "b")));
+        assertEquals(List.of(Set.of("a"), Set.of("b")), requests);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        store.put("a", 5.0);
+        time.set(5);
+        assertEquals(Map.of("a", 1.0), cache.resolve(Set.of("a")));
+        time.set(10);
+        assertEquals(Map.of("a", 5.0), cache.resolve(Set.of("a")));
+
+        assertEquals(Map.of(), cache.resolve(Set.of("z")));
+        assertEquals(2, cache.size());
+        cache.invalidate("b");
+        assertEquals(1, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new CachingVariableResolver(source, -1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCachingThroughCalculator()
+    {
+        AtomicLong time = new AtomicLong();
+        Map<String, Double> store = new ConcurrentHashMap<>(Map.of("p", 1.0));
+        CachingVariableResolver cache = new CachingVariableResolver(VariableResolver.of(store),
+                10, TimeUnit.NANOSECONDS, time::get);
+        Calculator calculator = new Calculator("p * 2", cache);
+        assertEquals(2.0, calculator.getRes());
+        store.put("p", 5.0);
+        assertEquals(2.0, calculator.getRes());
+        assertEquals(1, cache.getMissCount());
+
+        time.set(10);
+        assertEquals(10.0, calculator.getRes());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testAsync()
+    {
+        CompletableFuture<Map<String, Double>> pending = new CompletableFuture<>();
+        CachingVariableResolver cache = new CachingVariableResolver(new VariableResolver()
+        {
+            @Override
+            public Map<String, Double> resolve(Set<String> names)
+            {
+                throw new AssertionError("synchronous call");
+            }
+
+            @Override
+            public CompletableFuture<Map<String, Double>> resolveAsync(Set<String> names)
+            {
+                return pending;
+            }
+        });
+
+        Calculator calculator = new Calculator("x / y", cache);
+        calculator.setVariable("x", 3.0);
+        CompletableFuture<Double> result = calculator.getResAsync();
+        assertFalse(result.isDone());
+        pending.complete(Map.of("y", 4.0));
+        assertEquals(0.75, (double) result.join());
+
+        Calculator other = new Calculator("y * 2", cache);
+        assertTrue(other.getResAsync().isDone());
+        assertEquals(8.0, (double) other.getResAsync().join());
+        assertEquals(1, cache.getMissCount());
+
+        Calculator zero = new Calculator("1 / y", VariableResolver.of(Map.of("y", 0.0)));
+        CompletionException e = assertThrows(CompletionException.class, () -> zero.getResAsync().join());
+        assertTrue(e.getCause() instanceof ArithmeticException);
+    }
+
+    @Test
+    void testConsole()
+    {
+        ByteArrayInputStream in = new ByteArrayInputStream("\nabc\n2.5\n-1\n".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VariableResolver console = new ConsoleVariableResolver(in, new PrintStream(out, true, StandardCharsets.UTF_8));
+        Calculator calculator = new Calculator("a - b", console);
+        assertEquals(3.5, calculator.getRes());
+        String prompts = out.toString(StandardCharsets.UTF_8);
+        assertTrue(prompts.contains("Value cannot be empty"));
+        assertTrue(prompts.contains("Invalid number"));
+
+        assertThrows(IllegalArgumentException.class, () -> new Calculator("c", console).getRes());
+    }
+
+    @Test
+    void testConsoleAsyncDoesNotBlockCaller() throws IOException
+    {
+        PipedOutputStream input = new PipedOutputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VariableResolver console = new ConsoleVariableResolver(new PipedInputStream(input),
+                new PrintStream(out, true, StandardCharsets.UTF_8));
+        Calculator calculator = new Calculator("a * 2", console);
+        CompletableFuture<Double> result = calculator.getResAsync();
+        assertFalse(result.isDone());
+        input.write("4\n".getBytes(StandardCharsets.UTF_8));
+        input.flush();
+        assertEquals(8.0, (double) result.join());
+    }
+}